@@ -0,0 +1,355 @@
+package es.iesjuanbosco.logica;
+
+import es.iesjuanbosco.util.Dinero;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Agregados de todo el banco mantenidos operación a operación: el número de
+ * cuentas de cada tipo, la suma de los saldos, el descubierto total de las
+ * cuentas de empresa y las comisiones por descubierto cobradas. Se pueden
+ * consultar en cualquier momento sin recorrer las cuentas ni bloquear las
+ * operaciones, por ejemplo desde un panel que los pida cada pocos segundos.
+ * <p>
+ * Los agregados se añaden como oyente del banco y suman en cada alta y en
+ * cada operación realizada la diferencia que produce, calculada a partir del
+ * resultado de la operación. Se guardan en {@link LongAdder}, que reparte las
+ * sumas simultáneas entre varias celdas, de modo que los hilos que operan no
+ * compiten por un mismo contador. Como las sumas no dependen del orden, las
+ * operaciones notificadas fuera de orden no les afectan.
+ * <p>
+ * Los cambios de saldo que el banco no notifica (los ajustes de
+ * {@link Banco#ajustarSaldoCentimos(int, long)} al recuperar el diario, o los
+ * hechos directamente sobre una cuenta) no se reflejan en los agregados, por
+ * lo que deben crearse después de recuperar el banco y sin operaciones en
+ * curso. Para comprobarlo, {@link #conciliar()} compara los agregados con un
+ * recorrido de todas las cuentas, y puede programarse de forma periódica con
+ * {@link #conciliacionesPeriodicas(long, TimeUnit, Consumer)}.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see Banco#anadirOyente(OyenteOperaciones)
+ */
+public class AgregadosBanco implements OyenteOperaciones, AutoCloseable {
+
+    /**
+     * Número máximo de recorridos que hace una conciliación mientras
+     * encuentre diferencias, por si se deben a operaciones en curso.
+     */
+    static final int MAXIMO_INTENTOS = 3;
+
+    /**
+     * Banco cuyas cuentas se agregan.
+     */
+    private final Banco BANCO;
+
+    /**
+     * Número de cuentas del banco.
+     */
+    private final LongAdder CUENTAS = new LongAdder();
+
+    /**
+     * Número de cuentas de cada tipo, por la clase de la cuenta.
+     */
+    private final Map<Class<?>, LongAdder> CUENTAS_TIPO = new ConcurrentHashMap<>();
+
+    /**
+     * Suma de los saldos de las cuentas, en céntimos.
+     */
+    private final LongAdder SALDOS = new LongAdder();
+
+    /**
+     * Descubierto total de las cuentas de empresa, en céntimos.
+     */
+    private final LongAdder DESCUBIERTO = new LongAdder();
+
+    /**
+     * Comisiones por descubierto cobradas desde que se crearon los agregados,
+     * en céntimos.
+     */
+    private final LongAdder COMISIONES = new LongAdder();
+
+    /**
+     * Hilo que hace las conciliaciones periódicas.
+     */
+    private final ScheduledExecutorService CONCILIACIONES;
+
+    /**
+     * Valores de los agregados en un momento dado.
+     *
+     * @param cuentas     el número de cuentas
+     * @param saldos      la suma de los saldos
+     * @param descubierto el descubierto total
+     */
+    private record Instantanea(long cuentas, long saldos, long descubierto) {
+    }
+
+    /**
+     * Crea los agregados de las cuentas de un banco y los añade como oyente
+     * del banco. Las cuentas abiertas hasta ese momento se suman con su saldo
+     * actual.
+     *
+     * @param banco el banco cuyas cuentas se agregan
+     */
+    public AgregadosBanco(Banco banco) {
+        this.BANCO = banco;
+        this.CONCILIACIONES = new ScheduledThreadPoolExecutor(1, tarea -> {
+            Thread hilo = new Thread(tarea, "conciliacion-banco");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        // Las cuentas a partir de esta posición se suman al recibir su alta
+        int numCuentas = banco.anadirOyenteContando(this);
+        for (int i = 0; i < numCuentas; i++) {
+            sumarCuenta(banco.cuentaEnPosicion(i));
+        }
+    }
+
+    /**
+     * Suma una cuenta recién abierta.
+     *
+     * @param cuenta   la cuenta abierta
+     * @param posicion la posición de la cuenta en el banco
+     */
+    @Override
+    public void cuentaAbierta(CuentaBancaria cuenta, int posicion) {
+        sumarCuenta(cuenta);
+    }
+
+    /**
+     * Suma a los agregados la diferencia que produce una operación. El saldo
+     * anterior de cada cuenta se obtiene del saldo en el que quedó, la
+     * cantidad y la comisión.
+     *
+     * @param resultado el resultado de la operación realizada
+     */
+    @Override
+    public void operacionRealizada(ResultadoOperacion resultado) {
+        long cantidad = resultado.cantidadCentimos();
+        long comision = resultado.comisionCentimos();
+        long saldo = resultado.saldoCentimos();
+        switch (resultado.tipo()) {
+            case INGRESO, INTERES -> {
+                SALDOS.add(cantidad);
+                sumarDescubierto(resultado.posicion(), saldo - cantidad, saldo);
+            }
+            case RETIRADA -> {
+                SALDOS.add(-cantidad - comision);
+                sumarDescubierto(resultado.posicion(), saldo + cantidad + comision, saldo);
+            }
+            case TRANSFERENCIA -> {
+                // La cantidad sólo pasa de una cuenta a otra; lo que sale del banco es la comisión
+                SALDOS.add(-comision);
+                sumarDescubierto(resultado.posicion(), saldo + cantidad + comision, saldo);
+                long saldoDestino = resultado.saldoDestinoCentimos();
+                sumarDescubierto(resultado.posicionDestino(), saldoDestino - cantidad, saldoDestino);
+            }
+        }
+        if (comision != 0) {
+            COMISIONES.add(comision);
+        }
+    }
+
+    /**
+     * Devuelve el número de cuentas del banco.
+     *
+     * @return el número de cuentas
+     */
+    public long numCuentas() {
+        return CUENTAS.sum();
+    }
+
+    /**
+     * Devuelve el número de cuentas de un tipo.
+     *
+     * @param tipo la clase de las cuentas (por ejemplo
+     *             {@code CuentaAhorro.class}); no incluye las de sus
+     *             subclases
+     *
+     * @return el número de cuentas del tipo
+     */
+    public long numCuentasTipo(Class<? extends CuentaBancaria> tipo) {
+        LongAdder cuentas = CUENTAS_TIPO.get(tipo);
+        return cuentas == null ? 0 : cuentas.sum();
+    }
+
+    /**
+     * Devuelve la suma de los saldos de todas las cuentas.
+     *
+     * @return la suma de los saldos en céntimos
+     */
+    public long totalSaldosCentimos() {
+        return SALDOS.sum();
+    }
+
+    /**
+     * Devuelve la suma de los saldos de todas las cuentas, como
+     * {@link Banco#totalSaldos()}.
+     *
+     * @return la suma de los saldos
+     */
+    public double totalSaldos() {
+        return Dinero.aEuros(totalSaldosCentimos());
+    }
+
+    /**
+     * Devuelve el descubierto total (saldo negativo en valor absoluto) de las
+     * cuentas corrientes de empresa.
+     *
+     * @return el descubierto total en céntimos
+     */
+    public long totalDescubiertoCentimos() {
+        return DESCUBIERTO.sum();
+    }
+
+    /**
+     * Devuelve el descubierto total de las cuentas corrientes de empresa,
+     * como {@link Banco#totalDescubierto()}.
+     *
+     * @return el descubierto total
+     */
+    public double totalDescubierto() {
+        return Dinero.aEuros(totalDescubiertoCentimos());
+    }
+
+    /**
+     * Devuelve el total depositado en el banco: la suma de los saldos
+     * positivos, que es la suma de los saldos más el descubierto (sólo las
+     * cuentas de empresa pueden quedar en negativo).
+     *
+     * @return el total depositado en céntimos
+     */
+    public long totalDepositosCentimos() {
+        return SALDOS.sum() + DESCUBIERTO.sum();
+    }
+
+    /**
+     * Devuelve las comisiones por descubierto cobradas desde que se crearon
+     * los agregados.
+     *
+     * @return las comisiones cobradas en céntimos
+     */
+    public long comisionesDescubiertoCentimos() {
+        return COMISIONES.sum();
+    }
+
+    /**
+     * Compara los agregados con los valores que se obtienen recorriendo todas
+     * las cuentas del banco. Las operaciones pueden seguir haciéndose
+     * mientras tanto; si se encuentran diferencias el recorrido se repite,
+     * hasta {@link #MAXIMO_INTENTOS} veces, por si se deben a operaciones que
+     * aún no se habían notificado.
+     *
+     * @return el resultado de la conciliación
+     */
+    public ResumenConciliacion conciliar() {
+        long inicio = System.nanoTime();
+        for (int intento = 1;; intento++) {
+            Instantanea antes = instantanea();
+            // Número de cuentas de cada tipo encontradas en el recorrido
+            Map<Class<?>, long[]> cuentasTipo = new HashMap<>();
+            long saldos = 0, descubierto = 0;
+            int numCuentas = BANCO.getContadorCuentas();
+            for (int i = 0; i < numCuentas; i++) {
+                CuentaBancaria cuenta = BANCO.cuentaEnPosicion(i);
+                long saldo = cuenta.getSaldoCentimos();
+                cuentasTipo.computeIfAbsent(cuenta.getClaseCuenta(), tipo -> new long[1])[0]++;
+                saldos += saldo;
+                if (cuenta instanceof CuentaCorrienteEmpresa && saldo < 0) {
+                    descubierto -= saldo;
+                }
+            }
+            Instantanea despues = instantanea();
+            long diferenciaCuentas = 0;
+            Set<Class<?>> tipos = new HashSet<>(cuentasTipo.keySet());
+            tipos.addAll(CUENTAS_TIPO.keySet());
+            for (Class<?> tipo : tipos) {
+                LongAdder agregado = CUENTAS_TIPO.get(tipo);
+                long[] recorrido = cuentasTipo.get(tipo);
+                diferenciaCuentas += Math.abs((agregado == null ? 0 : agregado.sum()) - (recorrido == null ? 0 : recorrido[0]));
+            }
+            ResumenConciliacion resumen = new ResumenConciliacion(numCuentas, diferenciaCuentas,
+                    despues.saldos() - saldos, despues.descubierto() - descubierto,
+                    antes.equals(despues) && despues.cuentas() == numCuentas, intento, System.nanoTime() - inicio);
+            if (resumen.cuadra() || intento == MAXIMO_INTENTOS) {
+                return resumen;
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Concilia los agregados cada cierto tiempo, desde un hilo propio, hasta
+     * que se cierren.
+     *
+     * @param periodo el tiempo entre conciliaciones
+     * @param unidad  la unidad del periodo
+     * @param aviso   la acción que recibe el resultado de cada conciliación
+     *
+     * @throws IllegalArgumentException si el periodo no es mayor que 0
+     */
+    public void conciliacionesPeriodicas(long periodo, TimeUnit unidad, Consumer<ResumenConciliacion> aviso) {
+        if (periodo <= 0) {
+            throw new IllegalArgumentException("El periodo ha de ser mayor que 0");
+        }
+        CONCILIACIONES.scheduleAtFixedRate(() -> aviso.accept(conciliar()), periodo, periodo, unidad);
+    }
+
+    /**
+     * Quita los agregados de los oyentes del banco y detiene las
+     * conciliaciones periódicas.
+     */
+    @Override
+    public void close() {
+        BANCO.eliminarOyente(this);
+        CONCILIACIONES.shutdown();
+    }
+
+    /**
+     * Suma una cuenta a los agregados.
+     *
+     * @param cuenta la cuenta
+     */
+    private void sumarCuenta(CuentaBancaria cuenta) {
+        long saldo = cuenta.getSaldoCentimos();
+        CUENTAS.increment();
+        CUENTAS_TIPO.computeIfAbsent(cuenta.getClaseCuenta(), tipo -> new LongAdder()).increment();
+        SALDOS.add(saldo);
+        if (cuenta instanceof CuentaCorrienteEmpresa && saldo < 0) {
+            DESCUBIERTO.add(-saldo);
+        }
+    }
+
+    /**
+     * Suma al descubierto total el cambio de descubierto de una cuenta. Sólo
+     * cuando el saldo anterior o el nuevo es negativo hace falta buscar la
+     * cuenta para comprobar si es de empresa.
+     *
+     * @param posicion      la posición de la cuenta en el banco
+     * @param saldoAnterior el saldo de la cuenta antes de la operación
+     * @param saldoNuevo    el saldo de la cuenta después de la operación
+     */
+    private void sumarDescubierto(int posicion, long saldoAnterior, long saldoNuevo) {
+        long diferencia = Math.max(0, -saldoNuevo) - Math.max(0, -saldoAnterior);
+        if (diferencia != 0 && BANCO.cuentaEnPosicion(posicion) instanceof CuentaCorrienteEmpresa) {
+            DESCUBIERTO.add(diferencia);
+        }
+    }
+
+    /**
+     * Lee los valores actuales de los agregados.
+     *
+     * @return los valores de los agregados
+     */
+    private Instantanea instantanea() {
+        return new Instantanea(CUENTAS.sum(), SALDOS.sum(), DESCUBIERTO.sum());
+    }
+}
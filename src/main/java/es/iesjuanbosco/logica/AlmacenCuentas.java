@@ -0,0 +1,87 @@
+package es.iesjuanbosco.logica;
+
+import java.util.Arrays;
+
+/**
+ * Almacén segmentado de cuentas bancarias. Las cuentas se guardan en bloques
+ * de tamaño fijo que se reservan a medida que se necesitan, de modo que añadir
+ * una cuenta nunca obliga a copiar las cuentas ya almacenadas.
+ * <p>
+ * Cuando se llena el directorio de bloques sólo se copia el directorio (un
+ * array con una referencia por bloque), nunca el contenido de los bloques.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see Banco
+ */
+final class AlmacenCuentas {
+
+    /**
+     * Número de bits de la posición que indican el desplazamiento dentro del
+     * bloque.
+     */
+    static final int BITS_BLOQUE = 10;
+
+    /**
+     * Número de cuentas que caben en cada bloque.
+     */
+    static final int TAMANO_BLOQUE = 1 << BITS_BLOQUE;
+
+    /**
+     * Máscara para obtener el desplazamiento dentro del bloque.
+     */
+    private static final int MASCARA_BLOQUE = TAMANO_BLOQUE - 1;
+
+    /**
+     * Directorio de bloques de cuentas.
+     */
+    private CuentaBancaria[][] bloques = new CuentaBancaria[8][];
+
+    /**
+     * Número de cuentas almacenadas.
+     */
+    private int tamano;
+
+    /**
+     * Devuelve el número de cuentas almacenadas.
+     *
+     * @return el número de cuentas almacenadas
+     */
+    int tamano() {
+        return tamano;
+    }
+
+    /**
+     * Devuelve la cuenta almacenada en la posición indicada.
+     *
+     * @param posicion la posición de la cuenta (entre 0 y tamano() - 1)
+     *
+     * @return la cuenta almacenada en esa posición
+     */
+    CuentaBancaria obtener(int posicion) {
+        return bloques[posicion >>> BITS_BLOQUE][posicion & MASCARA_BLOQUE];
+    }
+
+    /**
+     * Añade una cuenta al final del almacén.
+     *
+     * @param cuenta la cuenta a añadir
+     *
+     * @return la posición asignada a la cuenta
+     */
+    int anadir(CuentaBancaria cuenta) {
+        int posicion = tamano;
+        int bloque = posicion >>> BITS_BLOQUE;
+        // Si el directorio está lleno se duplica (sólo se copian referencias a bloques)
+        if (bloque == bloques.length) {
+            bloques = Arrays.copyOf(bloques, bloques.length * 2);
+        }
+        // Los bloques se reservan la primera vez que se escribe en ellos
+        if (bloques[bloque] == null) {
+            bloques[bloque] = new CuentaBancaria[TAMANO_BLOQUE];
+        }
+        bloques[bloque][posicion & MASCARA_BLOQUE] = cuenta;
+        tamano++;
+        return posicion;
+    }
+}
@@ -1,13 +1,39 @@
 package es.iesjuanbosco.logica;
 
+import es.iesjuanbosco.util.Dinero;
+import java.io.IOException;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
 /**
  * La clase Banco representa un banco que almacena cuentas bancarias y realiza
- * operaciones con ellas. Las cuentas bancarias se almacenan en un array de
- * cuentas.
+ * operaciones con ellas. Las cuentas bancarias se almacenan en un almacén
+ * segmentado que crece por bloques a medida que se abren cuentas. Según el
+ * {@link ModoAlmacenamiento} elegido, los datos numéricos de las cuentas se
+ * guardan en las propias cuentas o en un libro contable (columnar o fuera del
+ * heap).
  * <p>
  * Proporciona métodos para abrir, listar e interactuar con cuentas bancarias,
- * como ingresos, retiradas y obtención de información de cuentas. También
- * permite comprobar si una cuenta existe en el banco.
+ * como ingresos, retiradas, transferencias y obtención de información de
+ * cuentas. También permite comprobar si una cuenta existe en el banco.
+ * <p>
+ * Se puede utilizar desde varios hilos a la vez: las altas de cuentas se hacen
+ * de una en una, y los ingresos y retiradas con saldo suficiente actualizan el
+ * saldo sin cerrojos, mediante compare-and-set. Las retiradas que pueden dejar
+ * al descubierto una cuenta de empresa se protegen además con cerrojos
+ * repartidos por IBAN, de modo que sus cálculos se hacen de uno en uno por
+ * cuenta y en paralelo entre cuentas distintas. Las transferencias adquieren
+ * los cerrojos de sus dos cuentas siempre en el mismo orden.
+ * <p>
+ * Las operaciones sobre el saldo no muestran mensajes: devuelven un
+ * {@link ResultadoOperacion} y, si se realizan, se notifican a los
+ * {@link OyenteOperaciones} añadidos al banco.
  *
  * @author Cristian Palomo Prieto
  * @version 0.1
@@ -15,26 +41,145 @@ package es.iesjuanbosco.logica;
 public class Banco {
 
     /**
-     * Array que almacena todas las cuentas bancarias del banco.
+     * Valor del límite de cuentas que indica que el banco no tiene límite.
+     */
+    public static final int SIN_LIMITE = Integer.MAX_VALUE;
+
+    /**
+     * Valor que indica que una retirada no se puede realizar. Ningún saldo
+     * puede llegar a tomar este valor, ya que las operaciones con céntimos
+     * fallan antes de desbordarse.
      */
-    private final CuentaBancaria[] CUENTA;
+    private static final long RETIRADA_RECHAZADA = Long.MIN_VALUE;
+
+    /**
+     * Almacén que guarda todas las cuentas bancarias del banco.
+     */
+    private final AlmacenCuentas CUENTA;
 
     /**
      * Número máximo de cuentas bancarias que puede almacenar el banco.
      */
-    private final int NUM_MAXIMO_CUENTAS = 100;
+    private final int NUM_MAXIMO_CUENTAS;
 
     /**
      * Contador que lleva el número actual de cuentas almacenadas en el banco.
      */
-    private int contadorCuentas;
+    private volatile int contadorCuentas;
+
+    /**
+     * Índice hash que relaciona cada IBAN con su posición en el almacén de
+     * cuentas.
+     */
+    private final IndiceIban INDICE_IBAN;
+
+    /**
+     * Registro de los titulares de las cuentas, indexados por DNI, con las
+     * posiciones de las cuentas de cada uno.
+     */
+    private final RegistroTitulares REGISTRO_TITULARES = new RegistroTitulares();
+
+    /**
+     * Índice invertido de las entidades autorizadas en las cuentas
+     * corrientes, con las posiciones de las cuentas que autorizan cada una.
+     */
+    private final IndiceEntidades INDICE_ENTIDADES = new IndiceEntidades();
+
+    /**
+     * Diccionario de las entidades autorizadas en las cuentas corrientes del
+     * banco.
+     */
+    private final DiccionarioEntidades DICCIONARIO = new DiccionarioEntidades();
+
+    /**
+     * Libro contable en el que se guardan los datos numéricos de las cuentas,
+     * o null si cada cuenta guarda sus propios datos.
+     */
+    private final LibroContable LIBRO;
+
+    /**
+     * Modo de redondeo con el que se convierten a céntimos las cantidades y se
+     * calculan las comisiones.
+     */
+    private volatile RoundingMode modoRedondeo = Dinero.REDONDEO_POR_DEFECTO;
+
+    /**
+     * Cerrojo que protege el almacén de cuentas, el índice de IBAN, el
+     * registro de titulares y el índice de entidades. Las altas lo adquieren en modo escritura y las
+     * búsquedas por IBAN usan lecturas optimistas, que no bloquean mientras no
+     * haya altas en curso.
+     */
+    private final StampedLock CERROJO_ALTAS = new StampedLock();
+
+    /**
+     * Cerrojo que hace que las altas se hagan de una en una, incluida su
+     * notificación a los oyentes. Se notifica sin tener el cerrojo de altas,
+     * de modo que un oyente que espera (por ejemplo a que se escriba el
+     * diario) no bloquea las búsquedas por IBAN.
+     */
+    private final ReentrantLock TURNO_ALTAS = new ReentrantLock();
 
     /**
-     * Crea una instancia de Banco, inicializando el array de cuentas bancarias
-     * y el contador de cuentas.
+     * Cerrojos por franjas de IBAN que protegen el saldo de las cuentas.
+     */
+    private final BloqueosIban BLOQUEOS = new BloqueosIban();
+
+    /**
+     * Oyentes a los que se notifican las operaciones realizadas.
+     */
+    private final List<OyenteOperaciones> OYENTES = new CopyOnWriteArrayList<>();
+
+    /**
+     * Crea una instancia de Banco sin límite de cuentas.
      */
     public Banco() {
-        this.CUENTA = new CuentaBancaria[this.NUM_MAXIMO_CUENTAS];
+        this(SIN_LIMITE);
+    }
+
+    /**
+     * Crea una instancia de Banco con un número máximo de cuentas,
+     * inicializando el almacén de cuentas bancarias, el índice de IBAN y el
+     * contador de cuentas.
+     *
+     * @param numMaximoCuentas el número máximo de cuentas que admite el banco,
+     *                         o {@link #SIN_LIMITE}
+     *
+     * @throws IllegalArgumentException si el número máximo de cuentas es menor
+     *                                  que 1
+     */
+    public Banco(int numMaximoCuentas) {
+        this(numMaximoCuentas, ModoAlmacenamiento.OBJETOS);
+    }
+
+    /**
+     * Crea una instancia de Banco con un número máximo de cuentas y un modo de
+     * almacenamiento de los datos de las cuentas, inicializando el almacén de
+     * cuentas bancarias, el índice de IBAN, el libro contable (si el modo lo
+     * utiliza) y el contador de cuentas.
+     *
+     * @param numMaximoCuentas el número máximo de cuentas que admite el banco,
+     *                         o {@link #SIN_LIMITE}
+     * @param modo             el modo de almacenamiento de los datos de las
+     *                         cuentas
+     *
+     * @throws IllegalArgumentException si el número máximo de cuentas es menor
+     *                                  que 1
+     */
+    public Banco(int numMaximoCuentas, ModoAlmacenamiento modo) {
+        if (numMaximoCuentas < 1) {
+            throw new IllegalArgumentException("El número máximo de cuentas ha de ser mayor que 0");
+        }
+        this.NUM_MAXIMO_CUENTAS = numMaximoCuentas;
+        this.CUENTA = new AlmacenCuentas();
+        this.INDICE_IBAN = new IndiceIban(Math.min(numMaximoCuentas, AlmacenCuentas.TAMANO_BLOQUE));
+        this.LIBRO = switch (modo) {
+            case COLUMNAR ->
+                new LibroColumnar();
+            case FUERA_HEAP ->
+                new LibroFueraHeap();
+            default ->
+                null;
+        };
         this.contadorCuentas = 0;
     }
 
@@ -48,48 +193,263 @@ public class Banco {
     }
 
     /**
-     * Agrega una cuenta bancaria al array de cuentas del banco.
+     * Devuelve el número máximo de cuentas que admite el banco.
+     *
+     * @return el número máximo de cuentas, o {@link #SIN_LIMITE}
+     */
+    public int getNumMaximoCuentas() {
+        return NUM_MAXIMO_CUENTAS;
+    }
+
+    /**
+     * Devuelve el modo de redondeo con el que se convierten a céntimos las
+     * cantidades y se calculan las comisiones.
+     *
+     * @return el modo de redondeo del banco
+     */
+    public RoundingMode getModoRedondeo() {
+        return modoRedondeo;
+    }
+
+    /**
+     * Establece el modo de redondeo con el que se convierten a céntimos las
+     * cantidades y se calculan las comisiones.
+     *
+     * @param modoRedondeo el nuevo modo de redondeo
+     */
+    public void setModoRedondeo(RoundingMode modoRedondeo) {
+        this.modoRedondeo = modoRedondeo;
+    }
+
+    /**
+     * Comprueba si el banco admite más cuentas.
+     *
+     * @return true si no se ha alcanzado el número máximo de cuentas
+     */
+    public boolean hayEspacioDisponible() {
+        return this.contadorCuentas < this.NUM_MAXIMO_CUENTAS;
+    }
+
+    /**
+     * Agrega una cuenta bancaria al almacén de cuentas del banco. Si ya hay
+     * alguna cuenta de un titular con el mismo DNI, la cuenta pasa a tener
+     * como titular esa misma instancia de {@link Persona} (con sus datos), de
+     * modo que todas las cuentas de un cliente comparten su titular.
      *
      * @param cuenta la cuenta bancaria a agregar
      *
      * @return true si la cuenta fue agregada con éxito, false si el número
-     *         máximo de cuentas ya se alcanzó
+     *         máximo de cuentas ya se alcanzó o ya hay una cuenta con el mismo
+     *         IBAN
+     *
+     * @throws IllegalArgumentException si el banco usa libro contable y la
+     *                                  cuenta no es de ninguno de los tipos
+     *                                  que admite
+     * @throws RuntimeException         la excepción lanzada por un oyente al
+     *                                  notificar el alta; la cuenta queda
+     *                                  abierta igualmente y se notifica a los
+     *                                  demás oyentes
+     *
+     * @see #altaCuenta(CuentaBancaria)
      */
     public boolean abrirCuenta(CuentaBancaria cuenta) {
+        return this.altaCuenta(cuenta) == ResultadoAlta.ABIERTA;
+    }
+
+    /**
+     * Agrega una cuenta bancaria al almacén de cuentas del banco, igual que
+     * {@link #abrirCuenta(CuentaBancaria)}, indicando por qué no se ha abierto
+     * si es el caso. La comprobación de que el IBAN no existe se hace en la
+     * misma alta, por lo que dos altas simultáneas con el mismo IBAN no pueden
+     * abrirse las dos.
+     *
+     * @param cuenta la cuenta bancaria a agregar
+     *
+     * @return el resultado del alta
+     *
+     * @throws IllegalArgumentException si el banco usa libro contable y la
+     *                                  cuenta no es de ahorro, corriente
+     *                                  personal ni corriente de empresa
+     * @throws RuntimeException         la excepción lanzada por un oyente al
+     *                                  notificar el alta; la cuenta queda
+     *                                  abierta igualmente y se notifica a los
+     *                                  demás oyentes
+     */
+    public ResultadoAlta altaCuenta(CuentaBancaria cuenta) {
         /*
-         * Si se ha llegado al máximo de cuentas (100) devuelve false y no se
+         * Si se ha llegado al máximo de cuentas devuelve false y no se
          * ejecutará el resto. Esta comprobación está implementada también en el
          * método main para ahorrar al usuario el trabajo de introducir todos
          * los datos si ya se alcanzó el límite, pero añado esta comprobación
          * aquí por si se añaden nuevas cuentas de manera "manual" llamando a
          * este método, o se cambia el main en el futuro.
          */
-        if (this.contadorCuentas == this.NUM_MAXIMO_CUENTAS) {
-            return false;
+        this.TURNO_ALTAS.lock();
+        try {
+            if (!this.hayEspacioDisponible()) {
+                return ResultadoAlta.SIN_ESPACIO;
+            }
+            // Sólo las altas modifican el índice, así que puede consultarse sin el cerrojo de altas
+            if (this.INDICE_IBAN.buscar(cuenta.getIban()) >= 0) {
+                return ResultadoAlta.IBAN_EXISTENTE;
+            }
+            if (this.LIBRO != null && LibroContable.tipo(cuenta) == LibroContable.TIPO_OTRA) {
+                throw new IllegalArgumentException("El libro contable no admite cuentas de tipo "
+                        + cuenta.getClass().getName());
+            }
+            /*
+             * Las altas se hacen de una en una, así que la cuenta ocupará la
+             * siguiente posición. Primero se guarda la cuenta en el almacén
+             * pasada por parámetros (o, si el banco usa libro contable, se
+             * copian sus datos en el libro y a partir de ahí se trabaja con
+             * su vista), sin contarla todavía
+             */
+            int posicion = this.contadorCuentas;
+            CuentaBancaria guardada;
+            long sello = this.CERROJO_ALTAS.writeLock();
+            try {
+                // Las entidades de las cuentas corrientes pasan al diccionario del banco
+                if (cuenta instanceof CuentaCorriente) {
+                    CuentaCorriente corriente = (CuentaCorriente) cuenta;
+                    corriente.setEntidades(this.DICCIONARIO.conjunto(corriente.getEntidades()));
+                }
+                if (this.LIBRO == null) {
+                    this.CUENTA.anadir(cuenta);
+                    guardada = cuenta;
+                } else {
+                    this.LIBRO.reservar(posicion);
+                    cuenta.volcar(this.LIBRO, posicion);
+                    guardada = this.LIBRO.vista(posicion);
+                }
+            } finally {
+                this.CERROJO_ALTAS.unlockWrite(sello);
+            }
+            /*
+             * Se notifica el alta con la cuenta ya guardada, pero antes de
+             * publicarla: hasta que se registra en los índices y se cuenta
+             * ningún otro hilo puede encontrarla, de modo que el alta se
+             * notifica siempre antes que cualquier operación sobre ella. Lo
+             * que queda por hacer sólo registra la cuenta, así que no puede
+             * fallar después de notificarla. Los oyentes se llaman sin el
+             * cerrojo de altas para no bloquear las búsquedas mientras
+             * esperan
+             */
+            RuntimeException fallo = null;
+            for (OyenteOperaciones oyente : this.OYENTES) {
+                try {
+                    oyente.cuentaAbierta(guardada, posicion);
+                } catch (RuntimeException e) {
+                    fallo = fallo == null ? e : fallo;
+                }
+            }
+            sello = this.CERROJO_ALTAS.writeLock();
+            try {
+                // Se registran su titular, sus entidades y su IBAN con la posición asignada y se incrementa el contador
+                guardada.setTitular(this.REGISTRO_TITULARES.registrar(guardada.getTitular(), posicion));
+                if (guardada instanceof CuentaCorriente) {
+                    this.INDICE_ENTIDADES.registrar(((CuentaCorriente) guardada).getEntidades().ids(), posicion);
+                }
+                this.INDICE_IBAN.insertar(guardada.getIban(), posicion);
+                this.contadorCuentas++;
+            } finally {
+                this.CERROJO_ALTAS.unlockWrite(sello);
+            }
+            // La cuenta queda abierta aunque algún oyente no haya podido apuntar el alta
+            if (fallo != null) {
+                throw fallo;
+            }
+            return ResultadoAlta.ABIERTA;
+        } finally {
+            this.TURNO_ALTAS.unlock();
         }
-        /*
-         * Se añade al array utilizando como posición el contador la cuenta
-         * pasada por parámetros, se incrementa el contador y devuelve true
-         */
-        this.CUENTA[this.contadorCuentas] = cuenta;
-        this.contadorCuentas++;
-        return true;
     }
 
     /**
      * Devuelve un array de Strings con información sobre todas las cuentas
-     * almacenadas en el banco.
+     * almacenadas en el banco. Con muchas cuentas es preferible usar
+     * {@link #paginaCuentas(int, int)}, {@link #flujoCuentas()} o
+     * {@link #escribirListado(Appendable)}, que no crean la información de
+     * todas las cuentas a la vez.
      *
      * @return un array de Strings con información sobre todas las cuentas
      */
     public String[] listadoCuentas() {
-        String[] listado = new String[this.contadorCuentas];
-        for (int i = 0; i < this.contadorCuentas; i++) {
-            listado[i] = this.CUENTA[i].devolverInfoString();
+        int numCuentas = this.contadorCuentas;
+        String[] listado = new String[numCuentas];
+        for (int i = 0; i < numCuentas; i++) {
+            listado[i] = this.cuenta(i).devolverInfoString();
         }
         return listado;
     }
 
+    /**
+     * Devuelve la información de las cuentas de una página del listado. Las
+     * cuentas se listan en el orden en que se abrieron y conservan su
+     * posición, por lo que las páginas no cambian aunque se abran cuentas
+     * nuevas mientras se recorren (las nuevas aparecen al final).
+     *
+     * @param pagina       el número de página, empezando por 0
+     * @param tamanoPagina el número de cuentas de cada página
+     *
+     * @return la información de las cuentas de la página (vacía si la página
+     *         está después de la última cuenta)
+     *
+     * @throws IllegalArgumentException si la página es negativa o el tamaño
+     *                                  de página es menor que 1
+     */
+    public List<String> paginaCuentas(int pagina, int tamanoPagina) {
+        if (pagina < 0 || tamanoPagina < 1) {
+            throw new IllegalArgumentException("La página no puede ser negativa y su tamaño ha de ser mayor que 0");
+        }
+        int numCuentas = this.contadorCuentas;
+        long desde = (long) pagina * tamanoPagina;
+        if (desde >= numCuentas) {
+            return List.of();
+        }
+        int hasta = (int) Math.min(numCuentas, desde + tamanoPagina);
+        List<String> listado = new ArrayList<>(hasta - (int) desde);
+        for (int i = (int) desde; i < hasta; i++) {
+            listado.add(this.cuenta(i).devolverInfoString());
+        }
+        return listado;
+    }
+
+    /**
+     * Devuelve un flujo con la información de las cuentas abiertas hasta el
+     * momento, en el orden en que se abrieron. La información de cada cuenta
+     * se crea a medida que se recorre el flujo, por lo que puede limitarse o
+     * filtrarse sin crear la de todas las cuentas.
+     *
+     * @return un flujo con la información de las cuentas
+     */
+    public Stream<String> flujoCuentas() {
+        return IntStream.range(0, this.contadorCuentas)
+                .mapToObj(i -> this.cuenta(i).devolverInfoString());
+    }
+
+    /**
+     * Escribe la información de todas las cuentas abiertas hasta el momento
+     * directamente en un destino (por ejemplo un {@link java.io.Writer} o
+     * {@code System.out}), una detrás de otra y precedida cada una de una
+     * línea en blanco, sin guardar el listado completo en memoria.
+     *
+     * @param destino el destino del listado
+     *
+     * @throws IOException si no se puede escribir en el destino
+     */
+    public void escribirListado(Appendable destino) throws IOException {
+        int numCuentas = this.contadorCuentas;
+        // Se reutiliza el mismo buffer para la información de todas las cuentas
+        StringBuilder info = new StringBuilder(512);
+        for (int i = 0; i < numCuentas; i++) {
+            info.setLength(0);
+            info.append('\n');
+            this.cuenta(i).escribirInfo(info);
+            info.append('\n');
+            destino.append(info);
+        }
+    }
+
     /**
      * Devuelve información sobre una cuenta bancaria específica a partir de su
      * IBAN.
@@ -100,24 +460,178 @@ public class Banco {
      *         cuenta no existe
      */
     public String informacionCuenta(String iban) {
-        if (this.esCuentaExistente(iban)) {
-            return this.buscadorCuenta(iban).devolverInfoString();
+        CuentaBancaria cuenta = this.buscadorCuenta(iban);
+        if (cuenta != null) {
+            return cuenta.devolverInfoString();
         }
         return null;
     }
 
+    /**
+     * Añade un oyente al que se notificarán las operaciones que se realicen
+     * sobre el saldo de las cuentas. Sólo se notifican las operaciones
+     * realizadas, no las rechazadas.
+     *
+     * @param oyente el oyente a añadir
+     */
+    public void anadirOyente(OyenteOperaciones oyente) {
+        this.OYENTES.add(oyente);
+    }
+
+    /**
+     * Añade un oyente y devuelve el número de cuentas abiertas hasta ese
+     * momento, sin que pueda abrirse ninguna cuenta entre medias: el oyente
+     * recibe el alta de todas las cuentas a partir de esa posición y de
+     * ninguna anterior.
+     *
+     * @param oyente el oyente a añadir
+     *
+     * @return el número de cuentas abiertas antes de añadir el oyente
+     */
+    int anadirOyenteContando(OyenteOperaciones oyente) {
+        this.TURNO_ALTAS.lock();
+        try {
+            this.OYENTES.add(oyente);
+            return this.contadorCuentas;
+        } finally {
+            this.TURNO_ALTAS.unlock();
+        }
+    }
+
+    /**
+     * Quita un oyente de los que reciben las operaciones realizadas.
+     *
+     * @param oyente el oyente a quitar
+     */
+    public void eliminarOyente(OyenteOperaciones oyente) {
+        this.OYENTES.remove(oyente);
+    }
+
+    /**
+     * Notifica a los oyentes una operación realizada. Se llama después de
+     * cambiar el saldo, fuera de los cerrojos de las cuentas. Si un oyente
+     * lanza una excepción se notifica igualmente a los demás y después se
+     * relanza: la operación ya está hecha.
+     *
+     * @param resultado el resultado de la operación
+     *
+     * @return el mismo resultado, para poder devolverlo directamente
+     */
+    private ResultadoOperacion notificar(ResultadoOperacion resultado) {
+        RuntimeException fallo = null;
+        for (OyenteOperaciones oyente : this.OYENTES) {
+            try {
+                oyente.operacionRealizada(resultado);
+            } catch (RuntimeException e) {
+                fallo = fallo == null ? e : fallo;
+            }
+        }
+        if (fallo != null) {
+            throw fallo;
+        }
+        return resultado;
+    }
+
+    /**
+     * Comprueba si el banco tiene algún oyente, para no preparar lotes de
+     * resultados que nadie va a recibir.
+     *
+     * @return true si hay algún oyente
+     */
+    boolean hayOyentes() {
+        return !this.OYENTES.isEmpty();
+    }
+
+    /**
+     * Notifica a los oyentes un lote de operaciones realizadas fuera de los
+     * métodos del banco (por ejemplo el abono de intereses), con una sola
+     * llamada a cada oyente. Igual que con las demás operaciones, si un
+     * oyente lanza una excepción se notifica a los demás y después se
+     * relanza.
+     *
+     * @param lote los resultados de las operaciones
+     */
+    void notificarLote(List<ResultadoOperacion> lote) {
+        if (lote.isEmpty()) {
+            return;
+        }
+        RuntimeException fallo = null;
+        for (OyenteOperaciones oyente : this.OYENTES) {
+            try {
+                oyente.operacionesRealizadas(lote);
+            } catch (RuntimeException e) {
+                fallo = fallo == null ? e : fallo;
+            }
+        }
+        if (fallo != null) {
+            throw fallo;
+        }
+    }
+
     /**
      * Realiza un ingreso en una cuenta bancaria específica a partir de su IBAN.
+     * La cantidad se redondea a céntimos con el modo de redondeo del banco.
      *
      * @param iban     el IBAN de la cuenta en la que se desea realizar el
      *                 ingreso
      * @param cantidad la cantidad que se desea ingresar en la cuenta
      *
-     * @return true si la operación se realiza correctamente, false si no es
-     *         posible realizar la operación
+     * @return el resultado de la operación
      */
-    public boolean ingresoCuenta(String iban, double cantidad) {
-        CuentaBancaria cuenta = this.buscadorCuenta(iban);
+    public ResultadoOperacion ingresoCuenta(String iban, double cantidad) {
+        // Las cantidades no finitas (NaN, infinito) no pueden convertirse a céntimos
+        if (!Double.isFinite(cantidad)) {
+            return ResultadoOperacion.rechazo(ResultadoOperacion.Tipo.INGRESO, ResultadoOperacion.Motivo.CANTIDAD_NO_VALIDA, iban, null, 0);
+        } else if (!Dinero.cabeEnCentimos(cantidad)) {
+            return ResultadoOperacion.rechazo(ResultadoOperacion.Tipo.INGRESO, ResultadoOperacion.Motivo.FUERA_DE_RANGO, iban, null, 0);
+        }
+        return this.ingresoCentimos(iban, Dinero.deEuros(cantidad, this.modoRedondeo));
+    }
+
+    /**
+     * Realiza un ingreso en una cuenta bancaria específica a partir de su IBAN,
+     * con la cantidad expresada en céntimos.
+     *
+     * @param iban     el IBAN de la cuenta en la que se desea realizar el
+     *                 ingreso
+     * @param centimos la cantidad en céntimos que se desea ingresar en la
+     *                 cuenta
+     *
+     * @return el resultado de la operación
+     */
+    public ResultadoOperacion ingresoCentimos(String iban, long centimos) {
+        int posicion = this.posicionCuenta(iban);
+        return this.ingreso(this.cuentaEnPosicion(posicion), posicion, iban, centimos);
+    }
+
+    /**
+     * Realiza un ingreso en la cuenta que ocupa la posición indicada en el
+     * banco, con la cantidad expresada en céntimos. Permite operar sin tener
+     * el IBAN en un String, a partir de la posición obtenida con
+     * {@link #posicionCuenta(CharSequence)}.
+     *
+     * @param posicion la posición de la cuenta
+     * @param centimos la cantidad en céntimos que se desea ingresar en la
+     *                 cuenta
+     *
+     * @return el resultado de la operación
+     */
+    public ResultadoOperacion ingresoPosicion(int posicion, long centimos) {
+        CuentaBancaria cuenta = this.cuentaEnPosicion(posicion);
+        return this.ingreso(cuenta, posicion, cuenta == null ? null : cuenta.getIban(), centimos);
+    }
+
+    /**
+     * Realiza un ingreso en una cuenta, con la cantidad expresada en céntimos.
+     *
+     * @param cuenta   la cuenta, o null si no existe
+     * @param posicion la posición de la cuenta en el banco
+     * @param iban     el IBAN con el que se ha buscado la cuenta
+     * @param centimos la cantidad en céntimos que se desea ingresar
+     *
+     * @return el resultado de la operación
+     */
+    private ResultadoOperacion ingreso(CuentaBancaria cuenta, int posicion, String iban, long centimos) {
         /*
          * Descartamos cantidades negativas. Esto también se comprueba en el
          * main para volver a solicitar una cantidad correcta, por lo que no se
@@ -125,29 +639,36 @@ public class Banco {
          * cambia en el menú, de modo que no se permita ingresar cantidades
          * negativas bajo ningún concepto
          */
-        if (cantidad <= 0) {
-            System.out.println("¡La cantidad a ingresar no puede ser 0 o negativa!");
-            return false;
+        if (centimos <= 0) {
+            return ResultadoOperacion.rechazo(ResultadoOperacion.Tipo.INGRESO, ResultadoOperacion.Motivo.CANTIDAD_NO_VALIDA, iban, null, centimos);
             /*
              * Comprobamos si la cuenta existe. De nuevo esto también se
              * comprueba en el main y en condiciones normales jamás se
              * ejecutará, pero lo pongo por las mismas razones que he explicado
              * más arriba
              */
-        } else if (!esCuentaExistente(iban)) {
-            System.out.println("¡La cuenta ingresada no existe!");
-            return false;
+        } else if (cuenta == null) {
+            return ResultadoOperacion.rechazo(ResultadoOperacion.Tipo.INGRESO, ResultadoOperacion.Motivo.CUENTA_INEXISTENTE, iban, null, centimos);
         } else {
             /*
              * Una vez comprobado que la cuenta existe y que la cantidad es
-             * positiva se llama al método setSaldo y se le suma al saldo actual
-             * (getSaldo) la cantidad introducida. Se muestra un mensaje y
-             * devuelve true
+             * positiva se le suma al saldo actual en céntimos la cantidad
+             * introducida. No se usan cerrojos: el nuevo saldo se establece
+             * con compare-and-set y, si otro hilo ha cambiado el saldo entre
+             * medias, se vuelve a intentar. Si el nuevo saldo no cabe en un
+             * long se rechaza el ingreso sin modificar la cuenta. Se notifica
+             * y devuelve el resultado
              */
-            cuenta.setSaldo(cuenta.getSaldo() + cantidad);
-            System.out.println("Se ha ingresado la cantidad de: " + String.format("%.2f€", cantidad)
-                    + "\nEl nuevo saldo de la cuenta es: " + String.format("%.2f€", cuenta.getSaldo()));
-            return true;
+            long saldo, saldoNuevo;
+            try {
+                do {
+                    saldo = cuenta.getSaldoCentimos();
+                    saldoNuevo = Dinero.sumar(saldo, centimos);
+                } while (!cuenta.compareAndSetSaldoCentimos(saldo, saldoNuevo));
+            } catch (ArithmeticException e) {
+                return ResultadoOperacion.rechazo(ResultadoOperacion.Tipo.INGRESO, ResultadoOperacion.Motivo.FUERA_DE_RANGO, iban, null, centimos);
+            }
+            return this.notificar(ResultadoOperacion.exito(ResultadoOperacion.Tipo.INGRESO, iban, posicion, centimos, saldoNuevo));
         }
     }
 
@@ -155,23 +676,74 @@ public class Banco {
      * Realiza una retirada de una cantidad de dinero en una cuenta bancaria
      * específica a partir de su IBAN. Si la cuenta es de empresa y la retirada
      * de dinero provoca que la cuenta quede al descubierto, se aplicará una
-     * comisión fija por descubierto.
+     * comisión fija por descubierto. La cantidad se redondea a céntimos con el
+     * modo de redondeo del banco.
      *
      * @param iban     el IBAN de la cuenta bancaria
      * @param cantidad la cantidad de dinero a retirar
      *
-     * @return true si la operación se realiza correctamente, false en caso
-     *         contrario
+     * @return el resultado de la operación
      */
-    public boolean retiradaCuenta(String iban, double cantidad) {
-        CuentaBancaria cuenta = this.buscadorCuenta(iban);
-        double comision, deudaValorAbsoluto;
+    public ResultadoOperacion retiradaCuenta(String iban, double cantidad) {
+        if (!Double.isFinite(cantidad)) {
+            return ResultadoOperacion.rechazo(ResultadoOperacion.Tipo.RETIRADA, ResultadoOperacion.Motivo.CANTIDAD_NO_VALIDA, iban, null, 0);
+        } else if (!Dinero.cabeEnCentimos(cantidad)) {
+            return ResultadoOperacion.rechazo(ResultadoOperacion.Tipo.RETIRADA, ResultadoOperacion.Motivo.FUERA_DE_RANGO, iban, null, 0);
+        }
+        return this.retiradaCentimos(iban, Dinero.deEuros(cantidad, this.modoRedondeo));
+    }
+
+    /**
+     * Realiza una retirada de una cantidad de dinero, expresada en céntimos, en
+     * una cuenta bancaria específica a partir de su IBAN. Si la cuenta es de
+     * empresa y la retirada de dinero provoca que la cuenta quede al
+     * descubierto, se aplicará una comisión por descubierto.
+     *
+     * @param iban     el IBAN de la cuenta bancaria
+     * @param centimos la cantidad de dinero a retirar en céntimos
+     *
+     * @return el resultado de la operación
+     */
+    public ResultadoOperacion retiradaCentimos(String iban, long centimos) {
+        int posicion = this.posicionCuenta(iban);
+        return this.retirada(this.cuentaEnPosicion(posicion), posicion, iban, centimos);
+    }
+
+    /**
+     * Realiza una retirada en la cuenta que ocupa la posición indicada en el
+     * banco, con la cantidad expresada en céntimos. Permite operar sin tener
+     * el IBAN en un String, a partir de la posición obtenida con
+     * {@link #posicionCuenta(CharSequence)}.
+     *
+     * @param posicion la posición de la cuenta
+     * @param centimos la cantidad de dinero a retirar en céntimos
+     *
+     * @return el resultado de la operación
+     */
+    public ResultadoOperacion retiradaPosicion(int posicion, long centimos) {
+        CuentaBancaria cuenta = this.cuentaEnPosicion(posicion);
+        return this.retirada(cuenta, posicion, cuenta == null ? null : cuenta.getIban(), centimos);
+    }
+
+    /**
+     * Realiza una retirada en una cuenta, con la cantidad expresada en
+     * céntimos.
+     *
+     * @param cuenta   la cuenta, o null si no existe
+     * @param posicion la posición de la cuenta en el banco
+     * @param iban     el IBAN con el que se ha buscado la cuenta
+     * @param centimos la cantidad de dinero a retirar en céntimos
+     *
+     * @return el resultado de la operación
+     */
+    private ResultadoOperacion retirada(CuentaBancaria cuenta, int posicion, String iban, long centimos) {
+        long saldo, saldoNuevo;
         /*
          * Descartamos cantidades negativas. Esto también se comprueba en el
          * main para volver a solicitar una cantidad correcta.
          */
-        if (cantidad <= 0) {
-            return false;
+        if (centimos <= 0) {
+            return ResultadoOperacion.rechazo(ResultadoOperacion.Tipo.RETIRADA, ResultadoOperacion.Motivo.CANTIDAD_NO_VALIDA, iban, null, centimos);
         }
         /*
          * Comprobamos que la cuenta exista para evitar excepciones por Null
@@ -182,84 +754,306 @@ public class Banco {
          * de hacer una prueba "manual" del método o se utiliza en otro lugar en
          * un futuro sin hacer dicha comprobación
          */
-        if (cuenta != null) {
-            /*
-             * Si la cuenta es de empresa puede haber descubiertos
-             *
-             * ¡No debe usarse instanceof <pattern>! ¡Provoca excepción! Hay que
-             * hacer cast explícito para poder trabajar con cuentaEmpresa a
-             * posteriori
-             */
-            if (cuenta instanceof CuentaCorrienteEmpresa) {
-                CuentaCorrienteEmpresa cuentaEmpresa = (CuentaCorrienteEmpresa) cuenta;
-                // Cálculo del monto máximo disponible (saldo disponible + saldo máximo descubierto)
-                double disponibleMaximo = cuentaEmpresa.getSaldo() + cuentaEmpresa.getMaxDescubierto();
-                // Si la cantidad es superior al máximo disponible no se puede realizar la operación
-                if (cantidad > disponibleMaximo) {
-                    System.out.println("La cantidad introducida es superior al saldo disponible + descubierto máximo");
-                    return false;
-                    /*
-                     * Si la cantidad retirada es mayor que el saldo disponible
-                     * en la cuenta, se calcula la deuda y se aplica la comisión
-                     * correspondiente.
-                     *
-                     * En este caso, se muestra un mensaje que advierte que la
-                     * cuenta ha quedado con un descubierto descubierto y se
-                     * aplica una comisión por descubierto.
-                     *
-                     * La cuantía de la comisión se calcula obteniendo el valor
-                     * absoluto del descubierto y aplicándole el tipo de
-                     * interés. Si el resultado es inferior al mínimo de
-                     * comisión fija se aplica ese mínimo en lugar del valor
-                     * calculado.
-                     *
-                     * Lo he hecho así porque normalmente se da esa situación
-                     * (4-5% de interés con un mínimo de X euros), y no sabía si
-                     * el enunciado se refería al nominal anual o a ese interés.
-                     */
-                } else if (cantidad > cuentaEmpresa.getSaldo()) {
-                    // Cálculo de la deuda
-                    deudaValorAbsoluto = Math.abs(cuentaEmpresa.getSaldo() - cantidad);
-                    // Se le aplica el interés
-                    comision = cuentaEmpresa.getTipoInteresDescubierto() / 100 * deudaValorAbsoluto;
-                    /*
-                     * Si la cantidad de la comisión es inferior a la comisión
-                     * fija se establece la comisión fija por descubierto
-                     */
-                    if (comision < cuentaEmpresa.getComisionFijaDescubierto()) {
-                        comision = cuentaEmpresa.getComisionFijaDescubierto();
-                    }
-                    // Se asigna el nuevo saldo
-                    cuentaEmpresa.setSaldo(cuentaEmpresa.getSaldo() - cantidad - comision);
-                    /*
-                     * Se imprime mensaje informando de la cuantía de la
-                     * comisión aplicada y del nuevo saldo. Dependiendo de si se
-                     * ha aplicado una comisión fija o el porcentaje se muestra
-                     * un mensaje u otro.
-                     */
-                    System.out.println("La cuenta ha quedado al descubierto."
-                            + ((comision < cuentaEmpresa.getComisionFijaDescubierto())
-                            ? "Esta operación tiene una comisión fija por descubierto de " + String.format("%.2f€", comision)
-                            : "Esta operación tiene una comisión del " + String.format("%.2f%%", cuentaEmpresa.getTipoInteresDescubierto())
-                            + String.format("\s(%.2f€)", comision))
-                            + "\nEl saldo de la cuenta es: " + String.format("%.2f€", cuentaEmpresa.getSaldo()));
-                    return true;
-                }
-                // Sólo puede haber descubiertos en una cuenta de empresa 
+        if (cuenta == null) {
+            return ResultadoOperacion.rechazo(ResultadoOperacion.Tipo.RETIRADA, ResultadoOperacion.Motivo.CUENTA_INEXISTENTE, iban, null, centimos);
+        }
+        /*
+         * Si hay saldo suficiente la retirada se hace sin cerrojos: se lee el
+         * saldo y se intenta establecer el nuevo con compare-and-set,
+         * repitiendo si otro hilo lo ha cambiado entre medias
+         */
+        do {
+            saldo = cuenta.getSaldoCentimos();
+            if (saldo < centimos) {
+                break;
             }
-            if ((cuenta.getSaldo() - cantidad) < 0) {
-                System.out.println("No hay saldo suficiente en la cuenta");
-                return false;
-                // Si la cuenta no es de Empresa y hay saldo suficiente se retira esa cantidad
-            } else {
-                cuenta.setSaldo(cuenta.getSaldo() - cantidad);
-                System.out.println("Se ha retirado la cantidad de: " + String.format("%.2f€", cantidad)
-                        + "\nEl nuevo saldo de la cuenta es: " + String.format("%.2f€", cuenta.getSaldo()));
-                return true;
+            saldoNuevo = Dinero.restar(saldo, centimos);
+            if (cuenta.compareAndSetSaldoCentimos(saldo, saldoNuevo)) {
+                return this.notificar(ResultadoOperacion.exito(ResultadoOperacion.Tipo.RETIRADA, iban, posicion, centimos, saldoNuevo));
             }
+        } while (true);
+        /*
+         * Si la cuenta es de empresa puede haber descubiertos
+         *
+         * ¡No debe usarse instanceof <pattern>! ¡Provoca excepción! Hay que
+         * hacer cast explícito para poder trabajar con cuentaEmpresa a
+         * posteriori
+         */
+        if (cuenta instanceof CuentaCorrienteEmpresa) {
+            return this.retiradaConDescubierto((CuentaCorrienteEmpresa) cuenta, posicion, iban, centimos);
+        }
+        // Sólo puede haber descubiertos en una cuenta de empresa
+        return ResultadoOperacion.rechazo(ResultadoOperacion.Tipo.RETIRADA, ResultadoOperacion.Motivo.SALDO_INSUFICIENTE, iban, null, centimos);
+    }
+
+    /**
+     * Realiza una retirada en una cuenta de empresa cuyo saldo puede no ser
+     * suficiente, aplicando las reglas de descubierto: si la cantidad supera el
+     * saldo más el descubierto máximo no se realiza, y si deja la cuenta al
+     * descubierto se cobra la comisión por descubierto.
+     * <p>
+     * Se ejecuta con el cerrojo de la cuenta adquirido, para que los cálculos
+     * de descubierto de una misma cuenta se hagan de uno en uno, y el nuevo
+     * saldo se establece con compare-and-set, de modo que la operación es
+     * atómica también respecto a los ingresos y retiradas sin cerrojo.
+     *
+     * @param cuentaEmpresa la cuenta de empresa
+     * @param posicion      la posición de la cuenta en el banco
+     * @param iban          el IBAN de la cuenta
+     * @param centimos      la cantidad de dinero a retirar en céntimos
+     *
+     * @return el resultado de la operación
+     */
+    private ResultadoOperacion retiradaConDescubierto(CuentaCorrienteEmpresa cuentaEmpresa, int posicion, String iban, long centimos) {
+        long saldo, saldoNuevo;
+        ReentrantLock cerrojo = this.BLOQUEOS.cerrojo(cuentaEmpresa.getIban());
+        cerrojo.lock();
+        try {
+            // Si entre medias ha habido un ingreso puede no haber comisión
+            do {
+                saldo = cuentaEmpresa.getSaldoCentimos();
+                saldoNuevo = this.saldoTrasRetirada(cuentaEmpresa, saldo, centimos);
+                if (saldoNuevo == RETIRADA_RECHAZADA) {
+                    break;
+                }
+            } while (!cuentaEmpresa.compareAndSetSaldoCentimos(saldo, saldoNuevo));
+        } catch (ArithmeticException e) {
+            // El saldo con la comisión no cabe en un long: no se ha modificado la cuenta
+            return ResultadoOperacion.rechazo(ResultadoOperacion.Tipo.RETIRADA, ResultadoOperacion.Motivo.FUERA_DE_RANGO, iban, null, centimos);
+        } finally {
+            cerrojo.unlock();
+        }
+        if (saldoNuevo == RETIRADA_RECHAZADA) {
+            return ResultadoOperacion.rechazo(ResultadoOperacion.Tipo.RETIRADA, ResultadoOperacion.Motivo.SUPERA_DESCUBIERTO_MAXIMO, iban, null, centimos);
+        }
+        return this.notificar(this.resultadoCargo(ResultadoOperacion.Tipo.RETIRADA, cuentaEmpresa, iban, null,
+                posicion, -1, centimos, saldo, saldoNuevo, 0));
+    }
+
+    /**
+     * Calcula el saldo que quedaría en una cuenta tras retirar una cantidad,
+     * aplicando las reglas de descubierto de las cuentas de empresa. No
+     * modifica la cuenta.
+     *
+     * @param cuenta   la cuenta de la que se retira
+     * @param saldo    el saldo actual de la cuenta en céntimos
+     * @param centimos la cantidad a retirar en céntimos
+     *
+     * @return el nuevo saldo en céntimos (ya descontada la comisión por
+     *         descubierto, si la hay), o {@link #RETIRADA_RECHAZADA} si no se
+     *         puede retirar la cantidad
+     *
+     * @throws ArithmeticException si el nuevo saldo, con la comisión, no cabe
+     *                             en un long
+     */
+    private long saldoTrasRetirada(CuentaBancaria cuenta, long saldo, long centimos) {
+        if (centimos <= saldo) {
+            return Dinero.restar(saldo, centimos);
+        }
+        // Sólo puede haber descubiertos en una cuenta de empresa
+        if (!(cuenta instanceof CuentaCorrienteEmpresa)) {
+            return RETIRADA_RECHAZADA;
+        }
+        CuentaCorrienteEmpresa cuentaEmpresa = (CuentaCorrienteEmpresa) cuenta;
+        // Cálculo del monto máximo disponible (saldo disponible + saldo máximo descubierto)
+        long disponibleMaximo = Dinero.sumar(saldo, Dinero.deEuros(cuentaEmpresa.getMaxDescubierto(), this.modoRedondeo));
+        // Si la cantidad es superior al máximo disponible no se puede realizar la operación
+        if (centimos > disponibleMaximo) {
+            return RETIRADA_RECHAZADA;
+        }
+        /*
+         * Si la cantidad retirada es mayor que el saldo disponible en la
+         * cuenta, se calcula la deuda y se aplica la comisión correspondiente.
+         *
+         * La cuantía de la comisión se calcula obteniendo el valor absoluto
+         * del descubierto y aplicándole el tipo de interés. Si el resultado es
+         * inferior al mínimo de comisión fija se aplica ese mínimo en lugar del
+         * valor calculado.
+         *
+         * Lo he hecho así porque normalmente se da esa situación (4-5% de
+         * interés con un mínimo de X euros), y no sabía si el enunciado se
+         * refería al nominal anual o a ese interés.
+         */
+        long deuda = Dinero.restar(centimos, saldo);
+        // Se le aplica el interés, redondeado a céntimos
+        long comision = Dinero.porcentaje(deuda, cuentaEmpresa.getTipoInteresDescubierto(), this.modoRedondeo);
+        comision = Dinero.comisionMinima(comision, Dinero.deEuros(cuentaEmpresa.getComisionFijaDescubierto(), this.modoRedondeo));
+        return Dinero.restar(Dinero.restar(saldo, centimos), comision);
+    }
+
+    /**
+     * Crea el resultado de una operación que ha hecho un cargo en una cuenta
+     * (retirada o transferencia), averiguando si se ha cobrado comisión por
+     * descubierto y de qué tipo.
+     *
+     * @param tipo            el tipo de operación
+     * @param cuenta          la cuenta en la que se ha hecho el cargo
+     * @param iban            el IBAN de la cuenta
+     * @param ibanDestino     el IBAN de la cuenta de destino, o null
+     * @param posicion        la posición de la cuenta en el banco
+     * @param posicionDestino la posición de la cuenta de destino, o -1
+     * @param centimos        la cantidad de la operación en céntimos
+     * @param saldo           el saldo de la cuenta antes del cargo
+     * @param saldoNuevo      el saldo de la cuenta después del cargo
+     * @param saldoDestino    el saldo de la cuenta de destino después del
+     *                        abono
+     *
+     * @return el resultado de la operación
+     */
+    private ResultadoOperacion resultadoCargo(ResultadoOperacion.Tipo tipo, CuentaBancaria cuenta, String iban,
+            String ibanDestino, int posicion, int posicionDestino, long centimos, long saldo, long saldoNuevo, long saldoDestino) {
+        long comision = Dinero.restar(Dinero.restar(saldo, centimos), saldoNuevo);
+        if (comision == 0) {
+            return new ResultadoOperacion(tipo, ResultadoOperacion.Motivo.REALIZADA, iban, ibanDestino,
+                    posicion, posicionDestino, centimos, saldoNuevo, saldoDestino, 0, false, 0);
+        }
+        // Sólo se cobran comisiones por descubierto en las cuentas de empresa
+        double tipoInteres = ((CuentaCorrienteEmpresa) cuenta).getTipoInteresDescubierto();
+        // Si el porcentaje es inferior a la comisión cobrada es que se ha aplicado la comisión fija
+        boolean seAplicaComisionFija = Dinero.porcentaje(Dinero.restar(centimos, saldo), tipoInteres, this.modoRedondeo) < comision;
+        return new ResultadoOperacion(tipo, ResultadoOperacion.Motivo.REALIZADA_CON_DESCUBIERTO, iban, ibanDestino,
+                posicion, posicionDestino, centimos, saldoNuevo, saldoDestino, comision, seAplicaComisionFija, tipoInteres);
+    }
 
+    /**
+     * Realiza una transferencia de dinero entre dos cuentas bancarias a partir
+     * de sus IBAN. La cantidad se redondea a céntimos con el modo de redondeo
+     * del banco.
+     *
+     * @param ibanOrigen  el IBAN de la cuenta de la que sale el dinero
+     * @param ibanDestino el IBAN de la cuenta a la que llega el dinero
+     * @param cantidad    la cantidad de dinero a transferir
+     *
+     * @return el resultado de la operación
+     *
+     * @see #transferenciaCentimos(String, String, long)
+     */
+    public ResultadoOperacion transferencia(String ibanOrigen, String ibanDestino, double cantidad) {
+        if (!Double.isFinite(cantidad)) {
+            return ResultadoOperacion.rechazo(ResultadoOperacion.Tipo.TRANSFERENCIA, ResultadoOperacion.Motivo.CANTIDAD_NO_VALIDA, ibanOrigen, ibanDestino, 0);
+        } else if (!Dinero.cabeEnCentimos(cantidad)) {
+            return ResultadoOperacion.rechazo(ResultadoOperacion.Tipo.TRANSFERENCIA, ResultadoOperacion.Motivo.FUERA_DE_RANGO, ibanOrigen, ibanDestino, 0);
         }
-        return false;
+        return this.transferenciaCentimos(ibanOrigen, ibanDestino, Dinero.deEuros(cantidad, this.modoRedondeo));
+    }
+
+    /**
+     * Realiza una transferencia de dinero, expresada en céntimos, entre dos
+     * cuentas bancarias a partir de sus IBAN. El cargo en la cuenta de origen
+     * sigue las mismas reglas que una retirada: si es de empresa puede quedar
+     * al descubierto, cobrándose la comisión por descubierto.
+     * <p>
+     * La transferencia se hace completa o no se hace: se adquieren los
+     * cerrojos de las dos cuentas siempre en el mismo orden (el de su número
+     * de franja), de modo que dos transferencias simultáneas en sentidos
+     * opuestos no pueden bloquearse mutuamente, y el abono en la cuenta de
+     * destino sólo se hace si el cargo en la de origen se ha realizado. Si el
+     * saldo de alguna de las dos cuentas dejase de caber en un long se
+     * rechaza la transferencia y, si ya se había hecho el cargo, se deshace.
+     * Mientras tanto el cargo es visible para las operaciones que no usan
+     * cerrojos, que pueden ver el saldo de origen rebajado; por eso se
+     * comprueba el saldo de destino antes del cargo, y sólo hay que deshacerlo
+     * si un ingreso simultáneo lo acerca al límite entre medias.
+     *
+     * @param ibanOrigen  el IBAN de la cuenta de la que sale el dinero
+     * @param ibanDestino el IBAN de la cuenta a la que llega el dinero
+     * @param centimos    la cantidad de dinero a transferir en céntimos
+     *
+     * @return el resultado de la operación
+     */
+    public ResultadoOperacion transferenciaCentimos(String ibanOrigen, String ibanDestino, long centimos) {
+        int posicionOrigen = this.posicionCuenta(ibanOrigen);
+        int posicionDestino = this.posicionCuenta(ibanDestino);
+        CuentaBancaria origen = this.cuentaEnPosicion(posicionOrigen);
+        CuentaBancaria destino = this.cuentaEnPosicion(posicionDestino);
+        long saldo, saldoOrigen, saldoDestino;
+        boolean fueraDeRango = false;
+        if (centimos <= 0) {
+            return ResultadoOperacion.rechazo(ResultadoOperacion.Tipo.TRANSFERENCIA, ResultadoOperacion.Motivo.CANTIDAD_NO_VALIDA, ibanOrigen, ibanDestino, centimos);
+        } else if (origen == null || destino == null) {
+            return ResultadoOperacion.rechazo(ResultadoOperacion.Tipo.TRANSFERENCIA, ResultadoOperacion.Motivo.CUENTA_INEXISTENTE, ibanOrigen, ibanDestino, centimos);
+        } else if (posicionOrigen == posicionDestino) {
+            return ResultadoOperacion.rechazo(ResultadoOperacion.Tipo.TRANSFERENCIA, ResultadoOperacion.Motivo.MISMA_CUENTA, ibanOrigen, ibanDestino, centimos);
+        }
+        /*
+         * Se adquiere primero el cerrojo de la franja más baja y después el de
+         * la más alta. Si las dos cuentas caen en la misma franja se adquiere
+         * dos veces el mismo cerrojo, que es reentrante.
+         */
+        int franjaOrigen = this.BLOQUEOS.franja(origen.getIban());
+        int franjaDestino = this.BLOQUEOS.franja(destino.getIban());
+        ReentrantLock primero = this.BLOQUEOS.cerrojo(Math.min(franjaOrigen, franjaDestino));
+        ReentrantLock segundo = this.BLOQUEOS.cerrojo(Math.max(franjaOrigen, franjaDestino));
+        primero.lock();
+        try {
+            segundo.lock();
+            try {
+                // Cargo en la cuenta de origen, si el abono cabe en el saldo de destino
+                saldo = 0;
+                try {
+                    Dinero.sumar(destino.getSaldoCentimos(), centimos);
+                    do {
+                        saldo = origen.getSaldoCentimos();
+                        saldoOrigen = this.saldoTrasRetirada(origen, saldo, centimos);
+                        if (saldoOrigen == RETIRADA_RECHAZADA) {
+                            break;
+                        }
+                    } while (!origen.compareAndSetSaldoCentimos(saldo, saldoOrigen));
+                } catch (ArithmeticException e) {
+                    saldoOrigen = RETIRADA_RECHAZADA;
+                    fueraDeRango = true;
+                }
+                // Abono en la cuenta de destino, sólo si se ha hecho el cargo
+                saldoDestino = 0;
+                if (saldoOrigen != RETIRADA_RECHAZADA) {
+                    long saldoAnterior;
+                    try {
+                        do {
+                            saldoAnterior = destino.getSaldoCentimos();
+                            saldoDestino = Dinero.sumar(saldoAnterior, centimos);
+                        } while (!destino.compareAndSetSaldoCentimos(saldoAnterior, saldoDestino));
+                    } catch (ArithmeticException e) {
+                        /*
+                         * El saldo de destino no cabe en un long: se devuelve
+                         * a la cuenta de origen lo que se le ha cargado, con
+                         * la comisión. Los cerrojos no impiden que entre medias
+                         * otras operaciones sin cerrojo hayan visto el cargo:
+                         * una consulta puede haber leído el saldo rebajado y
+                         * una retirada puede haberse rechazado por saldo
+                         * insuficiente (las que pueden dejar una cuenta de
+                         * empresa al descubierto esperan al cerrojo y ven el
+                         * saldo ya devuelto). Ninguna deja de cuadrar, porque
+                         * el cargo se suma con compare-and-set al saldo que
+                         * tenga la cuenta en ese momento, de modo que no se
+                         * pierden los ingresos y retiradas hechos entre medias
+                         */
+                        long cargo = Dinero.restar(saldo, saldoOrigen);
+                        long actual;
+                        do {
+                            actual = origen.getSaldoCentimos();
+                        } while (!origen.compareAndSetSaldoCentimos(actual, Dinero.sumar(actual, cargo)));
+                        saldoOrigen = RETIRADA_RECHAZADA;
+                        fueraDeRango = true;
+                    }
+                }
+            } finally {
+                segundo.unlock();
+            }
+        } finally {
+            primero.unlock();
+        }
+        if (fueraDeRango) {
+            return ResultadoOperacion.rechazo(ResultadoOperacion.Tipo.TRANSFERENCIA, ResultadoOperacion.Motivo.FUERA_DE_RANGO,
+                    ibanOrigen, ibanDestino, centimos);
+        } else if (saldoOrigen == RETIRADA_RECHAZADA) {
+            return ResultadoOperacion.rechazo(ResultadoOperacion.Tipo.TRANSFERENCIA,
+                    origen instanceof CuentaCorrienteEmpresa
+                            ? ResultadoOperacion.Motivo.SUPERA_DESCUBIERTO_MAXIMO
+                            : ResultadoOperacion.Motivo.SALDO_INSUFICIENTE,
+                    ibanOrigen, ibanDestino, centimos);
+        }
+        return this.notificar(this.resultadoCargo(ResultadoOperacion.Tipo.TRANSFERENCIA, origen, ibanOrigen, ibanDestino,
+                posicionOrigen, posicionDestino, centimos, saldo, saldoOrigen, saldoDestino));
     }
 
     /**
@@ -272,15 +1066,77 @@ public class Banco {
      */
     public double obtenerSaldo(String iban) {
         CuentaBancaria cuenta = this.buscadorCuenta(iban);
-        if (esCuentaExistente(iban)) {
+        if (cuenta != null) {
             return cuenta.getSaldo();
         }
         return -1;
     }
 
     /**
-     * Busca una cuenta bancaria específica en el array de cuentas bancarias del
-     * banco a partir de su IBAN.
+     * Suma directamente una cantidad (positiva o negativa) al saldo de la
+     * cuenta que ocupa la posición indicada, sin aplicar ninguna regla ni
+     * notificarlo a los oyentes. Está pensado para restaurar el estado del
+     * banco a partir de los movimientos guardados, antes de empezar a operar
+     * con él.
+     *
+     * @param posicion   la posición de la cuenta
+     * @param diferencia la cantidad en céntimos a sumar al saldo
+     *
+     * @throws IndexOutOfBoundsException si no hay ninguna cuenta en esa
+     *                                   posición
+     */
+    public void ajustarSaldoCentimos(int posicion, long diferencia) {
+        CuentaBancaria cuenta = this.cuentaEnPosicion(posicion);
+        if (cuenta == null) {
+            throw new IndexOutOfBoundsException(posicion);
+        }
+        long saldo;
+        do {
+            saldo = cuenta.getSaldoCentimos();
+        } while (!cuenta.compareAndSetSaldoCentimos(saldo, Dinero.sumar(saldo, diferencia)));
+    }
+
+    /**
+     * Devuelve la suma de los saldos de todas las cuentas del banco.
+     *
+     * @return la suma de los saldos
+     */
+    public double totalSaldos() {
+        // Con libro contable se recorre de forma secuencial la columna de saldos
+        if (this.LIBRO != null) {
+            return Dinero.aEuros(this.LIBRO.totalSaldos(this.contadorCuentas));
+        }
+        long total = 0;
+        for (int i = 0; i < this.contadorCuentas; i++) {
+            total += this.cuenta(i).getSaldoCentimos();
+        }
+        return Dinero.aEuros(total);
+    }
+
+    /**
+     * Devuelve el descubierto total (saldo negativo en valor absoluto) de las
+     * cuentas corrientes de empresa del banco.
+     *
+     * @return el descubierto total de las cuentas de empresa
+     */
+    public double totalDescubierto() {
+        if (this.LIBRO != null) {
+            return Dinero.aEuros(this.LIBRO.totalDescubierto(this.contadorCuentas));
+        }
+        long total = 0;
+        for (int i = 0; i < this.contadorCuentas; i++) {
+            CuentaBancaria cuenta = this.cuenta(i);
+            if (cuenta instanceof CuentaCorrienteEmpresa && cuenta.getSaldoCentimos() < 0) {
+                total -= cuenta.getSaldoCentimos();
+            }
+        }
+        return Dinero.aEuros(total);
+    }
+
+    /**
+     * Busca una cuenta bancaria específica en el almacén de cuentas bancarias
+     * del banco a partir de su IBAN. La búsqueda se hace en el índice de IBAN, por
+     * lo que su coste no depende del número de cuentas.
      *
      * @param iban el IBAN de la cuenta bancaria a buscar.
      *
@@ -288,12 +1144,201 @@ public class Banco {
      *         cuenta con el IBAN especificado.
      */
     private CuentaBancaria buscadorCuenta(String iban) {
-        for (int i = 0; i < this.contadorCuentas; i++) {
-            if (this.CUENTA[i].getIban().equals(iban)) {
-                return this.CUENTA[i];
+        int posicion = this.posicionCuenta(iban);
+        return posicion < 0 ? null : this.cuenta(posicion);
+    }
+
+    /**
+     * Devuelve la cuenta que ocupa una posición ya abierta: la guardada en el
+     * almacén o, si el banco usa libro contable, una vista de sus datos en el
+     * libro.
+     *
+     * @param posicion la posición de la cuenta
+     *
+     * @return la cuenta
+     */
+    private CuentaBancaria cuenta(int posicion) {
+        return this.LIBRO == null ? this.CUENTA.obtener(posicion) : this.LIBRO.vista(posicion);
+    }
+
+    /**
+     * Devuelve la cuenta que ocupa una posición del almacén. Las cuentas
+     * ocupan las posiciones desde 0 hasta el número de cuentas - 1, en el
+     * orden en que se abrieron.
+     *
+     * @param posicion la posición de la cuenta
+     *
+     * @return la cuenta, o null si no hay ninguna cuenta en esa posición
+     */
+    public CuentaBancaria cuentaEnPosicion(int posicion) {
+        return posicion < 0 || posicion >= this.contadorCuentas ? null : this.cuenta(posicion);
+    }
+
+    /**
+     * Busca la posición de una cuenta en el banco a partir de su IBAN. Las
+     * cuentas conservan su posición mientras existe el banco, por lo que puede
+     * guardarse para operar después con {@link #ingresoPosicion(int, long)} o
+     * {@link #retiradaPosicion(int, long)}.
+     * <p>
+     * Se intenta primero una lectura optimista del índice sin bloquear; si
+     * mientras tanto se ha dado de alta alguna cuenta se repite la búsqueda
+     * con el cerrojo de altas en modo lectura. Si el IBAN tiene el formato
+     * "ES" + 20 dígitos la búsqueda no crea ningún objeto.
+     *
+     * @param iban el IBAN de la cuenta bancaria a buscar
+     *
+     * @return la posición de la cuenta, o -1 si no existe
+     */
+    public int posicionCuenta(CharSequence iban) {
+        long sello = this.CERROJO_ALTAS.tryOptimisticRead();
+        int posicion = this.INDICE_IBAN.buscar(iban);
+        if (!this.CERROJO_ALTAS.validate(sello)) {
+            sello = this.CERROJO_ALTAS.readLock();
+            try {
+                posicion = this.INDICE_IBAN.buscar(iban);
+            } finally {
+                this.CERROJO_ALTAS.unlockRead(sello);
             }
         }
-        return null;
+        return posicion;
+    }
+
+    /**
+     * Busca un titular de las cuentas del banco por su DNI. El DNI se
+     * normaliza antes de buscarlo, por lo que no importa si la letra está en
+     * minúsculas o si un DNI de 7 dígitos lleva o no un 0 delante.
+     *
+     * @param dni el DNI del titular
+     *
+     * @return el titular, o null si no hay ninguna cuenta con ese DNI
+     */
+    public Persona buscarTitular(String dni) {
+        long sello = this.CERROJO_ALTAS.readLock();
+        try {
+            return this.REGISTRO_TITULARES.buscar(dni);
+        } finally {
+            this.CERROJO_ALTAS.unlockRead(sello);
+        }
+    }
+
+    /**
+     * Devuelve las cuentas de un titular, en el orden en que se abrieron. Las
+     * cuentas se obtienen del registro de titulares, sin recorrer todas las
+     * cuentas del banco.
+     *
+     * @param dni el DNI del titular
+     *
+     * @return las cuentas del titular (vacía si no hay ninguna con ese DNI)
+     */
+    public List<CuentaBancaria> cuentasTitular(String dni) {
+        int[] posiciones;
+        long sello = this.CERROJO_ALTAS.readLock();
+        try {
+            posiciones = this.REGISTRO_TITULARES.posiciones(dni);
+        } finally {
+            this.CERROJO_ALTAS.unlockRead(sello);
+        }
+        List<CuentaBancaria> cuentas = new ArrayList<>(posiciones.length);
+        for (int posicion : posiciones) {
+            cuentas.add(this.cuenta(posicion));
+        }
+        return cuentas;
+    }
+
+    /**
+     * Devuelve las cuentas corrientes que autorizan a una entidad a cobrar
+     * recibos, en el orden en que se abrieron. Las cuentas se obtienen del
+     * índice de entidades, sin recorrer todas las cuentas del banco. No
+     * importa si el nombre de la entidad está en mayúsculas o en minúsculas.
+     * <p>
+     * El índice se actualiza al abrir las cuentas y al cambiar sus entidades
+     * con {@link #cambiarEntidades(String, String)}, por lo que también se
+     * devuelven las cuentas que autorizan la entidad desde después de
+     * abrirse. Los cambios hechos con
+     * {@link CuentaCorriente#setListaEntidades(String)} no los detecta: las
+     * cuentas que han dejado de autorizar la entidad no se devuelven, pero
+     * las que han pasado a autorizarla tampoco.
+     *
+     * @param entidad el nombre de la entidad
+     *
+     * @return las cuentas que autorizan la entidad (vacía si no hay ninguna)
+     */
+    public List<CuentaCorriente> cuentasEntidad(String entidad) {
+        int id = this.DICCIONARIO.buscar(entidad);
+        int[] posiciones;
+        long sello = this.CERROJO_ALTAS.readLock();
+        try {
+            posiciones = this.INDICE_ENTIDADES.posiciones(id);
+        } finally {
+            this.CERROJO_ALTAS.unlockRead(sello);
+        }
+        List<CuentaCorriente> cuentas = new ArrayList<>(posiciones.length);
+        for (int posicion : posiciones) {
+            CuentaCorriente cuenta = (CuentaCorriente) this.cuenta(posicion);
+            // Las entidades de la cuenta pueden haber cambiado después de consultar el índice
+            if (cuenta.autorizaEntidad(id)) {
+                cuentas.add(cuenta);
+            }
+        }
+        return cuentas;
+    }
+
+    /**
+     * Cambia las entidades autorizadas de una cuenta corriente del banco a
+     * partir de su IBAN, actualizando también el índice de entidades, de modo
+     * que {@link #cuentasEntidad(String)} tiene en cuenta el cambio. El índice
+     * se actualiza con el cerrojo de altas adquirido, igual que al abrir la
+     * cuenta.
+     *
+     * @param iban  el IBAN de la cuenta corriente
+     * @param lista la nueva lista de entidades, separadas por comas
+     *
+     * @return true si se han cambiado las entidades, false si no hay ninguna
+     *         cuenta corriente con ese IBAN
+     *
+     * @see CuentaCorriente#setListaEntidades(String)
+     */
+    public boolean cambiarEntidades(String iban, String lista) {
+        int posicion = this.posicionCuenta(iban);
+        CuentaBancaria cuenta = this.cuentaEnPosicion(posicion);
+        if (!(cuenta instanceof CuentaCorriente)) {
+            return false;
+        }
+        CuentaCorriente corriente = (CuentaCorriente) cuenta;
+        ConjuntoEntidades nuevas = this.DICCIONARIO.conjunto(lista);
+        long sello = this.CERROJO_ALTAS.writeLock();
+        try {
+            ConjuntoEntidades anteriores = this.DICCIONARIO.conjunto(corriente.getEntidades());
+            this.INDICE_ENTIDADES.cambiar(anteriores.ids(), nuevas.ids(), posicion);
+            corriente.setEntidades(nuevas);
+        } finally {
+            this.CERROJO_ALTAS.unlockWrite(sello);
+        }
+        return true;
+    }
+
+    /**
+     * Devuelve el diccionario de las entidades autorizadas en las cuentas
+     * corrientes del banco.
+     *
+     * @return el diccionario de entidades
+     */
+    public DiccionarioEntidades getDiccionarioEntidades() {
+        return this.DICCIONARIO;
+    }
+
+    /**
+     * Devuelve el número de titulares distintos de las cuentas del banco.
+     *
+     * @return el número de titulares
+     */
+    public int getContadorTitulares() {
+        long sello = this.CERROJO_ALTAS.readLock();
+        try {
+            return this.REGISTRO_TITULARES.tamano();
+        } finally {
+            this.CERROJO_ALTAS.unlockRead(sello);
+        }
     }
 
     /**
@@ -304,7 +1349,6 @@ public class Banco {
      * @return true si la cuenta bancaria existe, false en caso contrario
      */
     public boolean esCuentaExistente(String iban) {
-        CuentaBancaria cuenta = this.buscadorCuenta(iban);
-        return cuenta != null;
+        return this.posicionCuenta(iban) >= 0;
     }
 }
@@ -0,0 +1,80 @@
+package es.iesjuanbosco.logica;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Conjunto de cerrojos repartidos por franjas (lock striping). Cada IBAN se
+ * asigna a una franja según su valor hash, de modo que las operaciones sobre
+ * una misma cuenta se ejecutan de una en una mientras que las operaciones
+ * sobre cuentas de franjas distintas pueden ejecutarse en paralelo.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see Banco
+ */
+final class BloqueosIban {
+
+    /**
+     * Número mínimo de franjas.
+     */
+    private static final int MINIMO_FRANJAS = 64;
+
+    /**
+     * Número de franjas por procesador disponible.
+     */
+    private static final int FRANJAS_POR_PROCESADOR = 16;
+
+    /**
+     * Cerrojo de cada franja.
+     */
+    private final ReentrantLock[] cerrojos;
+
+    /**
+     * Crea un conjunto de cerrojos con un número de franjas proporcional al
+     * número de procesadores.
+     */
+    BloqueosIban() {
+        int franjas = Integer.highestOneBit(Math.max(MINIMO_FRANJAS,
+                Runtime.getRuntime().availableProcessors() * FRANJAS_POR_PROCESADOR) - 1) << 1;
+        cerrojos = new ReentrantLock[franjas];
+        for (int i = 0; i < franjas; i++) {
+            cerrojos[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Devuelve la franja a la que pertenece el IBAN indicado.
+     *
+     * @param iban el IBAN de la cuenta
+     *
+     * @return el número de franja
+     */
+    int franja(String iban) {
+        int h = iban.hashCode();
+        // Se mezclan los bits altos con los bajos antes de aplicar la máscara
+        h ^= (h >>> 16);
+        return h & (cerrojos.length - 1);
+    }
+
+    /**
+     * Devuelve el cerrojo de la franja a la que pertenece el IBAN indicado.
+     *
+     * @param iban el IBAN de la cuenta
+     *
+     * @return el cerrojo de la franja
+     */
+    ReentrantLock cerrojo(String iban) {
+        return cerrojos[franja(iban)];
+    }
+
+    /**
+     * Devuelve el cerrojo de la franja indicada.
+     *
+     * @param franja el número de franja
+     *
+     * @return el cerrojo de la franja
+     */
+    ReentrantLock cerrojo(int franja) {
+        return cerrojos[franja];
+    }
+}
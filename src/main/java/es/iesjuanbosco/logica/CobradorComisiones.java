@@ -0,0 +1,278 @@
+package es.iesjuanbosco.logica;
+
+import es.iesjuanbosco.util.Dinero;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Cobro periódico de la comisión de mantenimiento de las cuentas corrientes
+ * personales de un banco. A cada cuenta se le cobra la parte de su comisión
+ * de mantenimiento anual que corresponde al periodo (por ejemplo 1/12 de la
+ * comisión en un cobro mensual), redondeada a céntimos con el modo de
+ * redondeo del banco.
+ * <p>
+ * El cobro sigue las mismas reglas que una retirada del banco: si la cuenta
+ * no tiene saldo suficiente para pagar la comisión no se cobra nada y se
+ * cuenta como rechazada. Las comisiones se cobran con compare-and-set, sin
+ * cerrojos, así que pueden cobrarse a la vez que se opera con las cuentas.
+ * <p>
+ * Las cuentas se reparten en tramos de posiciones consecutivas que se cobran
+ * en paralelo en un {@link ForkJoinPool}, igual que en el
+ * {@link LiquidadorIntereses}. Los cobros se notifican a los oyentes del
+ * banco como retiradas, un lote por tramo. Las cuentas que se abran durante
+ * el cobro no se cobran.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see CuentaCorrientePersonal#getComisionMantenimientoAnual()
+ */
+public class CobradorComisiones implements AutoCloseable {
+
+    /**
+     * Número máximo de cuentas de un tramo que se cobra sin dividirlo.
+     */
+    static final int UMBRAL = 16_384;
+
+    /**
+     * Banco cuyas cuentas se cobran.
+     */
+    private final Banco BANCO;
+
+    /**
+     * Pool de hilos en el que se cobran los tramos.
+     */
+    private final ForkJoinPool POOL;
+
+    /**
+     * Crea un cobrador que usa tantos hilos como procesadores.
+     *
+     * @param banco el banco cuyas cuentas se cobran
+     */
+    public CobradorComisiones(Banco banco) {
+        this(banco, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Crea un cobrador con un número de hilos determinado.
+     *
+     * @param banco el banco cuyas cuentas se cobran
+     * @param hilos el número de hilos
+     *
+     * @throws IllegalArgumentException si el número de hilos es menor que 1
+     */
+    public CobradorComisiones(Banco banco, int hilos) {
+        if (hilos < 1) {
+            throw new IllegalArgumentException("Número de hilos no válido: " + hilos);
+        }
+        this.BANCO = banco;
+        this.POOL = new ForkJoinPool(hilos);
+    }
+
+    /**
+     * Cobra la comisión de mantenimiento de un periodo a todas las cuentas
+     * corrientes personales del banco.
+     *
+     * @param periodos    la duración del periodo
+     * @param periodosAno el número de periodos como esos que tiene un año
+     *                    (por ejemplo 1 y 12 para un mes, o 30 y 365 para 30
+     *                    días)
+     *
+     * @return el resumen del cobro
+     *
+     * @throws IllegalArgumentException si el número de periodos es negativo o
+     *                                  el de periodos al año no es positivo
+     */
+    public ResumenComisiones cobrar(int periodos, int periodosAno) {
+        if (periodos < 0 || periodosAno < 1) {
+            throw new IllegalArgumentException("Periodo no válido: " + periodos + "/" + periodosAno);
+        }
+        long inicio = System.nanoTime();
+        int numCuentas = BANCO.getContadorCuentas();
+        Parcial total = POOL.invoke(new Tramo(periodos, periodosAno, BANCO.getModoRedondeo(), 0, numCuentas));
+        return new ResumenComisiones(numCuentas, total.cuentasPersonales(), total.cobradas(), total.rechazadas(),
+                total.centimosCobrados(), total.centimosRechazados(), POOL.getParallelism(), System.nanoTime() - inicio);
+    }
+
+    /**
+     * Devuelve el número de hilos del cobrador.
+     *
+     * @return el número de hilos
+     */
+    public int getHilos() {
+        return POOL.getParallelism();
+    }
+
+    /**
+     * Detiene los hilos del cobrador.
+     */
+    @Override
+    public void close() {
+        POOL.shutdown();
+    }
+
+    /**
+     * Totales del cobro de un tramo.
+     *
+     * @param cuentasPersonales  el número de cuentas corrientes personales
+     * @param cobradas           el número de cuentas cobradas
+     * @param rechazadas         el número de cuentas sin saldo suficiente
+     * @param centimosCobrados   la suma de las comisiones cobradas
+     * @param centimosRechazados la suma de las comisiones no cobradas
+     */
+    private record Parcial(long cuentasPersonales, long cobradas, long rechazadas,
+            long centimosCobrados, long centimosRechazados) {
+
+        /**
+         * Suma los totales de dos tramos.
+         *
+         * @param otro los totales del otro tramo
+         *
+         * @return la suma de los totales
+         */
+        Parcial sumar(Parcial otro) {
+            return new Parcial(cuentasPersonales + otro.cuentasPersonales, cobradas + otro.cobradas,
+                    rechazadas + otro.rechazadas, centimosCobrados + otro.centimosCobrados,
+                    centimosRechazados + otro.centimosRechazados);
+        }
+    }
+
+    /**
+     * Tarea que cobra las cuentas de un tramo de posiciones.
+     */
+    private final class Tramo extends RecursiveTask<Parcial> {
+
+        /**
+         * Versión de la clase para la serialización.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Duración del periodo.
+         */
+        private final int PERIODOS;
+
+        /**
+         * Número de periodos que tiene un año.
+         */
+        private final int PERIODOS_ANO;
+
+        /**
+         * Modo de redondeo de las comisiones, el del banco al empezar el
+         * cobro.
+         */
+        private final RoundingMode MODO_REDONDEO;
+
+        /**
+         * Primera posición del tramo.
+         */
+        private final int DESDE;
+
+        /**
+         * Posición siguiente a la última del tramo.
+         */
+        private final int HASTA;
+
+        /**
+         * Crea la tarea de un tramo.
+         *
+         * @param periodos     la duración del periodo
+         * @param periodosAno  el número de periodos que tiene un año
+         * @param modoRedondeo el modo de redondeo de las comisiones
+         * @param desde        la primera posición del tramo
+         * @param hasta        la posición siguiente a la última del tramo
+         */
+        Tramo(int periodos, int periodosAno, RoundingMode modoRedondeo, int desde, int hasta) {
+            this.PERIODOS = periodos;
+            this.PERIODOS_ANO = periodosAno;
+            this.MODO_REDONDEO = modoRedondeo;
+            this.DESDE = desde;
+            this.HASTA = hasta;
+        }
+
+        /**
+         * Cobra el tramo, dividiéndolo en dos si es mayor que el umbral: una
+         * mitad queda disponible para otro hilo y la otra se cobra en este.
+         *
+         * @return los totales del tramo
+         */
+        @Override
+        protected Parcial compute() {
+            if (HASTA - DESDE <= UMBRAL) {
+                return cobrarTramo();
+            }
+            int mitad = (DESDE + HASTA) >>> 1;
+            Tramo primera = new Tramo(PERIODOS, PERIODOS_ANO, MODO_REDONDEO, DESDE, mitad);
+            primera.fork();
+            Parcial segunda = new Tramo(PERIODOS, PERIODOS_ANO, MODO_REDONDEO, mitad, HASTA).compute();
+            return segunda.sumar(primera.join());
+        }
+
+        /**
+         * Cobra las cuentas del tramo y notifica los cobros en un lote.
+         *
+         * @return los totales del tramo
+         */
+        private Parcial cobrarTramo() {
+            List<ResultadoOperacion> lote = BANCO.hayOyentes() ? new ArrayList<>() : null;
+            long cuentasPersonales = 0, cobradas = 0, rechazadas = 0, centimosCobrados = 0, centimosRechazados = 0;
+            // Casi todas las cuentas tienen una de unas pocas comisiones, así que se reutiliza el cálculo
+            double anualAnterior = Double.NaN;
+            long comision = 0;
+            for (int i = DESDE; i < HASTA; i++) {
+                CuentaBancaria cuentaBancaria = BANCO.cuentaEnPosicion(i);
+                if (!(cuentaBancaria instanceof CuentaCorrientePersonal)) {
+                    continue;
+                }
+                CuentaCorrientePersonal cuenta = (CuentaCorrientePersonal) cuentaBancaria;
+                cuentasPersonales++;
+                double anual = cuenta.getComisionMantenimientoAnual();
+                if (anual != anualAnterior) {
+                    anualAnterior = anual;
+                    comision = comisionPeriodo(anual);
+                }
+                // Igual que en las retiradas, las cantidades no positivas no se cobran
+                if (comision <= 0) {
+                    continue;
+                }
+                long saldo;
+                do {
+                    saldo = cuenta.getSaldoCentimos();
+                } while (saldo >= comision && !cuenta.compareAndSetSaldoCentimos(saldo, saldo - comision));
+                if (saldo < comision) {
+                    rechazadas++;
+                    centimosRechazados += comision;
+                    continue;
+                }
+                cobradas++;
+                centimosCobrados += comision;
+                if (lote != null) {
+                    lote.add(ResultadoOperacion.exito(ResultadoOperacion.Tipo.RETIRADA, cuenta.getIban(), i, comision, saldo - comision));
+                }
+            }
+            if (lote != null) {
+                BANCO.notificarLote(lote);
+            }
+            return new Parcial(cuentasPersonales, cobradas, rechazadas, centimosCobrados, centimosRechazados);
+        }
+
+        /**
+         * Calcula la comisión del periodo a partir de la comisión anual: la
+         * comisión anual en céntimos por los periodos y dividida entre los
+         * periodos al año, redondeando sólo al final.
+         *
+         * @param anual la comisión de mantenimiento anual en euros
+         *
+         * @return la comisión del periodo en céntimos
+         */
+        private long comisionPeriodo(double anual) {
+            if (!Double.isFinite(anual)) {
+                return 0;
+            }
+            return Dinero.dividir(Math.multiplyExact(Dinero.deEuros(anual, MODO_REDONDEO), PERIODOS),
+                    PERIODOS_ANO, MODO_REDONDEO);
+        }
+    }
+}
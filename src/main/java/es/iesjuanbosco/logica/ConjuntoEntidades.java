@@ -0,0 +1,240 @@
+package es.iesjuanbosco.logica;
+
+import java.util.Arrays;
+
+/**
+ * Conjunto de entidades autorizadas a cobrar recibos en una cuenta corriente.
+ * Es inmutable: cambiar las entidades de una cuenta es sustituir su conjunto.
+ * <p>
+ * Los conjuntos de las cuentas abiertas en un banco los crea el
+ * {@link DiccionarioEntidades} del banco y sólo guardan los identificadores
+ * de sus entidades, ordenados. Se comparten entre todas las cuentas que
+ * autorizan las mismas entidades, y los nombres se obtienen del diccionario
+ * cada vez que se muestran.
+ * <p>
+ * Las cuentas que todavía no se han abierto en ningún banco no tienen
+ * diccionario, así que su conjunto guarda los nombres normalizados de las
+ * entidades. Al abrir la cuenta el banco lo sustituye por el conjunto
+ * equivalente de su diccionario.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see CuentaCorriente
+ */
+final class ConjuntoEntidades {
+
+    /**
+     * Separador con el que se muestran las entidades.
+     */
+    private static final String SEPARADOR = ", ";
+
+    /**
+     * Diccionario al que pertenecen los identificadores, o null si el
+     * conjunto guarda los nombres.
+     */
+    private final DiccionarioEntidades DICCIONARIO;
+
+    /**
+     * Identificadores de las entidades en el diccionario, ordenados y sin
+     * repetir, o null si el conjunto guarda los nombres.
+     */
+    private final int[] IDS;
+
+    /**
+     * Nombres normalizados de las entidades, sin repetir y en el orden en que
+     * se escribieron, o null si el conjunto pertenece a un diccionario.
+     */
+    private final String[] NOMBRES;
+
+    /**
+     * Crea un conjunto de un diccionario. Sólo lo crea el diccionario, que
+     * comparte un único conjunto por cada combinación de entidades.
+     *
+     * @param diccionario el diccionario de las entidades
+     * @param ids         los identificadores de las entidades, ordenados y sin
+     *                    repetir
+     */
+    ConjuntoEntidades(DiccionarioEntidades diccionario, int[] ids) {
+        this.DICCIONARIO = diccionario;
+        this.IDS = ids;
+        this.NOMBRES = null;
+    }
+
+    /**
+     * Crea un conjunto sin diccionario con los nombres indicados.
+     *
+     * @param nombres los nombres normalizados de las entidades, sin repetir
+     */
+    private ConjuntoEntidades(String[] nombres) {
+        this.DICCIONARIO = null;
+        this.IDS = null;
+        this.NOMBRES = nombres;
+    }
+
+    /**
+     * Crea un conjunto sin diccionario a partir de una lista de entidades, para
+     * una cuenta que no está abierta en ningún banco.
+     *
+     * @param lista las entidades separadas por comas (o puntos y comas), o
+     *              null
+     *
+     * @return el conjunto de entidades
+     */
+    static ConjuntoEntidades deLista(String lista) {
+        String[] nombres = separar(lista);
+        int distintos = 0;
+        for (String nombre : nombres) {
+            if (!contiene(nombres, distintos, nombre)) {
+                nombres[distintos++] = nombre;
+            }
+        }
+        return new ConjuntoEntidades(Arrays.copyOf(nombres, distintos));
+    }
+
+    /**
+     * Comprueba si un nombre está entre los primeros de un array de nombres.
+     *
+     * @param nombres los nombres
+     * @param hasta   el número de nombres que se miran
+     * @param nombre  el nombre a buscar
+     *
+     * @return true si el nombre está entre los primeros hasta nombres
+     */
+    private static boolean contiene(String[] nombres, int hasta, String nombre) {
+        for (int i = 0; i < hasta; i++) {
+            if (nombres[i].equals(nombre)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Separa una lista de entidades en los nombres normalizados de cada una,
+     * sin los elementos vacíos.
+     *
+     * @param lista las entidades separadas por comas (o puntos y comas), o
+     *              null
+     *
+     * @return los nombres normalizados, que pueden estar repetidos
+     */
+    static String[] separar(String lista) {
+        if (lista == null || lista.isBlank()) {
+            return new String[0];
+        }
+        String[] elementos = lista.split("[,;]");
+        int numNombres = 0;
+        for (String elemento : elementos) {
+            if (!elemento.isBlank()) {
+                elementos[numNombres++] = DiccionarioEntidades.normalizar(elemento);
+            }
+        }
+        return Arrays.copyOf(elementos, numNombres);
+    }
+
+    /**
+     * Devuelve el diccionario al que pertenece el conjunto.
+     *
+     * @return el diccionario, o null si el conjunto no pertenece a ninguno
+     */
+    DiccionarioEntidades diccionario() {
+        return DICCIONARIO;
+    }
+
+    /**
+     * Devuelve los identificadores de las entidades en el diccionario.
+     *
+     * @return los identificadores ordenados; vacío si el conjunto no pertenece
+     *         a ningún diccionario. No debe modificarse
+     */
+    int[] ids() {
+        return IDS == null ? new int[0] : IDS;
+    }
+
+    /**
+     * Devuelve el número de entidades del conjunto.
+     *
+     * @return el número de entidades
+     */
+    int tamano() {
+        return IDS == null ? NOMBRES.length : IDS.length;
+    }
+
+    /**
+     * Devuelve el nombre normalizado de una de las entidades del conjunto.
+     *
+     * @param indice el índice de la entidad, entre 0 y tamano() - 1
+     *
+     * @return el nombre de la entidad
+     */
+    String nombre(int indice) {
+        return IDS == null ? NOMBRES[indice] : DICCIONARIO.nombre(IDS[indice]);
+    }
+
+    /**
+     * Comprueba si el conjunto contiene una entidad. No importa si el nombre
+     * está en mayúsculas o en minúsculas ni los espacios de alrededor.
+     *
+     * @param entidad el nombre de la entidad, o null
+     *
+     * @return true si el conjunto contiene la entidad
+     */
+    boolean contiene(String entidad) {
+        if (entidad == null) {
+            return false;
+        }
+        if (IDS != null) {
+            return contiene(DICCIONARIO.buscar(entidad));
+        }
+        return contiene(NOMBRES, NOMBRES.length, DiccionarioEntidades.normalizar(entidad));
+    }
+
+    /**
+     * Comprueba si el conjunto contiene una entidad a partir de su
+     * identificador en el diccionario.
+     *
+     * @param id el identificador de la entidad
+     *
+     * @return true si el conjunto contiene la entidad, o false si el conjunto
+     *         no pertenece a ningún diccionario
+     */
+    boolean contiene(int id) {
+        if (IDS == null) {
+            return false;
+        }
+        // Las cuentas autorizan pocas entidades, así que se busca recorriéndolas
+        for (int entidad : IDS) {
+            if (entidad >= id) {
+                return entidad == id;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Escribe los nombres de las entidades separados por comas al final de un
+     * buffer.
+     *
+     * @param destino el buffer en el que se escriben
+     *
+     * @return el mismo buffer
+     */
+    StringBuilder escribir(StringBuilder destino) {
+        for (int i = 0; i < tamano(); i++) {
+            if (i > 0) {
+                destino.append(SEPARADOR);
+            }
+            destino.append(nombre(i));
+        }
+        return destino;
+    }
+
+    /**
+     * Devuelve los nombres de las entidades separados por comas.
+     *
+     * @return la lista de entidades (vacía si no hay ninguna)
+     */
+    String lista() {
+        return escribir(new StringBuilder()).toString();
+    }
+}
@@ -1,5 +1,7 @@
 package es.iesjuanbosco.logica;
 
+import es.iesjuanbosco.util.FormatoMoneda;
+
 /**
  * La clase CuentaAhorro es una subclase de CuentaBancaria y representa una
  * cuenta bancaria de ahorro remunerada. Además de la información sobre el
@@ -35,6 +37,12 @@ public class CuentaAhorro extends CuentaBancaria {
         this.tipoInteresAnual = tipoInteresAnual;
     }
 
+    /**
+     * Constructor de las vistas de un libro contable.
+     */
+    CuentaAhorro() {
+    }
+
     /**
      * Devuelve el tipo de interés anual de la cuenta.
      *
@@ -54,19 +62,129 @@ public class CuentaAhorro extends CuentaBancaria {
     }
 
     /**
-     * Contiene información completa sobre la Cuenta Corriente Personal,
-     * incluyendo la información del titular de la cuenta, el saldo actual, el
-     * IBAN de la cuenta, el tipo de cuenta (Ahorro) y el tipo de interés anual.
+     * Copia los datos de la cuenta de ahorro en el libro contable.
      *
-     * @return String que contiene la información completa sobre la cuenta de
-     *         ahorro
+     * @param libro    el libro contable
+     * @param posicion la posición de la cuenta en el libro
      */
     @Override
-    public String devolverInfoString() {
-        return super.devolverInfoString()
-                + "\nTipo de cuenta: AHORRO"
-                + "\nTipo de Interés anual: "
-                + String.format("%.2f%%", tipoInteresAnual);
+    void volcar(LibroContable libro, int posicion) {
+        super.volcar(libro, posicion);
+        libro.setTipoInteres(posicion, getTipoInteresAnual());
     }
 
+    /**
+     * Escribe información completa sobre la Cuenta de Ahorro al final de un
+     * buffer, incluyendo la información del titular de la cuenta, el saldo
+     * actual, el IBAN de la cuenta, el tipo de cuenta (Ahorro) y el tipo de
+     * interés anual.
+     *
+     * @param destino el buffer en el que se escribe la información completa
+     *                sobre la cuenta de ahorro
+     */
+    @Override
+    public void escribirInfo(StringBuilder destino) {
+        super.escribirInfo(destino);
+        destino.append("\nTipo de cuenta: AHORRO")
+                .append("\nTipo de Interés anual: ");
+        FormatoMoneda.escribirPorcentaje(destino, getTipoInteresAnual());
+    }
+
+    /**
+     * Vista de una cuenta de ahorro guardada en un libro contable: no tiene
+     * datos propios, sino que lee y escribe los de la cuenta en el libro.
+     *
+     * @see LibroContable#vista(int)
+     */
+    static final class Vista extends CuentaAhorro {
+
+        /**
+         * Libro contable en el que están los datos de la cuenta.
+         */
+        private final LibroContable LIBRO;
+
+        /**
+         * Posición de la cuenta en el libro contable.
+         */
+        private final int POSICION;
+
+        /**
+         * Crea la vista de la cuenta guardada en una posición de un libro.
+         *
+         * @param libro    el libro contable
+         * @param posicion la posición de la cuenta en el libro
+         */
+        Vista(LibroContable libro, int posicion) {
+            this.LIBRO = libro;
+            this.POSICION = posicion;
+        }
+
+        @Override
+        public Persona getTitular() {
+            return LIBRO.getTitular(POSICION);
+        }
+
+        @Override
+        public void setTitular(Persona titular) {
+            LIBRO.setTitular(POSICION, titular);
+        }
+
+        @Override
+        public long getSaldoCentimos() {
+            return LIBRO.getSaldoCentimos(POSICION);
+        }
+
+        @Override
+        public void setSaldoCentimos(long saldoCentimos) {
+            LIBRO.setSaldoCentimos(POSICION, saldoCentimos);
+        }
+
+        @Override
+        boolean compareAndSetSaldoCentimos(long esperado, long nuevo) {
+            return LIBRO.compareAndSetSaldoCentimos(POSICION, esperado, nuevo);
+        }
+
+        @Override
+        public String getIban() {
+            return LIBRO.getIban(POSICION);
+        }
+
+        @Override
+        public void setIban(String iban) {
+            LIBRO.setIban(POSICION, iban);
+        }
+
+        @Override
+        public double getTipoInteresAnual() {
+            return LIBRO.getTipoInteres(POSICION);
+        }
+
+        @Override
+        public void setTipoInteresAnual(double tipoInteresAnual) {
+            LIBRO.setTipoInteres(POSICION, tipoInteresAnual);
+        }
+
+        @Override
+        Class<? extends CuentaBancaria> getClaseCuenta() {
+            return CuentaAhorro.class;
+        }
+
+        /**
+         * Dos vistas son iguales si representan la misma cuenta: la misma
+         * posición del mismo libro.
+         *
+         * @param otro el objeto con el que se compara
+         *
+         * @return true si el otro objeto es una vista de la misma cuenta
+         */
+        @Override
+        public boolean equals(Object otro) {
+            return otro instanceof Vista && ((Vista) otro).LIBRO == LIBRO && ((Vista) otro).POSICION == POSICION;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(LIBRO) * 31 + POSICION;
+        }
+    }
 }
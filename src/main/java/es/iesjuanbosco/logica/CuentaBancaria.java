@@ -1,13 +1,23 @@
 package es.iesjuanbosco.logica;
 
+import es.iesjuanbosco.util.Dinero;
+import es.iesjuanbosco.util.FormatoMoneda;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 /**
  * La clase CuentaBancaria es una clase abstracta que representa una cuenta
  * bancaria. Contiene información sobre el titular de la cuenta, el saldo actual
- * y el IBAN de la cuenta.
+ * y el IBAN de la cuenta. El saldo se guarda como un número entero de céntimos
+ * para que las operaciones con él sean exactas.
  * <p>
  * Proporciona métodos para obtener y establecer la información de la cuenta, y
  * devolver la información completa de la cuenta como una cadena.
  * <p>
+ * Los bancos con {@link LibroContable} no guardan las cuentas que se abren,
+ * sino sus datos, y devuelven vistas: objetos de las subclases sin datos
+ * propios que leen y escriben los datos de la cuenta en el libro.
+ * <p>
  * Implementa la interfaz Imprimible
  *
  * @author Cristian Palomo Prieto
@@ -21,28 +31,49 @@ public abstract class CuentaBancaria implements Imprimible {
      */
     private Persona titular;
     /**
-     * El saldo actual de la cuenta bancaria.
+     * El saldo actual de la cuenta bancaria en céntimos.
      */
-    private double saldo;
+    private volatile long saldoCentimos;
     /**
      * El IBAN de la cuenta bancaria.
      */
     private String iban;
 
+    /**
+     * Acceso atómico al atributo saldoCentimos, para actualizar el saldo con
+     * compare-and-set sin necesidad de cerrojos.
+     */
+    private static final VarHandle SALDO_CENTIMOS;
+
+    static {
+        try {
+            SALDO_CENTIMOS = MethodHandles.lookup().findVarHandle(CuentaBancaria.class, "saldoCentimos", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     /**
      * Constructor con el titular de la cuenta, el saldo actual y el IBAN de la
      * cuenta.
      *
      * @param titular el titular de la cuenta
-     * @param saldo   el saldo actual de la cuenta
+     * @param saldo   el saldo actual de la cuenta (se redondea a céntimos)
      * @param iban    el IBAN de la cuenta
      */
     public CuentaBancaria(Persona titular, double saldo, String iban) {
         this.titular = titular;
-        this.saldo = saldo;
+        this.saldoCentimos = Dinero.deEuros(saldo);
         this.iban = iban;
     }
 
+    /**
+     * Constructor de las vistas de un libro contable, que no usan los
+     * atributos de la cuenta.
+     */
+    CuentaBancaria() {
+    }
+
     /**
      * Devuelve el titular de la cuenta.
      *
@@ -67,16 +98,51 @@ public abstract class CuentaBancaria implements Imprimible {
      * @return el saldo actual de la cuenta
      */
     public double getSaldo() {
-        return saldo;
+        return Dinero.aEuros(getSaldoCentimos());
     }
 
     /**
-     * Establece el saldo actual de la cuenta.
+     * Establece el saldo actual de la cuenta. El saldo se redondea a céntimos.
      *
      * @param saldo el saldo actual de la cuenta
      */
     public void setSaldo(double saldo) {
-        this.saldo = saldo;
+        setSaldoCentimos(Dinero.deEuros(saldo));
+    }
+
+    /**
+     * Devuelve el saldo actual de la cuenta en céntimos.
+     *
+     * @return el saldo actual de la cuenta en céntimos
+     */
+    public long getSaldoCentimos() {
+        return saldoCentimos;
+    }
+
+    /**
+     * Establece el saldo actual de la cuenta en céntimos.
+     *
+     * @param saldoCentimos el saldo actual de la cuenta en céntimos
+     */
+    public void setSaldoCentimos(long saldoCentimos) {
+        this.saldoCentimos = saldoCentimos;
+    }
+
+    /**
+     * Establece de forma atómica el saldo de la cuenta en céntimos, sólo si su
+     * valor actual es el esperado. Es la base de las operaciones sin cerrojos
+     * del banco: se lee el saldo, se calcula el nuevo y se intenta
+     * establecer; si otro hilo lo ha cambiado entre medias se vuelve a
+     * intentar.
+     *
+     * @param esperado el saldo que se espera que tenga la cuenta
+     * @param nuevo    el nuevo saldo
+     *
+     * @return true si se ha cambiado el saldo, false si el saldo actual no era
+     *         el esperado
+     */
+    boolean compareAndSetSaldoCentimos(long esperado, long nuevo) {
+        return SALDO_CENTIMOS.compareAndSet(this, esperado, nuevo);
     }
 
     /**
@@ -97,6 +163,31 @@ public abstract class CuentaBancaria implements Imprimible {
         this.iban = iban;
     }
 
+    /**
+     * Devuelve la clase de la cuenta: la de la propia cuenta o, si es una
+     * vista de un libro contable, la de la cuenta que representa.
+     *
+     * @return la clase de la cuenta
+     */
+    Class<? extends CuentaBancaria> getClaseCuenta() {
+        return getClass();
+    }
+
+    /**
+     * Copia los datos de la cuenta en la posición indicada del libro contable,
+     * que ya debe estar reservada. Las subclases lo sobrescriben para copiar
+     * también sus propios datos.
+     *
+     * @param libro    el libro contable
+     * @param posicion la posición de la cuenta en el libro
+     */
+    void volcar(LibroContable libro, int posicion) {
+        libro.setTipo(posicion, LibroContable.tipo(this));
+        libro.setTitular(posicion, getTitular());
+        libro.setSaldoCentimos(posicion, getSaldoCentimos());
+        libro.setIban(posicion, getIban());
+    }
+
     /**
      * Contiene información sobre la cuenta, incluyendo la información del
      * titular de la cuenta, el saldo actual y el IBAN de la cuenta.
@@ -107,10 +198,29 @@ public abstract class CuentaBancaria implements Imprimible {
      */
     @Override
     public String devolverInfoString() {
-        return "--- Titular de la cuenta ---\n" + titular.devolverInfoString()
-                + "\n--- Detalle de la cuenta ---"
-                + "\nSaldo: " + String.format("%.2f€", saldo)
-                + "\nIBAN: " + iban;
+        StringBuilder info = new StringBuilder(384);
+        escribirInfo(info);
+        return info.toString();
+    }
+
+    /**
+     * Escribe la información de la cuenta al final de un buffer. Las
+     * subclases la completan con sus datos propios, escribiendo primero la de
+     * su clase padre.
+     *
+     * @param destino el buffer en el que se escribe la información
+     *
+     * @see Imprimible#escribirInfo(StringBuilder)
+     *      Imprimible.escribirInfo(StringBuilder)
+     */
+    @Override
+    public void escribirInfo(StringBuilder destino) {
+        destino.append("--- Titular de la cuenta ---\n");
+        getTitular().escribirInfo(destino);
+        destino.append("\n--- Detalle de la cuenta ---")
+                .append("\nSaldo: ");
+        FormatoMoneda.escribirEuros(destino, getSaldoCentimos())
+                .append("\nIBAN: ").append(getIban());
     }
 
 }
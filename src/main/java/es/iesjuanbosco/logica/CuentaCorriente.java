@@ -23,11 +23,17 @@ public abstract class CuentaCorriente extends CuentaBancaria {
      * enunciado dice expresamente "Para guardar las entidades autorizadas en
      * las cuentas corrientes utiliza una cadena de caracteres". Por lo que
      * entiendo que se quiere un String.
+     *
+     * La lista se recibe y se devuelve como un String, pero la cuenta sólo
+     * guarda el conjunto de sus entidades: al abrirla en un banco, el de los
+     * identificadores de sus entidades en el diccionario del banco, que
+     * comparten todas las cuentas con las mismas entidades. El String se
+     * vuelve a formar a partir del diccionario cuando se muestra.
      */
     /**
-     * Lista de entidades autorizadas para cobrar recibos en la cuenta
+     * Entidades autorizadas para cobrar recibos en la cuenta.
      */
-    private String listaEntidades;
+    private volatile ConjuntoEntidades entidades;
 
     /**
      * Crea una nueva instancia de la clase CuentaCorriente con la lista de
@@ -35,14 +41,20 @@ public abstract class CuentaCorriente extends CuentaBancaria {
      * especificados.
      *
      * @param listaEntidades la lista de entidades autorizadas para cobrar
-     *                       recibos en la cuenta
+     *                       recibos en la cuenta, separadas por comas
      * @param titular        el titular de la cuenta
      * @param saldo          el saldo actual de la cuenta
      * @param iban           el IBAN de la cuenta
      */
     public CuentaCorriente(String listaEntidades, Persona titular, double saldo, String iban) {
         super(titular, saldo, iban);
-        this.listaEntidades = listaEntidades;
+        this.entidades = ConjuntoEntidades.deLista(listaEntidades);
+    }
+
+    /**
+     * Constructor de las vistas de un libro contable.
+     */
+    CuentaCorriente() {
     }
 
     /**
@@ -50,33 +62,100 @@ public abstract class CuentaCorriente extends CuentaBancaria {
      * cuenta.
      *
      * @return String Lista de entidades autorizadas para cobrar recibos en la
-     *         cuenta
+     *         cuenta, con sus nombres en mayúsculas y separados por comas
      */
     public String getListaEntidades() {
-        return listaEntidades;
+        return getEntidades().lista();
     }
 
     /**
      * Establece la lista de entidades autorizadas para cobrar recibos en la
-     * cuenta
+     * cuenta. Si la cuenta está abierta en un banco, las entidades nuevas se
+     * añaden a su diccionario de entidades.
+     * <p>
+     * El índice de entidades del banco no detecta los cambios hechos con este
+     * método; para que los tenga en cuenta hay que cambiar las entidades con
+     * {@link Banco#cambiarEntidades(String, String)}.
      *
      * @param listaEntidades la nueva lista de entidades autorizadas para cobrar
-     *                       recibos en la cuenta
+     *                       recibos en la cuenta, separadas por comas
      */
     public void setListaEntidades(String listaEntidades) {
-        this.listaEntidades = listaEntidades;
+        DiccionarioEntidades diccionario = getEntidades().diccionario();
+        setEntidades(diccionario == null
+                ? ConjuntoEntidades.deLista(listaEntidades)
+                : diccionario.conjunto(listaEntidades));
+    }
+
+    /**
+     * Comprueba si una entidad está autorizada para cobrar recibos en la
+     * cuenta. No importa si el nombre está en mayúsculas o en minúsculas ni
+     * los espacios de alrededor.
+     *
+     * @param entidad el nombre de la entidad
+     *
+     * @return true si la entidad está autorizada
+     */
+    public boolean autorizaEntidad(String entidad) {
+        return getEntidades().contiene(entidad);
+    }
+
+    /**
+     * Comprueba si una entidad está autorizada para cobrar recibos en la
+     * cuenta, a partir de su identificador en el diccionario de entidades del
+     * banco en el que está abierta.
+     *
+     * @param id el identificador de la entidad
+     *
+     * @return true si la entidad está autorizada, o false si la cuenta no está
+     *         abierta en ningún banco
+     */
+    public boolean autorizaEntidad(int id) {
+        return getEntidades().contiene(id);
+    }
+
+    /**
+     * Devuelve el conjunto de entidades autorizadas.
+     *
+     * @return el conjunto de entidades
+     */
+    ConjuntoEntidades getEntidades() {
+        return entidades;
+    }
+
+    /**
+     * Establece el conjunto de entidades autorizadas.
+     *
+     * @param entidades el nuevo conjunto de entidades
+     */
+    void setEntidades(ConjuntoEntidades entidades) {
+        this.entidades = entidades;
+    }
+
+    /**
+     * Copia los datos de la cuenta corriente, incluidas sus entidades, en el
+     * libro contable.
+     *
+     * @param libro    el libro contable
+     * @param posicion la posición de la cuenta en el libro
+     */
+    @Override
+    void volcar(LibroContable libro, int posicion) {
+        super.volcar(libro, posicion);
+        libro.setEntidades(posicion, getEntidades());
     }
 
     /**
-     * Contiene información sobre la cuenta, incluyendo la información del
-     * titular de la cuenta, el saldo actual, el IBAN de la cuenta y la lista de
-     * entidades autorizadas cobrar recibos en la cuenta.
+     * Escribe información sobre la cuenta al final de un buffer, incluyendo la
+     * información del titular de la cuenta, el saldo actual, el IBAN de la
+     * cuenta y la lista de entidades autorizadas cobrar recibos en la cuenta.
      *
-     * @return String que contiene información sobre la cuenta
+     * @param destino el buffer en el que se escribe la información
      */
     @Override
-    public String devolverInfoString() {
-        return super.devolverInfoString()
-                + "\nLista de entidades autorizadas: " + listaEntidades;
+    public void escribirInfo(StringBuilder destino) {
+        super.escribirInfo(destino);
+        destino.append("\nLista de entidades autorizadas: ");
+        getEntidades().escribir(destino);
     }
 }
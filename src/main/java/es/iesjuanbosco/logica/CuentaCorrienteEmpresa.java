@@ -1,5 +1,7 @@
 package es.iesjuanbosco.logica;
 
+import es.iesjuanbosco.util.FormatoMoneda;
+
 /**
  * Esta subclase representa una cuenta corriente de una empresa. Hereda de la clase
  * CuentaCorriente. Posee atributos adicionales para el descubierto permitido,
@@ -53,6 +55,12 @@ public class CuentaCorrienteEmpresa extends CuentaCorriente {
         this.comisionFijaDescubierto = comisionFijaDescubierto;
     }
 
+    /**
+     * Constructor de las vistas de un libro contable.
+     */
+    CuentaCorrienteEmpresa() {
+    }
+
     /**
      * Devuelve el valor del descubierto máximo permitido de la cuenta.
      *
@@ -108,22 +116,166 @@ public class CuentaCorrienteEmpresa extends CuentaCorriente {
     }
 
     /**
-     * Contiene información completa sobre la Cuenta Corriente de Empresa,
-     * incluyendo la información del titular de la cuenta, el saldo actual, el
-     * IBAN de la cuenta, la lista de entidades autorizadas, el tipo de cuenta
-     * (Empresa), el descubierto máximo permitido, el tipo de interés por
-     * descubierto y la comisión fija por descubierto
+     * Copia los datos de la cuenta corriente de empresa en el libro contable.
+     *
+     * @param libro    el libro contable
+     * @param posicion la posición de la cuenta en el libro
+     */
+    @Override
+    void volcar(LibroContable libro, int posicion) {
+        super.volcar(libro, posicion);
+        libro.setMaxDescubierto(posicion, getMaxDescubierto());
+        libro.setTipoInteres(posicion, getTipoInteresDescubierto());
+        libro.setComision(posicion, getComisionFijaDescubierto());
+    }
+
+    /**
+     * Escribe información completa sobre la Cuenta Corriente de Empresa al
+     * final de un buffer, incluyendo la información del titular de la cuenta,
+     * el saldo actual, el IBAN de la cuenta, la lista de entidades autorizadas,
+     * el tipo de cuenta (Empresa), el descubierto máximo permitido, el tipo de
+     * interés por descubierto y la comisión fija por descubierto
      *
-     * @return una cadena que contiene información completa sobre la cuenta de
-     *         empresa
+     * @param destino el buffer en el que se escribe la información completa
+     *                sobre la cuenta de empresa
      */
     @Override
-    public String devolverInfoString() {
-        return super.devolverInfoString()
-                + "\nTipo de cuenta: EMPRESA"
-                + "\nDescubierto máximo permitido: " + String.format("%.2f€", maxDescubierto)
-                + "\nTipo de interés por descubierto: " + String.format("%.2f%%", tipoInteresDescubierto)
-                + "\nComisión fija por descubierto: " + String.format("%.2f€", comisionFijaDescubierto);
+    public void escribirInfo(StringBuilder destino) {
+        super.escribirInfo(destino);
+        destino.append("\nTipo de cuenta: EMPRESA")
+                .append("\nDescubierto máximo permitido: ");
+        FormatoMoneda.escribirEuros(destino, getMaxDescubierto())
+                .append("\nTipo de interés por descubierto: ");
+        FormatoMoneda.escribirPorcentaje(destino, getTipoInteresDescubierto())
+                .append("\nComisión fija por descubierto: ");
+        FormatoMoneda.escribirEuros(destino, getComisionFijaDescubierto());
     }
 
+    /**
+     * Vista de una cuenta corriente de empresa guardada en un libro contable: no tiene
+     * datos propios, sino que lee y escribe los de la cuenta en el libro.
+     *
+     * @see LibroContable#vista(int)
+     */
+    static final class Vista extends CuentaCorrienteEmpresa {
+
+        /**
+         * Libro contable en el que están los datos de la cuenta.
+         */
+        private final LibroContable LIBRO;
+
+        /**
+         * Posición de la cuenta en el libro contable.
+         */
+        private final int POSICION;
+
+        /**
+         * Crea la vista de la cuenta guardada en una posición de un libro.
+         *
+         * @param libro    el libro contable
+         * @param posicion la posición de la cuenta en el libro
+         */
+        Vista(LibroContable libro, int posicion) {
+            this.LIBRO = libro;
+            this.POSICION = posicion;
+        }
+
+        @Override
+        public Persona getTitular() {
+            return LIBRO.getTitular(POSICION);
+        }
+
+        @Override
+        public void setTitular(Persona titular) {
+            LIBRO.setTitular(POSICION, titular);
+        }
+
+        @Override
+        public long getSaldoCentimos() {
+            return LIBRO.getSaldoCentimos(POSICION);
+        }
+
+        @Override
+        public void setSaldoCentimos(long saldoCentimos) {
+            LIBRO.setSaldoCentimos(POSICION, saldoCentimos);
+        }
+
+        @Override
+        boolean compareAndSetSaldoCentimos(long esperado, long nuevo) {
+            return LIBRO.compareAndSetSaldoCentimos(POSICION, esperado, nuevo);
+        }
+
+        @Override
+        public String getIban() {
+            return LIBRO.getIban(POSICION);
+        }
+
+        @Override
+        public void setIban(String iban) {
+            LIBRO.setIban(POSICION, iban);
+        }
+
+        @Override
+        ConjuntoEntidades getEntidades() {
+            return LIBRO.getEntidades(POSICION);
+        }
+
+        @Override
+        void setEntidades(ConjuntoEntidades entidades) {
+            LIBRO.setEntidades(POSICION, entidades);
+        }
+
+        @Override
+        public double getMaxDescubierto() {
+            return LIBRO.getMaxDescubierto(POSICION);
+        }
+
+        @Override
+        public void setMaxDescubierto(double maxDescubierto) {
+            LIBRO.setMaxDescubierto(POSICION, maxDescubierto);
+        }
+
+        @Override
+        public double getTipoInteresDescubierto() {
+            return LIBRO.getTipoInteres(POSICION);
+        }
+
+        @Override
+        public void setTipoInteresDescubierto(double tipoInteresDescubierto) {
+            LIBRO.setTipoInteres(POSICION, tipoInteresDescubierto);
+        }
+
+        @Override
+        public double getComisionFijaDescubierto() {
+            return LIBRO.getComision(POSICION);
+        }
+
+        @Override
+        public void setComisionFijaDescubierto(double comisionFijaDescubierto) {
+            LIBRO.setComision(POSICION, comisionFijaDescubierto);
+        }
+
+        @Override
+        Class<? extends CuentaBancaria> getClaseCuenta() {
+            return CuentaCorrienteEmpresa.class;
+        }
+
+        /**
+         * Dos vistas son iguales si representan la misma cuenta: la misma
+         * posición del mismo libro.
+         *
+         * @param otro el objeto con el que se compara
+         *
+         * @return true si el otro objeto es una vista de la misma cuenta
+         */
+        @Override
+        public boolean equals(Object otro) {
+            return otro instanceof Vista && ((Vista) otro).LIBRO == LIBRO && ((Vista) otro).POSICION == POSICION;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(LIBRO) * 31 + POSICION;
+        }
+    }
 }
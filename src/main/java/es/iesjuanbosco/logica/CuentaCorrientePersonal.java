@@ -1,5 +1,7 @@
 package es.iesjuanbosco.logica;
 
+import es.iesjuanbosco.util.FormatoMoneda;
+
 /**
  * Esta subclase representa una cuenta corriente personal. Esta clase hereda de
  * la clase abstracta CuentaCorriente. Tiene un atributo adicional (comisión de
@@ -34,6 +36,12 @@ public class CuentaCorrientePersonal extends CuentaCorriente {
         this.comisionMantenimientoAnual = comisionMantenimientoAnual;
     }
 
+    /**
+     * Constructor de las vistas de un libro contable.
+     */
+    CuentaCorrientePersonal() {
+    }
+
     /**
      * Devuelve la comisión de mantenimiento anual de la cuenta.
      *
@@ -54,18 +62,139 @@ public class CuentaCorrientePersonal extends CuentaCorriente {
     }
 
     /**
-     * Contiene información completa sobre la Cuenta Corriente Personal,
-     * incluyendo la información del titular de la cuenta, el saldo actual, el
-     * IBAN de la cuenta, la lista de entidades autorizadas, el tipo de cuenta
-     * (Personal) y la comisión de mantenimiento anual.
+     * Copia los datos de la cuenta corriente personal en el libro contable.
      *
-     * @return una cadena que contiene información completa sobre la cuenta
+     * @param libro    el libro contable
+     * @param posicion la posición de la cuenta en el libro
+     */
+    @Override
+    void volcar(LibroContable libro, int posicion) {
+        super.volcar(libro, posicion);
+        libro.setComision(posicion, getComisionMantenimientoAnual());
+    }
+
+    /**
+     * Escribe información completa sobre la Cuenta Corriente Personal al final
+     * de un buffer, incluyendo la información del titular de la cuenta, el
+     * saldo actual, el IBAN de la cuenta, la lista de entidades autorizadas, el
+     * tipo de cuenta (Personal) y la comisión de mantenimiento anual.
      *
+     * @param destino el buffer en el que se escribe la información completa
+     *                sobre la cuenta
      */
     @Override
-    public String devolverInfoString() {
-        return super.devolverInfoString()
-                + "\nTipo de cuenta: PERSONAL"
-                + "\nComisión de mantenimiento anual: " + String.format("%.2f€", comisionMantenimientoAnual);
+    public void escribirInfo(StringBuilder destino) {
+        super.escribirInfo(destino);
+        destino.append("\nTipo de cuenta: PERSONAL")
+                .append("\nComisión de mantenimiento anual: ");
+        FormatoMoneda.escribirEuros(destino, getComisionMantenimientoAnual());
+    }
+
+    /**
+     * Vista de una cuenta corriente personal guardada en un libro contable: no tiene
+     * datos propios, sino que lee y escribe los de la cuenta en el libro.
+     *
+     * @see LibroContable#vista(int)
+     */
+    static final class Vista extends CuentaCorrientePersonal {
+
+        /**
+         * Libro contable en el que están los datos de la cuenta.
+         */
+        private final LibroContable LIBRO;
+
+        /**
+         * Posición de la cuenta en el libro contable.
+         */
+        private final int POSICION;
+
+        /**
+         * Crea la vista de la cuenta guardada en una posición de un libro.
+         *
+         * @param libro    el libro contable
+         * @param posicion la posición de la cuenta en el libro
+         */
+        Vista(LibroContable libro, int posicion) {
+            this.LIBRO = libro;
+            this.POSICION = posicion;
+        }
+
+        @Override
+        public Persona getTitular() {
+            return LIBRO.getTitular(POSICION);
+        }
+
+        @Override
+        public void setTitular(Persona titular) {
+            LIBRO.setTitular(POSICION, titular);
+        }
+
+        @Override
+        public long getSaldoCentimos() {
+            return LIBRO.getSaldoCentimos(POSICION);
+        }
+
+        @Override
+        public void setSaldoCentimos(long saldoCentimos) {
+            LIBRO.setSaldoCentimos(POSICION, saldoCentimos);
+        }
+
+        @Override
+        boolean compareAndSetSaldoCentimos(long esperado, long nuevo) {
+            return LIBRO.compareAndSetSaldoCentimos(POSICION, esperado, nuevo);
+        }
+
+        @Override
+        public String getIban() {
+            return LIBRO.getIban(POSICION);
+        }
+
+        @Override
+        public void setIban(String iban) {
+            LIBRO.setIban(POSICION, iban);
+        }
+
+        @Override
+        ConjuntoEntidades getEntidades() {
+            return LIBRO.getEntidades(POSICION);
+        }
+
+        @Override
+        void setEntidades(ConjuntoEntidades entidades) {
+            LIBRO.setEntidades(POSICION, entidades);
+        }
+
+        @Override
+        public double getComisionMantenimientoAnual() {
+            return LIBRO.getComision(POSICION);
+        }
+
+        @Override
+        public void setComisionMantenimientoAnual(double comisionMantenimientoAnual) {
+            LIBRO.setComision(POSICION, comisionMantenimientoAnual);
+        }
+
+        @Override
+        Class<? extends CuentaBancaria> getClaseCuenta() {
+            return CuentaCorrientePersonal.class;
+        }
+
+        /**
+         * Dos vistas son iguales si representan la misma cuenta: la misma
+         * posición del mismo libro.
+         *
+         * @param otro el objeto con el que se compara
+         *
+         * @return true si el otro objeto es una vista de la misma cuenta
+         */
+        @Override
+        public boolean equals(Object otro) {
+            return otro instanceof Vista && ((Vista) otro).LIBRO == LIBRO && ((Vista) otro).POSICION == POSICION;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(LIBRO) * 31 + POSICION;
+        }
     }
 }
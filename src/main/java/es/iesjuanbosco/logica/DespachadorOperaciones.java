@@ -0,0 +1,195 @@
+package es.iesjuanbosco.logica;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Oyente de operaciones que pasa los resultados a otro oyente desde un hilo
+ * propio. Los resultados se dejan en una cola al realizarse la operación y el
+ * hilo del despachador los va sacando por lotes y se los entrega al oyente de
+ * destino, de modo que el trabajo del oyente (mostrar mensajes, escribir en
+ * disco...) no retrasa las operaciones del banco.
+ * <p>
+ * La cola tiene una capacidad máxima: si el oyente de destino no da abasto y
+ * la cola se llena, las operaciones esperan a que haya hueco.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see OyenteOperaciones
+ */
+public class DespachadorOperaciones implements OyenteOperaciones, AutoCloseable {
+
+    /**
+     * Capacidad por defecto de la cola de resultados.
+     */
+    public static final int CAPACIDAD_POR_DEFECTO = 65_536;
+
+    /**
+     * Tamaño máximo por defecto de cada lote.
+     */
+    public static final int TAMANO_LOTE_POR_DEFECTO = 1024;
+
+    /**
+     * Tiempo máximo que se espera cada vez a que haya hueco en la cola antes
+     * de comprobar si el hilo del despachador sigue en marcha.
+     */
+    private static final long ESPERA_MILISEGUNDOS = 10;
+
+    /**
+     * Marca que se deja en la cola para que el hilo termine.
+     */
+    private static final ResultadoOperacion FIN = ResultadoOperacion.rechazo(
+            ResultadoOperacion.Tipo.INGRESO, ResultadoOperacion.Motivo.CANTIDAD_NO_VALIDA, null, null, 0);
+
+    /**
+     * Oyente al que se entregan los lotes de resultados.
+     */
+    private final OyenteOperaciones DESTINO;
+
+    /**
+     * Cola de resultados pendientes de entregar.
+     */
+    private final BlockingQueue<ResultadoOperacion> COLA;
+
+    /**
+     * Tamaño máximo de cada lote.
+     */
+    private final int TAMANO_LOTE;
+
+    /**
+     * Hilo que entrega los lotes al oyente de destino.
+     */
+    private final Thread HILO;
+
+    /**
+     * Crea un despachador con la capacidad y el tamaño de lote por defecto.
+     *
+     * @param destino el oyente al que se entregan los resultados
+     */
+    public DespachadorOperaciones(OyenteOperaciones destino) {
+        this(destino, CAPACIDAD_POR_DEFECTO, TAMANO_LOTE_POR_DEFECTO);
+    }
+
+    /**
+     * Crea un despachador y arranca su hilo.
+     *
+     * @param destino    el oyente al que se entregan los resultados
+     * @param capacidad  el número máximo de resultados pendientes de entregar
+     * @param tamanoLote el número máximo de resultados de cada lote
+     *
+     * @throws IllegalArgumentException si la capacidad o el tamaño del lote
+     *                                  son menores que 1
+     */
+    public DespachadorOperaciones(OyenteOperaciones destino, int capacidad, int tamanoLote) {
+        if (capacidad < 1 || tamanoLote < 1) {
+            throw new IllegalArgumentException("La capacidad y el tamaño del lote han de ser mayores que 0");
+        }
+        this.DESTINO = destino;
+        this.COLA = new LinkedBlockingQueue<>(capacidad);
+        this.TAMANO_LOTE = tamanoLote;
+        this.HILO = new Thread(this::despachar, "despachador-operaciones");
+        // El hilo no impide que el programa termine
+        this.HILO.setDaemon(true);
+        this.HILO.start();
+    }
+
+    /**
+     * Deja el resultado en la cola para entregarlo desde el hilo del
+     * despachador. Si la cola está llena espera a que haya hueco, aunque se
+     * interrumpa el hilo: la operación ya se ha realizado, así que su
+     * resultado se entrega igualmente y la interrupción se conserva para
+     * quien llamó a la operación. Si el despachador ya se ha cerrado, el
+     * resultado no se entrega y se informa de ello.
+     *
+     * @param resultado el resultado de la operación realizada
+     */
+    @Override
+    public void operacionRealizada(ResultadoOperacion resultado) {
+        boolean interrumpido = false;
+        try {
+            // Se espera por intervalos para no quedarse esperando si el hilo del despachador ya ha terminado
+            while (HILO.isAlive()) {
+                try {
+                    if (COLA.offer(resultado, ESPERA_MILISEGUNDOS, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    interrumpido = true;
+                }
+            }
+            System.err.println("Resultado recibido con el despachador cerrado: " + resultado.tipo() + " " + resultado.iban());
+        } finally {
+            if (interrumpido) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Pasa el alta directamente al oyente de destino, desde el hilo que abre
+     * la cuenta. Como el alta se notifica antes de que pueda operarse con la
+     * cuenta, el destino la recibe siempre antes que sus operaciones.
+     *
+     * @param cuenta   la cuenta abierta
+     * @param posicion la posición de la cuenta en el banco
+     */
+    @Override
+    public void cuentaAbierta(CuentaBancaria cuenta, int posicion) {
+        DESTINO.cuentaAbierta(cuenta, posicion);
+    }
+
+    /**
+     * Bucle del hilo del despachador: espera a que haya algún resultado, saca
+     * de la cola todos los que haya (hasta el tamaño del lote) y los entrega
+     * de una vez al oyente de destino.
+     */
+    private void despachar() {
+        List<ResultadoOperacion> lote = new ArrayList<>(TAMANO_LOTE);
+        boolean fin = false;
+        while (!fin) {
+            try {
+                lote.add(COLA.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            COLA.drainTo(lote, TAMANO_LOTE - 1);
+            /*
+             * Si se ha llegado a la marca de fin se entrega lo anterior y se
+             * termina. Se compara por identidad, ya que los records se
+             * comparan por su contenido.
+             */
+            for (int i = 0; i < lote.size() && !fin; i++) {
+                if (lote.get(i) == FIN) {
+                    lote.subList(i, lote.size()).clear();
+                    fin = true;
+                }
+            }
+            if (!lote.isEmpty()) {
+                try {
+                    DESTINO.operacionesRealizadas(lote);
+                } catch (RuntimeException e) {
+                    // Un fallo del oyente no debe detener la entrega del resto de lotes
+                    System.err.println("Error al notificar operaciones: " + e);
+                }
+            }
+            lote.clear();
+        }
+    }
+
+    /**
+     * Entrega los resultados que queden en la cola y detiene el hilo del
+     * despachador. Los resultados que lleguen después no se entregan.
+     */
+    @Override
+    public void close() {
+        try {
+            COLA.put(FIN);
+            HILO.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
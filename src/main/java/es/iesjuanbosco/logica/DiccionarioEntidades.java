@@ -0,0 +1,234 @@
+package es.iesjuanbosco.logica;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Diccionario de las entidades autorizadas a cobrar recibos en las cuentas
+ * corrientes de un banco. Cada banco tiene el suyo. Cada nombre de entidad
+ * distinto se guarda una sola vez y recibe un identificador numérico pequeño
+ * (0, 1, 2...). Las cuentas abiertas en el banco sólo guardan el
+ * {@link ConjuntoEntidades} con los identificadores de sus entidades, y su
+ * lista de entidades se forma con los nombres del diccionario cada vez que se
+ * muestra.
+ * <p>
+ * Los conjuntos de entidades también se comparten: las cuentas que autorizan
+ * las mismas entidades usan el mismo conjunto.
+ * <p>
+ * Las listas de entidades se escriben separando las entidades con comas (o
+ * puntos y comas). Para identificarlas, los nombres se normalizan quitando
+ * los espacios de alrededor y pasándolos a mayúsculas, de modo que
+ * " Iberdrola" e "IBERDROLA" son la misma entidad. Las listas se muestran con
+ * los nombres normalizados, separados por comas y en el orden de sus
+ * identificadores.
+ * <p>
+ * Se puede usar desde varios hilos a la vez. Los identificadores no cambian
+ * mientras existe el banco, pero pueden ser distintos en cada ejecución.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see CuentaCorriente
+ */
+public class DiccionarioEntidades {
+
+    /**
+     * Identificador de cada entidad, por su nombre normalizado.
+     */
+    private final Map<String, Integer> IDS = new ConcurrentHashMap<>();
+
+    /**
+     * Conjuntos de entidades compartidos, por su contenido.
+     */
+    private final Map<Conjunto, ConjuntoEntidades> CONJUNTOS = new ConcurrentHashMap<>();
+
+    /**
+     * Nombre de cada entidad, por su identificador. Sólo se usan las primeras
+     * posiciones; al crecer se sustituye por una copia antes de publicar el
+     * identificador nuevo.
+     */
+    private volatile String[] nombres = new String[64];
+
+    /**
+     * Crea un diccionario vacío. Lo crea el banco, que tiene uno propio.
+     */
+    DiccionarioEntidades() {
+    }
+
+    /**
+     * Conjunto de identificadores usado como clave: compara el contenido del
+     * array y no la referencia.
+     *
+     * @param ids los identificadores, ordenados y sin repetir
+     */
+    private record Conjunto(int[] ids) {
+
+        @Override
+        public boolean equals(Object otro) {
+            return otro instanceof Conjunto && Arrays.equals(ids, ((Conjunto) otro).ids);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(ids);
+        }
+    }
+
+    /**
+     * Devuelve el identificador de una entidad, asignándole uno nuevo si
+     * todavía no lo tiene.
+     *
+     * @param entidad el nombre de la entidad
+     *
+     * @return el identificador de la entidad
+     *
+     * @throws IllegalArgumentException si el nombre está vacío
+     */
+    public int id(String entidad) {
+        String nombre = normalizar(entidad);
+        if (nombre.isEmpty()) {
+            throw new IllegalArgumentException("El nombre de la entidad está vacío");
+        }
+        Integer id = IDS.get(nombre);
+        return id != null ? id : registrar(nombre);
+    }
+
+    /**
+     * Busca el identificador de una entidad sin registrarla.
+     *
+     * @param entidad el nombre de la entidad
+     *
+     * @return el identificador de la entidad, o -1 si no está en el
+     *         diccionario o es null
+     */
+    public int buscar(String entidad) {
+        if (entidad == null) {
+            return -1;
+        }
+        Integer id = IDS.get(normalizar(entidad));
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Devuelve el nombre de una entidad.
+     *
+     * @param id el identificador de la entidad
+     *
+     * @return el nombre normalizado de la entidad
+     *
+     * @throws IndexOutOfBoundsException si no hay ninguna entidad con ese
+     *                                   identificador
+     */
+    public String nombre(int id) {
+        if (id < 0 || id >= IDS.size()) {
+            throw new IndexOutOfBoundsException(id);
+        }
+        return nombres[id];
+    }
+
+    /**
+     * Devuelve el número de entidades del diccionario.
+     *
+     * @return el número de entidades
+     */
+    public int tamano() {
+        return IDS.size();
+    }
+
+    /**
+     * Convierte una lista de entidades en el conjunto compartido de sus
+     * identificadores, registrando las entidades nuevas.
+     *
+     * @param lista las entidades separadas por comas, o null
+     *
+     * @return el conjunto de las entidades
+     */
+    ConjuntoEntidades conjunto(String lista) {
+        return conjunto(ConjuntoEntidades.separar(lista));
+    }
+
+    /**
+     * Devuelve el conjunto compartido de este diccionario con las mismas
+     * entidades que otro conjunto, registrando las entidades nuevas. Sirve
+     * para pasar al diccionario del banco las entidades de una cuenta que se
+     * abre.
+     *
+     * @param entidades el conjunto de entidades, de este diccionario, de otro
+     *                  o sin diccionario
+     *
+     * @return el conjunto equivalente de este diccionario
+     */
+    ConjuntoEntidades conjunto(ConjuntoEntidades entidades) {
+        if (entidades.diccionario() == this) {
+            return entidades;
+        }
+        String[] nombres = new String[entidades.tamano()];
+        for (int i = 0; i < nombres.length; i++) {
+            nombres[i] = entidades.nombre(i);
+        }
+        return conjunto(nombres);
+    }
+
+    /**
+     * Devuelve el conjunto compartido de unas entidades, registrando las
+     * nuevas.
+     *
+     * @param nombres los nombres de las entidades, que pueden estar repetidos
+     *
+     * @return el conjunto de las entidades
+     */
+    private ConjuntoEntidades conjunto(String[] nombres) {
+        int[] ids = new int[nombres.length];
+        for (int i = 0; i < nombres.length; i++) {
+            ids[i] = id(nombres[i]);
+        }
+        Arrays.sort(ids);
+        // Se quitan los repetidos, que tras ordenar quedan juntos
+        int distintos = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (distintos == 0 || ids[i] != ids[distintos - 1]) {
+                ids[distintos++] = ids[i];
+            }
+        }
+        int[] copia = Arrays.copyOf(ids, distintos);
+        return CONJUNTOS.computeIfAbsent(new Conjunto(copia), conjunto -> new ConjuntoEntidades(this, copia));
+    }
+
+    /**
+     * Normaliza el nombre de una entidad: sin espacios alrededor y en
+     * mayúsculas.
+     *
+     * @param entidad el nombre de la entidad
+     *
+     * @return el nombre normalizado
+     */
+    static String normalizar(String entidad) {
+        return entidad.trim().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Asigna un identificador a una entidad que no lo tenía. Los registros se
+     * hacen de uno en uno para que los identificadores sean consecutivos.
+     *
+     * @param nombre el nombre normalizado de la entidad
+     *
+     * @return el identificador de la entidad
+     */
+    private synchronized int registrar(String nombre) {
+        Integer existente = IDS.get(nombre);
+        if (existente != null) {
+            return existente;
+        }
+        int id = IDS.size();
+        String[] actuales = nombres;
+        if (id == actuales.length) {
+            actuales = Arrays.copyOf(actuales, id * 2);
+        }
+        actuales[id] = nombre;
+        // El nombre se publica antes que el identificador
+        nombres = actuales;
+        IDS.put(nombre, id);
+        return id;
+    }
+}
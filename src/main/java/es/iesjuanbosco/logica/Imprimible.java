@@ -1,18 +1,32 @@
-package es.iesjuanbosco.logica;
-
-/**
- * La interfaz Imprimible define un método que devuelve información en forma de
- * cadena de caracteres.
- *
- * @author Cristian Palomo Prieto
- * @version 0.1
- */
-public interface Imprimible {
-
-    /**
-     * Devuelve información en forma de cadena de caracteres.
-     *
-     * @return una cadena de caracteres que contiene información sobre un objeto
-     */
-    public String devolverInfoString();
-}
+package es.iesjuanbosco.logica;
+
+/**
+ * La interfaz Imprimible define un método que devuelve información en forma de
+ * cadena de caracteres y otro que la escribe en un buffer proporcionado por
+ * quien la llama, para poder reutilizar el mismo buffer al escribir la
+ * información de muchos objetos seguidos (por ejemplo en un listado).
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+public interface Imprimible {
+
+    /**
+     * Devuelve información en forma de cadena de caracteres.
+     *
+     * @return una cadena de caracteres que contiene información sobre un objeto
+     */
+    public String devolverInfoString();
+
+    /**
+     * Escribe la información al final de un buffer. Por defecto escribe la
+     * cadena devuelta por {@link #devolverInfoString()}; las clases que pueden
+     * escribirla directamente, sin crear cadenas intermedias, deben
+     * redefinirlo.
+     *
+     * @param destino el buffer en el que se escribe la información
+     */
+    public default void escribirInfo(StringBuilder destino) {
+        destino.append(devolverInfoString());
+    }
+}
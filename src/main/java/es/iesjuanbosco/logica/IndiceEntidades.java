@@ -0,0 +1,140 @@
+package es.iesjuanbosco.logica;
+
+import java.util.Arrays;
+
+/**
+ * Índice invertido de las entidades autorizadas en las cuentas corrientes de
+ * un banco: para cada entidad del {@link DiccionarioEntidades} del banco
+ * guarda las posiciones en el banco de las cuentas que la autorizan, en el
+ * orden en que se abrieron. Así, obtener las cuentas que autorizan una
+ * entidad no necesita recorrer todas las cuentas del banco.
+ * <p>
+ * El índice se actualiza al abrir las cuentas y al cambiar sus entidades con
+ * {@link Banco#cambiarEntidades(String, String)}. No detecta los cambios
+ * hechos con {@link CuentaCorriente#setListaEntidades(String)}, así que el
+ * banco comprueba las entidades de cada cuenta al consultarlo.
+ * <p>
+ * Los cambios deben hacerse de uno en uno y las búsquedas no pueden hacerse a
+ * la vez que un cambio (el banco protege ambos con su cerrojo de altas).
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see Banco
+ */
+final class IndiceEntidades {
+
+    /**
+     * Posiciones de las cuentas de cada entidad, por su identificador. Sólo
+     * se usan las primeras {@link #numCuentas} de cada entidad; las entidades
+     * sin cuentas tienen null.
+     */
+    private int[][] posiciones = new int[16][];
+
+    /**
+     * Número de cuentas de cada entidad, por su identificador.
+     */
+    private int[] numCuentas = new int[16];
+
+    /**
+     * Registra las entidades de una cuenta.
+     *
+     * @param ids      los identificadores de las entidades que autoriza
+     * @param posicion la posición de la cuenta en el banco
+     */
+    void registrar(int[] ids, int posicion) {
+        for (int id : ids) {
+            anadir(id, posicion);
+        }
+    }
+
+    /**
+     * Cambia las entidades de una cuenta ya registrada: la quita de las
+     * entidades que ya no autoriza y la añade a las nuevas. Si las entidades
+     * anteriores no son las registradas (porque se cambiaron sin pasar por el
+     * índice) no se quita nada que no estuviera ni se añade nada dos veces.
+     *
+     * @param anteriores los identificadores de las entidades que autorizaba,
+     *                   ordenados
+     * @param nuevos     los identificadores de las entidades que autoriza
+     *                   ahora, ordenados
+     * @param posicion   la posición de la cuenta en el banco
+     */
+    void cambiar(int[] anteriores, int[] nuevos, int posicion) {
+        for (int id : anteriores) {
+            if (Arrays.binarySearch(nuevos, id) < 0) {
+                quitar(id, posicion);
+            }
+        }
+        for (int id : nuevos) {
+            anadir(id, posicion);
+        }
+    }
+
+    /**
+     * Añade una cuenta a las de una entidad, manteniendo las posiciones
+     * ordenadas, si no estaba ya. Al abrir las cuentas la posición es siempre
+     * la mayor, así que se añade al final.
+     *
+     * @param id       el identificador de la entidad
+     * @param posicion la posición de la cuenta en el banco
+     */
+    private void anadir(int id, int posicion) {
+        if (id >= posiciones.length) {
+            int capacidad = Math.max(id + 1, posiciones.length * 2);
+            posiciones = Arrays.copyOf(posiciones, capacidad);
+            numCuentas = Arrays.copyOf(numCuentas, capacidad);
+        }
+        int[] cuentas = posiciones[id];
+        if (cuentas == null) {
+            cuentas = posiciones[id] = new int[4];
+        } else if (numCuentas[id] == cuentas.length) {
+            cuentas = posiciones[id] = Arrays.copyOf(cuentas, cuentas.length * 2);
+        }
+        int numero = numCuentas[id];
+        int hueco = numero == 0 || cuentas[numero - 1] < posicion
+                ? numero
+                : -Arrays.binarySearch(cuentas, 0, numero, posicion) - 1;
+        if (hueco < 0) {
+            return;
+        }
+        System.arraycopy(cuentas, hueco, cuentas, hueco + 1, numero - hueco);
+        cuentas[hueco] = posicion;
+        numCuentas[id]++;
+    }
+
+    /**
+     * Quita una cuenta de las de una entidad, si estaba.
+     *
+     * @param id       el identificador de la entidad
+     * @param posicion la posición de la cuenta en el banco
+     */
+    private void quitar(int id, int posicion) {
+        if (id >= posiciones.length || posiciones[id] == null) {
+            return;
+        }
+        int[] cuentas = posiciones[id];
+        int numero = numCuentas[id];
+        int hueco = Arrays.binarySearch(cuentas, 0, numero, posicion);
+        if (hueco < 0) {
+            return;
+        }
+        System.arraycopy(cuentas, hueco + 1, cuentas, hueco, numero - hueco - 1);
+        numCuentas[id]--;
+    }
+
+    /**
+     * Devuelve las posiciones en el banco de las cuentas que autorizan una
+     * entidad.
+     *
+     * @param id el identificador de la entidad
+     *
+     * @return las posiciones de las cuentas en el orden en que se abrieron
+     *         (vacío si ninguna cuenta la autoriza)
+     */
+    int[] posiciones(int id) {
+        if (id < 0 || id >= posiciones.length || posiciones[id] == null) {
+            return new int[0];
+        }
+        return Arrays.copyOf(posiciones[id], numCuentas[id]);
+    }
+}
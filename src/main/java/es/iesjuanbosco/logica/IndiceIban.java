@@ -0,0 +1,289 @@
+package es.iesjuanbosco.logica;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Índice de cuentas por IBAN basado en una tabla hash de direccionamiento
+ * abierto (sondeo lineal). La clave de cada entrada son los 20 dígitos
+ * numéricos de un IBAN español ("ES" + 20 dígitos), almacenados como dos
+ * valores primitivos, de modo que buscar una cuenta no necesita recorrer el
+ * array de cuentas ni comparar cadenas.
+ * <p>
+ * Cada entrada guarda la posición que ocupa la cuenta en el almacén del banco.
+ * Los IBAN que no siguen el formato "ES" + 20 dígitos (por ejemplo cuentas
+ * abiertas llamando directamente a {@link Banco#abrirCuenta(CuentaBancaria)})
+ * se guardan en un mapa auxiliar para no perder el comportamiento anterior.
+ * <p>
+ * El índice no detecta cambios de IBAN hechos con
+ * {@link CuentaBancaria#setIban(String)} una vez abierta la cuenta.
+ * <p>
+ * Las inserciones deben hacerse de una en una (el banco las hace con su cerrojo
+ * de altas). Las búsquedas pueden hacerse a la vez que una inserción sin
+ * lanzar excepciones, pero su resultado sólo es fiable si se valida después
+ * con ese mismo cerrojo.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see Banco
+ */
+final class IndiceIban {
+
+    /**
+     * Número de dígitos que siguen al prefijo "ES" en un IBAN español.
+     */
+    static final int NUM_DIGITOS = 20;
+
+    /**
+     * Valor que marca una posición vacía de la tabla.
+     */
+    private static final int VACIO = -1;
+
+    /**
+     * Tabla hash actual. Al redimensionar se sustituye por una tabla nueva,
+     * de modo que una búsqueda siempre trabaja con arrays del mismo tamaño.
+     */
+    private volatile Tabla tabla;
+
+    /**
+     * Número de entradas ocupadas en la tabla.
+     */
+    private int ocupadas;
+
+    /**
+     * IBAN que no tienen el formato "ES" + 20 dígitos.
+     */
+    private final Map<String, Integer> otros = new ConcurrentHashMap<>();
+
+    /**
+     * Arrays de la tabla hash, todos de la misma capacidad.
+     */
+    private static final class Tabla {
+
+        /**
+         * Primeros 2 dígitos del IBAN (dígitos de control) de cada entrada.
+         */
+        final byte[] clavesAltas;
+
+        /**
+         * Últimos 18 dígitos del IBAN de cada entrada.
+         */
+        final long[] clavesBajas;
+
+        /**
+         * Posición de la cuenta en el banco de cada entrada, o
+         * {@link #VACIO}.
+         */
+        final int[] posiciones;
+
+        /**
+         * Crea una tabla vacía de la capacidad indicada.
+         *
+         * @param capacidad la capacidad de la tabla (potencia de 2)
+         */
+        Tabla(int capacidad) {
+            clavesAltas = new byte[capacidad];
+            clavesBajas = new long[capacidad];
+            posiciones = new int[capacidad];
+            Arrays.fill(posiciones, VACIO);
+        }
+    }
+
+    /**
+     * Crea un índice vacío con capacidad para al menos el número de cuentas
+     * indicado sin necesidad de redimensionar.
+     *
+     * @param capacidadInicial el número de cuentas esperado
+     */
+    IndiceIban(int capacidadInicial) {
+        int capacidad = 16;
+        // Factor de carga máximo del 50% para que las secuencias de sondeo sean cortas
+        while (capacidad < capacidadInicial * 2) {
+            capacidad <<= 1;
+        }
+        tabla = new Tabla(capacidad);
+    }
+
+    /**
+     * Busca la posición de la cuenta con el IBAN indicado.
+     *
+     * @param iban el IBAN a buscar
+     *
+     * @return la posición de la cuenta, o -1 si no existe
+     */
+    int buscar(CharSequence iban) {
+        if (iban == null) {
+            return -1;
+        }
+        if (!esFormatoNumerico(iban)) {
+            Integer posicion = otros.get(iban.toString());
+            return posicion == null ? -1 : posicion;
+        }
+        byte alta = claveAlta(iban);
+        long baja = claveBaja(iban);
+        Tabla t = tabla;
+        int mascara = t.posiciones.length - 1;
+        int i = hash(alta, baja) & mascara;
+        // Sondeo lineal hasta encontrar la clave o una posición vacía
+        int posicion;
+        while ((posicion = t.posiciones[i]) != VACIO) {
+            if (t.clavesBajas[i] == baja && t.clavesAltas[i] == alta) {
+                return posicion;
+            }
+            i = (i + 1) & mascara;
+        }
+        return -1;
+    }
+
+    /**
+     * Añade un IBAN al índice asociado a la posición indicada. Si el IBAN ya
+     * estaba en el índice no se modifica la entrada existente.
+     *
+     * @param iban     el IBAN de la cuenta
+     * @param posicion la posición de la cuenta en el banco
+     *
+     * @return true si se añadió el IBAN, false si ya existía
+     */
+    boolean insertar(CharSequence iban, int posicion) {
+        if (!esFormatoNumerico(iban)) {
+            return otros.putIfAbsent(iban.toString(), posicion) == null;
+        }
+        if ((ocupadas + 1) * 2 > tabla.posiciones.length) {
+            redimensionar();
+        }
+        return insertarClave(tabla, claveAlta(iban), claveBaja(iban), posicion);
+    }
+
+    /**
+     * Inserta una clave numérica en la tabla sin comprobar el factor de carga.
+     *
+     * @param t        la tabla en la que se inserta
+     * @param alta     los 2 primeros dígitos del IBAN
+     * @param baja     los 18 últimos dígitos del IBAN
+     * @param posicion la posición de la cuenta en el banco
+     *
+     * @return true si se añadió la clave, false si ya existía
+     */
+    private boolean insertarClave(Tabla t, byte alta, long baja, int posicion) {
+        int mascara = t.posiciones.length - 1;
+        int i = hash(alta, baja) & mascara;
+        while (t.posiciones[i] != VACIO) {
+            if (t.clavesBajas[i] == baja && t.clavesAltas[i] == alta) {
+                return false;
+            }
+            i = (i + 1) & mascara;
+        }
+        t.clavesAltas[i] = alta;
+        t.clavesBajas[i] = baja;
+        // La posición se escribe la última: es la que marca la entrada como ocupada
+        t.posiciones[i] = posicion;
+        ocupadas++;
+        return true;
+    }
+
+    /**
+     * Duplica la capacidad de la tabla y vuelve a insertar todas las entradas.
+     * La tabla nueva se rellena por completo antes de sustituir a la anterior.
+     */
+    private void redimensionar() {
+        Tabla anterior = tabla;
+        Tabla nueva = new Tabla(anterior.posiciones.length * 2);
+        ocupadas = 0;
+        for (int i = 0; i < anterior.posiciones.length; i++) {
+            if (anterior.posiciones[i] != VACIO) {
+                insertarClave(nueva, anterior.clavesAltas[i], anterior.clavesBajas[i], anterior.posiciones[i]);
+            }
+        }
+        tabla = nueva;
+    }
+
+    /**
+     * Comprueba si el IBAN tiene el formato "ES" + 20 dígitos sin crear
+     * objetos intermedios.
+     *
+     * @param iban el IBAN a comprobar
+     *
+     * @return true si el IBAN tiene el formato numérico esperado
+     */
+    static boolean esFormatoNumerico(CharSequence iban) {
+        if (iban.length() != NUM_DIGITOS + 2 || iban.charAt(0) != 'E' || iban.charAt(1) != 'S') {
+            return false;
+        }
+        for (int i = 2; i < iban.length(); i++) {
+            char c = iban.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Devuelve los 2 primeros dígitos del IBAN como número.
+     *
+     * @param iban un IBAN con formato numérico
+     *
+     * @return los dígitos de control del IBAN
+     */
+    static byte claveAlta(CharSequence iban) {
+        return (byte) ((iban.charAt(2) - '0') * 10 + (iban.charAt(3) - '0'));
+    }
+
+    /**
+     * Devuelve los 18 últimos dígitos del IBAN como número.
+     *
+     * @param iban un IBAN con formato numérico
+     *
+     * @return los 18 últimos dígitos del IBAN
+     */
+    static long claveBaja(CharSequence iban) {
+        long valor = 0;
+        for (int i = 4; i < NUM_DIGITOS + 2; i++) {
+            valor = valor * 10 + (iban.charAt(i) - '0');
+        }
+        return valor;
+    }
+
+    /**
+     * Forma un IBAN con el formato "ES" + 20 dígitos a partir de sus dos
+     * claves. Es la operación inversa de {@link #claveAlta(CharSequence)} y
+     * {@link #claveBaja(CharSequence)}.
+     *
+     * @param alta los 2 primeros dígitos del IBAN
+     * @param baja los 18 últimos dígitos del IBAN
+     *
+     * @return el IBAN
+     */
+    static String formar(byte alta, long baja) {
+        char[] iban = new char[NUM_DIGITOS + 2];
+        iban[0] = 'E';
+        iban[1] = 'S';
+        iban[2] = (char) ('0' + alta / 10);
+        iban[3] = (char) ('0' + alta % 10);
+        for (int i = iban.length - 1; i >= 4; i--) {
+            iban[i] = (char) ('0' + baja % 10);
+            baja /= 10;
+        }
+        return new String(iban);
+    }
+
+    /**
+     * Mezcla los bits de la clave para repartir las entradas en la tabla
+     * (finalizador de MurmurHash3).
+     *
+     * @param alta los 2 primeros dígitos del IBAN
+     * @param baja los 18 últimos dígitos del IBAN
+     *
+     * @return el valor hash de la clave
+     */
+    private static int hash(byte alta, long baja) {
+        long h = baja * 31 + alta;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
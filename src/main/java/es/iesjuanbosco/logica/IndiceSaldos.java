@@ -0,0 +1,342 @@
+package es.iesjuanbosco.logica;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Índices secundarios de las cuentas de un banco por tipo de cuenta y por
+ * saldo. Para cada tipo de cuenta (la clase concreta de la cuenta) se guardan
+ * las posiciones de sus cuentas y un conjunto de sus cuentas ordenado por
+ * saldo, de modo que preguntas como "las cuentas de empresa al descubierto" o
+ * "las cuentas de ahorro con más de X euros" se responden en O(log n + k) sin
+ * recorrer todas las cuentas del banco.
+ * <p>
+ * El índice se añade como oyente del banco: recibe las altas de cuentas y,
+ * tras cada operación realizada, vuelve a leer el saldo de las cuentas
+ * afectadas y las recoloca en el orden de saldos. Como siempre lee el saldo
+ * actual de la cuenta, las operaciones notificadas fuera de orden no le
+ * afectan: cuando dejan de hacerse operaciones sobre una cuenta, su posición
+ * en el índice corresponde a su saldo final. Mientras se hacen, una consulta
+ * puede devolver una cuenta según un saldo que acaba de cambiar.
+ * <p>
+ * Los cambios de saldo que el banco no notifica (los ajustes de
+ * {@link Banco#ajustarSaldoCentimos(int, long)} al recuperar el diario, o los
+ * hechos directamente sobre una cuenta) no se reflejan en el índice hasta la
+ * siguiente operación sobre esa cuenta, por lo que el índice debe crearse
+ * después de recuperar el banco.
+ * <p>
+ * Recolocar una cuenta cuesta O(log n), y es lo que más tarda de cada
+ * operación. Si ese coste importa, el índice puede usarse como etapa de una
+ * {@link TuberiaOperaciones}, que lo quita de los oyentes del banco y lo
+ * actualiza desde su propio hilo.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see Banco#anadirOyente(OyenteOperaciones)
+ */
+public class IndiceSaldos implements OyenteOperaciones, AutoCloseable {
+
+    /**
+     * Banco cuyas cuentas se indexan.
+     */
+    private final Banco BANCO;
+
+    /**
+     * Índices de cada tipo de cuenta, por la clase de la cuenta.
+     */
+    private final Map<Class<?>, IndiceTipo> TIPOS = new ConcurrentHashMap<>();
+
+    /**
+     * Entrada actual de cada cuenta en el orden de saldos, por IBAN.
+     */
+    private final Map<String, Entrada> ENTRADAS = new ConcurrentHashMap<>();
+
+    /**
+     * Cerrojos por franjas de IBAN que hacen que cada cuenta se recoloque de
+     * una en una.
+     */
+    private final BloqueosIban BLOQUEOS = new BloqueosIban();
+
+    /**
+     * Entrada de una cuenta en el conjunto ordenado por saldo: el saldo con
+     * el que se colocó la cuenta y su posición en el banco, que deshace los
+     * empates.
+     *
+     * @param saldoCentimos el saldo con el que se colocó la cuenta
+     * @param posicion      la posición de la cuenta en el banco
+     * @param cuenta        la cuenta
+     */
+    private record Entrada(long saldoCentimos, int posicion, CuentaBancaria cuenta) implements Comparable<Entrada> {
+
+        @Override
+        public int compareTo(Entrada otra) {
+            int comparacion = Long.compare(saldoCentimos, otra.saldoCentimos);
+            return comparacion != 0 ? comparacion : Integer.compare(posicion, otra.posicion);
+        }
+    }
+
+    /**
+     * Índice de un tipo de cuenta: las posiciones de sus cuentas, en el orden
+     * en que se abrieron, y sus entradas ordenadas por saldo.
+     */
+    private static final class IndiceTipo {
+
+        /**
+         * Entradas de las cuentas del tipo, ordenadas por saldo.
+         */
+        final ConcurrentSkipListSet<Entrada> SALDOS = new ConcurrentSkipListSet<>();
+
+        /**
+         * Posiciones de las cuentas del tipo. Sólo se usan las primeras
+         * {@link #numCuentas}; al crecer se sustituye por una copia antes de
+         * aumentar el número de cuentas, de modo que quien lee el número y
+         * después el array nunca ve posiciones sin escribir.
+         */
+        volatile int[] posiciones = new int[16];
+
+        /**
+         * Número de cuentas del tipo.
+         */
+        volatile int numCuentas;
+
+        /**
+         * Añade una cuenta al tipo. Las cuentas se añaden de una en una.
+         *
+         * @param posicion la posición de la cuenta en el banco
+         */
+        synchronized void anadir(int posicion) {
+            int[] actuales = posiciones;
+            if (numCuentas == actuales.length) {
+                actuales = Arrays.copyOf(actuales, numCuentas * 2);
+            }
+            actuales[numCuentas] = posicion;
+            posiciones = actuales;
+            numCuentas++;
+        }
+    }
+
+    /**
+     * Crea el índice de las cuentas de un banco y lo añade como oyente del
+     * banco. Las cuentas abiertas hasta ese momento se indexan con su saldo
+     * actual.
+     *
+     * @param banco el banco cuyas cuentas se indexan
+     */
+    public IndiceSaldos(Banco banco) {
+        this.BANCO = banco;
+        /*
+         * Se añade como oyente antes de recorrer las cuentas para no perder
+         * ninguna alta; las cuentas que se encuentren dos veces sólo se
+         * indexan la primera
+         */
+        banco.anadirOyente(this);
+        int numCuentas = banco.getContadorCuentas();
+        for (int i = 0; i < numCuentas; i++) {
+            indexar(banco.cuentaEnPosicion(i), i);
+        }
+    }
+
+    /**
+     * Indexa una cuenta recién abierta.
+     *
+     * @param cuenta   la cuenta abierta
+     * @param posicion la posición de la cuenta en el banco
+     */
+    @Override
+    public void cuentaAbierta(CuentaBancaria cuenta, int posicion) {
+        indexar(cuenta, posicion);
+    }
+
+    /**
+     * Recoloca en el orden de saldos las cuentas de una operación realizada.
+     *
+     * @param resultado el resultado de la operación realizada
+     */
+    @Override
+    public void operacionRealizada(ResultadoOperacion resultado) {
+        recolocar(resultado.iban());
+        if (resultado.ibanDestino() != null) {
+            recolocar(resultado.ibanDestino());
+        }
+    }
+
+    /**
+     * Devuelve las cuentas de un tipo, en el orden en que se abrieron.
+     *
+     * @param tipo la clase de las cuentas (por ejemplo
+     *             {@code CuentaAhorro.class}); no incluye las de sus
+     *             subclases
+     *
+     * @return las cuentas del tipo
+     */
+    public List<CuentaBancaria> cuentasTipo(Class<? extends CuentaBancaria> tipo) {
+        IndiceTipo indice = TIPOS.get(tipo);
+        if (indice == null) {
+            return List.of();
+        }
+        // Se lee el número de cuentas antes que el array (ver IndiceTipo.posiciones)
+        int numCuentas = indice.numCuentas;
+        int[] posiciones = indice.posiciones;
+        List<CuentaBancaria> cuentas = new ArrayList<>(numCuentas);
+        for (int i = 0; i < numCuentas; i++) {
+            cuentas.add(BANCO.cuentaEnPosicion(posiciones[i]));
+        }
+        return cuentas;
+    }
+
+    /**
+     * Devuelve el número de cuentas de un tipo.
+     *
+     * @param tipo la clase de las cuentas; no incluye las de sus subclases
+     *
+     * @return el número de cuentas del tipo
+     */
+    public int numCuentasTipo(Class<? extends CuentaBancaria> tipo) {
+        IndiceTipo indice = TIPOS.get(tipo);
+        return indice == null ? 0 : indice.numCuentas;
+    }
+
+    /**
+     * Devuelve las cuentas de un tipo con un saldo dentro de un intervalo,
+     * ordenadas de menor a mayor saldo.
+     *
+     * @param tipo           la clase de las cuentas; no incluye las de sus
+     *                       subclases
+     * @param minimoCentimos el saldo mínimo en céntimos (incluido)
+     * @param maximoCentimos el saldo máximo en céntimos (incluido)
+     *
+     * @return las cuentas del tipo con un saldo entre el mínimo y el máximo
+     */
+    public List<CuentaBancaria> cuentasConSaldoEntre(Class<? extends CuentaBancaria> tipo,
+            long minimoCentimos, long maximoCentimos) {
+        IndiceTipo indice = TIPOS.get(tipo);
+        if (indice == null || minimoCentimos > maximoCentimos) {
+            return List.of();
+        }
+        return cuentas(indice.SALDOS.subSet(new Entrada(minimoCentimos, Integer.MIN_VALUE, null), true,
+                new Entrada(maximoCentimos, Integer.MAX_VALUE, null), true), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Devuelve las cuentas de un tipo al descubierto (con saldo negativo),
+     * ordenadas de menor a mayor saldo.
+     *
+     * @param tipo la clase de las cuentas; no incluye las de sus subclases
+     *
+     * @return las cuentas del tipo al descubierto
+     */
+    public List<CuentaBancaria> cuentasAlDescubierto(Class<? extends CuentaBancaria> tipo) {
+        return cuentasConSaldoEntre(tipo, Long.MIN_VALUE, -1);
+    }
+
+    /**
+     * Devuelve las cuentas de un tipo con mayor saldo, ordenadas de mayor a
+     * menor saldo.
+     *
+     * @param tipo    la clase de las cuentas; no incluye las de sus subclases
+     * @param cuantas el número máximo de cuentas a devolver
+     *
+     * @return las cuentas del tipo con mayor saldo
+     */
+    public List<CuentaBancaria> mayoresSaldos(Class<? extends CuentaBancaria> tipo, int cuantas) {
+        IndiceTipo indice = TIPOS.get(tipo);
+        return indice == null ? List.of() : cuentas(indice.SALDOS.descendingSet(), cuantas);
+    }
+
+    /**
+     * Devuelve las cuentas de un tipo con menor saldo, ordenadas de menor a
+     * mayor saldo.
+     *
+     * @param tipo    la clase de las cuentas; no incluye las de sus subclases
+     * @param cuantas el número máximo de cuentas a devolver
+     *
+     * @return las cuentas del tipo con menor saldo
+     */
+    public List<CuentaBancaria> menoresSaldos(Class<? extends CuentaBancaria> tipo, int cuantas) {
+        IndiceTipo indice = TIPOS.get(tipo);
+        return indice == null ? List.of() : cuentas(indice.SALDOS, cuantas);
+    }
+
+    /**
+     * Quita el índice de los oyentes del banco. A partir de ese momento deja
+     * de actualizarse.
+     */
+    @Override
+    public void close() {
+        BANCO.eliminarOyente(this);
+    }
+
+    /**
+     * Indexa una cuenta con su saldo actual, si no estaba ya indexada.
+     *
+     * @param cuenta   la cuenta
+     * @param posicion la posición de la cuenta en el banco
+     */
+    private void indexar(CuentaBancaria cuenta, int posicion) {
+        ReentrantLock cerrojo = BLOQUEOS.cerrojo(cuenta.getIban());
+        cerrojo.lock();
+        try {
+            // Si hay varias cuentas con el mismo IBAN se indexa la primera, igual que en el banco
+            if (ENTRADAS.containsKey(cuenta.getIban())) {
+                return;
+            }
+            IndiceTipo indice = TIPOS.computeIfAbsent(cuenta.getClaseCuenta(), clase -> new IndiceTipo());
+            Entrada entrada = new Entrada(cuenta.getSaldoCentimos(), posicion, cuenta);
+            indice.SALDOS.add(entrada);
+            indice.anadir(posicion);
+            ENTRADAS.put(cuenta.getIban(), entrada);
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    /**
+     * Recoloca una cuenta en el orden de saldos según su saldo actual.
+     *
+     * @param iban el IBAN de la cuenta
+     */
+    private void recolocar(String iban) {
+        ReentrantLock cerrojo = BLOQUEOS.cerrojo(iban);
+        cerrojo.lock();
+        try {
+            Entrada actual = ENTRADAS.get(iban);
+            if (actual == null) {
+                return;
+            }
+            long saldo = actual.cuenta().getSaldoCentimos();
+            if (saldo != actual.saldoCentimos()) {
+                NavigableSet<Entrada> saldos = TIPOS.get(actual.cuenta().getClaseCuenta()).SALDOS;
+                Entrada nueva = new Entrada(saldo, actual.posicion(), actual.cuenta());
+                saldos.remove(actual);
+                saldos.add(nueva);
+                ENTRADAS.put(iban, nueva);
+            }
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    /**
+     * Devuelve las cuentas de las primeras entradas de un conjunto.
+     *
+     * @param entradas las entradas
+     * @param cuantas  el número máximo de cuentas a devolver
+     *
+     * @return las cuentas de las entradas, en su orden
+     */
+    private static List<CuentaBancaria> cuentas(NavigableSet<Entrada> entradas, int cuantas) {
+        List<CuentaBancaria> cuentas = new ArrayList<>();
+        Iterator<Entrada> iterador = entradas.iterator();
+        while (cuentas.size() < cuantas && iterador.hasNext()) {
+            cuentas.add(iterador.next().cuenta());
+        }
+        return cuentas;
+    }
+}
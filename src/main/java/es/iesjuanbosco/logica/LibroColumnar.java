@@ -0,0 +1,260 @@
+package es.iesjuanbosco.logica;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Libro contable en formato columnar: cada dato de las cuentas se guarda en su
+ * propio array de tipo primitivo, indexado por la posición de la cuenta.
+ * <p>
+ * Igual que el almacén de cuentas, cada columna se divide en bloques de
+ * {@link AlmacenCuentas#TAMANO_BLOQUE} posiciones que se reservan a medida que
+ * se necesitan, para no tener que copiar los datos al crecer.
+ * <p>
+ * El titular y las entidades de cada cuenta son referencias a objetos
+ * compartidos (el titular registrado en el banco y el conjunto de entidades de
+ * su diccionario), y el IBAN se guarda como los dos números de sus 20 dígitos,
+ * igual que en el índice de IBAN, y se vuelve a formar al leerlo. Así cada
+ * cuenta ocupa unos 50 bytes del heap repartidos entre las columnas, sin ningún
+ * objeto propio. Los IBAN sin el formato "ES" + 20 dígitos se guardan aparte
+ * como texto.
+ * <p>
+ * Los saldos se leen y escriben con accesos volátiles y admiten
+ * compare-and-set, para que el banco pueda actualizarlos sin cerrojos.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see LibroContable
+ */
+final class LibroColumnar implements LibroContable {
+
+    /**
+     * Máscara para obtener el desplazamiento dentro del bloque.
+     */
+    private static final int MASCARA_BLOQUE = AlmacenCuentas.TAMANO_BLOQUE - 1;
+
+    /**
+     * Acceso atómico a los elementos de los bloques de saldos.
+     */
+    private static final VarHandle SALDO = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /**
+     * Valor de los 2 primeros dígitos del IBAN que indica que el IBAN no tiene
+     * el formato "ES" + 20 dígitos y está guardado aparte.
+     */
+    private static final byte IBAN_OTRO = -1;
+
+    /**
+     * Columna con el tipo de cada cuenta.
+     */
+    private byte[][] tipos = new byte[8][];
+
+    /**
+     * Columna con el titular de cada cuenta.
+     */
+    private Persona[][] titulares = new Persona[8][];
+
+    /**
+     * Columna con los 2 primeros dígitos del IBAN de cada cuenta, o
+     * {@link #IBAN_OTRO}.
+     */
+    private byte[][] ibanesAltos = new byte[8][];
+
+    /**
+     * Columna con los 18 últimos dígitos del IBAN de cada cuenta.
+     */
+    private long[][] ibanesBajos = new long[8][];
+
+    /**
+     * Columna con las entidades autorizadas de cada cuenta corriente.
+     */
+    private ConjuntoEntidades[][] entidades = new ConjuntoEntidades[8][];
+
+    /**
+     * Columna con el saldo en céntimos de cada cuenta.
+     */
+    private long[][] saldos = new long[8][];
+
+    /**
+     * Columna con el tipo de interés de cada cuenta.
+     */
+    private double[][] tiposInteres = new double[8][];
+
+    /**
+     * Columna con la comisión de cada cuenta.
+     */
+    private double[][] comisiones = new double[8][];
+
+    /**
+     * Columna con el descubierto máximo de cada cuenta.
+     */
+    private double[][] maxDescubiertos = new double[8][];
+
+    /**
+     * IBAN sin el formato "ES" + 20 dígitos, por la posición de su cuenta.
+     */
+    private final Map<Integer, String> OTROS_IBAN = new ConcurrentHashMap<>();
+
+    @Override
+    public void reservar(int posicion) {
+        int bloque = posicion >>> AlmacenCuentas.BITS_BLOQUE;
+        if (bloque >= saldos.length) {
+            int longitud = Math.max(saldos.length * 2, bloque + 1);
+            tipos = Arrays.copyOf(tipos, longitud);
+            titulares = Arrays.copyOf(titulares, longitud);
+            ibanesAltos = Arrays.copyOf(ibanesAltos, longitud);
+            ibanesBajos = Arrays.copyOf(ibanesBajos, longitud);
+            entidades = Arrays.copyOf(entidades, longitud);
+            saldos = Arrays.copyOf(saldos, longitud);
+            tiposInteres = Arrays.copyOf(tiposInteres, longitud);
+            comisiones = Arrays.copyOf(comisiones, longitud);
+            maxDescubiertos = Arrays.copyOf(maxDescubiertos, longitud);
+        }
+        if (saldos[bloque] == null) {
+            tipos[bloque] = new byte[AlmacenCuentas.TAMANO_BLOQUE];
+            titulares[bloque] = new Persona[AlmacenCuentas.TAMANO_BLOQUE];
+            ibanesAltos[bloque] = new byte[AlmacenCuentas.TAMANO_BLOQUE];
+            ibanesBajos[bloque] = new long[AlmacenCuentas.TAMANO_BLOQUE];
+            entidades[bloque] = new ConjuntoEntidades[AlmacenCuentas.TAMANO_BLOQUE];
+            saldos[bloque] = new long[AlmacenCuentas.TAMANO_BLOQUE];
+            tiposInteres[bloque] = new double[AlmacenCuentas.TAMANO_BLOQUE];
+            comisiones[bloque] = new double[AlmacenCuentas.TAMANO_BLOQUE];
+            maxDescubiertos[bloque] = new double[AlmacenCuentas.TAMANO_BLOQUE];
+        }
+    }
+
+    @Override
+    public byte getTipo(int posicion) {
+        return tipos[posicion >>> AlmacenCuentas.BITS_BLOQUE][posicion & MASCARA_BLOQUE];
+    }
+
+    @Override
+    public void setTipo(int posicion, byte tipo) {
+        tipos[posicion >>> AlmacenCuentas.BITS_BLOQUE][posicion & MASCARA_BLOQUE] = tipo;
+    }
+
+    @Override
+    public Persona getTitular(int posicion) {
+        return titulares[posicion >>> AlmacenCuentas.BITS_BLOQUE][posicion & MASCARA_BLOQUE];
+    }
+
+    @Override
+    public void setTitular(int posicion, Persona titular) {
+        titulares[posicion >>> AlmacenCuentas.BITS_BLOQUE][posicion & MASCARA_BLOQUE] = titular;
+    }
+
+    @Override
+    public String getIban(int posicion) {
+        byte alta = ibanesAltos[posicion >>> AlmacenCuentas.BITS_BLOQUE][posicion & MASCARA_BLOQUE];
+        if (alta == IBAN_OTRO) {
+            return OTROS_IBAN.get(posicion);
+        }
+        return IndiceIban.formar(alta, ibanesBajos[posicion >>> AlmacenCuentas.BITS_BLOQUE][posicion & MASCARA_BLOQUE]);
+    }
+
+    @Override
+    public void setIban(int posicion, String iban) {
+        int bloque = posicion >>> AlmacenCuentas.BITS_BLOQUE;
+        if (iban != null && IndiceIban.esFormatoNumerico(iban)) {
+            ibanesBajos[bloque][posicion & MASCARA_BLOQUE] = IndiceIban.claveBaja(iban);
+            ibanesAltos[bloque][posicion & MASCARA_BLOQUE] = IndiceIban.claveAlta(iban);
+            OTROS_IBAN.remove(posicion);
+        } else {
+            // Los IBAN null no se guardan en el mapa, así que se leen como null
+            if (iban == null) {
+                OTROS_IBAN.remove(posicion);
+            } else {
+                OTROS_IBAN.put(posicion, iban);
+            }
+            ibanesAltos[bloque][posicion & MASCARA_BLOQUE] = IBAN_OTRO;
+        }
+    }
+
+    @Override
+    public ConjuntoEntidades getEntidades(int posicion) {
+        return entidades[posicion >>> AlmacenCuentas.BITS_BLOQUE][posicion & MASCARA_BLOQUE];
+    }
+
+    @Override
+    public void setEntidades(int posicion, ConjuntoEntidades conjunto) {
+        entidades[posicion >>> AlmacenCuentas.BITS_BLOQUE][posicion & MASCARA_BLOQUE] = conjunto;
+    }
+
+    @Override
+    public long getSaldoCentimos(int posicion) {
+        return (long) SALDO.getVolatile(saldos[posicion >>> AlmacenCuentas.BITS_BLOQUE], posicion & MASCARA_BLOQUE);
+    }
+
+    @Override
+    public void setSaldoCentimos(int posicion, long saldoCentimos) {
+        SALDO.setVolatile(saldos[posicion >>> AlmacenCuentas.BITS_BLOQUE], posicion & MASCARA_BLOQUE, saldoCentimos);
+    }
+
+    @Override
+    public boolean compareAndSetSaldoCentimos(int posicion, long esperado, long nuevo) {
+        return SALDO.compareAndSet(saldos[posicion >>> AlmacenCuentas.BITS_BLOQUE], posicion & MASCARA_BLOQUE, esperado, nuevo);
+    }
+
+    @Override
+    public double getTipoInteres(int posicion) {
+        return tiposInteres[posicion >>> AlmacenCuentas.BITS_BLOQUE][posicion & MASCARA_BLOQUE];
+    }
+
+    @Override
+    public void setTipoInteres(int posicion, double tipoInteres) {
+        tiposInteres[posicion >>> AlmacenCuentas.BITS_BLOQUE][posicion & MASCARA_BLOQUE] = tipoInteres;
+    }
+
+    @Override
+    public double getComision(int posicion) {
+        return comisiones[posicion >>> AlmacenCuentas.BITS_BLOQUE][posicion & MASCARA_BLOQUE];
+    }
+
+    @Override
+    public void setComision(int posicion, double comision) {
+        comisiones[posicion >>> AlmacenCuentas.BITS_BLOQUE][posicion & MASCARA_BLOQUE] = comision;
+    }
+
+    @Override
+    public double getMaxDescubierto(int posicion) {
+        return maxDescubiertos[posicion >>> AlmacenCuentas.BITS_BLOQUE][posicion & MASCARA_BLOQUE];
+    }
+
+    @Override
+    public void setMaxDescubierto(int posicion, double maxDescubierto) {
+        maxDescubiertos[posicion >>> AlmacenCuentas.BITS_BLOQUE][posicion & MASCARA_BLOQUE] = maxDescubierto;
+    }
+
+    @Override
+    public long totalSaldos(int numCuentas) {
+        long total = 0;
+        // Se recorre cada bloque de forma secuencial
+        for (int inicio = 0; inicio < numCuentas; inicio += AlmacenCuentas.TAMANO_BLOQUE) {
+            long[] bloque = saldos[inicio >>> AlmacenCuentas.BITS_BLOQUE];
+            int fin = Math.min(AlmacenCuentas.TAMANO_BLOQUE, numCuentas - inicio);
+            for (int i = 0; i < fin; i++) {
+                total += bloque[i];
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public long totalDescubierto(int numCuentas) {
+        long total = 0;
+        for (int inicio = 0; inicio < numCuentas; inicio += AlmacenCuentas.TAMANO_BLOQUE) {
+            byte[] bloqueTipos = tipos[inicio >>> AlmacenCuentas.BITS_BLOQUE];
+            long[] bloqueSaldos = saldos[inicio >>> AlmacenCuentas.BITS_BLOQUE];
+            int fin = Math.min(AlmacenCuentas.TAMANO_BLOQUE, numCuentas - inicio);
+            for (int i = 0; i < fin; i++) {
+                if (bloqueTipos[i] == TIPO_EMPRESA && bloqueSaldos[i] < 0) {
+                    total -= bloqueSaldos[i];
+                }
+            }
+        }
+        return total;
+    }
+}
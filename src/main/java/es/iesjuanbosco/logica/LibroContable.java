@@ -0,0 +1,271 @@
+package es.iesjuanbosco.logica;
+
+/**
+ * Libro contable del banco: guarda todos los datos de las cuentas (tipo,
+ * titular, saldo, IBAN, entidades y los parámetros propios de cada tipo de
+ * cuenta) fuera de los objetos de cuenta, indexados por la posición de cada
+ * cuenta en el banco.
+ * <p>
+ * Un banco con libro contable no guarda las cuentas que se abren: copia sus
+ * datos en el libro con {@link CuentaBancaria#volcar(LibroContable, int)} y,
+ * cada vez que se le pide una cuenta, devuelve una vista creada con
+ * {@link #vista(int)}. Las vistas son objetos de las clases de cuenta sin
+ * datos propios, que sólo guardan el libro y la posición y leen y escriben
+ * todos sus datos en el libro. Se crean al pedirlas y el recolector de basura
+ * las elimina en cuanto dejan de usarse, así que la memoria de cada cuenta es
+ * sólo la que ocupa en el libro, y los recorridos de todo el banco (sumas de
+ * saldos, descubiertos...) se hacen de forma secuencial sobre datos
+ * contiguos.
+ * <p>
+ * El significado de las columnas de tipo de interés y comisión depende del
+ * tipo de cuenta: en las cuentas de ahorro el tipo de interés es el anual, en
+ * las de empresa es el de descubierto; en las cuentas personales la comisión es
+ * la de mantenimiento anual y en las de empresa la fija por descubierto.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see CuentaBancaria
+ */
+interface LibroContable {
+
+    /**
+     * Tipo de una cuenta que no es de ninguno de los tipos conocidos, y que
+     * por tanto no puede guardarse en un libro.
+     */
+    byte TIPO_OTRA = 0;
+
+    /**
+     * Tipo de una cuenta de ahorro.
+     */
+    byte TIPO_AHORRO = 1;
+
+    /**
+     * Tipo de una cuenta corriente personal.
+     */
+    byte TIPO_PERSONAL = 2;
+
+    /**
+     * Tipo de una cuenta corriente de empresa.
+     */
+    byte TIPO_EMPRESA = 3;
+
+    /**
+     * Devuelve el tipo de una cuenta según su clase. Las subclases de los
+     * tipos conocidos no pueden guardarse en un libro, porque sus vistas
+     * perderían lo que añaden, así que tienen el tipo {@link #TIPO_OTRA}.
+     *
+     * @param cuenta la cuenta
+     *
+     * @return uno de los valores TIPO_*
+     */
+    static byte tipo(CuentaBancaria cuenta) {
+        Class<? extends CuentaBancaria> clase = cuenta.getClaseCuenta();
+        if (clase == CuentaAhorro.class) {
+            return TIPO_AHORRO;
+        } else if (clase == CuentaCorrientePersonal.class) {
+            return TIPO_PERSONAL;
+        } else if (clase == CuentaCorrienteEmpresa.class) {
+            return TIPO_EMPRESA;
+        }
+        return TIPO_OTRA;
+    }
+
+    /**
+     * Crea una vista de la cuenta guardada en la posición indicada: un objeto
+     * de la clase de su tipo que lee y escribe sus datos en el libro.
+     *
+     * @param posicion la posición de la cuenta
+     *
+     * @return la vista de la cuenta
+     */
+    default CuentaBancaria vista(int posicion) {
+        return switch (getTipo(posicion)) {
+            case TIPO_AHORRO ->
+                new CuentaAhorro.Vista(this, posicion);
+            case TIPO_PERSONAL ->
+                new CuentaCorrientePersonal.Vista(this, posicion);
+            default ->
+                new CuentaCorrienteEmpresa.Vista(this, posicion);
+        };
+    }
+
+    /**
+     * Reserva espacio para la posición indicada (y todas las anteriores) y la
+     * deja con todos sus valores a 0.
+     *
+     * @param posicion la posición de la cuenta
+     */
+    void reservar(int posicion);
+
+    /**
+     * Devuelve el tipo de la cuenta en la posición indicada.
+     *
+     * @param posicion la posición de la cuenta
+     *
+     * @return uno de los valores TIPO_*
+     */
+    byte getTipo(int posicion);
+
+    /**
+     * Establece el tipo de la cuenta en la posición indicada.
+     *
+     * @param posicion la posición de la cuenta
+     * @param tipo     uno de los valores TIPO_*
+     */
+    void setTipo(int posicion, byte tipo);
+
+    /**
+     * Devuelve el titular de la cuenta en la posición indicada.
+     *
+     * @param posicion la posición de la cuenta
+     *
+     * @return el titular de la cuenta
+     */
+    Persona getTitular(int posicion);
+
+    /**
+     * Establece el titular de la cuenta en la posición indicada.
+     *
+     * @param posicion la posición de la cuenta
+     * @param titular  el nuevo titular
+     */
+    void setTitular(int posicion, Persona titular);
+
+    /**
+     * Devuelve el IBAN de la cuenta en la posición indicada.
+     *
+     * @param posicion la posición de la cuenta
+     *
+     * @return el IBAN de la cuenta
+     */
+    String getIban(int posicion);
+
+    /**
+     * Establece el IBAN de la cuenta en la posición indicada.
+     *
+     * @param posicion la posición de la cuenta
+     * @param iban     el nuevo IBAN
+     */
+    void setIban(int posicion, String iban);
+
+    /**
+     * Devuelve las entidades autorizadas de la cuenta corriente en la
+     * posición indicada.
+     *
+     * @param posicion la posición de la cuenta
+     *
+     * @return el conjunto de entidades
+     */
+    ConjuntoEntidades getEntidades(int posicion);
+
+    /**
+     * Establece las entidades autorizadas de la cuenta corriente en la
+     * posición indicada.
+     *
+     * @param posicion  la posición de la cuenta
+     * @param entidades el nuevo conjunto de entidades
+     */
+    void setEntidades(int posicion, ConjuntoEntidades entidades);
+
+    /**
+     * Devuelve el saldo en céntimos de la cuenta en la posición indicada. La
+     * lectura es volátil: devuelve el último saldo escrito por cualquier hilo.
+     *
+     * @param posicion la posición de la cuenta
+     *
+     * @return el saldo de la cuenta en céntimos
+     */
+    long getSaldoCentimos(int posicion);
+
+    /**
+     * Establece el saldo en céntimos de la cuenta en la posición indicada. La
+     * escritura es volátil.
+     *
+     * @param posicion      la posición de la cuenta
+     * @param saldoCentimos el nuevo saldo en céntimos
+     */
+    void setSaldoCentimos(int posicion, long saldoCentimos);
+
+    /**
+     * Establece de forma atómica el saldo en céntimos de la cuenta en la
+     * posición indicada, sólo si su valor actual es el esperado.
+     *
+     * @param posicion la posición de la cuenta
+     * @param esperado el saldo que se espera que tenga la cuenta
+     * @param nuevo    el nuevo saldo
+     *
+     * @return true si se ha cambiado el saldo, false si el saldo actual no era
+     *         el esperado
+     */
+    boolean compareAndSetSaldoCentimos(int posicion, long esperado, long nuevo);
+
+    /**
+     * Devuelve el tipo de interés de la cuenta en la posición indicada.
+     *
+     * @param posicion la posición de la cuenta
+     *
+     * @return el tipo de interés
+     */
+    double getTipoInteres(int posicion);
+
+    /**
+     * Establece el tipo de interés de la cuenta en la posición indicada.
+     *
+     * @param posicion    la posición de la cuenta
+     * @param tipoInteres el nuevo tipo de interés
+     */
+    void setTipoInteres(int posicion, double tipoInteres);
+
+    /**
+     * Devuelve la comisión de la cuenta en la posición indicada.
+     *
+     * @param posicion la posición de la cuenta
+     *
+     * @return la comisión
+     */
+    double getComision(int posicion);
+
+    /**
+     * Establece la comisión de la cuenta en la posición indicada.
+     *
+     * @param posicion la posición de la cuenta
+     * @param comision la nueva comisión
+     */
+    void setComision(int posicion, double comision);
+
+    /**
+     * Devuelve el descubierto máximo de la cuenta en la posición indicada.
+     *
+     * @param posicion la posición de la cuenta
+     *
+     * @return el descubierto máximo
+     */
+    double getMaxDescubierto(int posicion);
+
+    /**
+     * Establece el descubierto máximo de la cuenta en la posición indicada.
+     *
+     * @param posicion       la posición de la cuenta
+     * @param maxDescubierto el nuevo descubierto máximo
+     */
+    void setMaxDescubierto(int posicion, double maxDescubierto);
+
+    /**
+     * Suma los saldos de las cuentas entre las posiciones 0 y numCuentas - 1.
+     *
+     * @param numCuentas el número de cuentas a recorrer
+     *
+     * @return la suma de los saldos en céntimos
+     */
+    long totalSaldos(int numCuentas);
+
+    /**
+     * Suma el descubierto (saldo negativo en valor absoluto) de las cuentas de
+     * empresa entre las posiciones 0 y numCuentas - 1.
+     *
+     * @param numCuentas el número de cuentas a recorrer
+     *
+     * @return el descubierto total de las cuentas de empresa en céntimos
+     */
+    long totalDescubierto(int numCuentas);
+}
@@ -0,0 +1,391 @@
+package es.iesjuanbosco.logica;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Libro contable que guarda los datos de las cuentas fuera del heap de Java,
+ * en buffers directos. Cada cuenta ocupa un registro de tamaño fijo de
+ * {@link #TAMANO_REGISTRO} bytes con todos sus datos, así que el heap no
+ * guarda nada por cuenta y el recolector de basura no tiene que recorrer las
+ * cuentas.
+ * <p>
+ * El IBAN ("ES" + 20 dígitos) se guarda como dos números, igual que en el
+ * índice de IBAN: sus 2 primeros dígitos (los de control) en un byte y los 18
+ * últimos, que caben en un long, en 8 bytes. No se pierde ningún dígito: el
+ * IBAN se vuelve a formar entero al leerlo. Los IBAN sin ese formato, que el
+ * banco no crea, se guardan aparte como texto.
+ * <p>
+ * El titular y las entidades autorizadas son objetos compartidos entre
+ * cuentas (el titular registrado en el banco y el conjunto de entidades de su
+ * diccionario). El registro guarda un número que los identifica en una tabla
+ * del heap con una entrada por cada objeto distinto, de modo que esa tabla
+ * crece con el número de titulares y de combinaciones de entidades, no con el
+ * número de cuentas. Los titulares sin DNI no se comparten y ocupan una
+ * entrada por cuenta.
+ * <p>
+ * Los saldos se leen y escriben con accesos volátiles y admiten
+ * compare-and-set, para que el banco pueda actualizarlos sin cerrojos. Para
+ * ello el saldo está alineado a 8 bytes dentro de cada registro.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see LibroContable
+ */
+final class LibroFueraHeap implements LibroContable {
+
+    /*
+     * Disposición de cada registro (desplazamientos en bytes). Se usan 64
+     * bytes para que cada registro ocupe exactamente una línea de caché.
+     */
+    /**
+     * Desplazamiento del tipo de cuenta (1 byte).
+     */
+    private static final int TIPO = 0;
+    /**
+     * Desplazamiento de los 2 primeros dígitos del IBAN (1 byte), o
+     * {@link #IBAN_OTRO}.
+     */
+    private static final int IBAN_ALTO = 1;
+    /**
+     * Desplazamiento del número del conjunto de entidades (4 bytes).
+     */
+    private static final int ENTIDADES = 4;
+    /**
+     * Desplazamiento del saldo en céntimos (8 bytes).
+     */
+    private static final int SALDO = 8;
+    /**
+     * Desplazamiento del tipo de interés (8 bytes).
+     */
+    private static final int TIPO_INTERES = 16;
+    /**
+     * Desplazamiento de la comisión (8 bytes).
+     */
+    private static final int COMISION = 24;
+    /**
+     * Desplazamiento del descubierto máximo (8 bytes).
+     */
+    private static final int MAX_DESCUBIERTO = 32;
+    /**
+     * Desplazamiento de los 18 últimos dígitos del IBAN (8 bytes).
+     */
+    private static final int IBAN_BAJO = 40;
+    /**
+     * Desplazamiento del número del titular (4 bytes).
+     */
+    private static final int TITULAR = 48;
+
+    /**
+     * Valor de los 2 primeros dígitos del IBAN que indica que el IBAN no tiene
+     * el formato "ES" + 20 dígitos y está guardado aparte.
+     */
+    private static final byte IBAN_OTRO = -1;
+
+    /**
+     * Tamaño en bytes de cada registro.
+     */
+    static final int TAMANO_REGISTRO = 64;
+
+    /**
+     * Número de bits que hay que desplazar la posición dentro del bloque para
+     * obtener el desplazamiento del registro.
+     */
+    private static final int BITS_REGISTRO = 6;
+
+    /**
+     * Máscara para obtener el desplazamiento dentro del bloque.
+     */
+    private static final int MASCARA_BLOQUE = AlmacenCuentas.TAMANO_BLOQUE - 1;
+
+    /**
+     * Directorio de bloques de registros.
+     */
+    private ByteBuffer[] bloques = new ByteBuffer[8];
+
+    /**
+     * Titulares de las cuentas.
+     */
+    private final Referencias<Persona> TITULARES = new Referencias<>(Persona.class);
+
+    /**
+     * Conjuntos de entidades de las cuentas corrientes.
+     */
+    private final Referencias<ConjuntoEntidades> CONJUNTOS = new Referencias<>(ConjuntoEntidades.class);
+
+    /**
+     * IBAN sin el formato "ES" + 20 dígitos, por la posición de su cuenta.
+     */
+    private final Map<Integer, String> OTROS_IBAN = new ConcurrentHashMap<>();
+
+    /**
+     * Acceso atómico a los saldos dentro de los buffers.
+     */
+    private static final VarHandle SALDO_BUFFER = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /**
+     * Tabla de objetos del heap compartidos entre cuentas, que los registros
+     * identifican con un número. Cada objeto distinto (por identidad) ocupa
+     * una entrada, que no se borra aunque deje de usarse. El número 0 es el
+     * valor null, así que los registros recién reservados no tienen
+     * referencias.
+     * <p>
+     * Las entradas se añaden de una en una y se leen sin cerrojos: cada
+     * entrada se publica antes que el número que la identifica.
+     *
+     * @param <T> el tipo de los objetos
+     */
+    private static final class Referencias<T> {
+
+        /**
+         * Número de cada objeto, por identidad.
+         */
+        private final Map<T, Integer> NUMEROS = new IdentityHashMap<>();
+
+        /**
+         * Clase de los objetos, para crear el array de entradas.
+         */
+        private final Class<T> CLASE;
+
+        /**
+         * Objeto de cada número. Al crecer se sustituye por una copia.
+         */
+        private volatile T[] objetos;
+
+        /**
+         * Crea una tabla vacía.
+         *
+         * @param clase la clase de los objetos
+         */
+        @SuppressWarnings("unchecked")
+        Referencias(Class<T> clase) {
+            this.CLASE = clase;
+            this.objetos = (T[]) Array.newInstance(clase, 64);
+        }
+
+        /**
+         * Devuelve el objeto de un número.
+         *
+         * @param numero el número, o 0
+         *
+         * @return el objeto, o null si el número es 0
+         */
+        T objeto(int numero) {
+            return numero == 0 ? null : objetos[numero];
+        }
+
+        /**
+         * Devuelve el número de un objeto, añadiéndolo a la tabla si no estaba.
+         *
+         * @param objeto el objeto, o null
+         *
+         * @return el número del objeto, o 0 si es null
+         */
+        synchronized int numero(T objeto) {
+            if (objeto == null) {
+                return 0;
+            }
+            Integer numero = NUMEROS.get(objeto);
+            if (numero != null) {
+                return numero;
+            }
+            // La entrada 0 no se usa
+            int nuevo = NUMEROS.size() + 1;
+            T[] actuales = objetos;
+            if (nuevo == actuales.length) {
+                actuales = Arrays.copyOf(actuales, nuevo * 2);
+            }
+            actuales[nuevo] = objeto;
+            objetos = actuales;
+            NUMEROS.put(objeto, nuevo);
+            return nuevo;
+        }
+
+        /**
+         * Devuelve el número de entradas ocupadas.
+         *
+         * @return el número de objetos distintos de la tabla
+         */
+        synchronized int tamano() {
+            return NUMEROS.size();
+        }
+    }
+
+    /**
+     * Devuelve el bloque que contiene la posición indicada.
+     *
+     * @param posicion la posición de la cuenta
+     *
+     * @return el bloque de registros
+     */
+    private ByteBuffer bloque(int posicion) {
+        return bloques[posicion >>> AlmacenCuentas.BITS_BLOQUE];
+    }
+
+    /**
+     * Devuelve el desplazamiento del registro de la posición indicada dentro
+     * de su bloque.
+     *
+     * @param posicion la posición de la cuenta
+     *
+     * @return el desplazamiento en bytes del registro
+     */
+    private static int registro(int posicion) {
+        return (posicion & MASCARA_BLOQUE) << BITS_REGISTRO;
+    }
+
+    @Override
+    public void reservar(int posicion) {
+        int bloque = posicion >>> AlmacenCuentas.BITS_BLOQUE;
+        if (bloque >= bloques.length) {
+            bloques = Arrays.copyOf(bloques, Math.max(bloques.length * 2, bloque + 1));
+        }
+        // Los buffers directos se crean ya rellenos de ceros
+        if (bloques[bloque] == null) {
+            bloques[bloque] = ByteBuffer.allocateDirect(AlmacenCuentas.TAMANO_BLOQUE * TAMANO_REGISTRO)
+                    .order(ByteOrder.nativeOrder());
+        }
+    }
+
+    @Override
+    public byte getTipo(int posicion) {
+        return bloque(posicion).get(registro(posicion) + TIPO);
+    }
+
+    @Override
+    public void setTipo(int posicion, byte tipo) {
+        bloque(posicion).put(registro(posicion) + TIPO, tipo);
+    }
+
+    @Override
+    public Persona getTitular(int posicion) {
+        return TITULARES.objeto(bloque(posicion).getInt(registro(posicion) + TITULAR));
+    }
+
+    @Override
+    public void setTitular(int posicion, Persona titular) {
+        bloque(posicion).putInt(registro(posicion) + TITULAR, TITULARES.numero(titular));
+    }
+
+    @Override
+    public String getIban(int posicion) {
+        ByteBuffer bloque = bloque(posicion);
+        int registro = registro(posicion);
+        byte alta = bloque.get(registro + IBAN_ALTO);
+        if (alta == IBAN_OTRO) {
+            return OTROS_IBAN.get(posicion);
+        }
+        return IndiceIban.formar(alta, bloque.getLong(registro + IBAN_BAJO));
+    }
+
+    @Override
+    public void setIban(int posicion, String iban) {
+        ByteBuffer bloque = bloque(posicion);
+        int registro = registro(posicion);
+        if (iban != null && IndiceIban.esFormatoNumerico(iban)) {
+            bloque.putLong(registro + IBAN_BAJO, IndiceIban.claveBaja(iban));
+            bloque.put(registro + IBAN_ALTO, IndiceIban.claveAlta(iban));
+            OTROS_IBAN.remove(posicion);
+        } else {
+            // Los IBAN null no se guardan en el mapa, así que se leen como null
+            if (iban == null) {
+                OTROS_IBAN.remove(posicion);
+            } else {
+                OTROS_IBAN.put(posicion, iban);
+            }
+            bloque.put(registro + IBAN_ALTO, IBAN_OTRO);
+        }
+    }
+
+    @Override
+    public ConjuntoEntidades getEntidades(int posicion) {
+        return CONJUNTOS.objeto(bloque(posicion).getInt(registro(posicion) + ENTIDADES));
+    }
+
+    @Override
+    public void setEntidades(int posicion, ConjuntoEntidades entidades) {
+        bloque(posicion).putInt(registro(posicion) + ENTIDADES, CONJUNTOS.numero(entidades));
+    }
+
+    /**
+     * Devuelve el número de objetos distintos del heap a los que hacen
+     * referencia los registros: titulares y conjuntos de entidades.
+     *
+     * @return el número de referencias guardadas en el heap
+     */
+    int numReferencias() {
+        return TITULARES.tamano() + CONJUNTOS.tamano();
+    }
+
+    @Override
+    public long getSaldoCentimos(int posicion) {
+        return (long) SALDO_BUFFER.getVolatile(bloque(posicion), registro(posicion) + SALDO);
+    }
+
+    @Override
+    public void setSaldoCentimos(int posicion, long saldoCentimos) {
+        SALDO_BUFFER.setVolatile(bloque(posicion), registro(posicion) + SALDO, saldoCentimos);
+    }
+
+    @Override
+    public boolean compareAndSetSaldoCentimos(int posicion, long esperado, long nuevo) {
+        return SALDO_BUFFER.compareAndSet(bloque(posicion), registro(posicion) + SALDO, esperado, nuevo);
+    }
+
+    @Override
+    public double getTipoInteres(int posicion) {
+        return bloque(posicion).getDouble(registro(posicion) + TIPO_INTERES);
+    }
+
+    @Override
+    public void setTipoInteres(int posicion, double tipoInteres) {
+        bloque(posicion).putDouble(registro(posicion) + TIPO_INTERES, tipoInteres);
+    }
+
+    @Override
+    public double getComision(int posicion) {
+        return bloque(posicion).getDouble(registro(posicion) + COMISION);
+    }
+
+    @Override
+    public void setComision(int posicion, double comision) {
+        bloque(posicion).putDouble(registro(posicion) + COMISION, comision);
+    }
+
+    @Override
+    public double getMaxDescubierto(int posicion) {
+        return bloque(posicion).getDouble(registro(posicion) + MAX_DESCUBIERTO);
+    }
+
+    @Override
+    public void setMaxDescubierto(int posicion, double maxDescubierto) {
+        bloque(posicion).putDouble(registro(posicion) + MAX_DESCUBIERTO, maxDescubierto);
+    }
+
+    @Override
+    public long totalSaldos(int numCuentas) {
+        long total = 0;
+        for (int i = 0; i < numCuentas; i++) {
+            total += getSaldoCentimos(i);
+        }
+        return total;
+    }
+
+    @Override
+    public long totalDescubierto(int numCuentas) {
+        long total = 0;
+        for (int i = 0; i < numCuentas; i++) {
+            if (getTipo(i) == TIPO_EMPRESA && getSaldoCentimos(i) < 0) {
+                total -= getSaldoCentimos(i);
+            }
+        }
+        return total;
+    }
+}
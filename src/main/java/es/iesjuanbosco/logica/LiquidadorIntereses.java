@@ -0,0 +1,356 @@
+package es.iesjuanbosco.logica;
+
+import es.iesjuanbosco.util.Dinero;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Liquidación de intereses de fin de periodo de las cuentas de ahorro de un
+ * banco. Abona a cada cuenta de ahorro con saldo positivo los intereses del
+ * periodo según su tipo de interés anual, capitalizados a diario o
+ * mensualmente.
+ * <p>
+ * Las cuentas se reparten en tramos de posiciones consecutivas que se
+ * liquidan en paralelo en un {@link ForkJoinPool}: cada tramo se divide en
+ * dos mientras es mayor que {@link #UMBRAL}, de modo que los hilos que
+ * terminan antes roban trabajo a los demás. El número de hilos se elige al
+ * crear el liquidador.
+ * <p>
+ * El abono se hace con compare-and-set, igual que los ingresos del banco: si
+ * el saldo de una cuenta cambia por una operación simultánea mientras se
+ * calculan sus intereses, se vuelven a calcular sobre el saldo nuevo. Así los
+ * intereses corresponden siempre al saldo que tenía la cuenta justo antes del
+ * abono y no se pierde ninguna operación. Las cuentas que se abran durante la
+ * liquidación no se liquidan.
+ * <p>
+ * Los abonos se notifican a los oyentes del banco como operaciones de tipo
+ * {@link ResultadoOperacion.Tipo#INTERES}, un lote por tramo.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see CuentaAhorro#getTipoInteresAnual()
+ */
+public class LiquidadorIntereses implements AutoCloseable {
+
+    /**
+     * Número máximo de cuentas de un tramo que se liquida sin dividirlo.
+     */
+    static final int UMBRAL = 16_384;
+
+    /**
+     * Número de ulps del doble de los intereses calculados en double por
+     * debajo del cual se considera que pueden estar en el límite entre dos
+     * céntimos y se calculan de forma exacta. Cubre con margen el error del
+     * factor y del producto por el saldo.
+     */
+    private static final int ERROR_PUNTO_MEDIO = 16;
+
+    /**
+     * Formas de capitalizar los intereses.
+     */
+    public enum Capitalizacion {
+        /**
+         * Capitalización diaria: el periodo se mide en días.
+         */
+        DIARIA(365),
+        /**
+         * Capitalización mensual: el periodo se mide en meses.
+         */
+        MENSUAL(12);
+
+        /**
+         * Número de periodos de capitalización que tiene un año.
+         */
+        private final int PERIODOS_ANO;
+
+        /**
+         * Crea una forma de capitalizar.
+         *
+         * @param periodosAno el número de periodos que tiene un año
+         */
+        Capitalizacion(int periodosAno) {
+            this.PERIODOS_ANO = periodosAno;
+        }
+
+        /**
+         * Calcula la parte del saldo que suponen los intereses compuestos de
+         * varios periodos: (1 + tipo / periodos al año)^periodos - 1.
+         *
+         * @param tipoInteresAnual el tipo de interés anual (por ejemplo 2.5
+         *                         para un 2,5%)
+         * @param periodos         el número de periodos
+         *
+         * @return los intereses por cada euro de saldo
+         */
+        double factor(double tipoInteresAnual, int periodos) {
+            // Con log1p y expm1 no se pierde precisión con tipos pequeños
+            return Math.expm1(periodos * Math.log1p(tipoInteresAnual / 100 / PERIODOS_ANO));
+        }
+
+        /**
+         * Calcula los intereses de un saldo, redondeados a céntimos. Se
+         * calculan con el factor en double salvo que el resultado quede tan
+         * cerca de un céntimo o de medio céntimo que el error del cálculo
+         * pueda cambiar el redondeo; en ese caso se calculan de forma exacta.
+         *
+         * @param saldo            el saldo en céntimos
+         * @param tipoInteresAnual el tipo de interés anual
+         * @param periodos         el número de periodos
+         * @param factor           el resultado de
+         *                         {@link #factor(double, int)} para ese tipo
+         *                         y periodos
+         * @param modo             el modo de redondeo
+         *
+         * @return los intereses en céntimos
+         */
+        long intereses(long saldo, double tipoInteresAnual, int periodos, double factor, RoundingMode modo) {
+            double centimos = saldo * factor;
+            double doble = 2 * centimos;
+            if (Math.abs(doble - Math.rint(doble)) <= ERROR_PUNTO_MEDIO * Math.ulp(doble)) {
+                return interesesExactos(saldo, tipoInteresAnual, periodos, modo);
+            }
+            return Dinero.deEuros(centimos / Dinero.CENTIMOS_POR_EURO, modo);
+        }
+
+        /**
+         * Calcula los intereses de un saldo de forma exacta, como la fracción
+         * ((b + t)^n - b^n) / b^n del saldo, siendo t el tipo de interés sin
+         * decimales y b = 100 * periodos al año * 10^decimales del tipo.
+         *
+         * @param saldo            el saldo en céntimos
+         * @param tipoInteresAnual el tipo de interés anual
+         * @param periodos         el número de periodos
+         * @param modo             el modo de redondeo
+         *
+         * @return los intereses en céntimos
+         */
+        private long interesesExactos(long saldo, double tipoInteresAnual, int periodos, RoundingMode modo) {
+            BigDecimal tipo = BigDecimal.valueOf(tipoInteresAnual).stripTrailingZeros();
+            if (tipo.scale() < 0) {
+                tipo = tipo.setScale(0);
+            }
+            BigInteger base = BigInteger.TEN.pow(tipo.scale()).multiply(BigInteger.valueOf(100L * PERIODOS_ANO));
+            BigInteger denominador = base.pow(periodos);
+            BigInteger numerador = base.add(tipo.unscaledValue()).pow(periodos).subtract(denominador)
+                    .multiply(BigInteger.valueOf(saldo));
+            return new BigDecimal(numerador).divide(new BigDecimal(denominador), 0, modo).longValueExact();
+        }
+    }
+
+    /**
+     * Banco cuyas cuentas se liquidan.
+     */
+    private final Banco BANCO;
+
+    /**
+     * Pool de hilos en el que se liquidan los tramos.
+     */
+    private final ForkJoinPool POOL;
+
+    /**
+     * Crea un liquidador que usa tantos hilos como procesadores.
+     *
+     * @param banco el banco cuyas cuentas se liquidan
+     */
+    public LiquidadorIntereses(Banco banco) {
+        this(banco, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Crea un liquidador con un número de hilos determinado.
+     *
+     * @param banco el banco cuyas cuentas se liquidan
+     * @param hilos el número de hilos
+     *
+     * @throws IllegalArgumentException si el número de hilos es menor que 1
+     */
+    public LiquidadorIntereses(Banco banco, int hilos) {
+        if (hilos < 1) {
+            throw new IllegalArgumentException("Número de hilos no válido: " + hilos);
+        }
+        this.BANCO = banco;
+        this.POOL = new ForkJoinPool(hilos);
+    }
+
+    /**
+     * Abona los intereses de un periodo a todas las cuentas de ahorro del
+     * banco.
+     *
+     * @param capitalizacion la forma de capitalizar los intereses
+     * @param periodos       la duración del periodo, en días o meses según
+     *                       la capitalización
+     *
+     * @return el resumen de la liquidación
+     *
+     * @throws IllegalArgumentException si el número de periodos es negativo
+     * @throws ArithmeticException      si algún saldo deja de caber en un long
+     */
+    public ResumenIntereses liquidar(Capitalizacion capitalizacion, int periodos) {
+        if (periodos < 0) {
+            throw new IllegalArgumentException("Número de periodos no válido: " + periodos);
+        }
+        long inicio = System.nanoTime();
+        int numCuentas = BANCO.getContadorCuentas();
+        Parcial total = POOL.invoke(new Tramo(capitalizacion, periodos, BANCO.getModoRedondeo(), 0, numCuentas));
+        return new ResumenIntereses(numCuentas, total.cuentasAhorro(), total.cuentasAbonadas(),
+                total.centimosAbonados(), POOL.getParallelism(), System.nanoTime() - inicio);
+    }
+
+    /**
+     * Devuelve el número de hilos del liquidador.
+     *
+     * @return el número de hilos
+     */
+    public int getHilos() {
+        return POOL.getParallelism();
+    }
+
+    /**
+     * Detiene los hilos del liquidador.
+     */
+    @Override
+    public void close() {
+        POOL.shutdown();
+    }
+
+    /**
+     * Totales de la liquidación de un tramo.
+     *
+     * @param cuentasAhorro    el número de cuentas de ahorro
+     * @param cuentasAbonadas  el número de cuentas con intereses abonados
+     * @param centimosAbonados la suma de los intereses abonados
+     */
+    private record Parcial(long cuentasAhorro, long cuentasAbonadas, long centimosAbonados) {
+
+        /**
+         * Suma los totales de dos tramos.
+         *
+         * @param otro los totales del otro tramo
+         *
+         * @return la suma de los totales
+         */
+        Parcial sumar(Parcial otro) {
+            return new Parcial(cuentasAhorro + otro.cuentasAhorro, cuentasAbonadas + otro.cuentasAbonadas,
+                    centimosAbonados + otro.centimosAbonados);
+        }
+    }
+
+    /**
+     * Tarea que liquida las cuentas de un tramo de posiciones.
+     */
+    private final class Tramo extends RecursiveTask<Parcial> {
+
+        /**
+         * Versión de la clase para la serialización.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Forma de capitalizar los intereses.
+         */
+        private final Capitalizacion CAPITALIZACION;
+
+        /**
+         * Duración del periodo.
+         */
+        private final int PERIODOS;
+
+        /**
+         * Modo de redondeo de los intereses, el del banco al empezar la
+         * liquidación.
+         */
+        private final RoundingMode MODO_REDONDEO;
+
+        /**
+         * Primera posición del tramo.
+         */
+        private final int DESDE;
+
+        /**
+         * Posición siguiente a la última del tramo.
+         */
+        private final int HASTA;
+
+        /**
+         * Crea la tarea de un tramo.
+         *
+         * @param capitalizacion la forma de capitalizar los intereses
+         * @param periodos       la duración del periodo
+         * @param modoRedondeo   el modo de redondeo de los intereses
+         * @param desde          la primera posición del tramo
+         * @param hasta          la posición siguiente a la última del tramo
+         */
+        Tramo(Capitalizacion capitalizacion, int periodos, RoundingMode modoRedondeo, int desde, int hasta) {
+            this.CAPITALIZACION = capitalizacion;
+            this.PERIODOS = periodos;
+            this.MODO_REDONDEO = modoRedondeo;
+            this.DESDE = desde;
+            this.HASTA = hasta;
+        }
+
+        /**
+         * Liquida el tramo, dividiéndolo en dos si es mayor que el umbral:
+         * una mitad queda disponible para otro hilo y la otra se liquida en
+         * este.
+         *
+         * @return los totales del tramo
+         */
+        @Override
+        protected Parcial compute() {
+            if (HASTA - DESDE <= UMBRAL) {
+                return liquidarTramo();
+            }
+            int mitad = (DESDE + HASTA) >>> 1;
+            Tramo primera = new Tramo(CAPITALIZACION, PERIODOS, MODO_REDONDEO, DESDE, mitad);
+            primera.fork();
+            Parcial segunda = new Tramo(CAPITALIZACION, PERIODOS, MODO_REDONDEO, mitad, HASTA).compute();
+            return segunda.sumar(primera.join());
+        }
+
+        /**
+         * Liquida las cuentas del tramo y notifica los abonos en un lote.
+         *
+         * @return los totales del tramo
+         */
+        private Parcial liquidarTramo() {
+            List<ResultadoOperacion> lote = BANCO.hayOyentes() ? new ArrayList<>() : null;
+            long cuentasAhorro = 0, cuentasAbonadas = 0, centimosAbonados = 0;
+            // Casi todas las cuentas tienen uno de unos pocos tipos, así que se reutiliza el factor
+            double tipoAnterior = Double.NaN, factor = 0;
+            for (int i = DESDE; i < HASTA; i++) {
+                CuentaBancaria cuentaBancaria = BANCO.cuentaEnPosicion(i);
+                if (!(cuentaBancaria instanceof CuentaAhorro)) {
+                    continue;
+                }
+                CuentaAhorro cuenta = (CuentaAhorro) cuentaBancaria;
+                cuentasAhorro++;
+                double tipo = cuenta.getTipoInteresAnual();
+                if (tipo != tipoAnterior) {
+                    tipoAnterior = tipo;
+                    factor = CAPITALIZACION.factor(tipo, PERIODOS);
+                }
+                long saldo, interes;
+                do {
+                    saldo = cuenta.getSaldoCentimos();
+                    interes = saldo > 0 ? CAPITALIZACION.intereses(saldo, tipo, PERIODOS, factor, MODO_REDONDEO) : 0;
+                } while (interes > 0 && !cuenta.compareAndSetSaldoCentimos(saldo, Dinero.sumar(saldo, interes)));
+                if (interes > 0) {
+                    cuentasAbonadas++;
+                    centimosAbonados += interes;
+                    if (lote != null) {
+                        lote.add(ResultadoOperacion.exito(ResultadoOperacion.Tipo.INTERES, cuenta.getIban(), i, interes, saldo + interes));
+                    }
+                }
+            }
+            if (lote != null) {
+                BANCO.notificarLote(lote);
+            }
+            return new Parcial(cuentasAhorro, cuentasAbonadas, centimosAbonados);
+        }
+    }
+}
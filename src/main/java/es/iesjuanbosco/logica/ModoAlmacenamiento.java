@@ -0,0 +1,42 @@
+package es.iesjuanbosco.logica;
+
+/**
+ * Modos en los que el banco puede guardar los datos de las cuentas.
+ * <p>
+ * En los modos con libro contable el banco no guarda las cuentas que se
+ * abren, sino una copia de sus datos: los cambios que se hagan después en el
+ * objeto pasado al abrir la cuenta no llegan al banco, y las cuentas que
+ * devuelve el banco son vistas de sus datos en el libro. Sólo admiten cuentas
+ * de ahorro, corrientes personales y corrientes de empresa (no de sus
+ * subclases).
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see Banco
+ */
+public enum ModoAlmacenamiento {
+
+    /**
+     * El banco guarda las cuentas, y cada cuenta guarda sus datos en sus
+     * propios atributos.
+     */
+    OBJETOS,
+
+    /**
+     * Los datos de todas las cuentas se guardan en arrays (uno por atributo)
+     * indexados por la posición de la cuenta. Cada cuenta ocupa menos memoria
+     * que en el modo {@link #OBJETOS}, y las sumas de saldos y descubiertos de
+     * todo el banco recorren los arrays en lugar de las cuentas.
+     */
+    COLUMNAR,
+
+    /**
+     * Los datos de todas las cuentas se guardan fuera del heap de Java, en
+     * registros de tamaño fijo, y en el heap sólo quedan los objetos
+     * compartidos entre cuentas (titulares y conjuntos de entidades) y los
+     * índices del banco. El recolector de basura no tiene que recorrer los
+     * datos de las cuentas, y, igual que en el modo columnar, se gana
+     * velocidad en los recorridos de todo el banco.
+     */
+    FUERA_HEAP
+}
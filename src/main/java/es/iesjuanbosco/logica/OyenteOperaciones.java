@@ -0,0 +1,58 @@
+package es.iesjuanbosco.logica;
+
+import java.util.List;
+
+/**
+ * La interfaz OyenteOperaciones define los métodos a los que llama el banco
+ * cada vez que abre una cuenta o realiza una operación sobre el saldo de las
+ * cuentas.
+ * <p>
+ * El banco llama al oyente desde el mismo hilo que realiza la operación, justo
+ * después de cambiar el saldo, por lo que sus métodos deben ser rápidos y no
+ * lanzar excepciones. Si el oyente tiene que hacer un trabajo costoso (mostrar
+ * mensajes, escribir en disco...) debe pasarlo a otro hilo, por ejemplo con un
+ * {@link DespachadorOperaciones}.
+ * <p>
+ * Las operaciones simultáneas sobre una misma cuenta pueden notificarse en un
+ * orden distinto al que se realizaron; cada resultado lleva el saldo en el que
+ * quedó la cuenta tras su operación.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see Banco#anadirOyente(OyenteOperaciones)
+ */
+public interface OyenteOperaciones {
+
+    /**
+     * Se llama al abrir una cuenta, cuando ya está guardada en el banco pero
+     * antes de que pueda encontrarse o realizarse ninguna operación sobre
+     * ella. Por defecto no hace nada.
+     *
+     * @param cuenta   la cuenta abierta, tal como la guarda el banco
+     * @param posicion la posición de la cuenta en el banco
+     */
+    public default void cuentaAbierta(CuentaBancaria cuenta, int posicion) {
+    }
+
+    /**
+     * Se llama después de realizar una operación.
+     *
+     * @param resultado el resultado de la operación realizada
+     */
+    public void operacionRealizada(ResultadoOperacion resultado);
+
+    /**
+     * Se llama con un lote de operaciones realizadas. Por defecto llama a
+     * {@link #operacionRealizada(ResultadoOperacion)} con cada una de ellas;
+     * los oyentes que pueden tratar el lote de una vez (por ejemplo
+     * escribiéndolo en disco con una sola escritura) pueden redefinirlo.
+     *
+     * @param lote las operaciones realizadas, en el orden en que se
+     *             notificaron
+     */
+    public default void operacionesRealizadas(List<ResultadoOperacion> lote) {
+        for (ResultadoOperacion resultado : lote) {
+            operacionRealizada(resultado);
+        }
+    }
+}
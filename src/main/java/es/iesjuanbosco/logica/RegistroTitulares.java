@@ -0,0 +1,155 @@
+package es.iesjuanbosco.logica;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Registro de los titulares de las cuentas de un banco, indexados por su DNI
+ * normalizado. Cada cliente tiene una sola instancia de {@link Persona},
+ * compartida por todas sus cuentas, de modo que su nombre, apellidos y DNI no
+ * se repiten en memoria una vez por cuenta.
+ * <p>
+ * Cada titular guarda además las posiciones en el banco de sus cuentas, en el
+ * orden en que se abrieron, por lo que obtener las cuentas de un cliente no
+ * necesita recorrer todas las cuentas del banco.
+ * <p>
+ * El registro no detecta cambios de DNI hechos con
+ * {@link Persona#setDni(String)} una vez registrado el titular.
+ * <p>
+ * Los registros deben hacerse de uno en uno y las búsquedas no pueden hacerse
+ * a la vez que un registro (el banco protege ambos con su cerrojo de altas).
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see Banco
+ */
+final class RegistroTitulares {
+
+    /**
+     * Número de dígitos de un DNI completo.
+     */
+    private static final int DIGITOS_DNI = 8;
+
+    /**
+     * Titulares registrados, por su DNI normalizado.
+     */
+    private final Map<String, Titular> TITULARES = new HashMap<>();
+
+    /**
+     * Datos de un titular registrado: su instancia de Persona y las
+     * posiciones de sus cuentas.
+     */
+    private static final class Titular {
+
+        /**
+         * Persona que representa al titular en todas sus cuentas.
+         */
+        final Persona PERSONA;
+
+        /**
+         * Posiciones de las cuentas del titular en el banco. Sólo se usan las
+         * primeras {@link #numCuentas}.
+         */
+        int[] posiciones = new int[1];
+
+        /**
+         * Número de cuentas del titular.
+         */
+        int numCuentas;
+
+        /**
+         * Crea los datos de un titular sin cuentas.
+         *
+         * @param persona la persona que representa al titular
+         */
+        Titular(Persona persona) {
+            this.PERSONA = persona;
+        }
+
+        /**
+         * Añade una cuenta al titular.
+         *
+         * @param posicion la posición de la cuenta en el banco
+         */
+        void anadir(int posicion) {
+            if (numCuentas == posiciones.length) {
+                posiciones = Arrays.copyOf(posiciones, numCuentas * 2);
+            }
+            posiciones[numCuentas++] = posicion;
+        }
+    }
+
+    /**
+     * Registra una cuenta de un titular y devuelve la instancia de Persona que
+     * lo representa: la ya registrada si hay algún titular con el mismo DNI
+     * (que conserva sus datos) o, si no, la persona recibida.
+     *
+     * @param persona  el titular de la cuenta
+     * @param posicion la posición de la cuenta en el banco
+     *
+     * @return la persona que representa al titular, o la recibida si es null
+     *         o no tiene DNI (en ese caso no se registra)
+     */
+    Persona registrar(Persona persona, int posicion) {
+        if (persona == null || persona.getDni() == null) {
+            return persona;
+        }
+        Titular titular = TITULARES.computeIfAbsent(normalizar(persona.getDni()), dni -> new Titular(persona));
+        titular.anadir(posicion);
+        return titular.PERSONA;
+    }
+
+    /**
+     * Busca un titular por su DNI.
+     *
+     * @param dni el DNI del titular, normalizado o no
+     *
+     * @return la persona que representa al titular, o null si no hay ningún
+     *         titular con ese DNI
+     */
+    Persona buscar(String dni) {
+        Titular titular = TITULARES.get(normalizar(dni));
+        return titular == null ? null : titular.PERSONA;
+    }
+
+    /**
+     * Devuelve las posiciones en el banco de las cuentas de un titular.
+     *
+     * @param dni el DNI del titular, normalizado o no
+     *
+     * @return las posiciones de sus cuentas en el orden en que se abrieron
+     *         (vacío si no hay ningún titular con ese DNI)
+     */
+    int[] posiciones(String dni) {
+        Titular titular = TITULARES.get(normalizar(dni));
+        return titular == null ? new int[0] : Arrays.copyOf(titular.posiciones, titular.numCuentas);
+    }
+
+    /**
+     * Devuelve el número de titulares registrados.
+     *
+     * @return el número de titulares
+     */
+    int tamano() {
+        return TITULARES.size();
+    }
+
+    /**
+     * Normaliza un DNI para usarlo como clave: sin espacios alrededor, en
+     * mayúsculas y, si es un DNI de 7 dígitos, con un 0 delante (de modo que
+     * "1234567L" y "01234567l" son el mismo DNI).
+     *
+     * @param dni el DNI
+     *
+     * @return el DNI normalizado
+     */
+    static String normalizar(String dni) {
+        String normalizado = dni.trim().toUpperCase(Locale.ROOT);
+        if (normalizado.length() == DIGITOS_DNI && Character.isDigit(normalizado.charAt(0))) {
+            normalizado = "0" + normalizado;
+        }
+        return normalizado;
+    }
+}
@@ -0,0 +1,24 @@
+package es.iesjuanbosco.logica;
+
+/**
+ * Resultado de abrir una cuenta en el banco.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see Banco#altaCuenta(CuentaBancaria)
+ */
+public enum ResultadoAlta {
+    /**
+     * La cuenta se ha abierto.
+     */
+    ABIERTA,
+    /**
+     * No se ha abierto porque el banco ha alcanzado su número máximo de
+     * cuentas.
+     */
+    SIN_ESPACIO,
+    /**
+     * No se ha abierto porque ya hay una cuenta con el mismo IBAN.
+     */
+    IBAN_EXISTENTE
+}
@@ -0,0 +1,221 @@
+package es.iesjuanbosco.logica;
+
+import es.iesjuanbosco.util.FormatoMoneda;
+
+/**
+ * Resultado de una operación sobre el saldo de las cuentas (ingreso, retirada,
+ * transferencia o abono de intereses). Indica si la operación se ha realizado y por qué, y en ese
+ * caso el saldo en el que han quedado las cuentas y la comisión cobrada.
+ * <p>
+ * El banco no muestra ningún mensaje al realizar las operaciones: es quien
+ * las llama el que decide, a partir del resultado, si muestra algo y cómo.
+ *
+ * @param tipo                 el tipo de operación
+ * @param motivo               el motivo del resultado
+ * @param iban                 el IBAN de la cuenta de la operación (la de
+ *                             origen en las transferencias)
+ * @param ibanDestino          el IBAN de la cuenta de destino en las
+ *                             transferencias, null en el resto de operaciones
+ * @param posicion             la posición en el banco de la cuenta de la
+ *                             operación (la de origen en las transferencias),
+ *                             -1 si la operación no se ha realizado
+ * @param posicionDestino      la posición en el banco de la cuenta de destino
+ *                             en las transferencias realizadas, -1 en el resto
+ *                             de casos
+ * @param cantidadCentimos     la cantidad de la operación en céntimos
+ * @param saldoCentimos        el saldo en céntimos en el que ha quedado la
+ *                             cuenta (la de origen en las transferencias), 0
+ *                             si la operación no se ha realizado
+ * @param saldoDestinoCentimos el saldo en céntimos en el que ha quedado la
+ *                             cuenta de destino en las transferencias, 0 en el
+ *                             resto de casos
+ * @param comisionCentimos     la comisión por descubierto cobrada en céntimos,
+ *                             0 si no se ha cobrado comisión
+ * @param comisionFija         true si la comisión cobrada es la comisión fija
+ *                             por descubierto, false si es el porcentaje
+ * @param porcentajeComision   el tipo de interés por descubierto de la cuenta
+ *                             si se ha cobrado comisión, 0 en otro caso
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see Banco
+ */
+public record ResultadoOperacion(Tipo tipo, Motivo motivo, String iban, String ibanDestino,
+        int posicion, int posicionDestino, long cantidadCentimos, long saldoCentimos, long saldoDestinoCentimos,
+        long comisionCentimos, boolean comisionFija, double porcentajeComision) {
+
+    /**
+     * Tipos de operación.
+     */
+    public enum Tipo {
+        /**
+         * Ingreso en una cuenta.
+         */
+        INGRESO,
+        /**
+         * Retirada de una cuenta.
+         */
+        RETIRADA,
+        /**
+         * Transferencia entre dos cuentas.
+         */
+        TRANSFERENCIA,
+        /**
+         * Abono de intereses en una cuenta de ahorro.
+         */
+        INTERES
+    }
+
+    /**
+     * Motivos por los que una operación se realiza o no se realiza.
+     */
+    public enum Motivo {
+        /**
+         * La operación se ha realizado.
+         */
+        REALIZADA,
+        /**
+         * La operación se ha realizado y ha dejado al descubierto una cuenta
+         * de empresa, cobrándose la comisión por descubierto.
+         */
+        REALIZADA_CON_DESCUBIERTO,
+        /**
+         * La cantidad es 0, negativa o no es un número finito.
+         */
+        CANTIDAD_NO_VALIDA,
+        /**
+         * No existe ninguna cuenta con el IBAN indicado.
+         */
+        CUENTA_INEXISTENTE,
+        /**
+         * Las cuentas de origen y destino de una transferencia son la misma.
+         */
+        MISMA_CUENTA,
+        /**
+         * La cuenta no tiene saldo suficiente y no admite descubiertos.
+         */
+        SALDO_INSUFICIENTE,
+        /**
+         * La cantidad supera el saldo disponible más el descubierto máximo de
+         * una cuenta de empresa.
+         */
+        SUPERA_DESCUBIERTO_MAXIMO,
+        /**
+         * La cantidad o el saldo en el que quedaría alguna de las cuentas no
+         * caben en el importe máximo que se puede representar en céntimos.
+         */
+        FUERA_DE_RANGO,
+        /**
+         * Se ha producido un error inesperado al aplicar la operación o al
+         * notificarla, por lo que no se sabe si se ha llegado a realizar.
+         */
+        ERROR_INTERNO
+    }
+
+    /**
+     * Crea el resultado de una operación realizada sin comisión.
+     *
+     * @param tipo             el tipo de operación
+     * @param iban             el IBAN de la cuenta
+     * @param posicion         la posición de la cuenta en el banco
+     * @param cantidadCentimos la cantidad de la operación en céntimos
+     * @param saldoCentimos    el saldo en el que ha quedado la cuenta
+     *
+     * @return el resultado de la operación
+     */
+    static ResultadoOperacion exito(Tipo tipo, String iban, int posicion, long cantidadCentimos, long saldoCentimos) {
+        return new ResultadoOperacion(tipo, Motivo.REALIZADA, iban, null, posicion, -1, cantidadCentimos, saldoCentimos, 0, 0, false, 0);
+    }
+
+    /**
+     * Crea el resultado de una operación que no se ha realizado.
+     *
+     * @param tipo             el tipo de operación
+     * @param motivo           el motivo por el que no se ha realizado
+     * @param iban             el IBAN de la cuenta (la de origen en las
+     *                         transferencias)
+     * @param ibanDestino      el IBAN de la cuenta de destino, o null
+     * @param cantidadCentimos la cantidad de la operación en céntimos
+     *
+     * @return el resultado de la operación
+     */
+    static ResultadoOperacion rechazo(Tipo tipo, Motivo motivo, String iban, String ibanDestino, long cantidadCentimos) {
+        return new ResultadoOperacion(tipo, motivo, iban, ibanDestino, -1, -1, cantidadCentimos, 0, 0, 0, false, 0);
+    }
+
+    /**
+     * Comprueba si la operación se ha realizado.
+     *
+     * @return true si la operación se ha realizado, con o sin comisión
+     */
+    public boolean esRealizada() {
+        return motivo == Motivo.REALIZADA || motivo == Motivo.REALIZADA_CON_DESCUBIERTO;
+    }
+
+    /**
+     * Devuelve el mensaje que describe el resultado de la operación: la
+     * cantidad, la comisión por descubierto y el nuevo saldo si se ha
+     * realizado, o el motivo por el que se ha rechazado.
+     *
+     * @return un String con el mensaje
+     */
+    public String devolverMensaje() {
+        // Verbo de la operación para los mensajes de error
+        String verbo = switch (tipo) {
+            case INGRESO ->
+                "ingresar";
+            case RETIRADA ->
+                "retirar";
+            case TRANSFERENCIA ->
+                "transferir";
+            case INTERES ->
+                "abonar";
+        };
+        return switch (motivo) {
+            case REALIZADA, REALIZADA_CON_DESCUBIERTO -> {
+                String mensaje = switch (tipo) {
+                    case INGRESO ->
+                        "Se ha ingresado la cantidad de: " + FormatoMoneda.euros(cantidadCentimos);
+                    case RETIRADA ->
+                        "Se ha retirado la cantidad de: " + FormatoMoneda.euros(cantidadCentimos);
+                    case TRANSFERENCIA ->
+                        "Se ha transferido la cantidad de: " + FormatoMoneda.euros(cantidadCentimos);
+                    case INTERES ->
+                        "Se han abonado intereses por: " + FormatoMoneda.euros(cantidadCentimos);
+                };
+                /*
+                 * En caso de descubierto se informa de la cuantía de la
+                 * comisión aplicada; dependiendo de si se ha aplicado una
+                 * comisión fija o el porcentaje se muestra un mensaje u otro.
+                 */
+                if (motivo == Motivo.REALIZADA_CON_DESCUBIERTO) {
+                    mensaje += "\nLa cuenta ha quedado al descubierto."
+                            + (comisionFija
+                            ? "Esta operación tiene una comisión fija por descubierto de " + FormatoMoneda.euros(comisionCentimos)
+                            : "Esta operación tiene una comisión del " + FormatoMoneda.porcentaje(porcentajeComision)
+                            + " (" + FormatoMoneda.euros(comisionCentimos) + ")");
+                }
+                mensaje += "\nEl nuevo saldo de la cuenta es: " + FormatoMoneda.euros(saldoCentimos);
+                // En las transferencias se muestra también el saldo de la cuenta de destino
+                if (tipo == Tipo.TRANSFERENCIA) {
+                    mensaje += "\nEl nuevo saldo de la cuenta de destino es: " + FormatoMoneda.euros(saldoDestinoCentimos);
+                }
+                yield mensaje;
+            }
+            case CANTIDAD_NO_VALIDA ->
+                "¡La cantidad a " + verbo + " no puede ser 0 o negativa!";
+            case CUENTA_INEXISTENTE ->
+                "¡La cuenta ingresada no existe!";
+            case MISMA_CUENTA ->
+                "¡Las cuentas de origen y destino han de ser distintas!";
+            case SALDO_INSUFICIENTE ->
+                "No hay saldo suficiente en la cuenta";
+            case SUPERA_DESCUBIERTO_MAXIMO ->
+                "La cantidad introducida es superior al saldo disponible + descubierto máximo";
+            case FUERA_DE_RANGO ->
+                "¡La cantidad a " + verbo + " o el saldo resultante superan el importe máximo admitido!";
+            case ERROR_INTERNO ->
+                "¡Se ha producido un error inesperado y no se sabe si la operación se ha realizado!";
+        };
+    }
+}
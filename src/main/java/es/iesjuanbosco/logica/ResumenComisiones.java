@@ -0,0 +1,35 @@
+package es.iesjuanbosco.logica;
+
+/**
+ * Resumen de un cobro de comisiones de mantenimiento de las cuentas
+ * corrientes personales.
+ *
+ * @param cuentas            el número de cuentas del banco recorridas
+ * @param cuentasPersonales  el número de cuentas corrientes personales entre
+ *                           ellas
+ * @param cobradas           el número de cuentas a las que se ha cobrado la
+ *                           comisión
+ * @param rechazadas         el número de cuentas a las que no se ha cobrado
+ *                           por no tener saldo suficiente
+ * @param centimosCobrados   la suma de las comisiones cobradas en céntimos
+ * @param centimosRechazados la suma de las comisiones no cobradas por falta de
+ *                           saldo en céntimos
+ * @param hilos              el número de hilos con los que se ha cobrado
+ * @param nanosegundos       el tiempo que ha durado el cobro
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see CobradorComisiones
+ */
+public record ResumenComisiones(long cuentas, long cuentasPersonales, long cobradas, long rechazadas,
+        long centimosCobrados, long centimosRechazados, int hilos, long nanosegundos) {
+
+    /**
+     * Devuelve el número de cuentas recorridas por segundo.
+     *
+     * @return las cuentas por segundo, o 0 si el cobro no ha durado nada
+     */
+    public double cuentasPorSegundo() {
+        return nanosegundos == 0 ? 0 : cuentas * 1e9 / nanosegundos;
+    }
+}
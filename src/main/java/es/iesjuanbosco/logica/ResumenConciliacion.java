@@ -0,0 +1,43 @@
+package es.iesjuanbosco.logica;
+
+/**
+ * Resultado de conciliar los agregados de un banco, mantenidos operación a
+ * operación, con los que se obtienen recorriendo todas sus cuentas. Cada
+ * diferencia es el valor del agregado menos el del recorrido.
+ * <p>
+ * Si se opera con el banco durante la conciliación puede haber diferencias
+ * pasajeras, incluso con los agregados estables: una operación ya realizada
+ * cuyo resultado aún no se ha notificado está en el recorrido pero no en los
+ * agregados. Una diferencia que se repite en varias conciliaciones indica un
+ * cambio de saldo que no ha pasado por el banco.
+ *
+ * @param cuentas               el número de cuentas recorridas
+ * @param diferenciaCuentas     la suma de las diferencias, en valor
+ *                              absoluto, del número de cuentas de cada tipo
+ * @param diferenciaSaldos      la diferencia de la suma de los saldos, en
+ *                              céntimos
+ * @param diferenciaDescubierto la diferencia del descubierto total de las
+ *                              cuentas de empresa, en céntimos
+ * @param estable               true si los agregados no cambiaron mientras
+ *                              se recorrían las cuentas; si cambiaron, las
+ *                              diferencias pueden deberse a operaciones en
+ *                              curso
+ * @param intentos              el número de recorridos que se han hecho
+ * @param nanosegundos          el tiempo que ha durado la conciliación
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see AgregadosBanco#conciliar()
+ */
+public record ResumenConciliacion(long cuentas, long diferenciaCuentas, long diferenciaSaldos,
+        long diferenciaDescubierto, boolean estable, int intentos, long nanosegundos) {
+
+    /**
+     * Comprueba si los agregados coinciden con el recorrido de las cuentas.
+     *
+     * @return true si no hay ninguna diferencia
+     */
+    public boolean cuadra() {
+        return diferenciaCuentas == 0 && diferenciaSaldos == 0 && diferenciaDescubierto == 0;
+    }
+}
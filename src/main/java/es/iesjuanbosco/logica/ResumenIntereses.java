@@ -0,0 +1,30 @@
+package es.iesjuanbosco.logica;
+
+/**
+ * Resumen de una liquidación de intereses de las cuentas de ahorro.
+ *
+ * @param cuentas          el número de cuentas del banco recorridas
+ * @param cuentasAhorro    el número de cuentas de ahorro entre ellas
+ * @param cuentasAbonadas  el número de cuentas de ahorro en las que se han
+ *                         abonado intereses (las que tenían saldo positivo y
+ *                         un interés de al menos un céntimo)
+ * @param centimosAbonados la suma de los intereses abonados en céntimos
+ * @param hilos            el número de hilos con los que se ha liquidado
+ * @param nanosegundos     el tiempo que ha durado la liquidación
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see LiquidadorIntereses
+ */
+public record ResumenIntereses(long cuentas, long cuentasAhorro, long cuentasAbonadas,
+        long centimosAbonados, int hilos, long nanosegundos) {
+
+    /**
+     * Devuelve el número de cuentas recorridas por segundo.
+     *
+     * @return las cuentas por segundo, o 0 si la liquidación no ha durado nada
+     */
+    public double cuentasPorSegundo() {
+        return nanosegundos == 0 ? 0 : cuentas * 1e9 / nanosegundos;
+    }
+}
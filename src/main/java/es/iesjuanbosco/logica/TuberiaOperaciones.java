@@ -0,0 +1,703 @@
+package es.iesjuanbosco.logica;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Modo tubería del banco: en lugar de que cada hilo opere directamente con
+ * las cuentas, los hilos productores publican las órdenes (ingresos,
+ * retiradas y transferencias) en un anillo de huecos reservados de antemano
+ * y un único hilo aplicador las realiza sobre el banco, una detrás de otra,
+ * en el orden en que se publicaron.
+ * <p>
+ * Detrás del aplicador van las etapas: oyentes de operaciones (por ejemplo el
+ * diario de operaciones y los que muestran o agregan los resultados) que leen
+ * los resultados de los mismos huecos del anillo, cada uno desde su propio
+ * hilo y por lotes. Un hueco no se reutiliza hasta que lo han leído todas las
+ * etapas, por lo que no se copia ni se crea ningún objeto por orden aparte del
+ * resultado.
+ * <p>
+ * Cada orden recibe un número de secuencia. Los contadores que indican hasta
+ * dónde ha llegado cada hilo sólo los escribe ese hilo, así que el anillo no
+ * necesita cerrojos: los productores sólo compiten por el siguiente número de
+ * secuencia, y los hilos que no tienen trabajo esperan girando un poco, luego
+ * cediendo el procesador y al final durmiendo brevemente.
+ * <p>
+ * Como todas las órdenes las aplica un solo hilo, las operaciones del banco
+ * nunca compiten entre sí: sus cerrojos y sus compare-and-set se resuelven
+ * siempre al primer intento.
+ * <p>
+ * La tubería se añade como oyente del banco. Las altas de cuentas y las
+ * operaciones que se hagan directamente sobre el banco, fuera de la tubería,
+ * se publican en el anillo ya hechas: el aplicador no las vuelve a aplicar y
+ * las etapas las reciben desde su propio hilo, en el mismo orden que las
+ * órdenes. Así cada etapa se llama siempre desde un único hilo y no necesita
+ * sincronizarse. Las etapas no deben operar con el banco, ya que podrían
+ * quedarse esperando a que ellas mismas liberasen un hueco.
+ * <p>
+ * Quien necesite el resultado de una orden puede publicarla con los métodos
+ * que devuelven un {@link CompletableFuture}, que se completa con el resultado
+ * cuando la orden ha pasado por el aplicador y por todas las etapas. Los demás
+ * métodos sólo devuelven el número de secuencia y no crean ningún objeto.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see OyenteOperaciones
+ */
+public class TuberiaOperaciones implements OyenteOperaciones, AutoCloseable {
+
+    /**
+     * Capacidad por defecto del anillo.
+     */
+    public static final int CAPACIDAD_POR_DEFECTO = 65_536;
+
+    /**
+     * Número máximo de resultados que una etapa entrega de una vez.
+     */
+    private static final int TAMANO_LOTE = 1024;
+
+    /**
+     * Banco sobre el que se aplican las órdenes.
+     */
+    private final Banco BANCO;
+
+    /**
+     * Huecos del anillo.
+     */
+    private final Hueco[] ANILLO;
+
+    /**
+     * Máscara para obtener el hueco de una secuencia (capacidad - 1).
+     */
+    private final int MASCARA;
+
+    /**
+     * Siguiente número de secuencia que se reserva para una orden.
+     */
+    private final AtomicLong RESERVADAS = new AtomicLong();
+
+    /**
+     * Número de huecos aplicados por el hilo aplicador, incluidos los de las
+     * altas y operaciones hechas fuera de la tubería.
+     */
+    private final AtomicLong APLICADAS = new AtomicLong();
+
+    /**
+     * Número de huecos cuyo resultado se ha entregado a quien lo esperaba.
+     * Sólo lo escribe el hilo aplicador, y un hueco no se reutiliza hasta
+     * entonces.
+     */
+    private final AtomicLong AVISADAS = new AtomicLong();
+
+    /**
+     * Número de órdenes publicadas en la tubería que se han aplicado. Sólo lo
+     * escribe el hilo aplicador.
+     */
+    private volatile long ordenesAplicadas;
+
+    /**
+     * Número de órdenes cuya aplicación ha lanzado una excepción.
+     */
+    private final AtomicLong FALLIDAS = new AtomicLong();
+
+    /**
+     * Etapas que reciben los resultados.
+     */
+    private final OyenteOperaciones[] ETAPAS;
+
+    /**
+     * Número de órdenes leídas por cada etapa.
+     */
+    private final AtomicLong[] LEIDAS;
+
+    /**
+     * Hilo aplicador.
+     */
+    private final Thread APLICADOR;
+
+    /**
+     * Hilos de las etapas.
+     */
+    private final Thread[] HILOS_ETAPAS;
+
+    /**
+     * Indica si se ha cerrado la tubería.
+     */
+    private volatile boolean cerrada;
+
+    /**
+     * Crea una tubería con la capacidad por defecto y arranca sus hilos.
+     *
+     * @param banco  el banco sobre el que se aplican las órdenes
+     * @param etapas los oyentes que reciben los resultados
+     */
+    public TuberiaOperaciones(Banco banco, OyenteOperaciones... etapas) {
+        this(banco, CAPACIDAD_POR_DEFECTO, etapas);
+    }
+
+    /**
+     * Crea una tubería, arranca sus hilos y la añade como oyente del banco.
+     * Las etapas que estuvieran añadidas como oyentes del banco se quitan, ya
+     * que a partir de ahora reciben los resultados desde la tubería.
+     *
+     * @param banco     el banco sobre el que se aplican las órdenes
+     * @param capacidad el número de huecos del anillo (potencia de 2)
+     * @param etapas    los oyentes que reciben los resultados
+     *
+     * @throws IllegalArgumentException si la capacidad no es una potencia de 2
+     */
+    public TuberiaOperaciones(Banco banco, int capacidad, OyenteOperaciones... etapas) {
+        if (capacidad < 1 || Integer.bitCount(capacidad) != 1) {
+            throw new IllegalArgumentException("La capacidad ha de ser una potencia de 2");
+        }
+        this.BANCO = banco;
+        this.ANILLO = new Hueco[capacidad];
+        for (int i = 0; i < capacidad; i++) {
+            this.ANILLO[i] = new Hueco();
+        }
+        this.MASCARA = capacidad - 1;
+        this.ETAPAS = etapas.clone();
+        this.LEIDAS = new AtomicLong[etapas.length];
+        this.HILOS_ETAPAS = new Thread[etapas.length];
+        for (int i = 0; i < etapas.length; i++) {
+            banco.eliminarOyente(etapas[i]);
+            this.LEIDAS[i] = new AtomicLong();
+            final int etapa = i;
+            this.HILOS_ETAPAS[i] = new Thread(() -> this.leer(etapa), "etapa-tuberia-" + i);
+            this.HILOS_ETAPAS[i].setDaemon(true);
+        }
+        this.APLICADOR = new Thread(this::aplicar, "aplicador-tuberia");
+        this.APLICADOR.setDaemon(true);
+        banco.anadirOyente(this);
+        this.APLICADOR.start();
+        for (Thread hilo : this.HILOS_ETAPAS) {
+            hilo.start();
+        }
+    }
+
+    /**
+     * Publica un ingreso.
+     *
+     * @param iban     el IBAN de la cuenta
+     * @param centimos la cantidad en céntimos
+     *
+     * @return el número de secuencia de la orden
+     *
+     * @throws IllegalStateException si la tubería está cerrada
+     * @throws NullPointerException  si algún IBAN es null
+     */
+    public long ingreso(String iban, long centimos) {
+        return publicar(ResultadoOperacion.Tipo.INGRESO, iban, null, centimos, null);
+    }
+
+    /**
+     * Publica un ingreso y devuelve su resultado futuro.
+     *
+     * @param iban     el IBAN de la cuenta
+     * @param centimos la cantidad en céntimos
+     *
+     * @return el resultado, que se completa cuando el ingreso ha pasado por
+     *         el aplicador y por todas las etapas
+     *
+     * @throws IllegalStateException si la tubería está cerrada
+     * @throws NullPointerException  si algún IBAN es null
+     */
+    public CompletableFuture<ResultadoOperacion> ingresoConResultado(String iban, long centimos) {
+        CompletableFuture<ResultadoOperacion> resultado = new CompletableFuture<>();
+        publicar(ResultadoOperacion.Tipo.INGRESO, iban, null, centimos, resultado);
+        return resultado;
+    }
+
+    /**
+     * Publica una retirada.
+     *
+     * @param iban     el IBAN de la cuenta
+     * @param centimos la cantidad en céntimos
+     *
+     * @return el número de secuencia de la orden
+     *
+     * @throws IllegalStateException si la tubería está cerrada
+     * @throws NullPointerException  si algún IBAN es null
+     */
+    public long retirada(String iban, long centimos) {
+        return publicar(ResultadoOperacion.Tipo.RETIRADA, iban, null, centimos, null);
+    }
+
+    /**
+     * Publica una retirada y devuelve su resultado futuro.
+     *
+     * @param iban     el IBAN de la cuenta
+     * @param centimos la cantidad en céntimos
+     *
+     * @return el resultado, que se completa cuando la retirada ha pasado por
+     *         el aplicador y por todas las etapas
+     *
+     * @throws IllegalStateException si la tubería está cerrada
+     * @throws NullPointerException  si algún IBAN es null
+     */
+    public CompletableFuture<ResultadoOperacion> retiradaConResultado(String iban, long centimos) {
+        CompletableFuture<ResultadoOperacion> resultado = new CompletableFuture<>();
+        publicar(ResultadoOperacion.Tipo.RETIRADA, iban, null, centimos, resultado);
+        return resultado;
+    }
+
+    /**
+     * Publica una transferencia.
+     *
+     * @param ibanOrigen  el IBAN de la cuenta de origen
+     * @param ibanDestino el IBAN de la cuenta de destino
+     * @param centimos    la cantidad en céntimos
+     *
+     * @return el número de secuencia de la orden
+     *
+     * @throws IllegalStateException si la tubería está cerrada
+     * @throws NullPointerException  si algún IBAN es null
+     */
+    public long transferencia(String ibanOrigen, String ibanDestino, long centimos) {
+        return publicar(ResultadoOperacion.Tipo.TRANSFERENCIA, ibanOrigen, ibanDestino, centimos, null);
+    }
+
+    /**
+     * Publica una transferencia y devuelve su resultado futuro.
+     *
+     * @param ibanOrigen  el IBAN de la cuenta de origen
+     * @param ibanDestino el IBAN de la cuenta de destino
+     * @param centimos    la cantidad en céntimos
+     *
+     * @return el resultado, que se completa cuando la transferencia ha pasado
+     *         por el aplicador y por todas las etapas
+     *
+     * @throws IllegalStateException si la tubería está cerrada
+     * @throws NullPointerException  si algún IBAN es null
+     */
+    public CompletableFuture<ResultadoOperacion> transferenciaConResultado(String ibanOrigen, String ibanDestino,
+            long centimos) {
+        CompletableFuture<ResultadoOperacion> resultado = new CompletableFuture<>();
+        publicar(ResultadoOperacion.Tipo.TRANSFERENCIA, ibanOrigen, ibanDestino, centimos, resultado);
+        return resultado;
+    }
+
+    /**
+     * Publica una orden en el anillo.
+     *
+     * @param tipo        el tipo de operación
+     * @param iban        el IBAN de la cuenta (de origen en las
+     *                    transferencias)
+     * @param ibanDestino el IBAN de la cuenta de destino, o null
+     * @param centimos    la cantidad en céntimos
+     * @param aviso       el resultado futuro que se completa al terminar la
+     *                    orden, o null
+     *
+     * @return el número de secuencia de la orden
+     */
+    private long publicar(ResultadoOperacion.Tipo tipo, String iban, String ibanDestino, long centimos,
+            CompletableFuture<ResultadoOperacion> aviso) {
+        if (cerrada) {
+            throw new IllegalStateException("La tubería está cerrada");
+        }
+        // Se comprueba aquí para que una orden incorrecta no detenga el hilo aplicador
+        Objects.requireNonNull(iban);
+        if (tipo == ResultadoOperacion.Tipo.TRANSFERENCIA) {
+            Objects.requireNonNull(ibanDestino);
+        }
+        long secuencia = RESERVADAS.getAndIncrement();
+        Hueco hueco = reservar(secuencia);
+        hueco.tipo = tipo;
+        hueco.iban = iban;
+        hueco.ibanDestino = ibanDestino;
+        hueco.centimos = centimos;
+        hueco.resultado = null;
+        hueco.hecha = false;
+        hueco.cuenta = null;
+        hueco.aviso = aviso;
+        // La escritura volátil publica el resto de campos del hueco
+        hueco.secuencia = secuencia;
+        return secuencia;
+    }
+
+    /**
+     * Publica en el anillo un alta o una operación ya hecha sobre el banco,
+     * para que el aplicador la deje pasar y la reciban las etapas.
+     *
+     * @param resultado el resultado de la operación, o null si es un alta
+     * @param cuenta    la cuenta abierta, o null si es una operación
+     * @param posicion  la posición de la cuenta abierta
+     */
+    private void publicarHecha(ResultadoOperacion resultado, CuentaBancaria cuenta, int posicion) {
+        long secuencia = RESERVADAS.getAndIncrement();
+        Hueco hueco = reservar(secuencia);
+        hueco.tipo = resultado == null ? null : resultado.tipo();
+        hueco.resultado = resultado;
+        hueco.hecha = true;
+        hueco.cuenta = cuenta;
+        hueco.posicion = posicion;
+        hueco.aviso = null;
+        hueco.secuencia = secuencia;
+    }
+
+    /**
+     * Espera a que el hueco de una secuencia quede libre: a que su orden
+     * anterior haya pasado por todas las etapas y se haya entregado su
+     * resultado.
+     *
+     * @param secuencia el número de secuencia reservado
+     *
+     * @return el hueco, que sólo puede rellenar quien reservó la secuencia
+     */
+    private Hueco reservar(long secuencia) {
+        long anterior = secuencia - ANILLO.length;
+        for (int intento = 0; anterior >= Math.min(minimoLeido(), AVISADAS.get()); intento++) {
+            esperarPaso(intento);
+        }
+        return ANILLO[(int) secuencia & MASCARA];
+    }
+
+    /**
+     * Devuelve el número de huecos que han leído todas las etapas (o que se
+     * han aplicado, si no hay etapas).
+     *
+     * @return el número de huecos terminados
+     */
+    private long minimoLeido() {
+        long minimo = APLICADAS.get();
+        for (AtomicLong leidas : LEIDAS) {
+            minimo = Math.min(minimo, leidas.get());
+        }
+        return minimo;
+    }
+
+    /**
+     * Espera a que una orden haya pasado por el aplicador y por todas las
+     * etapas. Si una de las etapas es un diario síncrono, al volver la orden
+     * ya está escrita en disco.
+     *
+     * @param secuencia el número de secuencia de la orden
+     */
+    public void esperar(long secuencia) {
+        for (int intento = 0; minimoLeido() <= secuencia; intento++) {
+            esperarPaso(intento);
+        }
+    }
+
+    /**
+     * Devuelve el número de órdenes publicadas en la tubería que se han
+     * aplicado sobre el banco hasta el momento.
+     *
+     * @return el número de órdenes aplicadas
+     */
+    public long getAplicadas() {
+        return ordenesAplicadas;
+    }
+
+    /**
+     * Devuelve el número de órdenes cuya aplicación ha lanzado una excepción
+     * (por ejemplo porque ha fallado un oyente del banco). Su resultado tiene
+     * el motivo {@link ResultadoOperacion.Motivo#ERROR_INTERNO}.
+     *
+     * @return el número de órdenes fallidas
+     */
+    public long getFallidas() {
+        return FALLIDAS.get();
+    }
+
+    /**
+     * Bucle del hilo aplicador: aplica sobre el banco las órdenes publicadas,
+     * en orden de secuencia, y guarda el resultado en su hueco. Los huecos de
+     * altas y operaciones hechas fuera de la tubería se dejan pasar. El
+     * contador de huecos aplicados se actualiza una vez por cada tanda de
+     * huecos disponibles.
+     * <p>
+     * Si una orden lanza una excepción se guarda en su hueco un resultado
+     * fallido y se sigue con la siguiente: si el aplicador terminase, los
+     * productores y las etapas esperarían para siempre.
+     * <p>
+     * Entre tanda y tanda, y mientras espera, el aplicador entrega los
+     * resultados de las órdenes que ya han pasado por todas las etapas.
+     */
+    private void aplicar() {
+        long siguiente = 0;
+        int intento = 0;
+        while (true) {
+            Hueco hueco = ANILLO[(int) siguiente & MASCARA];
+            if (hueco.secuencia != siguiente) {
+                if (cerrada && siguiente == RESERVADAS.get()) {
+                    return;
+                }
+                if (!avisar()) {
+                    esperarPaso(intento++);
+                }
+                continue;
+            }
+            intento = 0;
+            long inicio = siguiente;
+            long ordenes = ordenesAplicadas;
+            do {
+                if (!hueco.hecha) {
+                    hueco.resultado = this.aplicar(hueco);
+                    ordenes++;
+                }
+                siguiente++;
+                hueco = ANILLO[(int) siguiente & MASCARA];
+            } while (hueco.secuencia == siguiente && siguiente - inicio < ANILLO.length);
+            ordenesAplicadas = ordenes;
+            APLICADAS.set(siguiente);
+            avisar();
+        }
+    }
+
+    /**
+     * Entrega los resultados de las órdenes que ya han pasado por todas las
+     * etapas a quien los esperaba, y libra sus huecos. Sólo lo llama el hilo
+     * aplicador, o el que cierra la tubería cuando ya han terminado los demás.
+     *
+     * @return true si se ha librado algún hueco
+     */
+    private boolean avisar() {
+        long desde = AVISADAS.get();
+        long hasta = minimoLeido();
+        for (long i = desde; i < hasta; i++) {
+            Hueco hueco = ANILLO[(int) i & MASCARA];
+            if (hueco.aviso != null) {
+                hueco.aviso.complete(hueco.resultado);
+                hueco.aviso = null;
+            }
+        }
+        AVISADAS.set(Math.max(desde, hasta));
+        return hasta > desde;
+    }
+
+    /**
+     * Aplica sobre el banco la orden de un hueco.
+     *
+     * @param hueco el hueco con la orden
+     *
+     * @return el resultado de la orden, o un resultado con el motivo
+     *         {@link ResultadoOperacion.Motivo#ERROR_INTERNO} si ha lanzado
+     *         una excepción
+     */
+    private ResultadoOperacion aplicar(Hueco hueco) {
+        try {
+            return switch (hueco.tipo) {
+                case INGRESO ->
+                    BANCO.ingresoCentimos(hueco.iban, hueco.centimos);
+                case RETIRADA ->
+                    BANCO.retiradaCentimos(hueco.iban, hueco.centimos);
+                case TRANSFERENCIA ->
+                    BANCO.transferenciaCentimos(hueco.iban, hueco.ibanDestino, hueco.centimos);
+                // No se publican órdenes de abono de intereses
+                case INTERES ->
+                    throw new IllegalStateException("Orden no admitida: " + hueco.tipo);
+            };
+        } catch (RuntimeException e) {
+            FALLIDAS.incrementAndGet();
+            System.err.println("Error al aplicar una orden de la tubería: " + e);
+            return ResultadoOperacion.rechazo(hueco.tipo, ResultadoOperacion.Motivo.ERROR_INTERNO,
+                    hueco.iban, hueco.ibanDestino, hueco.centimos);
+        }
+    }
+
+    /**
+     * Bucle del hilo de una etapa: lee los resultados de las órdenes ya
+     * aplicadas y entrega los de las operaciones realizadas a su oyente, por
+     * lotes, y las altas de cuentas una a una, en el orden del anillo.
+     *
+     * @param etapa el número de la etapa
+     */
+    private void leer(int etapa) {
+        OyenteOperaciones oyente = ETAPAS[etapa];
+        AtomicLong leidas = LEIDAS[etapa];
+        List<ResultadoOperacion> lote = new ArrayList<>(TAMANO_LOTE);
+        long siguiente = 0;
+        int intento = 0;
+        while (true) {
+            long aplicadas = APLICADAS.get();
+            if (siguiente == aplicadas) {
+                // Si el aplicador ha terminado se comprueba que no aplicó nada más antes de terminar
+                if (!APLICADOR.isAlive() && APLICADAS.get() == siguiente) {
+                    return;
+                }
+                esperarPaso(intento++);
+                continue;
+            }
+            intento = 0;
+            // Se entrega lo disponible en lotes, y cada lote se da por leído al terminar
+            while (siguiente < aplicadas) {
+                long fin = Math.min(aplicadas, siguiente + TAMANO_LOTE);
+                for (; siguiente < fin; siguiente++) {
+                    Hueco hueco = ANILLO[(int) siguiente & MASCARA];
+                    if (hueco.cuenta != null) {
+                        // Las operaciones anteriores se entregan antes que el alta
+                        entregar(oyente, lote);
+                        try {
+                            oyente.cuentaAbierta(hueco.cuenta, hueco.posicion);
+                        } catch (RuntimeException e) {
+                            System.err.println("Error al notificar un alta: " + e);
+                        }
+                    } else if (hueco.resultado.esRealizada()) {
+                        lote.add(hueco.resultado);
+                    }
+                }
+                entregar(oyente, lote);
+                leidas.set(siguiente);
+            }
+        }
+    }
+
+    /**
+     * Entrega a una etapa un lote de resultados, si no está vacío, y lo
+     * vacía.
+     *
+     * @param oyente el oyente de la etapa
+     * @param lote   los resultados
+     */
+    private static void entregar(OyenteOperaciones oyente, List<ResultadoOperacion> lote) {
+        if (!lote.isEmpty()) {
+            try {
+                oyente.operacionesRealizadas(lote);
+            } catch (RuntimeException e) {
+                // Un fallo del oyente no debe detener la tubería
+                System.err.println("Error al notificar operaciones: " + e);
+            }
+            lote.clear();
+        }
+    }
+
+    /**
+     * Espera sin cerrojos a que otro hilo avance: primero gira, después cede
+     * el procesador y si la espera se alarga duerme brevemente.
+     *
+     * @param intento el número de veces que se ha esperado seguidas
+     */
+    private static void esperarPaso(int intento) {
+        if (intento < 100) {
+            Thread.onSpinWait();
+        } else if (intento < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50_000);
+        }
+    }
+
+    /**
+     * Publica el alta en el anillo, para que las etapas la reciban desde su
+     * propio hilo.
+     *
+     * @param cuenta   la cuenta abierta
+     * @param posicion la posición de la cuenta en el banco
+     */
+    @Override
+    public void cuentaAbierta(CuentaBancaria cuenta, int posicion) {
+        if (cerrada) {
+            System.err.println("Alta recibida con la tubería cerrada: " + cuenta.getIban());
+        } else {
+            publicarHecha(null, cuenta, posicion);
+        }
+    }
+
+    /**
+     * Publica en el anillo las operaciones realizadas directamente sobre el
+     * banco, fuera de la tubería, para que las etapas las reciban desde su
+     * propio hilo. Las del hilo aplicador se ignoran, ya que las etapas las
+     * leen del hueco de su orden.
+     *
+     * @param resultado el resultado de la operación realizada
+     */
+    @Override
+    public void operacionRealizada(ResultadoOperacion resultado) {
+        if (Thread.currentThread() == APLICADOR) {
+            return;
+        }
+        if (cerrada) {
+            System.err.println("Operación recibida con la tubería cerrada: " + resultado.devolverMensaje());
+        } else {
+            publicarHecha(resultado, null, -1);
+        }
+    }
+
+    /**
+     * Deja de recibir las operaciones del banco y de admitir órdenes, espera a
+     * que se apliquen y lean todas las publicadas, entrega los resultados
+     * pendientes y detiene los hilos de la tubería. No deben publicarse
+     * órdenes mientras se cierra la tubería.
+     */
+    @Override
+    public void close() {
+        BANCO.eliminarOyente(this);
+        cerrada = true;
+        try {
+            APLICADOR.join();
+            for (Thread hilo : HILOS_ETAPAS) {
+                hilo.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Ya han terminado los demás hilos, así que nadie más entrega resultados
+        avisar();
+    }
+
+    /**
+     * Hueco del anillo. Se reutiliza para todas las órdenes que le
+     * corresponden.
+     */
+    private static final class Hueco {
+
+        /**
+         * Número de secuencia de la orden publicada en el hueco. Se escribe el
+         * último al publicar la orden.
+         */
+        volatile long secuencia = -1;
+
+        /**
+         * Tipo de operación.
+         */
+        ResultadoOperacion.Tipo tipo;
+
+        /**
+         * IBAN de la cuenta (de origen en las transferencias).
+         */
+        String iban;
+
+        /**
+         * IBAN de la cuenta de destino en las transferencias.
+         */
+        String ibanDestino;
+
+        /**
+         * Cantidad en céntimos.
+         */
+        long centimos;
+
+        /**
+         * Resultado de la orden, una vez aplicada, o de la operación hecha
+         * fuera de la tubería.
+         */
+        ResultadoOperacion resultado;
+
+        /**
+         * Indica si el hueco es un alta o una operación ya hecha fuera de la
+         * tubería, que el aplicador no tiene que aplicar.
+         */
+        boolean hecha;
+
+        /**
+         * Cuenta abierta, si el hueco es un alta.
+         */
+        CuentaBancaria cuenta;
+
+        /**
+         * Posición de la cuenta abierta.
+         */
+        int posicion;
+
+        /**
+         * Resultado futuro que se completa al terminar la orden, o null si
+         * nadie lo espera.
+         */
+        CompletableFuture<ResultadoOperacion> aviso;
+    }
+}
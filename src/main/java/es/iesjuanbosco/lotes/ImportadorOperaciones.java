@@ -0,0 +1,556 @@
+package es.iesjuanbosco.lotes;
+
+import es.iesjuanbosco.logica.Banco;
+import es.iesjuanbosco.logica.ResultadoOperacion;
+import es.iesjuanbosco.util.ValidadorIBAN;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Importador de ficheros de operaciones. Lee un fichero de texto con una
+ * operación por línea y la aplica al banco. Cada línea tiene el formato:
+ *
+ * <pre>
+ * IBAN;OPERACION;CANTIDAD
+ * </pre>
+ *
+ * donde OPERACION es I (ingreso) o R (retirada) y CANTIDAD es una cantidad en
+ * euros con hasta 2 decimales, separados con punto o coma (por ejemplo
+ * {@code ES28345678901234567890;I;150,25}). Las líneas vacías se ignoran.
+ * <p>
+ * El fichero se proyecta en memoria y se recorre byte a byte, sin crear un
+ * String por cada campo: el IBAN se busca en el banco a través de una vista
+ * sobre los bytes del fichero y la cantidad se convierte directamente a
+ * céntimos. Antes de buscarlo, el IBAN se comprueba (formato y dígitos de
+ * control) directamente sobre esos bytes. Las líneas con formato incorrecto
+ * o un IBAN no válido y las operaciones que el banco no realiza se escriben,
+ * seguidas del motivo, en un fichero de rechazos. Los rechazos se escriben en
+ * el fichero a medida que se encuentran, sin guardarlos en memoria.
+ * <p>
+ * El fichero se divide en trozos que terminan en un salto de línea, que pueden
+ * procesarse en paralelo. En ese caso las operaciones de trozos distintos se
+ * aplican en cualquier orden, por lo que sólo debe usarse si el orden entre
+ * operaciones de una misma cuenta no importa (por ejemplo, si el fichero sólo
+ * tiene ingresos). Cada trozo escribe sus rechazos en un fichero temporal junto
+ * al de rechazos, que se copia a éste (y se borra) en cuanto el trozo termina
+ * y han terminado los anteriores, para mantener el orden del fichero.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see ResumenImportacion
+ */
+public class ImportadorOperaciones {
+
+    /**
+     * Tamaño aproximado por defecto de cada trozo del fichero (16 MB).
+     */
+    public static final int TAMANO_TROZO_POR_DEFECTO = 16 << 20;
+
+    /**
+     * Motivo de rechazo de las líneas que no tienen el formato correcto.
+     */
+    public static final String FORMATO_NO_VALIDO = "FORMATO_NO_VALIDO";
+
+    /**
+     * Motivo de rechazo de las líneas con un IBAN que no tiene el formato
+     * correcto o cuyos dígitos de control no son correctos.
+     */
+    public static final String IBAN_NO_VALIDO = "IBAN_NO_VALIDO";
+
+    /**
+     * Motivo de rechazo de las líneas con una operación desconocida.
+     */
+    public static final String OPERACION_NO_VALIDA = "OPERACION_NO_VALIDA";
+
+    /**
+     * Separador de los campos de cada línea.
+     */
+    private static final byte SEPARADOR = ';';
+
+    /**
+     * Número máximo de dígitos de la parte entera de las cantidades, para que
+     * su valor en céntimos quepa en un long.
+     */
+    private static final int MAX_DIGITOS_ENTEROS = 15;
+
+    /**
+     * Tamaño del buffer de escritura de los ficheros de rechazos.
+     */
+    private static final int TAMANO_BUFFER = 64 << 10;
+
+    /**
+     * Banco en el que se aplican las operaciones.
+     */
+    private final Banco BANCO;
+
+    /**
+     * Tamaño aproximado de cada trozo del fichero.
+     */
+    private final int TAMANO_TROZO;
+
+    /**
+     * Crea un importador de operaciones con el tamaño de trozo por defecto.
+     *
+     * @param banco el banco en el que se aplican las operaciones
+     */
+    public ImportadorOperaciones(Banco banco) {
+        this(banco, TAMANO_TROZO_POR_DEFECTO);
+    }
+
+    /**
+     * Crea un importador de operaciones.
+     *
+     * @param banco       el banco en el que se aplican las operaciones
+     * @param tamanoTrozo el tamaño aproximado en bytes de cada trozo en que se
+     *                    divide el fichero
+     *
+     * @throws IllegalArgumentException si el tamaño del trozo es menor que 1
+     */
+    public ImportadorOperaciones(Banco banco, int tamanoTrozo) {
+        if (tamanoTrozo < 1) {
+            throw new IllegalArgumentException("El tamaño del trozo ha de ser mayor que 0");
+        }
+        this.BANCO = banco;
+        this.TAMANO_TROZO = tamanoTrozo;
+    }
+
+    /**
+     * Importa un fichero de operaciones desde un solo hilo, aplicando las
+     * operaciones en el orden del fichero.
+     *
+     * @param fichero  el fichero de operaciones
+     * @param rechazos el fichero en el que se escriben las líneas rechazadas
+     *
+     * @return el resumen de la importación
+     *
+     * @throws IOException si no se puede leer el fichero de operaciones o
+     *                     escribir el de rechazos
+     */
+    public ResumenImportacion importar(Path fichero, Path rechazos) throws IOException {
+        return importar(fichero, rechazos, 1);
+    }
+
+    /**
+     * Importa un fichero de operaciones procesando sus trozos con el número de
+     * hilos indicado. Con más de un hilo no se garantiza el orden entre
+     * operaciones de trozos distintos. Las líneas rechazadas se escriben en el
+     * orden del fichero.
+     *
+     * @param fichero  el fichero de operaciones
+     * @param rechazos el fichero en el que se escriben las líneas rechazadas
+     * @param hilos    el número de hilos
+     *
+     * @return el resumen de la importación
+     *
+     * @throws IOException              si no se puede leer el fichero de
+     *                                  operaciones o escribir el de rechazos
+     * @throws IllegalArgumentException si el número de hilos es menor que 1
+     */
+    public ResumenImportacion importar(Path fichero, Path rechazos, int hilos) throws IOException {
+        if (hilos < 1) {
+            throw new IllegalArgumentException("El número de hilos ha de ser mayor que 0");
+        }
+        long inicio = System.nanoTime();
+        Recuento total = new Recuento();
+        try (FileChannel canal = FileChannel.open(fichero, StandardOpenOption.READ);
+                OutputStream salida = new BufferedOutputStream(Files.newOutputStream(rechazos), TAMANO_BUFFER)) {
+            List<Long> limites = dividir(canal);
+            int trozos = limites.size() - 1;
+            if (hilos == 1 || trozos <= 1) {
+                for (int i = 0; i < trozos; i++) {
+                    total.sumar(procesarTrozo(canal, limites.get(i), limites.get(i + 1), salida));
+                }
+            } else {
+                ExecutorService ejecutor = Executors.newFixedThreadPool(Math.min(hilos, trozos));
+                List<Path> parciales = new ArrayList<>(trozos);
+                try {
+                    List<Future<Recuento>> pendientes = new ArrayList<>(trozos);
+                    for (int i = 0; i < trozos; i++) {
+                        long desde = limites.get(i), hasta = limites.get(i + 1);
+                        Path parcial = rechazos.resolveSibling(rechazos.getFileName() + "." + i + ".tmp");
+                        parciales.add(parcial);
+                        pendientes.add(ejecutor.submit(() -> {
+                            try (OutputStream rechazosTrozo = new BufferedOutputStream(
+                                    Files.newOutputStream(parcial), TAMANO_BUFFER)) {
+                                return procesarTrozo(canal, desde, hasta, rechazosTrozo);
+                            }
+                        }));
+                    }
+                    // Se suman los recuentos y se copian los rechazos en el orden de los trozos
+                    for (int i = 0; i < trozos; i++) {
+                        total.sumar(esperar(pendientes.get(i)));
+                        Files.copy(parciales.get(i), salida);
+                        Files.delete(parciales.get(i));
+                    }
+                } finally {
+                    ejecutor.shutdownNow();
+                    for (Path parcial : parciales) {
+                        Files.deleteIfExists(parcial);
+                    }
+                }
+            }
+        }
+        return new ResumenImportacion(total.lineas, total.ingresos, total.retiradas, total.rechazadas,
+                total.centimosIngresados, total.centimosRetirados, total.centimosComisiones, System.nanoTime() - inicio);
+    }
+
+    /**
+     * Divide el fichero en trozos de aproximadamente el tamaño de trozo
+     * configurado, alargando cada uno hasta el siguiente salto de línea para
+     * que ninguna línea quede partida.
+     *
+     * @param canal el canal del fichero
+     *
+     * @return las posiciones de inicio de cada trozo, seguidas del tamaño del
+     *         fichero
+     *
+     * @throws IOException si no se puede leer el fichero o tiene una línea
+     *                     demasiado larga
+     */
+    private List<Long> dividir(FileChannel canal) throws IOException {
+        long tamano = canal.size();
+        List<Long> limites = new ArrayList<>();
+        ByteBuffer lectura = ByteBuffer.allocate(4096);
+        long posicion = 0;
+        limites.add(posicion);
+        while (posicion < tamano) {
+            long fin = Math.min(tamano, posicion + TAMANO_TROZO);
+            // Se busca el siguiente salto de línea a partir del último byte del trozo
+            long busqueda = fin - 1;
+            while (fin < tamano) {
+                lectura.clear();
+                int leidos = canal.read(lectura, busqueda);
+                if (leidos <= 0) {
+                    fin = tamano;
+                    break;
+                }
+                int salto = -1;
+                for (int i = 0; i < leidos && salto < 0; i++) {
+                    if (lectura.get(i) == '\n') {
+                        salto = i;
+                    }
+                }
+                if (salto >= 0) {
+                    fin = busqueda + salto + 1;
+                    break;
+                }
+                busqueda += leidos;
+            }
+            // Cada trozo se proyecta en un solo buffer, que no puede superar los 2 GB
+            if (fin - posicion > Integer.MAX_VALUE) {
+                throw new IOException("El fichero tiene una línea demasiado larga");
+            }
+            limites.add(fin);
+            posicion = fin;
+        }
+        return limites;
+    }
+
+    /**
+     * Proyecta en memoria un trozo del fichero y procesa sus líneas.
+     *
+     * @param canal    el canal del fichero
+     * @param desde    la posición del fichero en la que empieza el trozo
+     * @param hasta    la posición del fichero en la que termina el trozo
+     * @param rechazos el flujo en el que se escriben las líneas rechazadas
+     *
+     * @return el recuento de las operaciones del trozo
+     *
+     * @throws IOException si no se puede proyectar el trozo o escribir los
+     *                     rechazos
+     */
+    private Recuento procesarTrozo(FileChannel canal, long desde, long hasta, OutputStream rechazos)
+            throws IOException {
+        Recuento recuento = new Recuento(rechazos);
+        MappedByteBuffer datos = canal.map(FileChannel.MapMode.READ_ONLY, desde, hasta - desde);
+        // La misma vista se reutiliza para todos los IBAN del trozo
+        VistaBytes iban = new VistaBytes(datos);
+        int limite = datos.limit();
+        int linea = 0;
+        while (linea < limite) {
+            int fin = linea;
+            while (fin < limite && datos.get(fin) != '\n') {
+                fin++;
+            }
+            // Se admiten también los saltos de línea de Windows (\r\n)
+            int finContenido = fin;
+            if (finContenido > linea && datos.get(finContenido - 1) == '\r') {
+                finContenido--;
+            }
+            if (finContenido > linea) {
+                procesarLinea(datos, iban, linea, finContenido, recuento);
+            }
+            linea = fin + 1;
+        }
+        return recuento;
+    }
+
+    /**
+     * Procesa una línea del fichero: separa sus campos, aplica la operación en
+     * el banco y la anota en el recuento.
+     *
+     * @param datos    el buffer con el trozo del fichero
+     * @param iban     la vista que se usa para buscar el IBAN
+     * @param inicio   la posición del buffer en la que empieza la línea
+     * @param fin      la posición del buffer en la que termina la línea (sin
+     *                 el salto de línea)
+     * @param recuento el recuento del trozo
+     *
+     * @throws IOException si no se puede escribir el rechazo de la línea
+     */
+    private void procesarLinea(ByteBuffer datos, VistaBytes iban, int inicio, int fin, Recuento recuento)
+            throws IOException {
+        recuento.lineas++;
+        int separador1 = buscar(datos, inicio, fin);
+        int separador2 = separador1 < 0 ? -1 : buscar(datos, separador1 + 1, fin);
+        long centimos = separador2 < 0 ? -1 : leerCantidad(datos, separador2 + 1, fin);
+        // La operación ha de ocupar un solo carácter
+        if (separador2 != separador1 + 2 || centimos < 0) {
+            rechazar(datos, inicio, fin, FORMATO_NO_VALIDO, recuento);
+            return;
+        }
+        if (!ValidadorIBAN.esValido(datos, inicio, separador1 - inicio)) {
+            rechazar(datos, inicio, fin, IBAN_NO_VALIDO, recuento);
+            return;
+        }
+        int posicion = BANCO.posicionCuenta(iban.apuntar(inicio, separador1 - inicio));
+        ResultadoOperacion resultado;
+        switch (datos.get(separador1 + 1)) {
+            case 'I', 'i' ->
+                resultado = BANCO.ingresoPosicion(posicion, centimos);
+            case 'R', 'r' ->
+                resultado = BANCO.retiradaPosicion(posicion, centimos);
+            default -> {
+                rechazar(datos, inicio, fin, OPERACION_NO_VALIDA, recuento);
+                return;
+            }
+        }
+        if (!resultado.esRealizada()) {
+            rechazar(datos, inicio, fin, resultado.motivo().name(), recuento);
+        } else if (resultado.tipo() == ResultadoOperacion.Tipo.INGRESO) {
+            recuento.ingresos++;
+            recuento.centimosIngresados += centimos;
+        } else {
+            // A la cuenta se le carga la cantidad y la comisión por descubierto
+            recuento.retiradas++;
+            recuento.centimosRetirados += centimos + resultado.comisionCentimos();
+            recuento.centimosComisiones += resultado.comisionCentimos();
+        }
+    }
+
+    /**
+     * Busca el siguiente separador de campos.
+     *
+     * @param datos el buffer en el que se busca
+     * @param desde la posición en la que empieza la búsqueda
+     * @param hasta la posición en la que termina la búsqueda (no incluida)
+     *
+     * @return la posición del separador, o -1 si no hay ninguno
+     */
+    private static int buscar(ByteBuffer datos, int desde, int hasta) {
+        for (int i = desde; i < hasta; i++) {
+            if (datos.get(i) == SEPARADOR) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Convierte a céntimos una cantidad en euros escrita con hasta 2
+     * decimales, sin crear objetos.
+     *
+     * @param datos el buffer que contiene la cantidad
+     * @param desde la posición en la que empieza la cantidad
+     * @param hasta la posición en la que termina la cantidad (no incluida)
+     *
+     * @return la cantidad en céntimos, o -1 si no tiene un formato correcto
+     */
+    private static long leerCantidad(ByteBuffer datos, int desde, int hasta) {
+        long enteros = 0;
+        int digitos = 0;
+        int i = desde;
+        while (i < hasta && esDigito(datos.get(i))) {
+            enteros = enteros * 10 + (datos.get(i) - '0');
+            digitos++;
+            i++;
+        }
+        if (digitos == 0 || digitos > MAX_DIGITOS_ENTEROS) {
+            return -1;
+        }
+        long centimos = enteros * 100;
+        // Parte decimal, con punto o coma y 1 o 2 dígitos
+        if (i < hasta) {
+            if (datos.get(i) != '.' && datos.get(i) != ',') {
+                return -1;
+            }
+            i++;
+            int decimales = 0;
+            long fraccion = 0;
+            while (i < hasta && decimales < 2 && esDigito(datos.get(i))) {
+                fraccion = fraccion * 10 + (datos.get(i) - '0');
+                decimales++;
+                i++;
+            }
+            if (i != hasta || decimales == 0) {
+                return -1;
+            }
+            centimos += decimales == 1 ? fraccion * 10 : fraccion;
+        }
+        return centimos;
+    }
+
+    /**
+     * Comprueba si un byte es un dígito ASCII.
+     *
+     * @param caracter el byte a comprobar
+     *
+     * @return true si es un dígito del 0 al 9
+     */
+    private static boolean esDigito(byte caracter) {
+        return caracter >= '0' && caracter <= '9';
+    }
+
+    /**
+     * Anota una línea rechazada: la escribe en los rechazos del trozo seguida
+     * de un separador y el motivo.
+     *
+     * @param datos    el buffer con el trozo del fichero
+     * @param inicio   la posición en la que empieza la línea
+     * @param fin      la posición en la que termina la línea
+     * @param motivo   el motivo del rechazo
+     * @param recuento el recuento del trozo
+     *
+     * @throws IOException si no se puede escribir el rechazo
+     */
+    private static void rechazar(ByteBuffer datos, int inicio, int fin, String motivo, Recuento recuento)
+            throws IOException {
+        recuento.rechazadas++;
+        for (int i = inicio; i < fin; i++) {
+            recuento.rechazos.write(datos.get(i));
+        }
+        recuento.rechazos.write(SEPARADOR);
+        recuento.rechazos.write(motivo.getBytes(StandardCharsets.US_ASCII));
+        recuento.rechazos.write('\n');
+    }
+
+    /**
+     * Espera a que termine el procesado de un trozo en paralelo.
+     *
+     * @param pendiente el procesado pendiente
+     *
+     * @return el recuento del trozo
+     *
+     * @throws IOException si el procesado del trozo ha fallado o se ha
+     *                     interrumpido la espera
+     */
+    private static Recuento esperar(Future<Recuento> pendiente) throws IOException {
+        try {
+            return pendiente.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Importación interrumpida");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Recuento de las operaciones de un trozo del fichero y sus líneas
+     * rechazadas.
+     */
+    private static final class Recuento {
+
+        /**
+         * Número de líneas con operaciones.
+         */
+        long lineas;
+
+        /**
+         * Número de ingresos realizados.
+         */
+        long ingresos;
+
+        /**
+         * Número de retiradas realizadas.
+         */
+        long retiradas;
+
+        /**
+         * Número de líneas rechazadas.
+         */
+        long rechazadas;
+
+        /**
+         * Suma de las cantidades ingresadas en céntimos.
+         */
+        long centimosIngresados;
+
+        /**
+         * Suma de lo cargado por las retiradas en céntimos, con comisiones.
+         */
+        long centimosRetirados;
+
+        /**
+         * Suma de las comisiones por descubierto cobradas en céntimos.
+         */
+        long centimosComisiones;
+
+        /**
+         * Flujo en el que se escriben las líneas rechazadas, con su motivo, o
+         * null en el recuento total.
+         */
+        final OutputStream rechazos;
+
+        /**
+         * Crea el recuento total, que no escribe rechazos.
+         */
+        Recuento() {
+            this(null);
+        }
+
+        /**
+         * Crea el recuento de un trozo.
+         *
+         * @param rechazos el flujo en el que se escriben sus líneas rechazadas
+         */
+        Recuento(OutputStream rechazos) {
+            this.rechazos = rechazos;
+        }
+
+        /**
+         * Suma a este recuento los valores de otro.
+         *
+         * @param otro el otro recuento
+         */
+        void sumar(Recuento otro) {
+            lineas += otro.lineas;
+            ingresos += otro.ingresos;
+            retiradas += otro.retiradas;
+            rechazadas += otro.rechazadas;
+            centimosIngresados += otro.centimosIngresados;
+            centimosRetirados += otro.centimosRetirados;
+            centimosComisiones += otro.centimosComisiones;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package es.iesjuanbosco.lotes;
+
+/**
+ * Resumen de la importación de un fichero de operaciones.
+ *
+ * @param lineas             el número de líneas con operaciones leídas (sin
+ *                           contar las vacías)
+ * @param ingresos           el número de ingresos realizados
+ * @param retiradas          el número de retiradas realizadas
+ * @param rechazadas         el número de líneas rechazadas, por formato
+ *                           incorrecto o porque el banco no ha realizado la
+ *                           operación
+ * @param centimosIngresados la suma de las cantidades ingresadas en céntimos
+ * @param centimosRetirados  la suma de lo que se ha cargado en las cuentas por
+ *                           las retiradas en céntimos, incluidas las
+ *                           comisiones por descubierto
+ * @param centimosComisiones la parte de centimosRetirados que corresponde a
+ *                           comisiones por descubierto
+ * @param nanosegundos       el tiempo que ha durado la importación
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see ImportadorOperaciones
+ */
+public record ResumenImportacion(long lineas, long ingresos, long retiradas, long rechazadas,
+        long centimosIngresados, long centimosRetirados, long centimosComisiones, long nanosegundos) {
+
+    /**
+     * Devuelve el número de líneas procesadas por segundo.
+     *
+     * @return las líneas por segundo, o 0 si la importación no ha durado nada
+     */
+    public double lineasPorSegundo() {
+        return nanosegundos == 0 ? 0 : lineas * 1e9 / nanosegundos;
+    }
+}
@@ -0,0 +1,85 @@
+package es.iesjuanbosco.lotes;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Secuencia de caracteres que muestra un fragmento de un buffer de bytes (con
+ * caracteres de un byte) sin copiarlo. La misma vista se reutiliza para
+ * recorrer todos los campos de un fichero, cambiando el fragmento al que
+ * apunta, de modo que no se crea un String por cada campo.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+final class VistaBytes implements CharSequence {
+
+    /**
+     * Buffer que contiene los bytes.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Posición del buffer en la que empieza el fragmento.
+     */
+    private int inicio;
+
+    /**
+     * Número de bytes del fragmento.
+     */
+    private int longitud;
+
+    /**
+     * Crea una vista vacía sobre el buffer indicado.
+     *
+     * @param buffer el buffer que contiene los bytes
+     */
+    VistaBytes(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Cambia el fragmento del buffer que muestra la vista.
+     *
+     * @param inicio   la posición del buffer en la que empieza el fragmento
+     * @param longitud el número de bytes del fragmento
+     *
+     * @return la propia vista
+     */
+    VistaBytes apuntar(int inicio, int longitud) {
+        this.inicio = inicio;
+        this.longitud = longitud;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return longitud;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= longitud) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return (char) (buffer.get(inicio + index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    /**
+     * Devuelve el fragmento como String. Es el único método que crea objetos.
+     *
+     * @return el fragmento como String
+     */
+    @Override
+    public String toString() {
+        char[] caracteres = new char[longitud];
+        for (int i = 0; i < longitud; i++) {
+            caracteres[i] = charAt(i);
+        }
+        return new String(caracteres);
+    }
+}
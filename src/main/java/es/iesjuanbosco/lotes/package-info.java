@@ -0,0 +1,5 @@
+/**
+ * Este paquete contiene las clases para aplicar al banco operaciones por lotes
+ * a partir de ficheros, como el importador de ficheros de operaciones.
+ */
+package es.iesjuanbosco.lotes;
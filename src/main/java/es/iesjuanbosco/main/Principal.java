@@ -1,7 +1,16 @@
 package es.iesjuanbosco.main;
 
 import es.iesjuanbosco.logica.*;
+import es.iesjuanbosco.lotes.*;
+import es.iesjuanbosco.persistencia.*;
+import es.iesjuanbosco.servidor.ServidorBanco;
+import es.iesjuanbosco.util.Dinero;
+import es.iesjuanbosco.util.FormatoMoneda;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 import static es.iesjuanbosco.util.Utilidades.*;
 
 /**
@@ -29,6 +38,20 @@ public class Principal {
      */
     private static final Banco BANCO = new Banco();
 
+    /**
+     * Directorio del diario de operaciones y de las instantáneas del banco.
+     *
+     * @hidden
+     */
+    private static final Path DIRECTORIO_DATOS = Path.of("datos-banco");
+
+    /**
+     * Diario de operaciones del banco, o null si no se ha podido abrir.
+     *
+     * @hidden
+     */
+    private static DiarioOperaciones diario;
+
     /**
      * Método que solicita al usuario el IBAN y verifica si es correcto.
      *
@@ -39,7 +62,8 @@ public class Principal {
         /*
          * Se utiliza el método esCorrectoIBAN para controlar el bucle, se
          * repite hasta que el iban introducido no tiene el formato correcto
-         * (ES+20DIGITOS consecutivos según el enunciado)
+         * (ES+20DIGITOS consecutivos según el enunciado) y unos dígitos de
+         * control correctos (los 2 primeros dígitos, según la norma ISO 13616)
          */
         while (!esCorrectoIBAN(iban)) {
             System.out.print("Introduce el IBAN (ES+20 DIGITOS) o \"X\" para cancelar: ");
@@ -53,13 +77,116 @@ public class Principal {
                 break;
 
             } else if (!esCorrectoIBAN(iban)) {
-                // Si el IBAN introducido no tiene el formato correcto se muestra un mensaje
+                // Si el IBAN introducido no tiene el formato o los dígitos de control correctos se muestra un mensaje
                 System.out.println("El IBAN introducido no es correcto");
             }
         }
         return iban;
     }
 
+    /**
+     * Método que muestra el mensaje correspondiente al resultado de una
+     * operación sobre el saldo de una cuenta.
+     *
+     * @param resultado el resultado de la operación
+     */
+    private static void mostrarResultado(ResultadoOperacion resultado) {
+        System.out.println(resultado.devolverMensaje());
+    }
+
+    /**
+     * Método que importa un fichero de operaciones en el banco y muestra el
+     * resumen de la importación.
+     *
+     * @param fichero la ruta del fichero de operaciones
+     * @param hilos   el número de hilos con los que se procesa el fichero
+     */
+    private static void importarFichero(String fichero, String hilos) {
+        try {
+            Path rechazos = Path.of(fichero + ".rechazos");
+            ResumenImportacion resumen = new ImportadorOperaciones(BANCO)
+                    .importar(Path.of(fichero), rechazos, Integer.parseInt(hilos));
+            System.out.println("Líneas procesadas: " + resumen.lineas()
+                    + "\nIngresos realizados: " + resumen.ingresos() + " (" + FormatoMoneda.euros(resumen.centimosIngresados()) + ")"
+                    + "\nRetiradas realizadas: " + resumen.retiradas() + " (" + FormatoMoneda.euros(resumen.centimosRetirados())
+                    + ", de los que " + FormatoMoneda.euros(resumen.centimosComisiones()) + " son comisiones)"
+                    + "\nLíneas rechazadas: " + resumen.rechazadas() + " (ver " + rechazos + ")"
+                    + String.format("\nTiempo: %.3f s (%.0f líneas por segundo)", resumen.nanosegundos() / 1e9, resumen.lineasPorSegundo()));
+        } catch (IOException | IllegalArgumentException e) {
+            // Si no se puede importar el fichero se muestra un mensaje y se continúa con el menú
+            System.out.println("¡No se ha podido importar el fichero! " + e.getMessage());
+        }
+    }
+
+    /**
+     * Método que recupera el estado del banco a partir de la última
+     * instantánea y del diario de operaciones, y abre el diario para apuntar
+     * las nuevas operaciones y hacer una instantánea cada 10 minutos. Si no se
+     * puede, se muestra un mensaje y se continúa sin diario.
+     */
+    private static void abrirDiario() {
+        try {
+            long apuntes = DiarioOperaciones.recuperar(DIRECTORIO_DATOS, BANCO);
+            if (BANCO.getContadorCuentas() > 0) {
+                System.out.println("Se han recuperado " + BANCO.getContadorCuentas() + " cuentas y "
+                        + apuntes + " apuntes del diario de operaciones.");
+            }
+            /*
+             * Los lotes se fuerzan a disco sin que cada operación espere, para
+             * que las importaciones grandes no queden limitadas por el disco
+             */
+            diario = new DiarioOperaciones(BANCO, DIRECTORIO_DATOS, NivelDurabilidad.AGRUPADA, 1000,
+                    DiarioOperaciones.CAPACIDAD_POR_DEFECTO, DiarioOperaciones.TAMANO_LOTE_POR_DEFECTO);
+            diario.instantaneasPeriodicas(10, TimeUnit.MINUTES);
+        } catch (IOException e) {
+            System.out.println("¡No se ha podido abrir el diario de operaciones! " + e.getMessage());
+        }
+    }
+
+    /**
+     * Método que hace una instantánea del banco, para que el próximo arranque
+     * sea rápido, y cierra el diario de operaciones.
+     */
+    private static void cerrarDiario() {
+        if (diario != null) {
+            try {
+                diario.instantanea().join();
+            } catch (CompletionException e) {
+                // Sin instantánea el banco se recupera igualmente con el diario
+                System.out.println("¡No se ha podido hacer la instantánea del banco! " + e.getCause().getMessage());
+            }
+            try {
+                diario.close();
+            } catch (IOException e) {
+                System.out.println("¡No se ha podido cerrar el diario de operaciones! " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Método que arranca el servidor HTTP local del banco y lo mantiene hasta
+     * que se pulsa Intro. Si no hay entrada por teclado (por ejemplo, si el
+     * programa se ejecuta en segundo plano) el servidor sigue atendiendo
+     * peticiones hasta que se detenga el programa.
+     *
+     * @param puerto el puerto en el que escucha el servidor
+     */
+    private static void servir(String puerto) {
+        try (ServidorBanco servidor = new ServidorBanco(BANCO, Integer.parseInt(puerto))) {
+            System.out.println("Servidor escuchando en http://localhost:" + servidor.getPuerto() + "/cuentas"
+                    + "\nPulsa Intro para detenerlo.");
+            if (SC.hasNextLine()) {
+                SC.nextLine();
+            } else {
+                Thread.currentThread().join();
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("¡No se ha podido arrancar el servidor! " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Muestra un formulario para dar de alta una nueva cuenta en el banco. Una
      * vez recopilados los datos necesarios, se llama al método 'abrirCuenta' de
@@ -89,32 +216,42 @@ public class Principal {
                             -------------------------
                             |   DATOS DEL CLIENTE   |
                             -------------------------
-                            Nombre:\s""");
-        /*
-         * Para el nombre y los apellidos se usa el método formatoNombreApellido
-         * de la clase Utilidades para mejorar la impresión y consistencia de
-         * los datos
-         */
-        nombre = formatoNombreApellido(SC.nextLine());
-
-        System.out.print("Apellido/s:\s");
-        apellidos = formatoNombreApellido(SC.nextLine());
-
+                            """);
         /*
-         * Se utiliza el método esCorrectoDNI para controlar que el DNI tenga un
-         * formato correcto (No se comprueba que la letra sea la correcta)
+         * Se utiliza el método esCorrectoDNI para controlar que el DNI (o NIE)
+         * tenga un formato correcto y que la letra sea la correcta
          */
         do {
             System.out.print("DNI:\s");
             dni = SC.nextLine().toUpperCase().trim();
             // Si no es correcto se muestra un mensaje
             if (!esCorrectoDNI(dni)) {
-                System.out.println("El DNI introducido no es válido, debe estar compuesto por 7-8 números y una letra");
+                System.out.println("El DNI introducido no es válido, debe estar compuesto por 7-8 números y la letra correcta (o X, Y o Z, 7 números y la letra correcta si es un NIE)");
             }
         } while (!esCorrectoDNI(dni));
 
-        // Instanciación del objeto titular de tipo Persona
-        titular = new Persona(nombre, apellidos, dni);
+        /*
+         * Si el DNI ya pertenece a un cliente del banco la nueva cuenta
+         * comparte su titular y no se vuelven a pedir sus datos
+         */
+        titular = BANCO.buscarTitular(dni);
+        if (titular != null) {
+            System.out.println("Cliente ya registrado: " + titular.getNombre() + " " + titular.getApellidos());
+        } else {
+            System.out.print("Nombre:\s");
+            /*
+             * Para el nombre y los apellidos se usa el método
+             * formatoNombreApellido de la clase Utilidades para mejorar la
+             * impresión y consistencia de los datos
+             */
+            nombre = formatoNombreApellido(SC.nextLine());
+
+            System.out.print("Apellido/s:\s");
+            apellidos = formatoNombreApellido(SC.nextLine());
+
+            // Instanciación del objeto titular de tipo Persona
+            titular = new Persona(nombre, apellidos, dni);
+        }
         // Bucle de solicitud del tipo de cuenta 
         do {
             boolean flagNoNumerico = true;
@@ -157,7 +294,9 @@ public class Principal {
                 saldoInicial = SC.nextDouble();
                 SC.nextLine();
                 // Si el valor introducido es positivo salimos del bucle
-                if (saldoInicial >= 0) {
+                if (saldoInicial >= 0 && !Dinero.cabeEnCentimos(saldoInicial)) {
+                    System.out.println("¡La cantidad supera el importe máximo admitido!");
+                } else if (saldoInicial >= 0) {
                     flag = false;
                 } else { // En caso contrario se muestra un mensaje
                     System.out.println("El saldo inicial ha de ser mayor o igual a 0");
@@ -232,7 +371,9 @@ public class Principal {
                             comisionMantenimiento = SC.nextDouble();
                             SC.nextLine();
                             // La comisión de mantenimiento no puede ser negativa
-                            if (comisionMantenimiento >= 0) {
+                            if (comisionMantenimiento >= 0 && !Dinero.cabeEnCentimos(comisionMantenimiento)) {
+                                System.out.println("¡La cantidad supera el importe máximo admitido!");
+                            } else if (comisionMantenimiento >= 0) {
                                 flag = false;
                                 // Se muestra mensaje si es negativa
                             } else {
@@ -255,7 +396,7 @@ public class Principal {
                      * mejorar la impresión y consistencia de los datos
                      * almacenados
                      */
-                    System.out.print("Introduce las entidades autorizadas para cobrar recibos de la cuenta: ");
+                    System.out.print("Introduce las entidades autorizadas para cobrar recibos de la cuenta, separadas por comas: ");
                     listaEntidades = SC.nextLine().toUpperCase().trim();
                     // Creamos el objeto de subclase CuentaCorrientePersonal
                     nuevaCuenta = new CuentaCorrientePersonal(titular, saldoInicial, iban, listaEntidades, comisionMantenimiento);
@@ -274,7 +415,9 @@ public class Principal {
                             maxDescubierto = SC.nextDouble();
                             SC.nextLine();
                             // El máximo descubierto no puede ser negativo
-                            if (maxDescubierto >= 0) {
+                            if (maxDescubierto >= 0 && !Dinero.cabeEnCentimos(maxDescubierto)) {
+                                System.out.println("¡La cantidad supera el importe máximo admitido!");
+                            } else if (maxDescubierto >= 0) {
                                 flag = false;
                             } else { // Si es negativo se muestra un mensaje
                                 System.out.println("El máximo descubierto ha de ser mayor o igual a 0");
@@ -321,7 +464,9 @@ public class Principal {
                             comisionFijaDescubierto = SC.nextDouble();
                             SC.nextLine();
                             // La comisión fija por descubierto no puede ser negativa
-                            if (comisionFijaDescubierto >= 0) {
+                            if (comisionFijaDescubierto >= 0 && !Dinero.cabeEnCentimos(comisionFijaDescubierto)) {
+                                System.out.println("¡La cantidad supera el importe máximo admitido!");
+                            } else if (comisionFijaDescubierto >= 0) {
                                 flag = false;
                             } else { // Si es negativa se muestra un mensaje
                                 System.out.println("La comisión ha de ser mayor o igual a 0");
@@ -342,7 +487,7 @@ public class Principal {
                      * mejorar la impresión y consistencia de los datos
                      * almacenados
                      */
-                    System.out.print("Introduce las entidades autorizadas para cobrar recibos de la cuenta: ");
+                    System.out.print("Introduce las entidades autorizadas para cobrar recibos de la cuenta, separadas por comas: ");
                     listaEntidades = SC.nextLine().toUpperCase().trim();
                     // Se instancia un objeto de subclase CuentaCorrienteEmpresa
                     nuevaCuenta = new CuentaCorrienteEmpresa(titular, saldoInicial, iban, listaEntidades, maxDescubierto, tipoInteresDescubierto, comisionFijaDescubierto);
@@ -369,13 +514,42 @@ public class Principal {
     public static void main(String[] args) {
 
         // DESCOMENTAR PARA REALIZAR PRUEBAS SIN INTRODUCIR MANUALMENTE VARIAS CUENTAS, HAY UNA DE CADA
-//        Persona titular = new Persona("Juan", "Pérez", "12345678A");
-//        CuentaAhorro cuentaAhorro = new CuentaAhorro(titular, 1000.0, "ES12345678901234567890", 1.5);
+//        Persona titular = new Persona("Juan", "Pérez", "12345678Z");
+//        CuentaAhorro cuentaAhorro = new CuentaAhorro(titular, 1000.0, "ES28345678901234567890", 1.5);
 //        BANCO.abrirCuenta(cuentaAhorro);
-//        CuentaCorrientePersonal cuentaCorrientePersonal = new CuentaCorrientePersonal(titular, 2000.0, "ES12345678901234567891", "BBVA", 50.0);
+//        CuentaCorrientePersonal cuentaCorrientePersonal = new CuentaCorrientePersonal(titular, 2000.0, "ES98345678901234567891", "BBVA", 50.0);
 //        BANCO.abrirCuenta(cuentaCorrientePersonal);
-//        CuentaCorrienteEmpresa cuentaCorrienteEmpresa = new CuentaCorrienteEmpresa(titular, 5000.0, "ES12345678901234567892", "BANCO SANTANDER", 2000.0, 4.5, 30.0);
+//        CuentaCorrienteEmpresa cuentaCorrienteEmpresa = new CuentaCorrienteEmpresa(titular, 5000.0, "ES71345678901234567892", "BANCO SANTANDER", 2000.0, 4.5, 30.0);
 //        BANCO.abrirCuenta(cuentaCorrienteEmpresa);
+        /*
+         * Si se arranca con "--importar fichero [hilos]" se aplican al banco
+         * las operaciones del fichero antes de mostrar el menú. Las líneas
+         * rechazadas se escriben en un fichero con el mismo nombre terminado
+         * en ".rechazos". Antes se recupera el banco a partir del diario de
+         * operaciones, que también apunta las operaciones importadas
+         */
+        abrirDiario();
+        if (args.length >= 2 && args[0].equals("--importar")) {
+            importarFichero(args[1], args.length >= 3 ? args[2] : "1");
+        }
+        /*
+         * Si se arranca con "--servidor [puerto]" no se muestra el menú: se
+         * atienden las peticiones HTTP hasta que se detiene el servidor
+         */
+        if (args.length >= 1 && args[0].equals("--servidor")) {
+            /*
+             * El servidor HTTP del JDK lee esta propiedad al crear el primer
+             * servidor: sin ella cada respuesta de una conexión persistente
+             * espera al ACK retardado del cliente. Se respeta el valor que se
+             * haya dado con -D al arrancar
+             */
+            if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+                System.setProperty("sun.net.httpserver.nodelay", "true");
+            }
+            servir(args.length >= 2 ? args[1] : String.valueOf(ServidorBanco.PUERTO_POR_DEFECTO));
+            cerrarDiario();
+            return;
+        }
         // Variables para almacenar temporalmente datos introducidos por el usuario
         String iban;
         double cantidad = 0;
@@ -421,7 +595,7 @@ public class Principal {
                      */
                     case 1 -> {
                         // Si se ha alcanzado el límite de cuentas se muestra un mensaje
-                        if (BANCO.getContadorCuentas() == 100) {
+                        if (!BANCO.hayEspacioDisponible()) {
                             System.out.println("¡Se ha alcanzado el límite de cuentas!");
                         } else {
                         // Si hay espacio para más cuentas se hace la llamada al método con el formulario
@@ -430,11 +604,10 @@ public class Principal {
                     }
                     case 2 -> { // Listado de cuentas
                         /*
-                         * Obtenemos el número de cuentas creadas. También
-                         * podría usarse el método getContadorCuentas de la
-                         * clase Banco
+                         * Obtenemos el número de cuentas creadas del contador
+                         * del banco, sin crear el listado
                          */
-                        int numCuentas = BANCO.listadoCuentas().length;
+                        int numCuentas = BANCO.getContadorCuentas();
                         // Si no hay cuentas creadas no se ejecuta esto
                         if (numCuentas > 0) {
                             /*
@@ -452,14 +625,16 @@ public class Principal {
                                            Hay\s""" + numCuentas
                                     + ((numCuentas > 1) ? " cuentas creadas" : " cuenta creada"));
                             /*
-                             * Se recorre y se muestra el array de tipo String
-                             * devuelto por el método listadoCuentas(), este
-                             * método a su vez utiliza el método
-                             * devolverInfoString() para devolver toda la
-                             * información de cada cuenta
+                             * Se escribe el listado directamente en la
+                             * consola con el método escribirListado(), que
+                             * utiliza el método devolverInfoString() de cada
+                             * cuenta a medida que la escribe, sin crear antes
+                             * el listado completo
                              */
-                            for (String cuenta : BANCO.listadoCuentas()) {
-                                System.out.println("\n" + cuenta);
+                            try {
+                                BANCO.escribirListado(System.out);
+                            } catch (IOException e) {
+                                System.out.println("¡No se ha podido mostrar el listado! " + e.getMessage());
                             }
                         } else { // Si no hay cuentas creadas se muestra un mensaje
                             System.out.println("¡Aún no hay cuentas creadas!");
@@ -535,7 +710,9 @@ public class Principal {
                                         cantidad = SC.nextDouble();
                                         SC.nextLine();
                                         // Si la cantidad introducida es positiva salimos del bucle
-                                        if (cantidad > 0) {
+                                        if (cantidad > 0 && !Dinero.cabeEnCentimos(cantidad)) {
+                                            System.out.println("¡La cantidad supera el importe máximo admitido!");
+                                        } else if (cantidad > 0) {
                                             flag = false;
                                         } else { // Si la cantidad es negativa o 0 se muestra un mensaje
                                             System.out.println("La cantidad a ingresar ha de ser mayor a 0");
@@ -552,7 +729,7 @@ public class Principal {
                                         SC.nextLine();
                                     }
                                 } while (flag);
-                                BANCO.ingresoCuenta(iban, cantidad);
+                                mostrarResultado(BANCO.ingresoCuenta(iban, cantidad));
                             }
                         } else { // Si no hay cuentas creadas se muestra un mensaje
                             System.out.println("¡Aún no hay cuentas creadas!");
@@ -594,7 +771,9 @@ public class Principal {
                                         cantidad = SC.nextDouble();
                                         SC.nextLine();
                                         // La cantidad a retirar ha de ser positiva
-                                        if (cantidad > 0) {
+                                        if (cantidad > 0 && !Dinero.cabeEnCentimos(cantidad)) {
+                                            System.out.println("¡La cantidad supera el importe máximo admitido!");
+                                        } else if (cantidad > 0) {
                                             flag = false;
                                             // Si la cantidad no es positiva se muestra un mensaje
                                         } else {
@@ -614,12 +793,12 @@ public class Principal {
                                 /*
                                  * Una vez validados el IBAN y la cantidad se
                                  * llama al método retiradaCuenta de la clase
-                                 * Banco, este método ya tiene mensajes para
-                                 * cada salida (si es cuenta empresa y se queda
-                                 * al descubierto, si se ha retirado el
+                                 * Banco y se muestra el mensaje que corresponde
+                                 * a su resultado (si es cuenta empresa y se
+                                 * queda al descubierto, si se ha retirado el
                                  * efectivo, el nuevo saldo de la cuenta...)
                                  */
-                                BANCO.retiradaCuenta(iban, cantidad);
+                                mostrarResultado(BANCO.retiradaCuenta(iban, cantidad));
                             }
                             // Si no hay cuentas creadas se muestra un mensaje
                         } else {
@@ -658,7 +837,7 @@ public class Principal {
                              * método obtenerSaldo
                              */
                             if (!iban.equals("X")) {
-                                System.out.println("Saldo actual: " + String.format("%.2f€", BANCO.obtenerSaldo(iban)));
+                                System.out.println("Saldo actual: " + FormatoMoneda.euros(BANCO.obtenerSaldo(iban)));
                             }
                             // Si no hay cuentas creadas se muestra un mensaje
                         } else {
@@ -666,8 +845,10 @@ public class Principal {
                         }
                     }
                     // Se muestra un mensaje y el programa finaliza (La condición para salir está en el while)
-                    case 7 ->
+                    case 7 -> {
+                        cerrarDiario();
                         System.out.println("Programa finalizado.");
+                    }
 
                     case 0 -> {
                         flagMensajeCorto = false;
@@ -692,6 +873,24 @@ public class Principal {
             } catch (InputMismatchException e) {
                 System.out.println("\n¡El valor introducido no es válido!");
                 SC.nextLine();
+            } catch (IllegalStateException e) {
+                /*
+                 * Si ha fallado el diario de operaciones la operación se ha
+                 * hecho en memoria, pero no ha quedado apuntada y se perdería
+                 * al volver a arrancar, igual que todas las siguientes. Se
+                 * cierra el diario sin hacer la instantánea (que guardaría la
+                 * operación sin apuntar) y el programa finaliza
+                 */
+                System.out.println("\n¡No se ha podido apuntar la operación en el diario! " + e.getMessage());
+                System.out.println("La operación no se ha guardado. Programa finalizado.");
+                if (diario != null) {
+                    try {
+                        diario.close();
+                    } catch (IOException ex) {
+                        System.out.println("¡No se ha podido cerrar el diario de operaciones! " + ex.getMessage());
+                    }
+                }
+                return;
             }
             /*
              * Si la opción introducida no es 0 (mostrar menú completo) ni 7
@@ -0,0 +1,198 @@
+package es.iesjuanbosco.persistencia;
+
+import es.iesjuanbosco.logica.CuentaAhorro;
+import es.iesjuanbosco.logica.CuentaBancaria;
+import es.iesjuanbosco.logica.CuentaCorrienteEmpresa;
+import es.iesjuanbosco.logica.CuentaCorrientePersonal;
+import es.iesjuanbosco.logica.Persona;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Clase que convierte las cuentas bancarias (con su titular) a un formato
+ * binario y viceversa. Cada cuenta se escribe como:
+ *
+ * <pre>
+ * tipo (1 byte) | saldo en céntimos (8) | IBAN | nombre | apellidos | DNI |
+ * datos propios del tipo de cuenta
+ * </pre>
+ *
+ * Los textos se escriben con su longitud en bytes (2 bytes, -1 si es null)
+ * seguida de sus caracteres en UTF-8. Los datos propios son el tipo de interés
+ * anual en las cuentas de ahorro; las entidades y la comisión de mantenimiento
+ * en las personales; y las entidades, el descubierto máximo, el tipo de interés
+ * y la comisión fija por descubierto en las de empresa.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+final class CodificadorCuentas {
+
+    /**
+     * Tipo de una cuenta de ahorro.
+     */
+    static final byte AHORRO = 1;
+
+    /**
+     * Tipo de una cuenta corriente personal.
+     */
+    static final byte PERSONAL = 2;
+
+    /**
+     * Tipo de una cuenta corriente de empresa.
+     */
+    static final byte EMPRESA = 3;
+
+    /**
+     * Tamaño máximo en bytes de una cuenta codificada: tipo, saldo, cinco
+     * textos de la longitud máxima (IBAN, nombre, apellidos, DNI y entidades)
+     * y tres números decimales.
+     */
+    static final int TAMANO_MAXIMO = 1 + 8 + 5 * (2 + Short.MAX_VALUE) + 3 * 8;
+
+    /**
+     * Escribe una cuenta en formato binario.
+     *
+     * @param salida el destino de los datos
+     * @param cuenta la cuenta a escribir
+     *
+     * @throws IOException              si no se puede escribir en el destino
+     * @throws IllegalArgumentException si la cuenta no es de ninguno de los
+     *                                  tipos conocidos
+     */
+    static void escribir(DataOutput salida, CuentaBancaria cuenta) throws IOException {
+        escribir(salida, cuenta, cuenta.getSaldoCentimos());
+    }
+
+    /**
+     * Escribe una cuenta en formato binario con un saldo distinto del que
+     * tiene en ese momento, por ejemplo el saldo que tenía en un instante
+     * anterior.
+     *
+     * @param salida        el destino de los datos
+     * @param cuenta        la cuenta a escribir
+     * @param saldoCentimos el saldo en céntimos que se escribe
+     *
+     * @throws IOException              si no se puede escribir en el destino
+     * @throws IllegalArgumentException si la cuenta no es de ninguno de los
+     *                                  tipos conocidos
+     */
+    static void escribir(DataOutput salida, CuentaBancaria cuenta, long saldoCentimos) throws IOException {
+        byte tipo;
+        if (cuenta instanceof CuentaAhorro) {
+            tipo = AHORRO;
+        } else if (cuenta instanceof CuentaCorrientePersonal) {
+            tipo = PERSONAL;
+        } else if (cuenta instanceof CuentaCorrienteEmpresa) {
+            tipo = EMPRESA;
+        } else {
+            throw new IllegalArgumentException("Tipo de cuenta desconocido: " + cuenta.getClass().getName());
+        }
+        salida.writeByte(tipo);
+        salida.writeLong(saldoCentimos);
+        escribirTexto(salida, cuenta.getIban());
+        Persona titular = cuenta.getTitular();
+        escribirTexto(salida, titular == null ? null : titular.getNombre());
+        escribirTexto(salida, titular == null ? null : titular.getApellidos());
+        escribirTexto(salida, titular == null ? null : titular.getDni());
+        switch (tipo) {
+            case AHORRO ->
+                salida.writeDouble(((CuentaAhorro) cuenta).getTipoInteresAnual());
+            case PERSONAL -> {
+                CuentaCorrientePersonal personal = (CuentaCorrientePersonal) cuenta;
+                escribirTexto(salida, personal.getListaEntidades());
+                salida.writeDouble(personal.getComisionMantenimientoAnual());
+            }
+            default -> {
+                CuentaCorrienteEmpresa empresa = (CuentaCorrienteEmpresa) cuenta;
+                escribirTexto(salida, empresa.getListaEntidades());
+                salida.writeDouble(empresa.getMaxDescubierto());
+                salida.writeDouble(empresa.getTipoInteresDescubierto());
+                salida.writeDouble(empresa.getComisionFijaDescubierto());
+            }
+        }
+    }
+
+    /**
+     * Lee una cuenta en formato binario a partir de la posición actual del
+     * buffer, dejando la posición al final de la cuenta.
+     *
+     * @param entrada el buffer con los datos
+     *
+     * @return la cuenta leída, con su titular
+     *
+     * @throws IOException si los datos no son una cuenta válida
+     */
+    static CuentaBancaria leer(ByteBuffer entrada) throws IOException {
+        try {
+            byte tipo = entrada.get();
+            long saldo = entrada.getLong();
+            String iban = leerTexto(entrada);
+            Persona titular = new Persona(leerTexto(entrada), leerTexto(entrada), leerTexto(entrada));
+            CuentaBancaria cuenta = switch (tipo) {
+                case AHORRO ->
+                    new CuentaAhorro(titular, 0, iban, entrada.getDouble());
+                case PERSONAL ->
+                    new CuentaCorrientePersonal(titular, 0, iban, leerTexto(entrada), entrada.getDouble());
+                case EMPRESA ->
+                    new CuentaCorrienteEmpresa(titular, 0, iban, leerTexto(entrada),
+                    entrada.getDouble(), entrada.getDouble(), entrada.getDouble());
+                default ->
+                    throw new IOException("Tipo de cuenta desconocido: " + tipo);
+            };
+            // El saldo se establece en céntimos para no pasar por double
+            cuenta.setSaldoCentimos(saldo);
+            return cuenta;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Datos de cuenta incompletos", e);
+        }
+    }
+
+    /**
+     * Escribe un texto con su longitud en bytes seguida de sus caracteres en
+     * UTF-8.
+     *
+     * @param salida el destino de los datos
+     * @param texto  el texto, o null
+     *
+     * @throws IOException si no se puede escribir en el destino
+     */
+    private static void escribirTexto(DataOutput salida, String texto) throws IOException {
+        if (texto == null) {
+            salida.writeShort(-1);
+            return;
+        }
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Texto demasiado largo");
+        }
+        salida.writeShort(bytes.length);
+        salida.write(bytes);
+    }
+
+    /**
+     * Lee un texto escrito con {@link #escribirTexto(DataOutput, String)}.
+     *
+     * @param entrada el buffer con los datos
+     *
+     * @return el texto, o null
+     */
+    private static String leerTexto(ByteBuffer entrada) {
+        short longitud = entrada.getShort();
+        if (longitud < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[longitud];
+        entrada.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Constructor privado para evitar la instanciación de la clase.
+     */
+    private CodificadorCuentas() {
+    }
+}
@@ -0,0 +1,1077 @@
+package es.iesjuanbosco.persistencia;
+
+import es.iesjuanbosco.logica.Banco;
+import es.iesjuanbosco.logica.CuentaBancaria;
+import es.iesjuanbosco.logica.OyenteOperaciones;
+import es.iesjuanbosco.logica.ResultadoOperacion;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Diario de operaciones del banco: ficheros binarios en los que se van
+ * añadiendo, por orden, las altas de cuentas y los movimientos de saldo
+ * (ingresos, retiradas, comisiones por descubierto y transferencias), de modo
+ * que al volver a arrancar el programa puede recuperarse el estado del banco.
+ * <p>
+ * El diario se añade al banco como oyente: cada operación deja un apunte en
+ * una cola y un hilo escritor los saca por lotes, los escribe con una sola
+ * escritura y, según el {@link NivelDurabilidad}, fuerza su escritura física
+ * una sola vez por lote (group commit). El escritor puede esperar un tiempo
+ * máximo (ventana) a que se acumulen más apuntes antes de escribir el lote.
+ * <p>
+ * Para no tener que repetir todo el diario al arrancar se hacen instantáneas
+ * del banco. El diario se guarda en un directorio, dividido en tramos
+ * ("diario-N"); al pedir una instantánea el escritor cierra el tramo actual
+ * entre dos lotes, empieza el siguiente y copia los saldos de las cuentas
+ * tal y como quedan con los apuntes escritos hasta ese momento (los lleva
+ * calculados aparte mientras escribe). Con esa copia un hilo en segundo plano
+ * escribe la instantánea ("instantanea-N") sin detener las operaciones del
+ * banco, y cuando termina se borran los tramos y las instantáneas anteriores.
+ * Para recuperar el banco se carga la última instantánea y se repiten los
+ * tramos del diario desde el suyo.
+ * <p>
+ * Formato de cada tramo: una cabecera de 8 bytes (marca y versión) seguida de
+ * lotes. Cada lote empieza con su longitud y su CRC32C (4 bytes cada uno) y
+ * contiene apuntes con este formato:
+ *
+ * <pre>
+ * ALTA:        tipo (1) | posición (4) | cuenta (ver CodificadorCuentas)
+ * movimiento:  tipo (1) | posición (4) | céntimos (8)
+ * </pre>
+ *
+ * Los movimientos guardan la cantidad que suman o restan al saldo, no el
+ * saldo resultante, por lo que al recuperarlos el resultado no depende del
+ * orden en que se notificaron las operaciones simultáneas. La posición de
+ * cada cuenta es la que lleva el resultado de la operación, de modo que el
+ * escritor no necesita buscar nada en el banco. Un lote incompleto o dañado
+ * al final del fichero (por una caída a mitad de escritura) se descarta al
+ * recuperar.
+ * <p>
+ * Si la escritura falla el diario deja de apuntar y, a partir de entonces,
+ * sus métodos lanzan {@link IllegalStateException}: las operaciones del banco
+ * se siguen realizando, pero quien las hace se entera de que ya no quedan
+ * apuntadas. Con {@link NivelDurabilidad#SINCRONA} la excepción la recibe
+ * también la operación cuyo apunte no se ha podido escribir.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see NivelDurabilidad
+ */
+public class DiarioOperaciones implements OyenteOperaciones, AutoCloseable {
+
+    /**
+     * Capacidad por defecto de la cola de apuntes.
+     */
+    public static final int CAPACIDAD_POR_DEFECTO = 65_536;
+
+    /**
+     * Número máximo por defecto de apuntes de cada lote.
+     */
+    public static final int TAMANO_LOTE_POR_DEFECTO = 4096;
+
+    /**
+     * Prefijo del nombre de los tramos del diario.
+     */
+    private static final String PREFIJO_DIARIO = "diario-";
+
+    /**
+     * Prefijo del nombre de las instantáneas.
+     */
+    private static final String PREFIJO_INSTANTANEA = "instantanea-";
+
+    /**
+     * Marca con la que empiezan los ficheros de diario ("BDIA").
+     */
+    private static final int MARCA = 0x42444941;
+
+    /**
+     * Versión del formato del fichero.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Tamaño de la cabecera del fichero.
+     */
+    private static final int TAMANO_CABECERA = 8;
+
+    /**
+     * Tamaño de la cabecera de cada lote (longitud y CRC).
+     */
+    private static final int TAMANO_CABECERA_LOTE = 8;
+
+    /*
+     * Tipos de apunte.
+     */
+    /**
+     * Alta de una cuenta.
+     */
+    static final byte ALTA = 1;
+    /**
+     * Ingreso en una cuenta (suma).
+     */
+    static final byte INGRESO = 2;
+    /**
+     * Retirada de una cuenta (resta).
+     */
+    static final byte RETIRADA = 3;
+    /**
+     * Comisión por descubierto (resta).
+     */
+    static final byte COMISION_DESCUBIERTO = 4;
+    /**
+     * Salida de una transferencia en la cuenta de origen (resta).
+     */
+    static final byte TRANSFERENCIA_SALIDA = 5;
+    /**
+     * Entrada de una transferencia en la cuenta de destino (suma).
+     */
+    static final byte TRANSFERENCIA_ENTRADA = 6;
+
+    /**
+     * Tamaño de un apunte de movimiento.
+     */
+    private static final int TAMANO_MOVIMIENTO = 13;
+
+    /**
+     * Marca que se deja en la cola para que el escritor termine.
+     */
+    private static final Apunte FIN = new Apunte(null);
+
+    /**
+     * Banco cuyas operaciones se apuntan.
+     */
+    private final Banco BANCO;
+
+    /**
+     * Directorio del diario y de las instantáneas.
+     */
+    private final Path DIRECTORIO;
+
+    /**
+     * Nivel de durabilidad.
+     */
+    private final NivelDurabilidad NIVEL;
+
+    /**
+     * Tiempo máximo en nanosegundos que el escritor espera a que se acumulen
+     * apuntes antes de escribir un lote.
+     */
+    private final long VENTANA_NANOS;
+
+    /**
+     * Número máximo de apuntes de cada lote.
+     */
+    private final int TAMANO_LOTE;
+
+    /**
+     * Cola de apuntes pendientes de escribir.
+     */
+    private final BlockingQueue<Apunte> COLA;
+
+    /**
+     * Hilo escritor.
+     */
+    private final Thread ESCRITOR;
+
+    /**
+     * Hilo que escribe las instantáneas y las pide periódicamente.
+     */
+    private final ScheduledExecutorService INSTANTANEAS;
+
+    /**
+     * Canal del tramo actual del diario. Sólo lo usa el hilo escritor.
+     */
+    private FileChannel canal;
+
+    /**
+     * Número del tramo actual del diario.
+     */
+    private long tramo;
+
+    /**
+     * Saldos en céntimos de las cuentas, por posición, con los apuntes
+     * escritos hasta el momento. Sólo los usa el hilo escritor.
+     */
+    private long[] saldos;
+
+    /**
+     * Número de cuentas con los apuntes escritos hasta el momento.
+     */
+    private int numCuentas;
+
+    /**
+     * Indica si se está cerrando el diario.
+     */
+    private volatile boolean cerrado;
+
+    /**
+     * Error que ha detenido la escritura del diario, o null si no ha habido
+     * ninguno.
+     */
+    private volatile Exception error;
+
+    /**
+     * Crea un diario sin ventana de espera, con la capacidad y el tamaño de
+     * lote por defecto, y lo añade como oyente del banco.
+     *
+     * @param banco      el banco cuyas operaciones se apuntan
+     * @param directorio el directorio del diario (si ya tiene un diario se
+     *                   sigue escribiendo en su último tramo)
+     * @param nivel      el nivel de durabilidad
+     *
+     * @throws IOException si no se puede abrir el diario
+     */
+    public DiarioOperaciones(Banco banco, Path directorio, NivelDurabilidad nivel) throws IOException {
+        this(banco, directorio, nivel, 0, CAPACIDAD_POR_DEFECTO, TAMANO_LOTE_POR_DEFECTO);
+    }
+
+    /**
+     * Crea un diario, arranca su hilo escritor y lo añade como oyente del
+     * banco. Debe crearse después de recuperar el banco con
+     * {@link #recuperar(Path, Banco)}.
+     *
+     * @param banco         el banco cuyas operaciones se apuntan
+     * @param directorio    el directorio del diario (si ya tiene un diario
+     *                      se sigue escribiendo en su último tramo)
+     * @param nivel         el nivel de durabilidad
+     * @param ventanaMicros el tiempo máximo en microsegundos que el escritor
+     *                      espera a que se acumulen apuntes antes de escribir
+     *                      un lote (0 para escribir en cuanto haya alguno)
+     * @param capacidad     el número máximo de apuntes pendientes de escribir
+     * @param tamanoLote    el número máximo de apuntes de cada lote
+     *
+     * @throws IOException              si no se puede abrir el diario
+     * @throws IllegalArgumentException si la ventana es negativa o la
+     *                                  capacidad o el tamaño del lote son
+     *                                  menores que 1
+     */
+    public DiarioOperaciones(Banco banco, Path directorio, NivelDurabilidad nivel, long ventanaMicros,
+            int capacidad, int tamanoLote) throws IOException {
+        if (ventanaMicros < 0 || capacidad < 1 || tamanoLote < 1) {
+            throw new IllegalArgumentException("Parámetros del diario no válidos");
+        }
+        this.BANCO = banco;
+        this.DIRECTORIO = directorio;
+        this.NIVEL = nivel;
+        this.VENTANA_NANOS = TimeUnit.MICROSECONDS.toNanos(ventanaMicros);
+        this.TAMANO_LOTE = tamanoLote;
+        this.COLA = new LinkedBlockingQueue<>(capacidad);
+        // Se sigue escribiendo en el último tramo, o en el de la última instantánea si es posterior
+        Files.createDirectories(directorio);
+        long[] tramos = numerosFicheros(directorio, PREFIJO_DIARIO);
+        long[] instantaneas = numerosFicheros(directorio, PREFIJO_INSTANTANEA);
+        this.tramo = Math.max(1, Math.max(tramos.length == 0 ? 0 : tramos[tramos.length - 1],
+                instantaneas.length == 0 ? 0 : instantaneas[instantaneas.length - 1]));
+        this.canal = abrirTramo(directorio, this.tramo);
+        // Los saldos de partida son los del banco ya recuperado
+        this.numCuentas = banco.getContadorCuentas();
+        this.saldos = new long[Math.max(16, this.numCuentas)];
+        for (int i = 0; i < this.numCuentas; i++) {
+            this.saldos[i] = banco.cuentaEnPosicion(i).getSaldoCentimos();
+        }
+        this.INSTANTANEAS = new ScheduledThreadPoolExecutor(1, tarea -> {
+            Thread hilo = new Thread(tarea, "instantaneas-banco");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        this.ESCRITOR = new Thread(this::escribir, "escritor-diario");
+        this.ESCRITOR.setDaemon(true);
+        this.ESCRITOR.start();
+        banco.anadirOyente(this);
+    }
+
+    /**
+     * Abre un tramo del diario para añadir apuntes al final. Si el fichero no
+     * existe o está vacío se escribe su cabecera y si no se comprueba.
+     *
+     * @param directorio el directorio del diario
+     * @param numero     el número del tramo
+     *
+     * @return el canal del tramo, situado al final del fichero
+     *
+     * @throws IOException si no se puede abrir el fichero o no es un diario
+     */
+    private static FileChannel abrirTramo(Path directorio, long numero) throws IOException {
+        FileChannel canal = FileChannel.open(fichero(directorio, PREFIJO_DIARIO, numero),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            prepararFichero(canal);
+        } catch (IOException e) {
+            canal.close();
+            throw e;
+        }
+        return canal;
+    }
+
+    /**
+     * Devuelve la ruta de un tramo del diario o de una instantánea.
+     *
+     * @param directorio el directorio del diario
+     * @param prefijo    el prefijo del nombre del fichero
+     * @param numero     el número del tramo o de la instantánea
+     *
+     * @return la ruta del fichero
+     */
+    private static Path fichero(Path directorio, String prefijo, long numero) {
+        return directorio.resolve(String.format("%s%010d", prefijo, numero));
+    }
+
+    /**
+     * Busca los tramos del diario o las instantáneas de un directorio.
+     *
+     * @param directorio el directorio del diario
+     * @param prefijo    el prefijo del nombre de los ficheros
+     *
+     * @return los números de los ficheros encontrados, de menor a mayor
+     *
+     * @throws IOException si no se puede leer el directorio
+     */
+    private static long[] numerosFicheros(Path directorio, String prefijo) throws IOException {
+        try (Stream<Path> ficheros = Files.list(directorio)) {
+            return ficheros.map(f -> f.getFileName().toString())
+                    // Los ficheros temporales de las instantáneas no terminan en dígito
+                    .filter(nombre -> nombre.startsWith(prefijo) && nombre.length() > prefijo.length()
+                    && nombre.chars().skip(prefijo.length()).allMatch(Character::isDigit))
+                    .mapToLong(nombre -> Long.parseLong(nombre.substring(prefijo.length())))
+                    .sorted()
+                    .toArray();
+        }
+    }
+
+    /**
+     * Escribe la cabecera si el fichero está vacío o la comprueba si no lo
+     * está, y deja el canal al final del fichero.
+     *
+     * @param canal el canal del fichero
+     *
+     * @throws IOException si el fichero no es un diario
+     */
+    private static void prepararFichero(FileChannel canal) throws IOException {
+        if (canal.size() == 0) {
+            ByteBuffer cabecera = ByteBuffer.allocate(TAMANO_CABECERA).putInt(MARCA).putInt(VERSION).flip();
+            while (cabecera.hasRemaining()) {
+                canal.write(cabecera, TAMANO_CABECERA - cabecera.remaining());
+            }
+            canal.force(true);
+        } else {
+            comprobarCabecera(canal);
+        }
+        canal.position(canal.size());
+    }
+
+    /**
+     * Comprueba que el fichero empieza con la cabecera de un diario.
+     *
+     * @param canal el canal del fichero
+     *
+     * @throws IOException si el fichero no es un diario o es de otra versión
+     */
+    private static void comprobarCabecera(FileChannel canal) throws IOException {
+        ByteBuffer cabecera = ByteBuffer.allocate(TAMANO_CABECERA);
+        while (cabecera.hasRemaining() && canal.read(cabecera, cabecera.position()) > 0) {
+            // Se lee hasta completar la cabecera o llegar al final del fichero
+        }
+        cabecera.flip();
+        if (cabecera.remaining() < TAMANO_CABECERA || cabecera.getInt() != MARCA || cabecera.getInt() != VERSION) {
+            throw new IOException("El fichero no es un diario de operaciones válido");
+        }
+    }
+
+    /**
+     * Apunta el alta de una cuenta. Los datos de la cuenta se codifican en el
+     * momento, ya que la cuenta puede cambiar después.
+     *
+     * @param cuenta   la cuenta abierta
+     * @param posicion la posición de la cuenta en el banco
+     */
+    @Override
+    public void cuentaAbierta(CuentaBancaria cuenta, int posicion) {
+        comprobarError();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream salida = new DataOutputStream(bytes);
+            salida.writeByte(ALTA);
+            salida.writeInt(posicion);
+            CodificadorCuentas.escribir(salida, cuenta);
+            encolar(new Apunte(null, posicion, cuenta.getSaldoCentimos(), bytes.toByteArray(), hiloEsperando()));
+        } catch (IOException | IllegalArgumentException e) {
+            // Sin el alta no se podrían recuperar los movimientos de la cuenta
+            fallar(e);
+            comprobarError();
+        }
+    }
+
+    /**
+     * Apunta una operación realizada.
+     *
+     * @param resultado el resultado de la operación
+     */
+    @Override
+    public void operacionRealizada(ResultadoOperacion resultado) {
+        comprobarError();
+        encolar(new Apunte(resultado, -1, 0, null, hiloEsperando()));
+    }
+
+    /**
+     * Apunta un lote de operaciones realizadas. Con el nivel de durabilidad
+     * {@link NivelDurabilidad#SINCRONA} sólo se espera al último apunte: los
+     * apuntes se escriben en orden, así que cuando está escrito también lo
+     * están los anteriores.
+     *
+     * @param lote las operaciones realizadas
+     */
+    @Override
+    public void operacionesRealizadas(List<ResultadoOperacion> lote) {
+        comprobarError();
+        if (lote.isEmpty()) {
+            return;
+        }
+        int ultimo = lote.size() - 1;
+        for (int i = 0; i < ultimo; i++) {
+            encolar(new Apunte(lote.get(i), -1, 0, null, null));
+        }
+        encolar(new Apunte(lote.get(ultimo), -1, 0, null, hiloEsperando()));
+    }
+
+    /**
+     * Devuelve el hilo que tiene que esperar a que se escriba un apunte, que
+     * sólo existe con el nivel de durabilidad {@link NivelDurabilidad#SINCRONA}.
+     *
+     * @return el hilo actual, o null si no tiene que esperar
+     */
+    private Thread hiloEsperando() {
+        return NIVEL == NivelDurabilidad.SINCRONA ? Thread.currentThread() : null;
+    }
+
+    /**
+     * Pide una instantánea del banco. El escritor la prepara entre dos lotes
+     * y se escribe en segundo plano, sin detener las operaciones.
+     *
+     * @return una tarea que termina con la ruta de la instantánea cuando está
+     *         escrita, o con un error si no se ha podido escribir
+     */
+    public CompletableFuture<Path> instantanea() {
+        CompletableFuture<Path> instantanea = new CompletableFuture<>();
+        if (error != null || cerrado) {
+            instantanea.completeExceptionally(new IOException("El diario de operaciones no está disponible", error));
+        } else {
+            encolar(new Apunte(instantanea));
+        }
+        return instantanea;
+    }
+
+    /**
+     * Pide una instantánea del banco cada cierto tiempo, hasta que se cierre
+     * el diario.
+     *
+     * @param periodo el tiempo entre instantáneas
+     * @param unidad  la unidad del periodo
+     *
+     * @throws IllegalArgumentException si el periodo no es mayor que 0
+     */
+    public void instantaneasPeriodicas(long periodo, TimeUnit unidad) {
+        if (periodo <= 0) {
+            throw new IllegalArgumentException("El periodo ha de ser mayor que 0");
+        }
+        INSTANTANEAS.scheduleAtFixedRate(this::instantanea, periodo, periodo, unidad);
+    }
+
+    /**
+     * Deja un apunte en la cola y, si el nivel de durabilidad lo pide, espera
+     * a que esté físicamente escrito. Si el diario se está cerrando no se
+     * espera, ya que el apunte puede llegar después de que termine el escritor.
+     *
+     * @param apunte el apunte
+     *
+     * @throws IllegalStateException si se ha esperado al apunte y el diario
+     *                               ha fallado antes de escribirlo
+     */
+    private void encolar(Apunte apunte) {
+        boolean interrumpido = false;
+        while (true) {
+            try {
+                COLA.put(apunte);
+                break;
+            } catch (InterruptedException e) {
+                // El apunte no puede perderse: se reintenta y se conserva la interrupción
+                interrumpido = true;
+            }
+        }
+        if (apunte.hilo != null && !cerrado) {
+            while (!apunte.escrito) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    interrumpido = true;
+                }
+            }
+        }
+        if (interrumpido) {
+            Thread.currentThread().interrupt();
+        }
+        if (apunte.hilo != null) {
+            comprobarError();
+        }
+    }
+
+    /**
+     * Bucle del hilo escritor: espera a que haya apuntes, los reúne en un
+     * lote (esperando como mucho la ventana configurada), escribe el lote con
+     * una sola escritura, fuerza su escritura física si el nivel de
+     * durabilidad lo pide y avisa a las operaciones que esperaban. Las marcas
+     * de fin y de instantánea se atienden después de escribir los apuntes
+     * anteriores a ellas.
+     */
+    private void escribir() {
+        List<Apunte> lote = new ArrayList<>(TAMANO_LOTE);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(TAMANO_LOTE * TAMANO_MOVIMIENTO * 3 + TAMANO_CABECERA_LOTE);
+        CRC32C crc = new CRC32C();
+        boolean fin = false;
+        while (!fin) {
+            try {
+                reunirLote(lote);
+            } catch (InterruptedException e) {
+                return;
+            }
+            int posicionMarca = indiceMarca(lote);
+            List<Apunte> apuntes = posicionMarca < 0 ? lote : lote.subList(0, posicionMarca);
+            if (!apuntes.isEmpty() && error == null) {
+                try {
+                    buffer = codificarLote(apuntes, buffer, crc);
+                    while (buffer.hasRemaining()) {
+                        canal.write(buffer);
+                    }
+                    if (NIVEL != NivelDurabilidad.NINGUNA) {
+                        canal.force(false);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    fallar(e);
+                }
+            }
+            // Se avisa a las operaciones que esperaban, aunque haya fallado la escritura
+            for (Apunte apunte : apuntes) {
+                apunte.escrito = true;
+                if (apunte.hilo != null) {
+                    LockSupport.unpark(apunte.hilo);
+                }
+            }
+            apuntes.clear();
+            // Los apuntes que haya detrás de la marca se quedan en el lote para la siguiente vuelta
+            if (posicionMarca >= 0) {
+                Apunte marca = lote.remove(0);
+                if (marca == FIN) {
+                    fin = true;
+                } else {
+                    prepararInstantanea(marca.instantanea);
+                }
+            }
+        }
+    }
+
+    /**
+     * Prepara una instantánea: cierra el tramo actual del diario, empieza el
+     * siguiente y copia los saldos calculados con los apuntes escritos, que
+     * son justo los de los tramos anteriores. La instantánea se escribe
+     * después en segundo plano con esos saldos y, cuando está escrita, se
+     * borran los tramos y las instantáneas anteriores, que ya no hacen falta.
+     *
+     * @param instantanea la tarea que se completa al escribir la instantánea
+     */
+    private void prepararInstantanea(CompletableFuture<Path> instantanea) {
+        if (error != null) {
+            instantanea.completeExceptionally(new IOException("El diario de operaciones no está disponible", error));
+            return;
+        }
+        try {
+            canal.force(false);
+            canal.close();
+            canal = abrirTramo(DIRECTORIO, tramo + 1);
+            tramo++;
+        } catch (IOException e) {
+            fallar(e);
+            instantanea.completeExceptionally(e);
+            return;
+        }
+        long numero = tramo;
+        long[] copia = Arrays.copyOf(saldos, numCuentas);
+        INSTANTANEAS.execute(() -> {
+            try {
+                Path fichero = fichero(DIRECTORIO, PREFIJO_INSTANTANEA, numero);
+                InstantaneaBanco.escribir(fichero, BANCO, copia);
+                for (long anterior : numerosFicheros(DIRECTORIO, PREFIJO_DIARIO)) {
+                    if (anterior < numero) {
+                        Files.deleteIfExists(fichero(DIRECTORIO, PREFIJO_DIARIO, anterior));
+                    }
+                }
+                for (long anterior : numerosFicheros(DIRECTORIO, PREFIJO_INSTANTANEA)) {
+                    if (anterior < numero) {
+                        Files.deleteIfExists(fichero(DIRECTORIO, PREFIJO_INSTANTANEA, anterior));
+                    }
+                }
+                instantanea.complete(fichero);
+            } catch (IOException | RuntimeException e) {
+                // El diario sigue completo, así que el banco puede recuperarse sin esta instantánea
+                instantanea.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * Espera a que haya algún apunte en la cola (si no quedan apuntes de la
+     * vuelta anterior) y reúne en el lote todos los que lleguen hasta
+     * completar el tamaño de lote o agotar la ventana.
+     *
+     * @param lote la lista en la que se reúnen los apuntes
+     *
+     * @throws InterruptedException si se interrumpe el hilo escritor
+     */
+    private void reunirLote(List<Apunte> lote) throws InterruptedException {
+        if (lote.isEmpty()) {
+            lote.add(COLA.take());
+        }
+        COLA.drainTo(lote, TAMANO_LOTE - lote.size());
+        long limite = System.nanoTime() + VENTANA_NANOS;
+        while (VENTANA_NANOS > 0 && lote.size() < TAMANO_LOTE && indiceMarca(lote) < 0) {
+            long restante = limite - System.nanoTime();
+            Apunte apunte = restante > 0 ? COLA.poll(restante, TimeUnit.NANOSECONDS) : null;
+            if (apunte == null) {
+                break;
+            }
+            lote.add(apunte);
+            COLA.drainTo(lote, TAMANO_LOTE - lote.size());
+        }
+    }
+
+    /**
+     * Busca la primera marca (de fin o de instantánea) en un lote.
+     *
+     * @param lote el lote de apuntes
+     *
+     * @return la posición de la primera marca, o -1 si no hay ninguna
+     */
+    private static int indiceMarca(List<Apunte> lote) {
+        for (int i = 0; i < lote.size(); i++) {
+            Apunte apunte = lote.get(i);
+            if (apunte == FIN || apunte.instantanea != null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Codifica un lote de apuntes en el buffer, precedido de su longitud y su
+     * CRC, y lo deja preparado para escribirlo.
+     *
+     * @param lote   el lote de apuntes
+     * @param buffer el buffer en el que se codifica
+     * @param crc    el calculador de CRC
+     *
+     * @return el buffer con el lote (uno nuevo si no cabía en el anterior)
+     */
+    private ByteBuffer codificarLote(List<Apunte> lote, ByteBuffer buffer, CRC32C crc) {
+        int necesario = TAMANO_CABECERA_LOTE;
+        for (Apunte apunte : lote) {
+            necesario += apunte.alta != null ? apunte.alta.length : TAMANO_MOVIMIENTO * 3;
+        }
+        if (necesario > buffer.capacity()) {
+            buffer = ByteBuffer.allocateDirect(Math.max(necesario, buffer.capacity() * 2));
+        }
+        buffer.clear();
+        buffer.position(TAMANO_CABECERA_LOTE);
+        for (Apunte apunte : lote) {
+            if (apunte.alta != null) {
+                buffer.put(apunte.alta);
+                // Se anota el saldo inicial de la cuenta para las instantáneas
+                if (apunte.posicion >= saldos.length) {
+                    saldos = Arrays.copyOf(saldos, Math.max(apunte.posicion + 1, saldos.length * 2));
+                }
+                saldos[apunte.posicion] = apunte.saldoAlta;
+                numCuentas = Math.max(numCuentas, apunte.posicion + 1);
+            } else {
+                codificarOperacion(apunte.resultado, buffer);
+            }
+        }
+        // Se completa la cabecera del lote con la longitud y el CRC de los apuntes
+        int longitud = buffer.position() - TAMANO_CABECERA_LOTE;
+        buffer.flip();
+        crc.reset();
+        crc.update(buffer.slice(TAMANO_CABECERA_LOTE, longitud));
+        buffer.putInt(0, longitud);
+        buffer.putInt(4, (int) crc.getValue());
+        return buffer;
+    }
+
+    /**
+     * Codifica los movimientos de una operación: su cantidad y, si la hay, la
+     * comisión por descubierto; en las transferencias, la salida en la cuenta
+     * de origen y la entrada en la de destino.
+     *
+     * @param resultado el resultado de la operación
+     * @param buffer    el buffer en el que se codifica
+     */
+    private void codificarOperacion(ResultadoOperacion resultado, ByteBuffer buffer) {
+        int posicion = resultado.posicion();
+        switch (resultado.tipo()) {
+            // Los intereses abonados se reproducen igual que un ingreso
+            case INGRESO, INTERES ->
+                movimiento(buffer, INGRESO, posicion, resultado.cantidadCentimos());
+            case RETIRADA ->
+                movimiento(buffer, RETIRADA, posicion, resultado.cantidadCentimos());
+            case TRANSFERENCIA -> {
+                movimiento(buffer, TRANSFERENCIA_SALIDA, posicion, resultado.cantidadCentimos());
+                movimiento(buffer, TRANSFERENCIA_ENTRADA, resultado.posicionDestino(), resultado.cantidadCentimos());
+            }
+        }
+        if (resultado.comisionCentimos() != 0) {
+            movimiento(buffer, COMISION_DESCUBIERTO, posicion, resultado.comisionCentimos());
+        }
+    }
+
+    /**
+     * Codifica un apunte de movimiento y lo aplica a los saldos que se usan
+     * para las instantáneas.
+     *
+     * @param buffer   el buffer en el que se codifica
+     * @param tipo     el tipo de movimiento
+     * @param posicion la posición de la cuenta
+     * @param centimos la cantidad en céntimos
+     *
+     * @throws IllegalStateException si la cuenta no se ha dado de alta en el
+     *                               diario
+     */
+    private void movimiento(ByteBuffer buffer, byte tipo, int posicion, long centimos) {
+        if (posicion < 0 || posicion >= numCuentas) {
+            throw new IllegalStateException("Movimiento de una cuenta sin alta en el diario: " + posicion);
+        }
+        buffer.put(tipo).putInt(posicion).putLong(centimos);
+        saldos[posicion] += tipo == INGRESO || tipo == TRANSFERENCIA_ENTRADA ? centimos : -centimos;
+    }
+
+    /**
+     * Detiene el diario por un error: se deja de apuntar y se avisa por la
+     * salida de errores. Las operaciones del banco continúan, pero las
+     * siguientes llamadas al diario lanzan una excepción.
+     *
+     * @param e el error
+     */
+    private void fallar(Exception e) {
+        if (error == null) {
+            error = e;
+            System.err.println("Error en el diario de operaciones, se deja de apuntar: " + e);
+        }
+    }
+
+    /**
+     * Devuelve el error que ha detenido la escritura del diario.
+     *
+     * @return el error, o null si el diario funciona correctamente
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    /**
+     * Comprueba que el diario no se haya detenido por un error.
+     *
+     * @throws IllegalStateException si la escritura del diario ha fallado,
+     *                               con el error como causa
+     */
+    private void comprobarError() {
+        Exception e = error;
+        if (e != null) {
+            throw new IllegalStateException("El diario de operaciones ha fallado y ha dejado de apuntar", e);
+        }
+    }
+
+    /**
+     * Deja de apuntar las operaciones del banco, escribe los apuntes
+     * pendientes, espera a que terminen las instantáneas pedidas, fuerza la
+     * escritura física del diario y cierra el fichero.
+     *
+     * @throws IOException si no se puede escribir o cerrar el fichero, o si
+     *                     la escritura del diario había fallado antes
+     */
+    @Override
+    public void close() throws IOException {
+        cerrado = true;
+        BANCO.eliminarOyente(this);
+        encolar(FIN);
+        try {
+            ESCRITOR.join();
+            // Las instantáneas periódicas se cancelan, pero las ya preparadas terminan de escribirse
+            INSTANTANEAS.shutdown();
+            INSTANTANEAS.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Las instantáneas pedidas después de la marca de fin no se hacen
+        for (Apunte apunte : COLA) {
+            if (apunte.instantanea != null) {
+                apunte.instantanea.completeExceptionally(new IOException("El diario de operaciones está cerrado"));
+            }
+        }
+        try {
+            if (error == null) {
+                canal.force(true);
+            }
+        } finally {
+            canal.close();
+        }
+        if (error != null) {
+            throw new IOException("El diario de operaciones ha fallado y no tiene todas las operaciones", error);
+        }
+    }
+
+    /**
+     * Recupera el estado del banco a partir del directorio del diario: carga
+     * la última instantánea y, a partir de su tramo, vuelve a abrir las
+     * cuentas dadas de alta y aplica a sus saldos los movimientos apuntados.
+     * <p>
+     * Debe llamarse con el banco vacío, antes de operar con él y antes de
+     * crear el diario que apunta sus operaciones. Si el directorio no existe
+     * no hace nada.
+     *
+     * @param directorio el directorio del diario
+     * @param banco      el banco que se recupera
+     *
+     * @return el número de apuntes del diario recuperados (sin contar las
+     *         cuentas cargadas de la instantánea)
+     *
+     * @throws IOException si no se puede leer el diario o la instantánea,
+     *                     están dañados o no corresponden al banco
+     */
+    public static long recuperar(Path directorio, Banco banco) throws IOException {
+        if (!Files.isDirectory(directorio)) {
+            return 0;
+        }
+        long[] instantaneas = numerosFicheros(directorio, PREFIJO_INSTANTANEA);
+        long desde = 0;
+        if (instantaneas.length > 0) {
+            desde = instantaneas[instantaneas.length - 1];
+            InstantaneaBanco.cargar(fichero(directorio, PREFIJO_INSTANTANEA, desde), banco);
+        }
+        long apuntes = 0;
+        for (long numero : numerosFicheros(directorio, PREFIJO_DIARIO)) {
+            if (numero >= desde) {
+                apuntes += recuperarTramo(fichero(directorio, PREFIJO_DIARIO, numero), banco);
+            }
+        }
+        return apuntes;
+    }
+
+    /**
+     * Aplica al banco los apuntes de un tramo del diario. Si el fichero
+     * termina con un lote incompleto o dañado (por una caída a mitad de
+     * escritura) se descarta y se recorta el fichero, para poder seguir
+     * añadiendo apuntes detrás.
+     *
+     * @param fichero el fichero del tramo
+     * @param banco   el banco que se recupera
+     *
+     * @return el número de apuntes recuperados
+     *
+     * @throws IOException si no se puede leer el fichero, no es un diario o
+     *                     sus apuntes no corresponden al banco
+     */
+    private static long recuperarTramo(Path fichero, Banco banco) throws IOException {
+        long apuntes = 0;
+        try (FileChannel canal = FileChannel.open(fichero, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (canal.size() == 0) {
+                return 0;
+            }
+            comprobarCabecera(canal);
+            long posicion = TAMANO_CABECERA;
+            long tamano = canal.size();
+            ByteBuffer cabeceraLote = ByteBuffer.allocate(TAMANO_CABECERA_LOTE);
+            ByteBuffer datos = ByteBuffer.allocate(1 << 16);
+            CRC32C crc = new CRC32C();
+            while (posicion < tamano) {
+                // Cabecera del lote
+                if (!leerCompleto(canal, cabeceraLote.clear(), posicion)) {
+                    break;
+                }
+                int longitud = cabeceraLote.getInt(0);
+                int valorCrc = cabeceraLote.getInt(4);
+                if (longitud < 0 || posicion + TAMANO_CABECERA_LOTE + longitud > tamano) {
+                    break;
+                }
+                // Apuntes del lote
+                if (longitud > datos.capacity()) {
+                    datos = ByteBuffer.allocate(Math.max(longitud, datos.capacity() * 2));
+                }
+                datos.clear().limit(longitud);
+                if (!leerCompleto(canal, datos, posicion + TAMANO_CABECERA_LOTE)) {
+                    break;
+                }
+                datos.flip();
+                crc.reset();
+                crc.update(datos.duplicate());
+                if ((int) crc.getValue() != valorCrc) {
+                    break;
+                }
+                apuntes += aplicarLote(datos, banco);
+                posicion += TAMANO_CABECERA_LOTE + longitud;
+            }
+            // Se descarta lo que haya detrás del último lote correcto
+            if (posicion < tamano) {
+                canal.truncate(posicion);
+            }
+        }
+        return apuntes;
+    }
+
+    /**
+     * Lee bytes del canal hasta llenar el buffer.
+     *
+     * @param canal    el canal del fichero
+     * @param buffer   el buffer a llenar
+     * @param posicion la posición del fichero desde la que se lee
+     *
+     * @return true si se ha llenado el buffer, false si se ha llegado antes
+     *         al final del fichero
+     *
+     * @throws IOException si no se puede leer el fichero
+     */
+    private static boolean leerCompleto(FileChannel canal, ByteBuffer buffer, long posicion) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (canal.read(buffer, posicion + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Aplica al banco los apuntes de un lote.
+     *
+     * @param datos el buffer con los apuntes del lote
+     * @param banco el banco que se recupera
+     *
+     * @return el número de apuntes aplicados
+     *
+     * @throws IOException si los apuntes no corresponden al banco
+     */
+    private static long aplicarLote(ByteBuffer datos, Banco banco) throws IOException {
+        long apuntes = 0;
+        try {
+            while (datos.hasRemaining()) {
+                byte tipo = datos.get();
+                int posicion = datos.getInt();
+                switch (tipo) {
+                    case ALTA -> {
+                        // Las cuentas se abren en el mismo orden, por lo que ocupan la misma posición
+                        if (posicion != banco.getContadorCuentas()
+                                || !banco.abrirCuenta(CodificadorCuentas.leer(datos))) {
+                            throw new IOException("El diario no corresponde al banco");
+                        }
+                    }
+                    case INGRESO, TRANSFERENCIA_ENTRADA ->
+                        banco.ajustarSaldoCentimos(posicion, datos.getLong());
+                    case RETIRADA, TRANSFERENCIA_SALIDA, COMISION_DESCUBIERTO ->
+                        banco.ajustarSaldoCentimos(posicion, -datos.getLong());
+                    default ->
+                        throw new IOException("Tipo de apunte desconocido: " + tipo);
+                }
+                apuntes++;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("El diario no corresponde al banco", e);
+        }
+        return apuntes;
+    }
+
+    /**
+     * Apunte pendiente de escribir: el alta de una cuenta ya codificada, el
+     * resultado de una operación o una marca de instantánea.
+     */
+    private static final class Apunte {
+
+        /**
+         * Resultado de la operación, o null si no es una operación.
+         */
+        final ResultadoOperacion resultado;
+
+        /**
+         * Posición de la cuenta dada de alta.
+         */
+        final int posicion;
+
+        /**
+         * Saldo inicial en céntimos de la cuenta dada de alta.
+         */
+        final long saldoAlta;
+
+        /**
+         * Alta ya codificada, o null si no es un alta.
+         */
+        final byte[] alta;
+
+        /**
+         * Tarea que se completa al escribir la instantánea, o null si no es
+         * una marca de instantánea.
+         */
+        final CompletableFuture<Path> instantanea;
+
+        /**
+         * Hilo que espera a que se escriba el apunte, o null si no espera.
+         */
+        final Thread hilo;
+
+        /**
+         * Indica si el apunte ya se ha escrito.
+         */
+        volatile boolean escrito;
+
+        /**
+         * Crea un apunte de alta o de operación.
+         *
+         * @param resultado el resultado de la operación, o null
+         * @param posicion  la posición de la cuenta dada de alta
+         * @param saldoAlta el saldo inicial de la cuenta dada de alta
+         * @param alta      el alta codificada, o null
+         * @param hilo      el hilo que espera, o null
+         */
+        Apunte(ResultadoOperacion resultado, int posicion, long saldoAlta, byte[] alta, Thread hilo) {
+            this.resultado = resultado;
+            this.posicion = posicion;
+            this.saldoAlta = saldoAlta;
+            this.alta = alta;
+            this.instantanea = null;
+            this.hilo = hilo;
+        }
+
+        /**
+         * Crea una marca de instantánea, o la marca de fin si la tarea es
+         * null.
+         *
+         * @param instantanea la tarea que se completa al escribir la
+         *                    instantánea, o null
+         */
+        Apunte(CompletableFuture<Path> instantanea) {
+            this.resultado = null;
+            this.posicion = -1;
+            this.saldoAlta = 0;
+            this.alta = null;
+            this.instantanea = instantanea;
+            this.hilo = null;
+        }
+    }
+}
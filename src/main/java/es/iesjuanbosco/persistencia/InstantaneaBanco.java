@@ -0,0 +1,194 @@
+package es.iesjuanbosco.persistencia;
+
+import es.iesjuanbosco.logica.Banco;
+import es.iesjuanbosco.logica.CuentaBancaria;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Clase que escribe y carga instantáneas del banco: ficheros binarios con
+ * todas sus cuentas (con su titular y su saldo) en un momento dado. Formato:
+ *
+ * <pre>
+ * marca (4 bytes) | versión (4) | número de cuentas (4) |
+ * cuentas (ver CodificadorCuentas), en orden de posición | CRC32C (4)
+ * </pre>
+ *
+ * La instantánea se escribe en un fichero temporal que se renombra al
+ * terminar, por lo que nunca queda a medias con su nombre definitivo. Para
+ * cargarla se proyecta el fichero en memoria y se lee de forma secuencial,
+ * sin copias intermedias. Como una sola proyección admite como mucho 2 GB, el
+ * fichero se proyecta por ventanas de {@link #VENTANA} bytes: cuando lo que
+ * queda de la ventana actual puede no contener una cuenta completa, se
+ * proyecta la siguiente a partir de esa cuenta.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+final class InstantaneaBanco {
+
+    /**
+     * Marca con la que empiezan los ficheros de instantánea ("BINS").
+     */
+    private static final int MARCA = 0x42494E53;
+
+    /**
+     * Versión del formato del fichero.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Tamaño de la cabecera del fichero.
+     */
+    private static final int TAMANO_CABECERA = 12;
+
+    /**
+     * Tamaño del CRC del final del fichero.
+     */
+    private static final int TAMANO_CRC = 4;
+
+    /**
+     * Tamaño de las ventanas con las que se proyecta el fichero al cargarlo.
+     */
+    static final int VENTANA = 1 << 30;
+
+    /**
+     * Tamaño del buffer de escritura.
+     */
+    private static final int TAMANO_BUFFER = 1 << 20;
+
+    /**
+     * Escribe una instantánea con las primeras cuentas del banco. Los saldos no
+     * se leen de las cuentas sino del array recibido, de modo que la
+     * instantánea refleja los saldos de un instante concreto aunque el banco
+     * siga operando mientras se escribe.
+     *
+     * @param fichero el fichero de la instantánea
+     * @param banco   el banco
+     * @param saldos  los saldos en céntimos de las cuentas, por posición (su
+     *                longitud es el número de cuentas que se escriben)
+     *
+     * @throws IOException si no se puede escribir el fichero
+     */
+    static void escribir(Path fichero, Banco banco, long[] saldos) throws IOException {
+        Path temporal = fichero.resolveSibling(fichero.getFileName() + ".tmp");
+        CRC32C crc = new CRC32C();
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // El canal no se cierra al cerrar el flujo, para poder forzar la escritura después
+            DataOutputStream salida = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(Channels.newOutputStream(canal), crc), TAMANO_BUFFER));
+            salida.writeInt(MARCA);
+            salida.writeInt(VERSION);
+            salida.writeInt(saldos.length);
+            for (int i = 0; i < saldos.length; i++) {
+                CodificadorCuentas.escribir(salida, banco.cuentaEnPosicion(i), saldos[i]);
+            }
+            salida.flush();
+            ByteBuffer crcFinal = ByteBuffer.allocate(TAMANO_CRC).putInt((int) crc.getValue()).flip();
+            while (crcFinal.hasRemaining()) {
+                canal.write(crcFinal);
+            }
+            canal.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporal);
+            throw e;
+        }
+        Files.move(temporal, fichero, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Carga una instantánea en un banco vacío, abriendo sus cuentas en el
+     * mismo orden en que estaban, de modo que conservan su posición.
+     *
+     * @param fichero el fichero de la instantánea
+     * @param banco   el banco, sin ninguna cuenta
+     *
+     * @return el número de cuentas cargadas
+     *
+     * @throws IOException si no se puede leer el fichero, está dañado o no
+     *                     cabe en el banco
+     */
+    static int cargar(Path fichero, Banco banco) throws IOException {
+        return cargar(fichero, banco, VENTANA);
+    }
+
+    /**
+     * Carga una instantánea en un banco vacío proyectando el fichero por
+     * ventanas del tamaño indicado.
+     *
+     * @param fichero el fichero de la instantánea
+     * @param banco   el banco, sin ninguna cuenta
+     * @param ventana el tamaño de las ventanas, al menos
+     *                {@link CodificadorCuentas#TAMANO_MAXIMO} bytes
+     *
+     * @return el número de cuentas cargadas
+     *
+     * @throws IOException si no se puede leer el fichero, está dañado o no
+     *                     cabe en el banco
+     */
+    static int cargar(Path fichero, Banco banco, int ventana) throws IOException {
+        if (banco.getContadorCuentas() != 0) {
+            throw new IOException("La instantánea sólo puede cargarse en un banco vacío");
+        }
+        try (FileChannel canal = FileChannel.open(fichero, StandardOpenOption.READ)) {
+            long tamano = canal.size();
+            if (tamano < TAMANO_CABECERA + TAMANO_CRC) {
+                throw new IOException("La instantánea está incompleta");
+            }
+            long finCuentas = tamano - TAMANO_CRC;
+            CRC32C crc = new CRC32C();
+            for (long inicio = 0; inicio < finCuentas; inicio += ventana) {
+                crc.update(canal.map(FileChannel.MapMode.READ_ONLY, inicio, Math.min(ventana, finCuentas - inicio)));
+            }
+            ByteBuffer crcFinal = ByteBuffer.allocate(TAMANO_CRC);
+            while (crcFinal.hasRemaining()) {
+                if (canal.read(crcFinal, finCuentas + crcFinal.position()) < 0) {
+                    throw new IOException("La instantánea está incompleta");
+                }
+            }
+            if ((int) crc.getValue() != crcFinal.getInt(0)) {
+                throw new IOException("La instantánea está dañada");
+            }
+            MappedByteBuffer datos = canal.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(ventana, finCuentas));
+            if (datos.getInt() != MARCA || datos.getInt() != VERSION) {
+                throw new IOException("El fichero no es una instantánea válida");
+            }
+            int numCuentas = datos.getInt();
+            // Posición del fichero en la que empieza la ventana actual
+            long inicio = 0;
+            for (int i = 0; i < numCuentas; i++) {
+                long posicion = inicio + datos.position();
+                if (datos.remaining() < CodificadorCuentas.TAMANO_MAXIMO && inicio + datos.limit() < finCuentas) {
+                    inicio = posicion;
+                    datos = canal.map(FileChannel.MapMode.READ_ONLY, inicio, Math.min(ventana, finCuentas - inicio));
+                }
+                CuentaBancaria cuenta = CodificadorCuentas.leer(datos);
+                if (!banco.abrirCuenta(cuenta)) {
+                    throw new IOException("Las cuentas de la instantánea no caben en el banco");
+                }
+            }
+            if (inicio + datos.position() != finCuentas) {
+                throw new IOException("La instantánea está dañada");
+            }
+            return numCuentas;
+        }
+    }
+
+    /**
+     * Constructor privado para evitar la instanciación de la clase.
+     */
+    private InstantaneaBanco() {
+    }
+}
@@ -0,0 +1,38 @@
+package es.iesjuanbosco.persistencia;
+
+/**
+ * Niveles de durabilidad del diario de operaciones: indican cuándo se fuerza
+ * la escritura física de los apuntes en disco y si las operaciones esperan a
+ * que estén escritos.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ * @see DiarioOperaciones
+ */
+public enum NivelDurabilidad {
+
+    /**
+     * Los apuntes se escriben en el fichero por lotes pero no se fuerza su
+     * escritura física: quedan en la caché del sistema operativo, que los
+     * escribe cuando le conviene. Es el nivel más rápido, pero una caída del
+     * sistema puede perder los últimos apuntes.
+     */
+    NINGUNA,
+
+    /**
+     * Cada lote de apuntes se escribe y se fuerza su escritura física (una
+     * sola vez por lote), pero las operaciones no esperan a que termine. Si el
+     * programa termina de forma brusca se pueden perder los apuntes del último
+     * lote.
+     */
+    AGRUPADA,
+
+    /**
+     * Igual que {@link #AGRUPADA}, pero cada operación espera a que su apunte
+     * esté físicamente escrito antes de terminar. Las operaciones simultáneas
+     * comparten la misma escritura forzada (group commit), de modo que el
+     * número de operaciones por segundo no está limitado por el tiempo de cada
+     * escritura forzada.
+     */
+    SINCRONA
+}
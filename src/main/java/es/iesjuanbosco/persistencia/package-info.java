@@ -0,0 +1,6 @@
+/**
+ * Este paquete contiene las clases que guardan en disco el estado del banco
+ * para poder recuperarlo al volver a arrancar el programa, como el diario de
+ * operaciones.
+ */
+package es.iesjuanbosco.persistencia;
@@ -0,0 +1,502 @@
+package es.iesjuanbosco.servidor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import es.iesjuanbosco.logica.Banco;
+import es.iesjuanbosco.logica.CuentaAhorro;
+import es.iesjuanbosco.logica.CuentaBancaria;
+import es.iesjuanbosco.logica.CuentaCorrienteEmpresa;
+import es.iesjuanbosco.logica.CuentaCorrientePersonal;
+import es.iesjuanbosco.logica.Persona;
+import es.iesjuanbosco.logica.ResultadoOperacion;
+import es.iesjuanbosco.logica.TuberiaOperaciones;
+import es.iesjuanbosco.util.Dinero;
+import es.iesjuanbosco.util.FormatoMoneda;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import static es.iesjuanbosco.util.Utilidades.*;
+
+/**
+ * Servidor HTTP local que permite operar con el banco sin el menú de la
+ * consola. Se basa en el servidor HTTP incluido en el JDK y sólo escucha en la
+ * interfaz local (localhost). Las peticiones y respuestas son de texto plano en
+ * UTF-8; los parámetros se envían en la URL o en el cuerpo como formulario
+ * (application/x-www-form-urlencoded):
+ *
+ * <pre>
+ * POST /cuentas                        abrir una cuenta (tipo=ahorro|personal|empresa,
+ *                                      nombre, apellidos, dni, iban, saldo y los
+ *                                      datos propios del tipo: interes; entidades
+ *                                      (separadas por comas) y comision;
+ *                                      entidades, descubierto, interesDescubierto
+ *                                      y comisionDescubierto)
+ * GET  /cuentas                        listado de las cuentas, por páginas
+ *                                      (pagina, empezando por 1, y tamano)
+ * GET  /cuentas/{iban}                 datos de una cuenta
+ * GET  /cuentas/{iban}/saldo           saldo de una cuenta
+ * POST /cuentas/{iban}/ingreso         ingreso (cantidad)
+ * POST /cuentas/{iban}/retirada        retirada (cantidad)
+ * </pre>
+ *
+ * Las cantidades se escriben en euros con punto o coma decimal. Los ingresos
+ * y retiradas se hacen directamente sobre el banco o, si el servidor se crea
+ * con una {@link TuberiaOperaciones}, se publican en ella y se responde cuando
+ * la orden ha pasado por todas sus etapas; si su aplicación falla se responde
+ * con el estado 500.
+ * <p>
+ * Cada petición
+ * se atiende en su propio hilo virtual si la máquina virtual los admite (Java
+ * 21 o posterior), de modo que miles de clientes simultáneos no necesitan miles
+ * de hilos del sistema; en versiones anteriores se usa un conjunto de hilos
+ * que se reutilizan.
+ * <p>
+ * El servidor del JDK envía las cabeceras y el cuerpo de cada respuesta en
+ * dos escrituras: con el algoritmo de Nagle activo, la segunda espera al ACK
+ * retardado del cliente (unos 40 ms) en las conexiones persistentes. Para
+ * evitarlo hay que dar el valor true a la propiedad del sistema
+ * {@code sun.net.httpserver.nodelay} antes de crear el primer servidor de la
+ * máquina virtual, como hace el programa al arrancar.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+public class ServidorBanco implements AutoCloseable {
+
+    /**
+     * Puerto por defecto del servidor.
+     */
+    public static final int PUERTO_POR_DEFECTO = 8080;
+
+    /**
+     * Ruta base de las peticiones.
+     */
+    private static final String RUTA = "/cuentas";
+
+    /**
+     * Número de cuentas por defecto de cada página del listado.
+     */
+    private static final int TAMANO_PAGINA_POR_DEFECTO = 100;
+
+    /**
+     * Número máximo de cuentas de cada página del listado.
+     */
+    private static final int TAMANO_PAGINA_MAXIMO = 10_000;
+
+    /**
+     * Número de conexiones pendientes de aceptar que admite el servidor.
+     */
+    private static final int CONEXIONES_PENDIENTES = 1024;
+
+    /**
+     * Banco con el que se opera.
+     */
+    private final Banco BANCO;
+
+    /**
+     * Tubería en la que se publican los ingresos y retiradas, o null si se
+     * hacen directamente sobre el banco.
+     */
+    private final TuberiaOperaciones TUBERIA;
+
+    /**
+     * Servidor HTTP del JDK.
+     */
+    private final HttpServer SERVIDOR;
+
+    /**
+     * Hilos que atienden las peticiones.
+     */
+    private final ExecutorService HILOS;
+
+    /**
+     * Crea el servidor y lo pone a escuchar en la interfaz local.
+     *
+     * @param banco  el banco con el que se opera
+     * @param puerto el puerto en el que escucha (0 para uno libre cualquiera)
+     *
+     * @throws IOException si no se puede abrir el puerto
+     */
+    public ServidorBanco(Banco banco, int puerto) throws IOException {
+        this(banco, puerto, null);
+    }
+
+    /**
+     * Crea el servidor y lo pone a escuchar en la interfaz local. Los ingresos
+     * y retiradas se publican en una tubería, que ha de operar con el mismo
+     * banco y que el servidor no cierra.
+     *
+     * @param banco   el banco con el que se opera
+     * @param puerto  el puerto en el que escucha (0 para uno libre cualquiera)
+     * @param tuberia la tubería de las operaciones, o null para operar
+     *                directamente con el banco
+     *
+     * @throws IOException si no se puede abrir el puerto
+     */
+    public ServidorBanco(Banco banco, int puerto, TuberiaOperaciones tuberia) throws IOException {
+        this.BANCO = banco;
+        this.TUBERIA = tuberia;
+        this.HILOS = crearHilos();
+        this.SERVIDOR = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), puerto), CONEXIONES_PENDIENTES);
+        this.SERVIDOR.createContext(RUTA, this::atender);
+        this.SERVIDOR.setExecutor(this.HILOS);
+        this.SERVIDOR.start();
+    }
+
+    /**
+     * Crea el ejecutor que atiende las peticiones: un hilo virtual por
+     * petición si la máquina virtual los admite o, si no, un conjunto de hilos
+     * que se reutilizan. Se busca por reflexión para que el programa siga
+     * compilando y funcionando con Java 17.
+     *
+     * @return el ejecutor de las peticiones
+     */
+    private static ExecutorService crearHilos() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(tarea -> {
+                Thread hilo = new Thread(tarea, "servidor-banco");
+                hilo.setDaemon(true);
+                return hilo;
+            });
+        }
+    }
+
+    /**
+     * Devuelve el puerto en el que escucha el servidor.
+     *
+     * @return el puerto
+     */
+    public int getPuerto() {
+        return SERVIDOR.getAddress().getPort();
+    }
+
+    /**
+     * Atiende una petición: la dirige a la operación que corresponde a su ruta
+     * y su método y envía la respuesta.
+     *
+     * @param peticion la petición
+     *
+     * @throws IOException si no se puede leer la petición o enviar la
+     *                     respuesta
+     */
+    private void atender(HttpExchange peticion) throws IOException {
+        try (peticion) {
+            Respuesta respuesta;
+            try {
+                respuesta = dirigir(peticion);
+            } catch (IllegalArgumentException e) {
+                // Parámetros que faltan o no tienen el formato correcto (incluye NumberFormatException)
+                respuesta = new Respuesta(400, e.getMessage());
+            } catch (ArithmeticException e) {
+                // Cantidades que harían que un saldo no cupiese en un long
+                respuesta = new Respuesta(400, "Cantidad fuera de rango: " + e.getMessage());
+            } catch (RuntimeException e) {
+                // Cualquier otro error (por ejemplo del diario de operaciones) también recibe respuesta
+                respuesta = new Respuesta(500, "Error interno: " + e.getMessage());
+            }
+            byte[] cuerpo = (respuesta.texto() + "\n").getBytes(StandardCharsets.UTF_8);
+            peticion.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+            peticion.sendResponseHeaders(respuesta.estado(), cuerpo.length);
+            try (OutputStream salida = peticion.getResponseBody()) {
+                salida.write(cuerpo);
+            }
+        }
+    }
+
+    /**
+     * Dirige una petición a la operación que corresponde a su ruta y su
+     * método.
+     *
+     * @param peticion la petición
+     *
+     * @return la respuesta
+     *
+     * @throws IOException si no se puede leer la petición
+     */
+    private Respuesta dirigir(HttpExchange peticion) throws IOException {
+        boolean get = peticion.getRequestMethod().equals("GET");
+        boolean post = peticion.getRequestMethod().equals("POST");
+        // Partes de la ruta detrás de "/cuentas": ninguna, el IBAN, o el IBAN y la operación
+        String resto = peticion.getRequestURI().getPath().substring(RUTA.length());
+        if (!resto.isEmpty() && !resto.startsWith("/")) {
+            return new Respuesta(404, "Ruta no encontrada");
+        }
+        String[] partes = resto.length() <= 1 ? new String[0] : resto.substring(1).split("/");
+        Map<String, String> parametros = leerParametros(peticion);
+        if (partes.length == 0) {
+            return post ? abrirCuenta(parametros) : get ? listado(parametros) : new Respuesta(405, "Método no permitido");
+        }
+        String iban = partes[0].toUpperCase();
+        String operacion = partes.length == 2 ? partes[1] : partes.length == 1 ? "" : null;
+        if (operacion == null || !List.of("", "saldo", "ingreso", "retirada").contains(operacion)) {
+            return new Respuesta(404, "Ruta no encontrada");
+        }
+        // Las consultas se hacen con GET y las operaciones con POST
+        if (operacion.equals("ingreso") || operacion.equals("retirada") ? !post : !get) {
+            return new Respuesta(405, "Método no permitido");
+        }
+        return switch (operacion) {
+            case "saldo" ->
+                saldo(iban);
+            case "ingreso" ->
+                resultado(ingreso(iban, Dinero.deTexto(obligatorio(parametros, "cantidad"))));
+            case "retirada" ->
+                resultado(retirada(iban, Dinero.deTexto(obligatorio(parametros, "cantidad"))));
+            default ->
+                informacion(iban);
+        };
+    }
+
+    /**
+     * Hace un ingreso, en la tubería si la hay o directamente en el banco.
+     *
+     * @param iban     el IBAN de la cuenta
+     * @param centimos la cantidad en céntimos
+     *
+     * @return el resultado del ingreso
+     */
+    private ResultadoOperacion ingreso(String iban, long centimos) {
+        return TUBERIA == null ? BANCO.ingresoCentimos(iban, centimos) : TUBERIA.ingresoConResultado(iban, centimos).join();
+    }
+
+    /**
+     * Hace una retirada, en la tubería si la hay o directamente en el banco.
+     *
+     * @param iban     el IBAN de la cuenta
+     * @param centimos la cantidad en céntimos
+     *
+     * @return el resultado de la retirada
+     */
+    private ResultadoOperacion retirada(String iban, long centimos) {
+        return TUBERIA == null ? BANCO.retiradaCentimos(iban, centimos) : TUBERIA.retiradaConResultado(iban, centimos).join();
+    }
+
+    /**
+     * Abre una cuenta con los datos recibidos.
+     *
+     * @param parametros los parámetros de la petición
+     *
+     * @return la respuesta
+     */
+    private Respuesta abrirCuenta(Map<String, String> parametros) {
+        String dni = obligatorio(parametros, "dni").toUpperCase();
+        if (!esCorrectoDNI(dni)) {
+            throw new IllegalArgumentException("El DNI introducido no es válido, debe estar compuesto por 7-8 números y la letra correcta (o X, Y o Z, 7 números y la letra correcta si es un NIE)");
+        }
+        String iban = obligatorio(parametros, "iban").toUpperCase();
+        if (!esCorrectoIBAN(iban)) {
+            throw new IllegalArgumentException("El IBAN introducido no es correcto");
+        }
+        long saldo = Dinero.deTexto(obligatorio(parametros, "saldo"));
+        if (saldo < 0) {
+            throw new IllegalArgumentException("El saldo inicial ha de ser mayor o igual a 0");
+        }
+        Persona titular = new Persona(formatoNombreApellido(obligatorio(parametros, "nombre")),
+                formatoNombreApellido(obligatorio(parametros, "apellidos")), dni);
+        CuentaBancaria cuenta = switch (obligatorio(parametros, "tipo").toLowerCase()) {
+            case "ahorro" ->
+                new CuentaAhorro(titular, 0, iban, decimal(parametros, "interes"));
+            case "personal" ->
+                new CuentaCorrientePersonal(titular, 0, iban, obligatorio(parametros, "entidades"),
+                decimal(parametros, "comision"));
+            case "empresa" ->
+                new CuentaCorrienteEmpresa(titular, 0, iban, obligatorio(parametros, "entidades"),
+                decimal(parametros, "descubierto"), decimal(parametros, "interesDescubierto"),
+                decimal(parametros, "comisionDescubierto"));
+            default ->
+                throw new IllegalArgumentException("El tipo de cuenta ha de ser ahorro, personal o empresa");
+        };
+        // El saldo se establece en céntimos para no pasar por double
+        cuenta.setSaldoCentimos(saldo);
+        // El banco comprueba el IBAN en la misma alta, así que dos peticiones simultáneas no pueden abrir las dos
+        return switch (BANCO.altaCuenta(cuenta)) {
+            case ABIERTA ->
+                new Respuesta(201, "¡La cuenta se ha creado con éxito!");
+            case IBAN_EXISTENTE ->
+                new Respuesta(409, "¡Ya existe una cuenta con ese IBAN!");
+            case SIN_ESPACIO ->
+                new Respuesta(409, "¡Se ha alcanzado el número máximo de cuentas!");
+        };
+    }
+
+    /**
+     * Devuelve una página del listado de las cuentas, precedida de una línea
+     * que indica qué cuentas contiene.
+     *
+     * @param parametros los parámetros de la petición (pagina, empezando por
+     *                   1, y tamano)
+     *
+     * @return la respuesta
+     */
+    private Respuesta listado(Map<String, String> parametros) {
+        int pagina = Integer.parseInt(parametros.getOrDefault("pagina", "1").trim());
+        int tamano = Integer.parseInt(parametros.getOrDefault("tamano", String.valueOf(TAMANO_PAGINA_POR_DEFECTO)).trim());
+        if (pagina < 1 || tamano < 1 || tamano > TAMANO_PAGINA_MAXIMO) {
+            throw new IllegalArgumentException("La página ha de ser mayor que 0 y su tamaño estar entre 1 y " + TAMANO_PAGINA_MAXIMO);
+        }
+        int numCuentas = BANCO.getContadorCuentas();
+        if (numCuentas == 0) {
+            return new Respuesta(200, "¡Aún no hay cuentas creadas!");
+        }
+        List<String> cuentas = BANCO.paginaCuentas(pagina - 1, tamano);
+        long desde = (long) (pagina - 1) * tamano;
+        StringBuilder texto = new StringBuilder(cuentas.size() * 512);
+        texto.append("Cuentas ").append(cuentas.isEmpty() ? 0 : desde + 1).append('-').append(desde + cuentas.size())
+                .append(" de ").append(numCuentas);
+        for (String cuenta : cuentas) {
+            texto.append("\n\n").append(cuenta);
+        }
+        return new Respuesta(200, texto.toString());
+    }
+
+    /**
+     * Devuelve los datos de una cuenta.
+     *
+     * @param iban el IBAN de la cuenta
+     *
+     * @return la respuesta
+     */
+    private Respuesta informacion(String iban) {
+        String informacion = BANCO.informacionCuenta(iban);
+        return informacion == null ? new Respuesta(404, "¡La cuenta ingresada no existe!") : new Respuesta(200, informacion);
+    }
+
+    /**
+     * Devuelve el saldo de una cuenta.
+     *
+     * @param iban el IBAN de la cuenta
+     *
+     * @return la respuesta
+     */
+    private Respuesta saldo(String iban) {
+        if (!BANCO.esCuentaExistente(iban)) {
+            return new Respuesta(404, "¡La cuenta ingresada no existe!");
+        }
+        return new Respuesta(200, "Saldo actual: " + FormatoMoneda.euros(BANCO.obtenerSaldo(iban)));
+    }
+
+    /**
+     * Convierte el resultado de una operación en una respuesta, con el estado
+     * que corresponde a su motivo.
+     *
+     * @param resultado el resultado de la operación
+     *
+     * @return la respuesta
+     */
+    private static Respuesta resultado(ResultadoOperacion resultado) {
+        int estado = switch (resultado.motivo()) {
+            case REALIZADA, REALIZADA_CON_DESCUBIERTO ->
+                200;
+            case CUENTA_INEXISTENTE ->
+                404;
+            case CANTIDAD_NO_VALIDA, MISMA_CUENTA, FUERA_DE_RANGO ->
+                400;
+            case SALDO_INSUFICIENTE, SUPERA_DESCUBIERTO_MAXIMO ->
+                409;
+            case ERROR_INTERNO ->
+                500;
+        };
+        return new Respuesta(estado, resultado.devolverMensaje());
+    }
+
+    /**
+     * Lee los parámetros de la URL y, si los hay, los del cuerpo de la
+     * petición.
+     *
+     * @param peticion la petición
+     *
+     * @return los parámetros, por nombre
+     *
+     * @throws IOException si no se puede leer el cuerpo de la petición
+     */
+    private static Map<String, String> leerParametros(HttpExchange peticion) throws IOException {
+        Map<String, String> parametros = new HashMap<>();
+        anadirParametros(parametros, peticion.getRequestURI().getRawQuery());
+        try (InputStream cuerpo = peticion.getRequestBody()) {
+            anadirParametros(parametros, new String(cuerpo.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        return parametros;
+    }
+
+    /**
+     * Añade los parámetros de un texto con el formato nombre=valor&amp;...
+     *
+     * @param parametros los parámetros leídos
+     * @param texto      el texto con los parámetros, o null
+     */
+    private static void anadirParametros(Map<String, String> parametros, String texto) {
+        if (texto == null || texto.isBlank()) {
+            return;
+        }
+        for (String parametro : texto.trim().split("&")) {
+            int igual = parametro.indexOf('=');
+            if (igual > 0) {
+                parametros.put(URLDecoder.decode(parametro.substring(0, igual), StandardCharsets.UTF_8),
+                        URLDecoder.decode(parametro.substring(igual + 1), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /**
+     * Devuelve un parámetro obligatorio.
+     *
+     * @param parametros los parámetros de la petición
+     * @param nombre     el nombre del parámetro
+     *
+     * @return el valor del parámetro
+     *
+     * @throws IllegalArgumentException si falta el parámetro o está vacío
+     */
+    private static String obligatorio(Map<String, String> parametros, String nombre) {
+        String valor = parametros.get(nombre);
+        if (valor == null || valor.isBlank()) {
+            throw new IllegalArgumentException("Falta el parámetro \"" + nombre + "\"");
+        }
+        return valor.trim();
+    }
+
+    /**
+     * Devuelve un parámetro obligatorio con un número decimal, con punto o
+     * coma decimal.
+     *
+     * @param parametros los parámetros de la petición
+     * @param nombre     el nombre del parámetro
+     *
+     * @return el valor del parámetro
+     *
+     * @throws IllegalArgumentException si falta el parámetro o no es un número
+     */
+    private static double decimal(Map<String, String> parametros, String nombre) {
+        return Double.parseDouble(obligatorio(parametros, nombre).replace(',', '.'));
+    }
+
+    /**
+     * Deja de aceptar peticiones, espera como mucho un segundo a que terminen
+     * las que se están atendiendo y detiene el servidor.
+     */
+    @Override
+    public void close() {
+        SERVIDOR.stop(1);
+        HILOS.shutdown();
+    }
+
+    /**
+     * Respuesta a una petición: su estado HTTP y su texto.
+     *
+     * @param estado el código de estado HTTP
+     * @param texto  el texto de la respuesta
+     */
+    private record Respuesta(int estado, String texto) {
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * Este paquete contiene las clases que permiten operar con el banco a través
+ * de la red, como el servidor HTTP local.
+ */
+package es.iesjuanbosco.servidor;
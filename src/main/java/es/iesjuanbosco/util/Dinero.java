@@ -0,0 +1,326 @@
+package es.iesjuanbosco.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Clase que proporciona operaciones con cantidades de dinero representadas
+ * como un número entero de céntimos ({@code long}). Las operaciones son
+ * exactas, no crean objetos y, cuando hay que redondear, lo hacen según el
+ * {@link RoundingMode} indicado.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+public class Dinero {
+
+    /**
+     * Número de céntimos que tiene un euro.
+     */
+    public static final long CENTIMOS_POR_EURO = 100;
+
+    /**
+     * Modo de redondeo utilizado por defecto (redondeo comercial).
+     */
+    public static final RoundingMode REDONDEO_POR_DEFECTO = RoundingMode.HALF_UP;
+
+    /**
+     * Número de decimales con los que se representan los porcentajes en los
+     * cálculos (escala 10^4).
+     */
+    private static final long ESCALA_PORCENTAJE = 10_000;
+
+    /**
+     * Margen con el que se considera que un valor decimal está en el punto
+     * medio entre dos enteros, o junto a un entero, y hace falta comprobarlo o
+     * redondearlo de forma exacta.
+     */
+    private static final double MARGEN_PUNTO_MEDIO = 1e-6;
+
+    /**
+     * Mayor valor absoluto que se puede convertir de double a long sin perder
+     * precisión en las unidades (2^53).
+     */
+    private static final double MAXIMO_EXACTO = 9_007_199_254_740_992d;
+
+    /**
+     * Convierte una cantidad en euros a céntimos.
+     *
+     * @param euros la cantidad en euros
+     * @param modo  el modo de redondeo si la cantidad tiene más de 2 decimales
+     *
+     * @return la cantidad en céntimos
+     *
+     * @throws ArithmeticException si la cantidad no es un número finito o no
+     *                             cabe en un long
+     */
+    public static long deEuros(double euros, RoundingMode modo) {
+        return escalar(euros, CENTIMOS_POR_EURO, modo);
+    }
+
+    /**
+     * Convierte una cantidad en euros a céntimos con el modo de redondeo por
+     * defecto.
+     *
+     * @param euros la cantidad en euros
+     *
+     * @return la cantidad en céntimos
+     *
+     * @see #REDONDEO_POR_DEFECTO
+     */
+    public static long deEuros(double euros) {
+        return deEuros(euros, REDONDEO_POR_DEFECTO);
+    }
+
+    /**
+     * Indica si una cantidad en euros se puede convertir a céntimos, es decir,
+     * si es un número finito y, una vez redondeada a céntimos, cabe en un
+     * long. Sirve para validar las cantidades introducidas antes de operar con
+     * ellas.
+     *
+     * @param euros la cantidad en euros
+     *
+     * @return true si la cantidad se puede convertir a céntimos
+     *
+     * @see #deEuros(double)
+     */
+    public static boolean cabeEnCentimos(double euros) {
+        if (!Double.isFinite(euros)) {
+            return false;
+        }
+        try {
+            deEuros(euros);
+            return true;
+        } catch (ArithmeticException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Convierte una cantidad en céntimos a euros.
+     *
+     * @param centimos la cantidad en céntimos
+     *
+     * @return la cantidad en euros
+     */
+    public static double aEuros(long centimos) {
+        return centimos / (double) CENTIMOS_POR_EURO;
+    }
+
+    /**
+     * Convierte a céntimos una cantidad en euros escrita como texto, con punto
+     * o coma decimal y como mucho 2 decimales. La conversión es exacta, ya
+     * que no pasa por double.
+     *
+     * @param texto la cantidad en euros
+     *
+     * @return la cantidad en céntimos
+     *
+     * @throws NumberFormatException si el texto no es una cantidad válida, tiene
+     *                               más de 2 decimales o no cabe en un long
+     */
+    public static long deTexto(String texto) {
+        try {
+            return new BigDecimal(texto.trim().replace(',', '.'))
+                    .setScale(2, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Cantidad no válida: " + texto);
+        }
+    }
+
+    /**
+     * Suma dos cantidades en céntimos.
+     *
+     * @param a la primera cantidad
+     * @param b la segunda cantidad
+     *
+     * @return la suma de las cantidades
+     *
+     * @throws ArithmeticException si el resultado no cabe en un long
+     */
+    public static long sumar(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    /**
+     * Resta dos cantidades en céntimos.
+     *
+     * @param a la cantidad de la que se resta
+     * @param b la cantidad a restar
+     *
+     * @return la diferencia de las cantidades
+     *
+     * @throws ArithmeticException si el resultado no cabe en un long
+     */
+    public static long restar(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    /**
+     * Calcula un porcentaje de una cantidad en céntimos. El porcentaje se
+     * tiene en cuenta con 4 decimales.
+     *
+     * @param centimos   la cantidad en céntimos
+     * @param porcentaje el porcentaje a aplicar (por ejemplo 4.5 para un 4,5%)
+     * @param modo       el modo de redondeo del resultado
+     *
+     * @return el porcentaje de la cantidad, en céntimos
+     */
+    public static long porcentaje(long centimos, double porcentaje, RoundingMode modo) {
+        long tipo = escalar(porcentaje, ESCALA_PORCENTAJE, RoundingMode.HALF_EVEN);
+        long divisor = 100 * ESCALA_PORCENTAJE;
+        long producto;
+        try {
+            producto = Math.multiplyExact(centimos, tipo);
+        } catch (ArithmeticException e) {
+            // Sólo con cantidades enormes: se calcula con BigDecimal
+            return BigDecimal.valueOf(centimos).multiply(BigDecimal.valueOf(tipo))
+                    .divide(BigDecimal.valueOf(divisor), 0, modo).longValueExact();
+        }
+        return dividir(producto, divisor, modo);
+    }
+
+    /**
+     * Devuelve la comisión a aplicar teniendo en cuenta una comisión mínima:
+     * si la comisión calculada es inferior a la mínima se aplica la mínima.
+     *
+     * @param calculada la comisión calculada, en céntimos
+     * @param minima    la comisión mínima, en céntimos
+     *
+     * @return la comisión a aplicar, en céntimos
+     */
+    public static long comisionMinima(long calculada, long minima) {
+        return Math.max(calculada, minima);
+    }
+
+    /**
+     * Divide dos números enteros redondeando el cociente según el modo
+     * indicado, sin crear objetos.
+     *
+     * @param dividendo el dividendo
+     * @param divisor   el divisor (distinto de 0)
+     * @param modo      el modo de redondeo
+     *
+     * @return el cociente redondeado
+     *
+     * @throws ArithmeticException si el divisor es 0, o si el modo es
+     *                             {@link RoundingMode#UNNECESSARY} y la
+     *                             división no es exacta
+     */
+    public static long dividir(long dividendo, long divisor, RoundingMode modo) {
+        long cociente = dividendo / divisor;
+        long resto = dividendo % divisor;
+        if (resto == 0) {
+            return cociente;
+        }
+        // Signo del resultado exacto (+1 o -1)
+        long signo = ((dividendo ^ divisor) >> 63) | 1;
+        // Comparación del doble del resto con el divisor, para los modos HALF_*
+        int comparacion = Long.compare(Math.abs(resto), Math.abs(divisor) - Math.abs(resto));
+        boolean alejarDeCero = switch (modo) {
+            case UP ->
+                true;
+            case DOWN ->
+                false;
+            case CEILING ->
+                signo > 0;
+            case FLOOR ->
+                signo < 0;
+            case HALF_UP ->
+                comparacion >= 0;
+            case HALF_DOWN ->
+                comparacion > 0;
+            case HALF_EVEN ->
+                comparacion > 0 || (comparacion == 0 && (cociente & 1) != 0);
+            case UNNECESSARY ->
+                throw new ArithmeticException("La división no es exacta");
+        };
+        return alejarDeCero ? cociente + signo : cociente;
+    }
+
+    /**
+     * Multiplica un valor decimal por una escala y lo redondea a un número
+     * entero. El redondeo se hace sobre el valor decimal que representa el
+     * double (el que se mostraría al imprimirlo), de modo que por ejemplo
+     * 1.005 euros son 101 céntimos con {@link RoundingMode#HALF_UP}. Ninguna
+     * diferencia se descarta por pequeña que sea: 0.1 + 0.2 se muestra como
+     * 0.30000000000000004, así que son 31 céntimos con
+     * {@link RoundingMode#UP} y 30 con los demás modos.
+     *
+     * @param valor  el valor decimal
+     * @param escala la escala (potencia de 10)
+     * @param modo   el modo de redondeo
+     *
+     * @return el valor escalado y redondeado
+     *
+     * @throws ArithmeticException si el valor no es un número finito o no cabe
+     *                             en un long
+     */
+    private static long escalar(double valor, long escala, RoundingMode modo) {
+        if (!Double.isFinite(valor)) {
+            throw new ArithmeticException("La cantidad no es un número finito");
+        }
+        double escalado = valor * escala;
+        double entero = Math.floor(escalado);
+        double fraccion = escalado - entero;
+        if (Math.abs(escalado) >= MAXIMO_EXACTO) {
+            return escalarExacto(valor, escala, modo);
+        }
+        if (fraccion < MARGEN_PUNTO_MEDIO || fraccion > 1 - MARGEN_PUNTO_MEDIO) {
+            // Junto a un entero: si el valor es exactamente ese entero de céntimos no hay que redondear
+            long cercano = (long) Math.rint(escalado);
+            if (cercano / (double) escala == valor) {
+                return cercano;
+            }
+            return escalarExacto(valor, escala, modo);
+        }
+        if (Math.abs(fraccion - 0.5) < MARGEN_PUNTO_MEDIO) {
+            return escalarExacto(valor, escala, modo);
+        }
+        boolean alejarDeCero = switch (modo) {
+            case UP ->
+                true;
+            case DOWN ->
+                false;
+            case CEILING ->
+                escalado > 0;
+            case FLOOR ->
+                escalado < 0;
+            case HALF_UP, HALF_DOWN, HALF_EVEN ->
+                Math.abs(escalado) - Math.floor(Math.abs(escalado)) > 0.5;
+            case UNNECESSARY ->
+                throw new ArithmeticException("La cantidad tiene demasiados decimales");
+        };
+        long truncado = (long) escalado;
+        return alejarDeCero ? truncado + (escalado < 0 ? -1 : 1) : truncado;
+    }
+
+    /**
+     * Multiplica un valor decimal por una escala y lo redondea con BigDecimal
+     * a partir de su representación decimal. Se usa cuando el cálculo con
+     * double no basta para saber el resultado: valores junto a un entero o en
+     * el punto medio entre dos, y valores demasiado grandes para
+     * representarse con exactitud. Es el único caso en el que se crean
+     * objetos.
+     *
+     * @param valor  el valor decimal, finito
+     * @param escala la escala (potencia de 10)
+     * @param modo   el modo de redondeo
+     *
+     * @return el valor escalado y redondeado
+     *
+     * @throws ArithmeticException si el resultado no cabe en un long, o si el
+     *                             modo es {@link RoundingMode#UNNECESSARY} y
+     *                             hay que redondear
+     */
+    private static long escalarExacto(double valor, long escala, RoundingMode modo) {
+        return BigDecimal.valueOf(valor).multiply(BigDecimal.valueOf(escala))
+                .setScale(0, modo).longValueExact();
+    }
+
+    /**
+     * Constructor privado para evitar la instanciación de la clase.
+     */
+    private Dinero() {
+    }
+}
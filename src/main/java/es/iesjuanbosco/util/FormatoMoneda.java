@@ -0,0 +1,274 @@
+package es.iesjuanbosco.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * Clase que formatea cantidades de dinero y porcentajes con 2 decimales y el
+ * símbolo "€" o "%" al final, escribiéndolos directamente en un buffer. El
+ * resultado es exactamente el mismo que el de {@code String.format("%.2f€")}
+ * y {@code String.format("%.2f%%")} (separador decimal y dígitos de la
+ * configuración regional por defecto, signo "-" y redondeo HALF_UP), pero se
+ * calcula con aritmética entera, sin analizar ninguna cadena de formato ni
+ * crear un {@link java.util.Formatter} en cada llamada.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+public class FormatoMoneda {
+
+    /**
+     * Símbolo que se escribe detrás de las cantidades de dinero.
+     */
+    public static final char EURO = '€';
+
+    /**
+     * Símbolo que se escribe detrás de los porcentajes.
+     */
+    public static final char PORCENTAJE = '%';
+
+    /**
+     * Mayor cantidad en céntimos (en valor absoluto) que se formatea con
+     * aritmética entera. Hasta 15 cifras, cada cantidad se convierte a un
+     * double distinto cuya representación decimal es la propia cantidad, por
+     * lo que el resultado coincide con el de String.format; las cantidades
+     * mayores, que en la práctica no se dan, se formatean con String.format.
+     */
+    private static final long MAXIMO_EXACTO = 999_999_999_999_999L;
+
+    /**
+     * Número de unidades del último bit del valor escalado dentro de las
+     * cuales se considera que un valor puede estar en el punto medio entre dos
+     * centésimas y hace falta redondearlo de forma exacta.
+     */
+    private static final double ERROR_PUNTO_MEDIO = 4;
+
+    /**
+     * Símbolos de la configuración regional con la que se formateó por última
+     * vez. Se guardan para no consultarlos en cada llamada; sólo se vuelven a
+     * obtener si cambia la configuración regional por defecto.
+     */
+    private static volatile Simbolos simbolos = new Simbolos(Locale.getDefault(Locale.Category.FORMAT));
+
+    /**
+     * Escribe una cantidad de dinero en céntimos al final de un buffer, con 2
+     * decimales y el símbolo "€".
+     *
+     * @param destino  el buffer en el que se escribe la cantidad
+     * @param centimos la cantidad en céntimos
+     *
+     * @return el propio buffer, para encadenar llamadas
+     */
+    public static StringBuilder escribirEuros(StringBuilder destino, long centimos) {
+        escribirDecimal(destino, centimos, centimos < 0, Dinero.aEuros(centimos));
+        return destino.append(EURO);
+    }
+
+    /**
+     * Escribe una cantidad de dinero en euros al final de un buffer, con 2
+     * decimales y el símbolo "€".
+     *
+     * @param destino el buffer en el que se escribe la cantidad
+     * @param euros   la cantidad en euros
+     *
+     * @return el propio buffer, para encadenar llamadas
+     */
+    public static StringBuilder escribirEuros(StringBuilder destino, double euros) {
+        escribirDecimal(destino, euros);
+        return destino.append(EURO);
+    }
+
+    /**
+     * Escribe un porcentaje al final de un buffer, con 2 decimales y el símbolo
+     * "%".
+     *
+     * @param destino    el buffer en el que se escribe el porcentaje
+     * @param porcentaje el porcentaje (por ejemplo 4.5 para un 4,5%)
+     *
+     * @return el propio buffer, para encadenar llamadas
+     */
+    public static StringBuilder escribirPorcentaje(StringBuilder destino, double porcentaje) {
+        escribirDecimal(destino, porcentaje);
+        return destino.append(PORCENTAJE);
+    }
+
+    /**
+     * Devuelve una cantidad de dinero en céntimos con 2 decimales y el símbolo
+     * "€".
+     *
+     * @param centimos la cantidad en céntimos
+     *
+     * @return la cantidad formateada
+     */
+    public static String euros(long centimos) {
+        return escribirEuros(new StringBuilder(24), centimos).toString();
+    }
+
+    /**
+     * Devuelve una cantidad de dinero en euros con 2 decimales y el símbolo
+     * "€".
+     *
+     * @param euros la cantidad en euros
+     *
+     * @return la cantidad formateada
+     */
+    public static String euros(double euros) {
+        return escribirEuros(new StringBuilder(24), euros).toString();
+    }
+
+    /**
+     * Devuelve un porcentaje con 2 decimales y el símbolo "%".
+     *
+     * @param porcentaje el porcentaje (por ejemplo 4.5 para un 4,5%)
+     *
+     * @return el porcentaje formateado
+     */
+    public static String porcentaje(double porcentaje) {
+        return escribirPorcentaje(new StringBuilder(24), porcentaje).toString();
+    }
+
+    /**
+     * Escribe un valor decimal con 2 decimales al final de un buffer.
+     *
+     * @param destino el buffer en el que se escribe el valor
+     * @param valor   el valor
+     */
+    private static void escribirDecimal(StringBuilder destino, double valor) {
+        double escalado = Math.abs(valor) * 100;
+        long centesimas;
+        // Los valores no finitos o demasiado grandes se dejan a String.format
+        if (!(escalado <= MAXIMO_EXACTO)) {
+            centesimas = Long.MAX_VALUE;
+        } else {
+            double entero = Math.floor(escalado);
+            double fraccion = escalado - entero;
+            /*
+             * String.format redondea con HALF_UP la representación decimal del
+             * valor (la de Double.toString), que puede diferir del valor
+             * binario multiplicado por 100 en unas pocas unidades de su último
+             * bit. Lejos del punto medio entre dos centésimas basta con
+             * redondear el valor escalado; cerca de él se redondea con
+             * BigDecimal a partir de la representación decimal, que es el
+             * único caso en el que se crean objetos.
+             */
+            if (Math.abs(fraccion - 0.5) <= ERROR_PUNTO_MEDIO * Math.ulp(escalado)) {
+                centesimas = BigDecimal.valueOf(Math.abs(valor))
+                        .setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+            } else {
+                centesimas = (long) entero + (fraccion > 0.5 ? 1 : 0);
+            }
+        }
+        /*
+         * String.format escribe el signo según el valor original, de modo que
+         * por ejemplo -0.001 se escribe "-0,00"
+         */
+        escribirDecimal(destino, centesimas, Double.compare(valor, 0.0) < 0, valor);
+    }
+
+    /**
+     * Escribe un número de centésimas como valor decimal con 2 decimales al
+     * final de un buffer.
+     *
+     * @param destino    el buffer en el que se escribe el valor
+     * @param centesimas el valor en centésimas, ya redondeado
+     * @param negativo   si se escribe el signo "-"
+     * @param original   el valor original, que se formatea con String.format
+     *                   si es demasiado grande para hacerlo con aritmética
+     *                   entera
+     */
+    private static void escribirDecimal(StringBuilder destino, long centesimas, boolean negativo, double original) {
+        Simbolos actuales = simbolosActuales();
+        if (centesimas > MAXIMO_EXACTO || centesimas < -MAXIMO_EXACTO) {
+            destino.append(String.format(actuales.LOCALE, "%.2f", original));
+            return;
+        }
+        if (negativo) {
+            destino.append('-');
+        }
+        long absoluto = Math.abs(centesimas);
+        long parteEntera = absoluto / 100;
+        int parteDecimal = (int) (absoluto % 100);
+        // Con los dígitos habituales se aprovecha StringBuilder.append(long)
+        if (actuales.CERO == '0') {
+            destino.append(parteEntera);
+        } else {
+            escribirDigitos(destino, parteEntera, actuales.CERO);
+        }
+        destino.append(actuales.SEPARADOR_DECIMAL)
+                .append((char) (actuales.CERO + parteDecimal / 10))
+                .append((char) (actuales.CERO + parteDecimal % 10));
+    }
+
+    /**
+     * Escribe un número no negativo al final de un buffer con los dígitos de
+     * una configuración regional.
+     *
+     * @param destino el buffer en el que se escribe el número
+     * @param numero  el número
+     * @param cero    el carácter del dígito 0
+     */
+    private static void escribirDigitos(StringBuilder destino, long numero, char cero) {
+        if (numero >= 10) {
+            escribirDigitos(destino, numero / 10, cero);
+        }
+        destino.append((char) (cero + numero % 10));
+    }
+
+    /**
+     * Devuelve los símbolos de la configuración regional por defecto,
+     * obteniéndolos de nuevo sólo si ha cambiado.
+     *
+     * @return los símbolos de la configuración regional por defecto
+     */
+    private static Simbolos simbolosActuales() {
+        Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        Simbolos actuales = simbolos;
+        if (!actuales.LOCALE.equals(locale)) {
+            actuales = new Simbolos(locale);
+            simbolos = actuales;
+        }
+        return actuales;
+    }
+
+    /**
+     * Símbolos de una configuración regional que intervienen al formatear
+     * con "%.2f": el separador decimal y el dígito 0.
+     */
+    private static final class Simbolos {
+
+        /**
+         * Configuración regional de los símbolos.
+         */
+        private final Locale LOCALE;
+
+        /**
+         * Separador decimal.
+         */
+        private final char SEPARADOR_DECIMAL;
+
+        /**
+         * Carácter del dígito 0 (los demás dígitos le siguen).
+         */
+        private final char CERO;
+
+        /**
+         * Crea los símbolos de una configuración regional.
+         *
+         * @param locale la configuración regional
+         */
+        private Simbolos(Locale locale) {
+            DecimalFormatSymbols dfs = DecimalFormatSymbols.getInstance(locale);
+            this.LOCALE = locale;
+            this.SEPARADOR_DECIMAL = dfs.getDecimalSeparator();
+            this.CERO = dfs.getZeroDigit();
+        }
+    }
+
+    /**
+     * Constructor privado para evitar la instanciación de la clase.
+     */
+    private FormatoMoneda() {
+    }
+}
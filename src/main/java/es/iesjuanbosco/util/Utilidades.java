@@ -1,8 +1,8 @@
 package es.iesjuanbosco.util;
 
 /**
- * Clase que proporciona utilidades tales como comprobar DNIs y códigos IBAN con
- * expresiones regulares y formatear nombres o apellidos
+ * Clase que proporciona utilidades tales como comprobar DNIs y códigos IBAN y
+ * formatear nombres o apellidos
  *
  * @author Cristian Palomo Prieto
  * @version 0.1
@@ -10,34 +10,31 @@ package es.iesjuanbosco.util;
 public class Utilidades {
 
     /**
-     * Expresión regular para validar DNIs
-     */
-    final static String DNI_REGEX = "^[0-9]{7,8}[a-zA-Z]{1}+$";
-    /**
-     * Expresión regular para validar IBANs
-     */
-    final static String IBAN_REGEX = "^ES[0-9]{20}+$";
-
-    /**
-     * Verifica si un IBAN es válido
+     * Verifica si un IBAN es válido: ha de tener el formato ES+20 dígitos y
+     * sus dígitos de control han de ser correctos
      *
      * @param iban el IBAN a comprobar
      *
      * @return true si el IBAN es válido, false en caso contrario
+     *
+     * @see ValidadorIBAN#esValido(CharSequence)
      */
     public static boolean esCorrectoIBAN(String iban) {
-        return iban.matches(IBAN_REGEX);
+        return ValidadorIBAN.esValido(iban);
     }
 
     /**
-     * Verifica si un DNI es válido
+     * Verifica si un DNI es válido: ha de tener 7-8 números y una letra (o ser
+     * un NIE: X, Y o Z, 7 números y una letra) y la letra ha de ser la correcta
      *
      * @param dni el DNI a comprobar
      *
      * @return true si el DNI es válido, false en caso contrario
+     *
+     * @see ValidadorDNI#esValido(CharSequence)
      */
     public static boolean esCorrectoDNI(String dni) {
-        return dni.matches(DNI_REGEX);
+        return ValidadorDNI.esValido(dni);
     }
 
     /**
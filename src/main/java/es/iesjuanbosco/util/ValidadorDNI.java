@@ -0,0 +1,195 @@
+package es.iesjuanbosco.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Clase que comprueba DNIs y NIEs sin expresiones regulares, incluida su letra
+ * de control. Se admiten:
+ * <ul>
+ * <li>DNIs: 7 u 8 dígitos seguidos de una letra.</li>
+ * <li>NIEs: una letra X, Y o Z seguida de 7 dígitos y una letra. Para calcular
+ * la letra de control, la X, la Y y la Z valen 0, 1 y 2.</li>
+ * </ul>
+ * La letra de control es la de la tabla {@link #LETRAS} en la posición del
+ * resto de dividir el número entre 23. Las letras pueden estar en mayúsculas o
+ * en minúsculas.
+ * <p>
+ * La comprobación se hace en una sola pasada sobre los caracteres, sin crear
+ * ningún objeto. Además de cadenas de caracteres se pueden comprobar DNIs
+ * escritos en un buffer de bytes (con caracteres de un byte), uno a uno o una
+ * columna entera de un fichero de clientes.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+public class ValidadorDNI {
+
+    /**
+     * Letras de control, ordenadas según el resto de dividir el número entre
+     * 23.
+     */
+    public static final String LETRAS = "TRWAGMYFPDXBNJZSQVHLCKE";
+
+    /**
+     * Letras con las que empiezan los NIEs, ordenadas según su valor.
+     */
+    public static final String PREFIJOS_NIE = "XYZ";
+
+    /**
+     * Número de caracteres de los DNIs y NIEs completos (8 cifras y la letra
+     * de control).
+     */
+    private static final int LONGITUD = 9;
+
+    /**
+     * Divisor del cálculo de la letra de control.
+     */
+    private static final int MODULO = 23;
+
+    /**
+     * Diferencia entre una letra minúscula y la misma letra en mayúscula.
+     */
+    private static final int DIFERENCIA_MINUSCULAS = 'a' - 'A';
+
+    /**
+     * Comprueba si un DNI o NIE es correcto.
+     *
+     * @param dni el DNI o NIE a comprobar
+     *
+     * @return true si tiene el formato correcto y su letra de control es la
+     *         correcta, false en caso contrario o si es null
+     */
+    public static boolean esValido(CharSequence dni) {
+        if (dni == null) {
+            return false;
+        }
+        int longitud = dni.length();
+        if (longitud < LONGITUD - 1 || longitud > LONGITUD) {
+            return false;
+        }
+        int numero = primeraCifra(dni.charAt(0), longitud);
+        for (int i = 1; i < longitud - 1 && numero >= 0; i++) {
+            numero = acumular(numero, dni.charAt(i));
+        }
+        return numero >= 0 && esLetraCorrecta(numero, dni.charAt(longitud - 1));
+    }
+
+    /**
+     * Comprueba si es correcto un DNI o NIE escrito en un buffer de bytes, sin
+     * modificar la posición del buffer.
+     *
+     * @param datos    el buffer que contiene el DNI
+     * @param desde    la posición del buffer en la que empieza el DNI
+     * @param longitud el número de bytes del DNI
+     *
+     * @return true si tiene el formato correcto y su letra de control es la
+     *         correcta, false en caso contrario
+     */
+    public static boolean esValido(ByteBuffer datos, int desde, int longitud) {
+        if (longitud < LONGITUD - 1 || longitud > LONGITUD) {
+            return false;
+        }
+        int numero = primeraCifra(datos.get(desde) & 0xFF, longitud);
+        for (int i = 1; i < longitud - 1 && numero >= 0; i++) {
+            numero = acumular(numero, datos.get(desde + i) & 0xFF);
+        }
+        return numero >= 0 && esLetraCorrecta(numero, datos.get(desde + longitud - 1) & 0xFF);
+    }
+
+    /**
+     * Comprueba una columna de DNIs o NIEs escritos en un buffer de bytes,
+     * como la de un fichero de clientes, anotando el resultado de cada uno. El
+     * buffer se recorre sin modificar su posición ni crear ningún objeto.
+     *
+     * @param datos      el buffer que contiene los DNIs
+     * @param inicios    la posición del buffer en la que empieza cada DNI
+     * @param longitudes el número de bytes de cada DNI
+     * @param validos    el array en el que se anota si cada DNI es correcto
+     * @param cuantos    el número de DNIs a comprobar (los primeros de los
+     *                   arrays)
+     *
+     * @return el número de DNIs correctos
+     *
+     * @throws IndexOutOfBoundsException si alguno de los arrays tiene menos
+     *                                   de {@code cuantos} elementos
+     */
+    public static int validar(ByteBuffer datos, int[] inicios, int[] longitudes, boolean[] validos, int cuantos) {
+        if (cuantos > inicios.length || cuantos > longitudes.length || cuantos > validos.length) {
+            throw new IndexOutOfBoundsException(cuantos);
+        }
+        int correctos = 0;
+        for (int i = 0; i < cuantos; i++) {
+            boolean valido = esValido(datos, inicios[i], longitudes[i]);
+            validos[i] = valido;
+            if (valido) {
+                correctos++;
+            }
+        }
+        return correctos;
+    }
+
+    /**
+     * Devuelve la letra de control que corresponde a un número de DNI (o de
+     * NIE, con la letra inicial sustituida por su valor).
+     *
+     * @param numero el número, mayor o igual que 0
+     *
+     * @return la letra de control, en mayúscula
+     */
+    public static char letraControl(int numero) {
+        return LETRAS.charAt(numero % MODULO);
+    }
+
+    /**
+     * Devuelve el valor del primer carácter de un DNI o NIE: su valor si es un
+     * dígito o, si es la letra inicial de un NIE completo, el valor de la
+     * letra.
+     *
+     * @param caracter el primer carácter
+     * @param longitud el número de caracteres del DNI
+     *
+     * @return el valor del carácter, o -1 si no es correcto
+     */
+    private static int primeraCifra(int caracter, int longitud) {
+        if (caracter >= '0' && caracter <= '9') {
+            return caracter - '0';
+        }
+        // Los NIEs siempre tienen 7 dígitos después de la letra inicial
+        return longitud == LONGITUD ? PREFIJOS_NIE.indexOf(Character.toUpperCase(caracter)) : -1;
+    }
+
+    /**
+     * Añade un dígito al número formado por los caracteres anteriores.
+     *
+     * @param numero   el número de los caracteres anteriores
+     * @param caracter el carácter
+     *
+     * @return el nuevo número, o -1 si el carácter no es un dígito
+     */
+    private static int acumular(int numero, int caracter) {
+        if (caracter < '0' || caracter > '9') {
+            return -1;
+        }
+        return numero * 10 + caracter - '0';
+    }
+
+    /**
+     * Comprueba si un carácter es la letra de control de un número, en
+     * mayúscula o en minúscula.
+     *
+     * @param numero   el número
+     * @param caracter el carácter
+     *
+     * @return true si es la letra de control del número
+     */
+    private static boolean esLetraCorrecta(int numero, int caracter) {
+        char letra = letraControl(numero);
+        return caracter == letra || caracter == letra + DIFERENCIA_MINUSCULAS;
+    }
+
+    /**
+     * Constructor privado para evitar la instanciación de la clase.
+     */
+    private ValidadorDNI() {
+    }
+}
@@ -0,0 +1,175 @@
+package es.iesjuanbosco.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Clase que comprueba códigos IBAN sin expresiones regulares. Un IBAN es
+ * correcto si tiene el formato del enunciado (ES seguido de 20 dígitos, de los
+ * que los 2 primeros son los dígitos de control) y sus dígitos de control son
+ * correctos según la norma ISO 13616 (módulo 97-10 de ISO 7064): moviendo los
+ * 4 primeros caracteres al final y sustituyendo cada letra por un número (A =
+ * 10, B = 11, ..., Z = 35), el número resultante da resto 1 al dividirlo entre
+ * 97.
+ * <p>
+ * La comprobación se hace en una sola pasada sobre los caracteres, que
+ * comprueba a la vez el formato y calcula el resto de la división, sin crear
+ * ningún objeto. Además de cadenas de caracteres se pueden comprobar IBAN
+ * escritos en un buffer de bytes (con caracteres de un byte), uno a uno o una
+ * columna entera de un fichero por lotes.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+public class ValidadorIBAN {
+
+    /**
+     * Código del país de los IBAN admitidos.
+     */
+    public static final String PAIS = "ES";
+
+    /**
+     * Número de caracteres de los IBAN admitidos (el código del país y 20
+     * dígitos).
+     */
+    public static final int LONGITUD = 22;
+
+    /**
+     * Número de caracteres del principio del IBAN (código del país y dígitos
+     * de control) que se mueven al final para calcular el resto.
+     */
+    private static final int CABECERA = 4;
+
+    /**
+     * Divisor del cálculo de los dígitos de control.
+     */
+    private static final int MODULO = 97;
+
+    /**
+     * Valor a partir del cual se reduce el número acumulado a su resto. Por
+     * debajo de él se pueden añadir 2 cifras más sin que el número deje de
+     * caber en un long, de modo que sólo hace falta dividir cada 16 cifras y
+     * no en cada carácter.
+     */
+    private static final long LIMITE_REDUCCION = 10_000_000_000_000_000L;
+
+    /**
+     * Comprueba si un IBAN es correcto.
+     *
+     * @param iban el IBAN a comprobar
+     *
+     * @return true si el IBAN tiene el formato correcto y sus dígitos de
+     *         control son correctos, false en caso contrario o si es null
+     */
+    public static boolean esValido(CharSequence iban) {
+        if (iban == null || iban.length() != LONGITUD) {
+            return false;
+        }
+        long resto = 0;
+        /*
+         * Se recorren los caracteres empezando por el quinto y terminando por
+         * los 4 primeros, que es el orden en el que forman el número cuyo
+         * resto se calcula
+         */
+        for (int i = 0; i < LONGITUD; i++) {
+            int posicion = i < LONGITUD - CABECERA ? i + CABECERA : i - (LONGITUD - CABECERA);
+            resto = acumular(resto, posicion, iban.charAt(posicion));
+            if (resto < 0) {
+                return false;
+            }
+        }
+        return resto % MODULO == 1;
+    }
+
+    /**
+     * Comprueba si es correcto un IBAN escrito en un buffer de bytes, sin
+     * modificar la posición del buffer.
+     *
+     * @param datos    el buffer que contiene el IBAN
+     * @param desde    la posición del buffer en la que empieza el IBAN
+     * @param longitud el número de bytes del IBAN
+     *
+     * @return true si el IBAN tiene el formato correcto y sus dígitos de
+     *         control son correctos, false en caso contrario
+     */
+    public static boolean esValido(ByteBuffer datos, int desde, int longitud) {
+        if (longitud != LONGITUD) {
+            return false;
+        }
+        long resto = 0;
+        // Mismo recorrido que en esValido(CharSequence)
+        for (int i = 0; i < LONGITUD; i++) {
+            int posicion = i < LONGITUD - CABECERA ? i + CABECERA : i - (LONGITUD - CABECERA);
+            resto = acumular(resto, posicion, datos.get(desde + posicion) & 0xFF);
+            if (resto < 0) {
+                return false;
+            }
+        }
+        return resto % MODULO == 1;
+    }
+
+    /**
+     * Comprueba una columna de IBAN escritos en un buffer de bytes, como la
+     * de un fichero por lotes, anotando el resultado de cada uno. El buffer
+     * se recorre sin modificar su posición ni crear ningún objeto.
+     *
+     * @param datos      el buffer que contiene los IBAN
+     * @param inicios    la posición del buffer en la que empieza cada IBAN
+     * @param longitudes el número de bytes de cada IBAN
+     * @param validos    el array en el que se anota si cada IBAN es correcto
+     * @param cuantos    el número de IBAN a comprobar (los primeros de los
+     *                   arrays)
+     *
+     * @return el número de IBAN correctos
+     *
+     * @throws IndexOutOfBoundsException si alguno de los arrays tiene menos
+     *                                   de {@code cuantos} elementos
+     */
+    public static int validar(ByteBuffer datos, int[] inicios, int[] longitudes, boolean[] validos, int cuantos) {
+        if (cuantos > inicios.length || cuantos > longitudes.length || cuantos > validos.length) {
+            throw new IndexOutOfBoundsException(cuantos);
+        }
+        int correctos = 0;
+        for (int i = 0; i < cuantos; i++) {
+            boolean valido = esValido(datos, inicios[i], longitudes[i]);
+            validos[i] = valido;
+            if (valido) {
+                correctos++;
+            }
+        }
+        return correctos;
+    }
+
+    /**
+     * Añade un carácter del IBAN al número que forman los caracteres
+     * anteriores (o a un número con su mismo resto al dividirlo entre 97),
+     * comprobando que el carácter es el que corresponde a su posición: las
+     * letras del código del país en las 2 primeras y dígitos en las demás.
+     *
+     * @param resto    el número de los caracteres anteriores, o uno con su
+     *                 mismo resto
+     * @param posicion la posición del carácter en el IBAN
+     * @param caracter el carácter
+     *
+     * @return el nuevo número, o -1 si el carácter no es correcto
+     */
+    private static long acumular(long resto, int posicion, int caracter) {
+        if (posicion < PAIS.length()) {
+            if (caracter != PAIS.charAt(posicion)) {
+                return -1;
+            }
+            // Las letras valen de 10 a 35, por lo que ocupan 2 cifras
+            resto = resto * 100 + caracter - 'A' + 10;
+        } else if (caracter >= '0' && caracter <= '9') {
+            resto = resto * 10 + caracter - '0';
+        } else {
+            return -1;
+        }
+        return resto < LIMITE_REDUCCION ? resto : resto % MODULO;
+    }
+
+    /**
+     * Constructor privado para evitar la instanciación de la clase.
+     */
+    private ValidadorIBAN() {
+    }
+}
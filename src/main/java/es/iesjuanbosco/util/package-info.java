@@ -1,6 +1,10 @@
-/**
- * Este paquete contiene la clase {@code Utilidades}, que proporciona diversas utilidades
- * para comprobar la validez de DNIs y códigos IBAN con expresiones regulares, y formatear
- * nombres y apellidos con la primera letra en mayúscula.
- */
-package es.iesjuanbosco.util;
+/**
+ * Este paquete contiene la clase {@code Utilidades}, que proporciona diversas utilidades
+ * para comprobar la validez de DNIs y códigos IBAN, y formatear nombres y apellidos con la
+ * primera letra en mayúscula, las clases {@code ValidadorDNI} y {@code ValidadorIBAN}, que
+ * comprueban sin expresiones regulares el formato y la letra o los dígitos de control de
+ * los DNIs (y NIEs) y de los IBAN, la clase {@code Dinero}, con las operaciones con
+ * cantidades en céntimos, y la clase {@code FormatoMoneda}, que formatea cantidades de
+ * dinero y porcentajes.
+ */
+package es.iesjuanbosco.util;
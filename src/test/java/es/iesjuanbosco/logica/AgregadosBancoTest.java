@@ -0,0 +1,259 @@
+package es.iesjuanbosco.logica;
+
+import es.iesjuanbosco.logica.LiquidadorIntereses.Capitalizacion;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de los agregados del banco: cuentas existentes y nuevas, cambios
+ * de descubierto y comisiones en cada tipo de operación, operaciones
+ * simultáneas con cada modo de almacenamiento y conciliación con un recorrido
+ * de las cuentas.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+class AgregadosBancoTest {
+
+    /**
+     * Titular de las cuentas de las pruebas.
+     */
+    private static final Persona TITULAR = new Persona("Nombre", "Apellidos", "12345678Z");
+
+    /**
+     * Forma un IBAN a partir de un número de cuenta.
+     *
+     * @param numero el número de la cuenta
+     *
+     * @return el IBAN
+     */
+    private static String iban(int numero) {
+        return String.format("ES%020d", numero);
+    }
+
+    /**
+     * Crea una cuenta de un tipo que depende de su número.
+     *
+     * @param numero el número de la cuenta
+     * @param saldo  el saldo inicial
+     *
+     * @return la cuenta
+     */
+    private static CuentaBancaria cuenta(int numero, double saldo) {
+        return switch (numero % 3) {
+            case 0 ->
+                new CuentaAhorro(TITULAR, saldo, iban(numero), 1.5);
+            case 1 ->
+                new CuentaCorrientePersonal(TITULAR, saldo, iban(numero), "IBERDROLA", 20);
+            default ->
+                new CuentaCorrienteEmpresa(TITULAR, saldo, iban(numero), "NATURGY", 1000, 10, 5);
+        };
+    }
+
+    /**
+     * Comprueba que los agregados coinciden con los totales calculados por el
+     * banco recorriendo sus cuentas, y que la conciliación cuadra a la
+     * primera.
+     *
+     * @param banco     el banco
+     * @param agregados los agregados del banco
+     * @param mensaje   el mensaje de los fallos
+     */
+    private static void comprobarCuadra(Banco banco, AgregadosBanco agregados, String mensaje) {
+        assertEquals(banco.getContadorCuentas(), agregados.numCuentas(), mensaje);
+        assertEquals(banco.totalSaldos(), agregados.totalSaldos(), mensaje);
+        assertEquals(banco.totalDescubierto(), agregados.totalDescubierto(), mensaje);
+        ResumenConciliacion resumen = agregados.conciliar();
+        assertTrue(resumen.cuadra(), mensaje + ": " + resumen);
+        assertTrue(resumen.estable(), mensaje);
+        assertEquals(1, resumen.intentos(), mensaje);
+    }
+
+    /**
+     * Las cuentas abiertas antes de crear los agregados se suman con su saldo
+     * actual, y las abiertas después al recibir su alta, con su tipo.
+     */
+    @Test
+    void sumaLasCuentasExistentesYLasNuevas() {
+        Banco banco = new Banco();
+        for (int i = 0; i < 30; i++) {
+            assertTrue(banco.abrirCuenta(cuenta(i, 100 + i)));
+        }
+        // Una cuenta de empresa ya en descubierto
+        banco.ajustarSaldoCentimos(2, -50_000);
+        try (AgregadosBanco agregados = new AgregadosBanco(banco)) {
+            assertEquals(10, agregados.numCuentasTipo(CuentaAhorro.class));
+            assertEquals(10, agregados.numCuentasTipo(CuentaCorrienteEmpresa.class));
+            assertEquals(-50_000 + 10_200, -agregados.totalDescubiertoCentimos());
+            for (int i = 30; i < 40; i++) {
+                assertTrue(banco.abrirCuenta(cuenta(i, 7)));
+            }
+            assertFalse(banco.abrirCuenta(cuenta(0, 1000)));
+            assertEquals(40, agregados.numCuentas());
+            assertEquals(14, agregados.numCuentasTipo(CuentaAhorro.class));
+            assertEquals(13, agregados.numCuentasTipo(CuentaCorrientePersonal.class));
+            assertEquals(0, agregados.numCuentasTipo(CuentaCorriente.class));
+            assertEquals(agregados.totalSaldosCentimos() + agregados.totalDescubiertoCentimos(),
+                    agregados.totalDepositosCentimos());
+            comprobarCuadra(banco, agregados, "Altas");
+        }
+    }
+
+    /**
+     * Los ingresos, retiradas y transferencias que empiezan, cambian o
+     * terminan un descubierto lo actualizan, y las comisiones por descubierto
+     * salen de la suma de los saldos y se acumulan aparte.
+     */
+    @Test
+    void sigueElDescubiertoYLasComisiones() {
+        Banco banco = new Banco();
+        assertTrue(banco.abrirCuenta(cuenta(0, 100)));
+        assertTrue(banco.abrirCuenta(cuenta(1, 100)));
+        assertTrue(banco.abrirCuenta(cuenta(2, 100)));
+        try (AgregadosBanco agregados = new AgregadosBanco(banco)) {
+            long comisiones = 0;
+            // Empieza un descubierto de la cuenta de empresa
+            ResultadoOperacion resultado = banco.retiradaCentimos(iban(2), 30_000);
+            assertTrue(resultado.esRealizada());
+            comisiones += resultado.comisionCentimos();
+            assertEquals(-resultado.saldoCentimos(), agregados.totalDescubiertoCentimos());
+            comprobarCuadra(banco, agregados, "Retirada en descubierto");
+            // Aumenta con una transferencia desde ella
+            resultado = banco.transferenciaCentimos(iban(2), iban(0), 10_000);
+            assertTrue(resultado.esRealizada());
+            comisiones += resultado.comisionCentimos();
+            comprobarCuadra(banco, agregados, "Transferencia en descubierto");
+            // Se reduce con un ingreso y termina con una transferencia hacia ella
+            assertTrue(banco.ingresoCentimos(iban(2), 5_000).esRealizada());
+            comprobarCuadra(banco, agregados, "Ingreso en descubierto");
+            long descubierto = -banco.cuentaEnPosicion(2).getSaldoCentimos();
+            assertTrue(banco.ingresoCentimos(iban(0), descubierto).esRealizada());
+            assertTrue(banco.transferenciaCentimos(iban(0), iban(2), descubierto + 100).esRealizada());
+            assertEquals(0, agregados.totalDescubiertoCentimos());
+            comprobarCuadra(banco, agregados, "Fin del descubierto");
+            // Las retiradas rechazadas no cambian nada
+            assertFalse(banco.retiradaCentimos(iban(1), 1_000_000).esRealizada());
+            assertEquals(comisiones, agregados.comisionesDescubiertoCentimos());
+            assertTrue(comisiones > 0);
+            comprobarCuadra(banco, agregados, "Retirada rechazada");
+        }
+    }
+
+    /**
+     * En cada modo de almacenamiento, con varios hilos haciendo ingresos,
+     * retiradas y transferencias, altas simultáneas, una liquidación de
+     * intereses y un cobro de comisiones, los agregados coinciden al final
+     * con el recorrido de las cuentas.
+     */
+    @Test
+    void cuadranConOperacionesSimultaneas() throws Exception {
+        for (ModoAlmacenamiento modo : ModoAlmacenamiento.values()) {
+            Banco banco = new Banco(Banco.SIN_LIMITE, modo);
+            int iniciales = 5_000;
+            for (int i = 0; i < iniciales; i++) {
+                assertTrue(banco.abrirCuenta(cuenta(i, i % 500)));
+            }
+            try (AgregadosBanco agregados = new AgregadosBanco(banco)) {
+                AtomicBoolean parar = new AtomicBoolean();
+                List<Thread> hilos = new ArrayList<>();
+                for (int h = 0; h < 4; h++) {
+                    hilos.add(new Thread(() -> {
+                        ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+                        while (!parar.get()) {
+                            int origen = aleatorio.nextInt(iniciales);
+                            long centimos = 1 + aleatorio.nextInt(20_000);
+                            switch (aleatorio.nextInt(3)) {
+                                case 0 ->
+                                    banco.ingresoPosicion(origen, centimos);
+                                case 1 ->
+                                    banco.retiradaPosicion(origen, centimos);
+                                default ->
+                                    banco.transferenciaCentimos(iban(origen), iban(aleatorio.nextInt(iniciales)), centimos);
+                            }
+                        }
+                    }));
+                }
+                Thread altas = new Thread(() -> {
+                    for (int i = iniciales; i < iniciales + 1_000; i++) {
+                        assertTrue(banco.abrirCuenta(cuenta(i, 10)));
+                    }
+                });
+                hilos.forEach(Thread::start);
+                altas.start();
+                try (LiquidadorIntereses liquidador = new LiquidadorIntereses(banco, 2);
+                        CobradorComisiones cobrador = new CobradorComisiones(banco, 2)) {
+                    liquidador.liquidar(Capitalizacion.MENSUAL, 1);
+                    cobrador.cobrar(1, 12);
+                }
+                altas.join();
+                Thread.sleep(100);
+                parar.set(true);
+                for (Thread hilo : hilos) {
+                    hilo.join();
+                }
+                assertEquals(1_000 + iniciales, agregados.numCuentas(), modo.name());
+                comprobarCuadra(banco, agregados, modo.name());
+            }
+        }
+    }
+
+    /**
+     * Un cambio de saldo que no pasa por las operaciones del banco no llega
+     * a los agregados, y la conciliación lo encuentra en todos sus intentos.
+     * Una vez cerrados, los agregados dejan de seguir las operaciones.
+     */
+    @Test
+    void laConciliacionEncuentraLosCambiosNoNotificados() {
+        Banco banco = new Banco();
+        for (int i = 0; i < 6; i++) {
+            assertTrue(banco.abrirCuenta(cuenta(i, 100)));
+        }
+        AgregadosBanco agregados = new AgregadosBanco(banco);
+        banco.ajustarSaldoCentimos(1, 250);
+        banco.ajustarSaldoCentimos(2, -30_000);
+        ResumenConciliacion resumen = agregados.conciliar();
+        assertFalse(resumen.cuadra());
+        assertTrue(resumen.estable());
+        assertEquals(0, resumen.diferenciaCuentas());
+        assertEquals(-250 + 30_000, resumen.diferenciaSaldos());
+        assertEquals(-20_000, resumen.diferenciaDescubierto());
+        assertEquals(AgregadosBanco.MAXIMO_INTENTOS, resumen.intentos());
+        agregados.close();
+        long saldos = agregados.totalSaldosCentimos();
+        assertTrue(banco.ingresoCentimos(iban(0), 1_000).esRealizada());
+        assertTrue(banco.abrirCuenta(cuenta(6, 100)));
+        assertEquals(saldos, agregados.totalSaldosCentimos());
+        assertEquals(6, agregados.numCuentas());
+    }
+
+    /**
+     * Las conciliaciones periódicas entregan su resultado desde su propio
+     * hilo, y un periodo no positivo se rechaza.
+     */
+    @Test
+    void conciliacionesPeriodicas() throws InterruptedException {
+        Banco banco = new Banco();
+        assertTrue(banco.abrirCuenta(cuenta(0, 100)));
+        try (AgregadosBanco agregados = new AgregadosBanco(banco)) {
+            CountDownLatch recibidas = new CountDownLatch(2);
+            AtomicReference<ResumenConciliacion> ultima = new AtomicReference<>();
+            agregados.conciliacionesPeriodicas(10, TimeUnit.MILLISECONDS, resumen -> {
+                ultima.set(resumen);
+                recibidas.countDown();
+            });
+            assertTrue(recibidas.await(10, TimeUnit.SECONDS));
+            assertTrue(ultima.get().cuadra());
+            assertEquals(1, ultima.get().cuentas());
+            assertThrows(IllegalArgumentException.class,
+                    () -> agregados.conciliacionesPeriodicas(0, TimeUnit.SECONDS, resumen -> {
+                    }));
+        }
+    }
+}
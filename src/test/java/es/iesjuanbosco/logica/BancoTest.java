@@ -0,0 +1,547 @@
+package es.iesjuanbosco.logica;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de las operaciones del banco.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+class BancoTest {
+
+    /**
+     * Titular de las cuentas de las pruebas.
+     */
+    private static final Persona TITULAR = new Persona("Nombre", "Apellidos", "12345678Z");
+
+    /**
+     * Forma un IBAN a partir de un número de cuenta.
+     *
+     * @param numero el número de la cuenta
+     *
+     * @return el IBAN
+     */
+    private static String iban(int numero) {
+        return String.format("ES%020d", numero);
+    }
+
+    /**
+     * Crea una cuenta de ahorro.
+     *
+     * @param numero el número de la cuenta
+     * @param saldo  el saldo inicial
+     *
+     * @return la cuenta
+     */
+    private static CuentaBancaria ahorro(int numero, double saldo) {
+        return new CuentaAhorro(TITULAR, saldo, iban(numero), 1.5);
+    }
+
+    /**
+     * Crea una cuenta corriente de empresa.
+     *
+     * @param numero         el número de la cuenta
+     * @param saldo          el saldo inicial
+     * @param maxDescubierto el descubierto máximo
+     *
+     * @return la cuenta
+     */
+    private static CuentaBancaria empresa(int numero, double saldo, double maxDescubierto) {
+        return new CuentaCorrienteEmpresa(TITULAR, saldo, iban(numero), "IBERDROLA", maxDescubierto, 10, 5);
+    }
+
+    /**
+     * Crea una cuenta corriente personal.
+     *
+     * @param numero    el número de la cuenta
+     * @param entidades la lista de entidades autorizadas
+     *
+     * @return la cuenta
+     */
+    private static CuentaCorriente personal(int numero, String entidades) {
+        return new CuentaCorrientePersonal(TITULAR, 0, iban(numero), entidades, 20);
+    }
+
+    /**
+     * Las cantidades demasiado grandes para representarse en céntimos se
+     * rechazan en lugar de lanzar una excepción.
+     */
+    @Test
+    void rechazaCantidadesQueNoCabenEnCentimos() {
+        Banco banco = new Banco();
+        banco.abrirCuenta(ahorro(1, 10));
+        banco.abrirCuenta(ahorro(2, 10));
+        assertEquals(ResultadoOperacion.Motivo.FUERA_DE_RANGO, banco.ingresoCuenta(iban(1), 1e17).motivo());
+        assertEquals(ResultadoOperacion.Motivo.FUERA_DE_RANGO, banco.retiradaCuenta(iban(1), 1e300).motivo());
+        assertEquals(ResultadoOperacion.Motivo.FUERA_DE_RANGO, banco.transferencia(iban(1), iban(2), 1e17).motivo());
+        assertEquals(ResultadoOperacion.Motivo.CANTIDAD_NO_VALIDA, banco.ingresoCuenta(iban(1), Double.NaN).motivo());
+        assertEquals(1000, banco.cuentaEnPosicion(0).getSaldoCentimos());
+    }
+
+    /**
+     * Un ingreso que desbordaría el saldo se rechaza sin modificar la cuenta.
+     */
+    @Test
+    void rechazaIngresosQueDesbordanElSaldo() {
+        Banco banco = new Banco();
+        banco.abrirCuenta(ahorro(1, 0));
+        assertTrue(banco.ingresoCentimos(iban(1), Long.MAX_VALUE).esRealizada());
+        ResultadoOperacion resultado = banco.ingresoCentimos(iban(1), 1);
+        assertEquals(ResultadoOperacion.Motivo.FUERA_DE_RANGO, resultado.motivo());
+        assertNotNull(resultado.devolverMensaje());
+        assertEquals(Long.MAX_VALUE, banco.cuentaEnPosicion(0).getSaldoCentimos());
+    }
+
+    /**
+     * Una retirada al descubierto cuya comisión desbordaría el saldo se
+     * rechaza sin modificar la cuenta.
+     */
+    @Test
+    void rechazaDescubiertosQueDesbordanElSaldo() {
+        Banco banco = new Banco();
+        banco.abrirCuenta(empresa(1, 0, 9e16));
+        assertEquals(ResultadoOperacion.Motivo.FUERA_DE_RANGO, banco.retiradaCuenta(iban(1), 9e16).motivo());
+        assertEquals(0, banco.cuentaEnPosicion(0).getSaldoCentimos());
+    }
+
+    /**
+     * Si el abono de una transferencia desbordaría el saldo de destino, se
+     * rechaza sin que la cuenta de origen pierda nada.
+     */
+    @Test
+    void deshaceElCargoSiElAbonoSeDesborda() {
+        Banco banco = new Banco();
+        banco.abrirCuenta(ahorro(1, 1));
+        banco.abrirCuenta(ahorro(2, 0));
+        assertTrue(banco.ingresoCentimos(iban(2), Long.MAX_VALUE - 10).esRealizada());
+        ResultadoOperacion resultado = banco.transferenciaCentimos(iban(1), iban(2), 50);
+        assertEquals(ResultadoOperacion.Motivo.FUERA_DE_RANGO, resultado.motivo());
+        assertEquals(100, banco.cuentaEnPosicion(0).getSaldoCentimos());
+        assertEquals(Long.MAX_VALUE - 10, banco.cuentaEnPosicion(1).getSaldoCentimos());
+    }
+
+    /**
+     * El índice de entidades tiene en cuenta los cambios de entidades hechos
+     * con el banco después de abrir las cuentas, y mantiene el orden en que se
+     * abrieron.
+     */
+    @Test
+    void elIndiceDeEntidadesVeLosCambios() {
+        Banco banco = new Banco();
+        CuentaCorriente primera = personal(1, "Iberdrola, Endesa");
+        CuentaCorriente segunda = personal(2, "ENDESA");
+        CuentaCorriente tercera = personal(3, "Naturgy");
+        banco.abrirCuenta(primera);
+        banco.abrirCuenta(segunda);
+        banco.abrirCuenta(tercera);
+        assertEquals(List.of(primera, segunda), banco.cuentasEntidad("endesa"));
+        assertTrue(banco.cambiarEntidades(iban(1), "Naturgy"));
+        assertEquals(List.of(segunda), banco.cuentasEntidad("Endesa"));
+        assertEquals(List.of(primera, tercera), banco.cuentasEntidad("NATURGY"));
+        assertEquals(List.of(), banco.cuentasEntidad("Iberdrola"));
+        // Una entidad que no existía al abrir las cuentas
+        assertTrue(banco.cambiarEntidades(iban(3), "Repsol; endesa"));
+        assertTrue(banco.cambiarEntidades(iban(1), " repsol "));
+        assertEquals(List.of(primera, tercera), banco.cuentasEntidad("Repsol"));
+        assertEquals(List.of(segunda, tercera), banco.cuentasEntidad("ENDESA"));
+        assertTrue(tercera.autorizaEntidad("repsol"));
+        assertFalse(primera.autorizaEntidad("Naturgy"));
+        assertFalse(banco.cambiarEntidades(iban(9), "Repsol"));
+    }
+
+    /**
+     * Los cambios hechos directamente en la cuenta no pasan por el índice: la
+     * cuenta deja de aparecer en las entidades que ya no autoriza, pero no
+     * aparece en las nuevas hasta que se cambian con el banco.
+     */
+    @Test
+    void losCambiosEnLaCuentaNoActualizanElIndice() {
+        Banco banco = new Banco();
+        CuentaCorriente cuenta = personal(1, "Iberdrola");
+        banco.abrirCuenta(cuenta);
+        cuenta.setListaEntidades("Endesa");
+        assertTrue(cuenta.autorizaEntidad("endesa"));
+        assertEquals(List.of(), banco.cuentasEntidad("Iberdrola"));
+        assertEquals(List.of(), banco.cuentasEntidad("Endesa"));
+        // La entidad nueva se ha añadido al diccionario del banco
+        assertTrue(banco.getDiccionarioEntidades().buscar("ENDESA") >= 0);
+        assertTrue(banco.cambiarEntidades(iban(1), "Endesa, Naturgy"));
+        assertEquals(List.of(cuenta), banco.cuentasEntidad("Endesa"));
+        assertEquals(List.of(cuenta), banco.cuentasEntidad("Naturgy"));
+        assertEquals(List.of(), banco.cuentasEntidad("Iberdrola"));
+    }
+
+    /**
+     * La lista de entidades se muestra con los nombres normalizados, antes y
+     * después de abrir la cuenta, y las cuentas con las mismas entidades
+     * comparten su conjunto aunque las escribieran de otra forma.
+     */
+    @Test
+    void muestraLasEntidadesNormalizadas() {
+        Banco banco = new Banco();
+        CuentaCorriente cuenta = personal(1, "Iberdrola, endesa,, iberdrola ");
+        assertTrue(cuenta.autorizaEntidad("ENDESA"));
+        assertEquals("IBERDROLA, ENDESA", cuenta.getListaEntidades());
+        banco.abrirCuenta(cuenta);
+        assertEquals("IBERDROLA, ENDESA", cuenta.getListaEntidades());
+        assertTrue(cuenta.devolverInfoString().contains("Lista de entidades autorizadas: IBERDROLA, ENDESA"));
+        CuentaCorriente otra = personal(2, "ENDESA;Iberdrola");
+        banco.abrirCuenta(otra);
+        assertSame(cuenta.getEntidades(), otra.getEntidades());
+        assertEquals("IBERDROLA, ENDESA", otra.getListaEntidades());
+        cuenta.setListaEntidades("Naturgy;Repsol");
+        assertEquals("NATURGY, REPSOL", cuenta.getListaEntidades());
+        cuenta.setListaEntidades(null);
+        assertEquals("", cuenta.getListaEntidades());
+        assertEquals("", personal(3, " ").getListaEntidades());
+    }
+
+    /**
+     * Cada banco tiene su propio diccionario de entidades.
+     */
+    @Test
+    void cadaBancoTieneSuDiccionarioDeEntidades() {
+        Banco uno = new Banco();
+        Banco otro = new Banco();
+        uno.abrirCuenta(personal(1, "Iberdrola"));
+        assertEquals(1, uno.getDiccionarioEntidades().tamano());
+        assertEquals(0, otro.getDiccionarioEntidades().tamano());
+        assertEquals(-1, otro.getDiccionarioEntidades().buscar("Iberdrola"));
+        assertEquals(List.of(), otro.cuentasEntidad("Iberdrola"));
+    }
+
+    /**
+     * Ejecuta una tarea en varios hilos a la vez y espera a que terminen,
+     * fallando si tardan demasiado (por ejemplo por un bloqueo mutuo).
+     *
+     * @param hilos el número de hilos
+     * @param tarea la tarea que ejecuta cada hilo
+     */
+    private static void enParalelo(int hilos, Runnable tarea) {
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            List<Thread> lanzados = new ArrayList<>();
+            for (int i = 0; i < hilos; i++) {
+                lanzados.add(new Thread(tarea));
+            }
+            lanzados.forEach(Thread::start);
+            for (Thread hilo : lanzados) {
+                hilo.join();
+            }
+        });
+    }
+
+    /**
+     * Mide las operaciones por segundo que hacen varios hilos repitiendo una
+     * operación a la vez. Se repite la medida varias veces y se devuelve la
+     * mejor, para no contar la compilación JIT de las primeras.
+     *
+     * @param hilos     el número de hilos
+     * @param porHilo   el número de operaciones de cada hilo
+     * @param operacion la operación
+     *
+     * @return las operaciones por segundo de la mejor ronda
+     */
+    private static double operacionesPorSegundo(int hilos, int porHilo, Runnable operacion) {
+        long mejor = Long.MAX_VALUE;
+        for (int ronda = 0; ronda < 3; ronda++) {
+            long inicio = System.nanoTime();
+            enParalelo(hilos, () -> {
+                for (int i = 0; i < porHilo; i++) {
+                    operacion.run();
+                }
+            });
+            mejor = Math.min(mejor, System.nanoTime() - inicio);
+        }
+        return (double) hilos * porHilo * 1e9 / mejor;
+    }
+
+    /**
+     * Suma los saldos de todas las cuentas del banco en céntimos.
+     *
+     * @param banco el banco
+     *
+     * @return la suma de los saldos
+     */
+    private static long totalCentimos(Banco banco) {
+        long total = 0;
+        for (int i = 0; i < banco.getContadorCuentas(); i++) {
+            total += banco.cuentaEnPosicion(i).getSaldoCentimos();
+        }
+        return total;
+    }
+
+    /**
+     * Hace un ingreso, una retirada o una transferencia al azar entre las
+     * primeras cuentas del banco y suma a un acumulado lo que ha cambiado el
+     * total de los saldos: lo ingresado, menos lo retirado y las comisiones
+     * por descubierto cobradas.
+     *
+     * @param banco   el banco
+     * @param cuentas el número de cuentas entre las que se elige
+     * @param movido  el acumulado de lo que ha cambiado el total
+     */
+    private static void operacionAlAzar(Banco banco, int cuentas, AtomicLong movido) {
+        ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+        String origen = iban(aleatorio.nextInt(cuentas));
+        long centimos = aleatorio.nextLong(1, 5_000);
+        ResultadoOperacion resultado = switch (aleatorio.nextInt(3)) {
+            case 0 ->
+                banco.ingresoCentimos(origen, centimos);
+            case 1 ->
+                banco.retiradaCentimos(origen, centimos);
+            default ->
+                banco.transferenciaCentimos(origen, iban(aleatorio.nextInt(cuentas)), centimos);
+        };
+        if (resultado.esRealizada()) {
+            long neto = switch (resultado.tipo()) {
+                case INGRESO ->
+                    centimos;
+                case RETIRADA ->
+                    -centimos - resultado.comisionCentimos();
+                default ->
+                    -resultado.comisionCentimos();
+            };
+            movido.addAndGet(neto);
+        }
+    }
+
+    /**
+     * Con ingresos, retiradas y transferencias simultáneas no se crea ni se
+     * pierde dinero: el total final es el inicial más lo ingresado, menos lo
+     * retirado y las comisiones por descubierto cobradas.
+     */
+    @Test
+    void conservaElDineroConOperacionesSimultaneas() {
+        Banco banco = new Banco();
+        for (int i = 0; i < 8; i++) {
+            banco.abrirCuenta(i % 2 == 0 ? ahorro(i, 100) : empresa(i, 100, 1000));
+        }
+        long inicial = totalCentimos(banco);
+        AtomicLong movido = new AtomicLong();
+        enParalelo(8, () -> {
+            for (int j = 0; j < 20_000; j++) {
+                operacionAlAzar(banco, 8, movido);
+            }
+        });
+        assertEquals(inicial + movido.get(), totalCentimos(banco));
+        // Ninguna cuenta de ahorro queda en negativo ni ninguna de empresa supera el descubierto con comisión
+        for (int i = 0; i < 8; i++) {
+            long saldo = banco.cuentaEnPosicion(i).getSaldoCentimos();
+            assertTrue(i % 2 == 0 ? saldo >= 0 : saldo >= -100_000 - 10_000, "Saldo de la cuenta " + i + ": " + saldo);
+        }
+    }
+
+    /**
+     * Los ingresos y retiradas sin descubierto sobre una misma cuenta desde
+     * varios hilos no pierden ninguna actualización del saldo, y una cuenta
+     * de ahorro nunca queda en negativo.
+     */
+    @Test
+    void noSePierdenActualizacionesDelSaldo() {
+        Banco banco = new Banco();
+        banco.abrirCuenta(ahorro(1, 0));
+        AtomicLong retirado = new AtomicLong();
+        enParalelo(8, () -> {
+            for (int j = 0; j < 50_000; j++) {
+                assertTrue(banco.ingresoCentimos(iban(1), 3).esRealizada());
+                ResultadoOperacion resultado = banco.retiradaCentimos(iban(1), 2);
+                if (resultado.esRealizada()) {
+                    retirado.addAndGet(2);
+                    assertTrue(resultado.saldoCentimos() >= 0);
+                } else {
+                    assertEquals(ResultadoOperacion.Motivo.SALDO_INSUFICIENTE, resultado.motivo());
+                }
+            }
+        });
+        assertEquals(8 * 50_000 * 3 - retirado.get(), banco.cuentaEnPosicion(0).getSaldoCentimos());
+    }
+
+    /**
+     * Muchas transferencias simultáneas en ambos sentidos entre las mismas
+     * cuentas terminan sin bloqueos mutuos y sin crear ni perder dinero.
+     */
+    @Test
+    void transferenciasSimultaneasEnAmbosSentidos() {
+        Banco banco = new Banco();
+        int cuentas = 64;
+        for (int i = 0; i < cuentas; i++) {
+            banco.abrirCuenta(ahorro(i, 50));
+        }
+        AtomicLong realizadas = new AtomicLong();
+        enParalelo(16, () -> {
+            ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+            for (int j = 0; j < 25_000; j++) {
+                // La mitad de las veces entre las dos primeras cuentas, para forzar sentidos opuestos
+                int origen = j % 2 == 0 ? aleatorio.nextInt(2) : aleatorio.nextInt(cuentas);
+                int destino = j % 2 == 0 ? 1 - origen : aleatorio.nextInt(cuentas);
+                ResultadoOperacion resultado = banco.transferenciaCentimos(iban(origen), iban(destino), aleatorio.nextLong(1, 2_000));
+                if (resultado.esRealizada()) {
+                    realizadas.incrementAndGet();
+                }
+            }
+        });
+        assertTrue(realizadas.get() > 0);
+        assertEquals(cuentas * 5_000L, totalCentimos(banco));
+        for (int i = 0; i < cuentas; i++) {
+            assertTrue(banco.cuentaEnPosicion(i).getSaldoCentimos() >= 0);
+        }
+    }
+
+    /**
+     * Una transferencia rechazada no modifica ninguna de las dos cuentas.
+     */
+    @Test
+    void unaTransferenciaRechazadaNoModificaLasCuentas() {
+        Banco banco = new Banco();
+        banco.abrirCuenta(ahorro(1, 10));
+        banco.abrirCuenta(empresa(2, 10, 100));
+        banco.abrirCuenta(ahorro(3, 10));
+        assertEquals(ResultadoOperacion.Motivo.SALDO_INSUFICIENTE, banco.transferenciaCentimos(iban(1), iban(3), 1001).motivo());
+        assertEquals(ResultadoOperacion.Motivo.SUPERA_DESCUBIERTO_MAXIMO, banco.transferenciaCentimos(iban(2), iban(3), 11_001).motivo());
+        assertEquals(ResultadoOperacion.Motivo.MISMA_CUENTA, banco.transferenciaCentimos(iban(1), iban(1), 1).motivo());
+        assertEquals(ResultadoOperacion.Motivo.CUENTA_INEXISTENTE, banco.transferenciaCentimos(iban(1), iban(9), 1).motivo());
+        assertEquals(3000, totalCentimos(banco));
+        // Al descubierto se cobra la comisión mínima de 5 euros, y el destino recibe la cantidad completa
+        ResultadoOperacion resultado = banco.transferenciaCentimos(iban(2), iban(3), 2000);
+        assertEquals(ResultadoOperacion.Motivo.REALIZADA_CON_DESCUBIERTO, resultado.motivo());
+        assertEquals(-1500, resultado.saldoCentimos());
+        assertEquals(3000, resultado.saldoDestinoCentimos());
+    }
+
+    /**
+     * Mide la contención sobre una sola cuenta: 32 hilos ingresan a la vez en
+     * el mismo IBAN, por el camino sin cerrojos (compare-and-set) y
+     * serializando cada ingreso con el cerrojo de la franja del IBAN, como se
+     * hacía antes de usar compare-and-set. Antes de medir se ejecutan las dos
+     * formas para que ambas estén compiladas. En los dos casos no se pierde
+     * ningún ingreso.
+     */
+    @Test
+    @Tag("rendimiento")
+    void contencionSobreUnaCuentaConCompareAndSetYConCerrojo() {
+        int hilos = 32, porHilo = 20_000;
+        Banco banco = new Banco();
+        banco.abrirCuenta(ahorro(1, 0));
+        ReentrantLock cerrojo = new BloqueosIban().cerrojo(iban(1));
+        Runnable sinCerrojo = () -> assertTrue(banco.ingresoCentimos(iban(1), 1).esRealizada());
+        Runnable conCerrojo = () -> {
+            cerrojo.lock();
+            try {
+                assertTrue(banco.ingresoCentimos(iban(1), 1).esRealizada());
+            } finally {
+                cerrojo.unlock();
+            }
+        };
+        operacionesPorSegundo(hilos, porHilo, sinCerrojo);
+        operacionesPorSegundo(hilos, porHilo, conCerrojo);
+        double porSegundoSinCerrojo = operacionesPorSegundo(hilos, porHilo, sinCerrojo);
+        double porSegundoConCerrojo = operacionesPorSegundo(hilos, porHilo, conCerrojo);
+        // Cada medida son 3 rondas
+        assertEquals(4L * 3 * hilos * porHilo, banco.cuentaEnPosicion(0).getSaldoCentimos());
+        System.out.printf("Ingresos en una cuenta con %d hilos: %.0f por segundo con compare-and-set,"
+                + " %.0f por segundo con el cerrojo de la franja%n", hilos, porSegundoSinCerrojo, porSegundoConCerrojo);
+    }
+
+    /**
+     * Mide las transferencias por segundo entre cuentas elegidas al azar con
+     * 1, 8 y 32 hilos, y las de todos los hilos entre las mismas dos cuentas.
+     * Las transferencias no crean ni pierden dinero.
+     */
+    @Test
+    @Tag("rendimiento")
+    void transferenciasPorSegundo() {
+        int cuentas = 1000, porHilo = 20_000;
+        Banco banco = new Banco();
+        for (int i = 0; i < cuentas; i++) {
+            banco.abrirCuenta(ahorro(i, 1000));
+        }
+        long total = totalCentimos(banco);
+        Runnable alAzar = () -> {
+            ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+            banco.transferenciaCentimos(iban(aleatorio.nextInt(cuentas)), iban(aleatorio.nextInt(cuentas)),
+                    1 + aleatorio.nextInt(1000));
+        };
+        Runnable mismasCuentas = () -> {
+            boolean ida = ThreadLocalRandom.current().nextBoolean();
+            banco.transferenciaCentimos(iban(ida ? 0 : 1), iban(ida ? 1 : 0), 1);
+        };
+        // Calentamiento, para que la primera medida no incluya la compilación JIT
+        operacionesPorSegundo(8, porHilo, alAzar);
+        for (int hilos : new int[]{1, 8, 32}) {
+            System.out.printf("Transferencias al azar entre %d cuentas con %d hilos: %.0f por segundo%n",
+                    cuentas, hilos, operacionesPorSegundo(hilos, porHilo, alAzar));
+        }
+        System.out.printf("Transferencias entre las mismas dos cuentas con 32 hilos: %.0f por segundo%n",
+                operacionesPorSegundo(32, porHilo, mismasCuentas));
+        assertEquals(total, totalCentimos(banco));
+    }
+
+    /**
+     * Mide cómo escalan con el número de hilos las operaciones al azar
+     * (ingresos, retiradas y transferencias) sobre 1000 cuentas, repartiendo
+     * el mismo número total de operaciones entre 1, 2, 4, 8, 16 y 32 hilos.
+     * Con cada número de hilos el dinero se sigue conservando.
+     */
+    @Test
+    @Tag("rendimiento")
+    void conservaElDineroYEscalaConLosHilos() {
+        int cuentas = 1000, operaciones = 320_000;
+        Banco banco = new Banco();
+        for (int i = 0; i < cuentas; i++) {
+            banco.abrirCuenta(i % 2 == 0 ? ahorro(i, 100) : empresa(i, 100, 1000));
+        }
+        AtomicLong movido = new AtomicLong();
+        // Calentamiento, para que la primera medida no incluya la compilación JIT
+        operacionesPorSegundo(8, operaciones / 8, () -> operacionAlAzar(banco, cuentas, movido));
+        for (int hilos = 1; hilos <= 32; hilos *= 2) {
+            long inicial = totalCentimos(banco);
+            movido.set(0);
+            double porSegundo = operacionesPorSegundo(hilos, operaciones / hilos,
+                    () -> operacionAlAzar(banco, cuentas, movido));
+            assertEquals(inicial + movido.get(), totalCentimos(banco), hilos + " hilos");
+            System.out.printf("Operaciones al azar entre %d cuentas con %d hilos: %.0f por segundo%n",
+                    cuentas, hilos, porSegundo);
+        }
+    }
+
+    /**
+     * En todos los modos de almacenamiento, el alta se notifica con la cuenta
+     * ya guardada (la que ve los cambios de saldo del banco) y antes de que
+     * pueda encontrarse por su IBAN o por su posición.
+     */
+    @Test
+    void lasAltasSeNotificanConLaCuentaGuardadaAntesDePublicarla() {
+        for (ModoAlmacenamiento modo : ModoAlmacenamiento.values()) {
+            Banco banco = new Banco(Banco.SIN_LIMITE, modo);
+            List<CuentaBancaria> notificadas = new ArrayList<>();
+            banco.anadirOyente(new OyenteOperaciones() {
+                @Override
+                public void cuentaAbierta(CuentaBancaria cuenta, int posicion) {
+                    assertEquals(-1, banco.posicionCuenta(cuenta.getIban()), modo.name());
+                    assertNull(banco.cuentaEnPosicion(posicion), modo.name());
+                    assertEquals(posicion, banco.getContadorCuentas(), modo.name());
+                    notificadas.add(cuenta);
+                }
+
+                @Override
+                public void operacionRealizada(ResultadoOperacion resultado) {
+                }
+            });
+            assertTrue(banco.abrirCuenta(ahorro(1, 10)));
+            assertTrue(banco.abrirCuenta(empresa(2, 20, 100)));
+            assertEquals(2, notificadas.size());
+            assertTrue(banco.ingresoCentimos(iban(2), 500).esRealizada());
+            assertEquals(2500, notificadas.get(1).getSaldoCentimos(), modo.name());
+            assertEquals(0, banco.posicionCuenta(iban(1)));
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package es.iesjuanbosco.logica;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del cobro de comisiones de mantenimiento: la comisión de cada
+ * cuenta se compara con la calculada con BigDecimal, el cobro en paralelo con
+ * el hecho en un solo hilo, y el dinero se conserva cobrando a la vez que se
+ * opera.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+class CobradorComisionesTest {
+
+    /**
+     * Titular de las cuentas de las pruebas.
+     */
+    private static final Persona TITULAR = new Persona("Nombre", "Apellidos", "12345678Z");
+
+    /**
+     * Comisiones de mantenimiento anuales de las cuentas personales de las
+     * pruebas.
+     */
+    private static final double[] COMISIONES = {0, 0.3, 12, 20, 35.5, 60};
+
+    /**
+     * Forma un IBAN a partir de un número de cuenta.
+     *
+     * @param numero el número de la cuenta
+     *
+     * @return el IBAN
+     */
+    private static String iban(int numero) {
+        return String.format("ES%020d", numero);
+    }
+
+    /**
+     * Calcula con BigDecimal la comisión de un periodo: la comisión anual por
+     * los periodos y dividida entre los periodos al año.
+     *
+     * @param anual       la comisión anual en euros
+     * @param periodos    la duración del periodo
+     * @param periodosAno el número de periodos que tiene un año
+     * @param modo        el modo de redondeo
+     *
+     * @return la comisión del periodo en céntimos
+     */
+    private static long comisionBigDecimal(double anual, int periodos, int periodosAno, RoundingMode modo) {
+        return BigDecimal.valueOf(anual).movePointRight(2).multiply(BigDecimal.valueOf(periodos))
+                .divide(BigDecimal.valueOf(periodosAno), 0, modo).longValueExact();
+    }
+
+    /**
+     * Crea un banco con cuentas corrientes personales de varias comisiones y
+     * saldos (algunos insuficientes para pagar la comisión), cuentas de
+     * ahorro y cuentas corrientes de empresa.
+     *
+     * @param cuantas el número de cuentas
+     * @param semilla la semilla de los saldos
+     *
+     * @return el banco
+     */
+    private static Banco banco(int cuantas, long semilla) {
+        Banco banco = new Banco();
+        Random aleatorio = new Random(semilla);
+        for (int i = 0; i < cuantas; i++) {
+            double saldo = aleatorio.nextInt(3) == 0 ? aleatorio.nextInt(300) / 100.0 : aleatorio.nextInt(1_000_000) / 100.0;
+            CuentaBancaria cuenta = switch (i % 4) {
+                case 0 ->
+                    new CuentaCorrienteEmpresa(TITULAR, saldo, iban(i), "IBERDROLA", 1000, 10, 5);
+                case 1 ->
+                    new CuentaAhorro(TITULAR, saldo, iban(i), 1.5);
+                default ->
+                    new CuentaCorrientePersonal(TITULAR, saldo, iban(i), "IBERDROLA",
+                            COMISIONES[aleatorio.nextInt(COMISIONES.length)]);
+            };
+            assertTrue(banco.abrirCuenta(cuenta));
+        }
+        return banco;
+    }
+
+    /**
+     * Oyente que guarda las operaciones notificadas.
+     */
+    private static final class OyenteGuardado implements OyenteOperaciones {
+
+        /**
+         * Operaciones recibidas.
+         */
+        final List<ResultadoOperacion> RECIBIDAS = new ArrayList<>();
+
+        @Override
+        public synchronized void operacionRealizada(ResultadoOperacion resultado) {
+            RECIBIDAS.add(resultado);
+        }
+    }
+
+    /**
+     * Sólo se cobra a las cuentas corrientes personales con saldo suficiente,
+     * cada una la comisión calculada con BigDecimal, y cada cobro se notifica
+     * como una retirada.
+     */
+    @Test
+    void cobraSoloALasCuentasPersonalesConSaldoSuficiente() {
+        Banco banco = banco(5000, 1);
+        OyenteGuardado oyente = new OyenteGuardado();
+        banco.anadirOyente(oyente);
+        long[] antes = new long[banco.getContadorCuentas()];
+        for (int i = 0; i < antes.length; i++) {
+            antes[i] = banco.cuentaEnPosicion(i).getSaldoCentimos();
+        }
+        ResumenComisiones resumen;
+        try (CobradorComisiones cobrador = new CobradorComisiones(banco, 2)) {
+            resumen = cobrador.cobrar(1, 12);
+        }
+        long personales = 0, cobradas = 0, rechazadas = 0, cobrado = 0, rechazado = 0;
+        for (int i = 0; i < antes.length; i++) {
+            CuentaBancaria cuenta = banco.cuentaEnPosicion(i);
+            long esperado = 0;
+            if (cuenta instanceof CuentaCorrientePersonal) {
+                personales++;
+                long comision = comisionBigDecimal(((CuentaCorrientePersonal) cuenta).getComisionMantenimientoAnual(),
+                        1, 12, banco.getModoRedondeo());
+                if (comision > 0 && antes[i] >= comision) {
+                    esperado = comision;
+                    cobradas++;
+                    cobrado += comision;
+                } else if (comision > 0) {
+                    rechazadas++;
+                    rechazado += comision;
+                }
+            }
+            assertEquals(antes[i] - esperado, cuenta.getSaldoCentimos(), "Cuenta " + i);
+        }
+        assertEquals(antes.length, resumen.cuentas());
+        assertEquals(personales, resumen.cuentasPersonales());
+        assertEquals(cobradas, resumen.cobradas());
+        assertEquals(rechazadas, resumen.rechazadas());
+        assertEquals(cobrado, resumen.centimosCobrados());
+        assertEquals(rechazado, resumen.centimosRechazados());
+        assertTrue(cobradas > 0 && rechazadas > 0);
+        assertEquals(cobradas, oyente.RECIBIDAS.size());
+        long notificado = 0;
+        for (ResultadoOperacion resultado : oyente.RECIBIDAS) {
+            assertEquals(ResultadoOperacion.Tipo.RETIRADA, resultado.tipo());
+            assertTrue(resultado.esRealizada());
+            assertEquals(banco.cuentaEnPosicion(resultado.posicion()).getIban(), resultado.iban());
+            assertEquals(banco.cuentaEnPosicion(resultado.posicion()).getSaldoCentimos(), resultado.saldoCentimos());
+            notificado += resultado.cantidadCentimos();
+        }
+        assertEquals(cobrado, notificado);
+    }
+
+    /**
+     * La comisión del periodo se redondea una sola vez, al final, con el modo
+     * de redondeo del banco.
+     */
+    @Test
+    void redondeaLaComisionDelPeriodoConElModoDelBanco() {
+        Banco banco = new Banco();
+        // 0,30 € al año son 2,5 céntimos al mes y 2,47 en 30 días
+        assertTrue(banco.abrirCuenta(new CuentaCorrientePersonal(TITULAR, 100, iban(1), "IBERDROLA", 0.3)));
+        // 20 € al año son 166,67 céntimos al mes y 164,38 en 30 días
+        assertTrue(banco.abrirCuenta(new CuentaCorrientePersonal(TITULAR, 100, iban(2), "IBERDROLA", 20)));
+        try (CobradorComisiones cobrador = new CobradorComisiones(banco, 1)) {
+            banco.setModoRedondeo(RoundingMode.HALF_EVEN);
+            assertEquals(2 + 167, cobrador.cobrar(1, 12).centimosCobrados());
+            banco.setModoRedondeo(RoundingMode.HALF_UP);
+            assertEquals(3 + 167, cobrador.cobrar(1, 12).centimosCobrados());
+            assertEquals(2 + 164, cobrador.cobrar(30, 365).centimosCobrados());
+            banco.setModoRedondeo(RoundingMode.UP);
+            assertEquals(3 + 165, cobrador.cobrar(30, 365).centimosCobrados());
+            assertEquals(10_000 - 2 - 3 - 2 - 3, banco.cuentaEnPosicion(0).getSaldoCentimos());
+            assertEquals(10_000 - 167 - 167 - 164 - 165, banco.cuentaEnPosicion(1).getSaldoCentimos());
+        }
+    }
+
+    /**
+     * El cobro en varios hilos, con tramos suficientes para repartirse, deja
+     * los mismos saldos que el hecho en un solo hilo.
+     */
+    @Test
+    void enParaleloDaLoMismoQueEnUnHilo() {
+        int cuantas = 4 * CobradorComisiones.UMBRAL + 123;
+        Banco secuencial = banco(cuantas, 2);
+        Banco paralelo = banco(cuantas, 2);
+        ResumenComisiones unHilo, variosHilos;
+        try (CobradorComisiones cobrador = new CobradorComisiones(secuencial, 1)) {
+            unHilo = cobrador.cobrar(3, 12);
+        }
+        try (CobradorComisiones cobrador = new CobradorComisiones(paralelo, 8)) {
+            variosHilos = cobrador.cobrar(3, 12);
+        }
+        for (int i = 0; i < cuantas; i++) {
+            assertEquals(secuencial.cuentaEnPosicion(i).getSaldoCentimos(),
+                    paralelo.cuentaEnPosicion(i).getSaldoCentimos(), "Cuenta " + i);
+        }
+        assertEquals(unHilo.cobradas(), variosHilos.cobradas());
+        assertEquals(unHilo.rechazadas(), variosHilos.rechazadas());
+        assertEquals(unHilo.centimosCobrados(), variosHilos.centimosCobrados());
+        assertEquals(8, variosHilos.hilos());
+    }
+
+    /**
+     * Cobrando a la vez que otros hilos hacen ingresos y retiradas no se
+     * pierde ninguna operación: el total final es el inicial más lo
+     * ingresado y menos lo retirado (con sus comisiones) y cobrado, y ninguna
+     * cuenta personal queda en negativo.
+     */
+    @Test
+    void conservaElDineroCobrandoMientrasSeOpera() throws Exception {
+        Banco banco = banco(20_000, 3);
+        long inicial = 0;
+        for (int i = 0; i < banco.getContadorCuentas(); i++) {
+            inicial += banco.cuentaEnPosicion(i).getSaldoCentimos();
+        }
+        AtomicBoolean parar = new AtomicBoolean();
+        AtomicLong movido = new AtomicLong();
+        List<Thread> hilos = new ArrayList<>();
+        for (int h = 0; h < 3; h++) {
+            hilos.add(new Thread(() -> {
+                ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+                while (!parar.get()) {
+                    int posicion = aleatorio.nextInt(banco.getContadorCuentas());
+                    long centimos = 1 + aleatorio.nextInt(500);
+                    if (aleatorio.nextBoolean()) {
+                        if (banco.ingresoPosicion(posicion, centimos).esRealizada()) {
+                            movido.addAndGet(centimos);
+                        }
+                    } else {
+                        // Las retiradas en descubierto de las cuentas de empresa pagan además su comisión
+                        ResultadoOperacion resultado = banco.retiradaPosicion(posicion, centimos);
+                        if (resultado.esRealizada()) {
+                            movido.addAndGet(-centimos - resultado.comisionCentimos());
+                        }
+                    }
+                }
+            }));
+        }
+        hilos.forEach(Thread::start);
+        long cobrado = 0;
+        try (CobradorComisiones cobrador = new CobradorComisiones(banco, 4)) {
+            for (int i = 0; i < 20; i++) {
+                cobrado += cobrador.cobrar(1, 12).centimosCobrados();
+            }
+        } finally {
+            parar.set(true);
+            for (Thread hilo : hilos) {
+                hilo.join();
+            }
+        }
+        long total = 0;
+        for (int i = 0; i < banco.getContadorCuentas(); i++) {
+            CuentaBancaria cuenta = banco.cuentaEnPosicion(i);
+            total += cuenta.getSaldoCentimos();
+            if (cuenta instanceof CuentaCorrientePersonal) {
+                assertTrue(cuenta.getSaldoCentimos() >= 0, "Cuenta " + i);
+            }
+        }
+        assertTrue(cobrado > 0);
+        assertEquals(inicial + movido.get() - cobrado, total);
+    }
+
+    /**
+     * Un periodo de duración cero no cobra nada, los periodos negativos o los
+     * años sin periodos se rechazan, igual que los cobradores sin hilos.
+     */
+    @Test
+    void periodosNoValidos() {
+        Banco banco = new Banco();
+        assertTrue(banco.abrirCuenta(new CuentaCorrientePersonal(TITULAR, 100, iban(1), "IBERDROLA", 20)));
+        try (CobradorComisiones cobrador = new CobradorComisiones(banco, 1)) {
+            ResumenComisiones resumen = cobrador.cobrar(0, 12);
+            assertEquals(0, resumen.cobradas());
+            assertEquals(0, resumen.rechazadas());
+            assertEquals(10_000, banco.cuentaEnPosicion(0).getSaldoCentimos());
+            assertThrows(IllegalArgumentException.class, () -> cobrador.cobrar(-1, 12));
+            assertThrows(IllegalArgumentException.class, () -> cobrador.cobrar(1, 0));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new CobradorComisiones(banco, 0));
+    }
+}
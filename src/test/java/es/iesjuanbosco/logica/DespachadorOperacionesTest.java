@@ -0,0 +1,105 @@
+package es.iesjuanbosco.logica;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del despachador de operaciones: entrega de los resultados aunque se
+ * interrumpa a quien opera, y resultados recibidos con el despachador
+ * cerrado.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+class DespachadorOperacionesTest {
+
+    /**
+     * Crea un resultado de ingreso en una cuenta.
+     *
+     * @param centimos la cantidad ingresada
+     *
+     * @return el resultado
+     */
+    private static ResultadoOperacion ingreso(long centimos) {
+        return ResultadoOperacion.exito(ResultadoOperacion.Tipo.INGRESO, "ES00000000000000000001", 0, centimos, centimos);
+    }
+
+    /**
+     * Oyente que guarda los resultados recibidos, esperando antes a que se
+     * le deje continuar.
+     */
+    private static final class OyenteRetenido implements OyenteOperaciones {
+
+        /**
+         * Resultados recibidos.
+         */
+        final List<ResultadoOperacion> RECIBIDOS = new CopyOnWriteArrayList<>();
+
+        /**
+         * Se abre para dejar continuar al oyente.
+         */
+        final CountDownLatch CONTINUAR = new CountDownLatch(1);
+
+        @Override
+        public void operacionRealizada(ResultadoOperacion resultado) {
+            try {
+                CONTINUAR.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            RECIBIDOS.add(resultado);
+        }
+    }
+
+    /**
+     * Si se interrumpe a quien opera mientras espera hueco en la cola, el
+     * resultado se entrega igualmente y la interrupción se conserva.
+     */
+    @Test
+    void entregaElResultadoAunqueSeInterrumpa() throws Exception {
+        OyenteRetenido destino = new OyenteRetenido();
+        try (DespachadorOperaciones despachador = new DespachadorOperaciones(destino, 1, 1)) {
+            // El primero lo retiene el oyente y el segundo llena la cola
+            despachador.operacionRealizada(ingreso(1));
+            despachador.operacionRealizada(ingreso(2));
+            AtomicBoolean interrumpido = new AtomicBoolean();
+            Thread operador = new Thread(() -> {
+                despachador.operacionRealizada(ingreso(3));
+                interrumpido.set(Thread.currentThread().isInterrupted());
+            });
+            operador.start();
+            Thread.sleep(50);
+            operador.interrupt();
+            Thread.sleep(50);
+            assertTrue(operador.isAlive());
+            destino.CONTINUAR.countDown();
+            operador.join(10_000);
+            assertFalse(operador.isAlive());
+            assertTrue(interrumpido.get());
+        }
+        assertEquals(List.of(ingreso(1), ingreso(2), ingreso(3)), destino.RECIBIDOS);
+    }
+
+    /**
+     * Con el despachador cerrado, un resultado no se entrega y no deja
+     * esperando a quien opera aunque la cola esté llena.
+     */
+    @Test
+    void noEsperaConElDespachadorCerrado() {
+        OyenteRetenido destino = new OyenteRetenido();
+        destino.CONTINUAR.countDown();
+        DespachadorOperaciones despachador = new DespachadorOperaciones(destino, 1, 1);
+        despachador.operacionRealizada(ingreso(1));
+        despachador.close();
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            despachador.operacionRealizada(ingreso(2));
+            despachador.operacionRealizada(ingreso(3));
+        });
+        assertEquals(List.of(ingreso(1)), destino.RECIBIDOS);
+    }
+}
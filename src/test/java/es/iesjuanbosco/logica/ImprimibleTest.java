@@ -0,0 +1,165 @@
+package es.iesjuanbosco.logica;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de la escritura de la información de las cuentas en un buffer, y
+ * una comparación del tiempo y la memoria que crea escribir el listado en un
+ * destino con la de obtenerlo como cadenas.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+class ImprimibleTest {
+
+    /**
+     * Titular de las cuentas de las pruebas.
+     */
+    private static final Persona TITULAR = new Persona("Ana", "García López", "12345678Z");
+
+    /**
+     * Cuentas de todos los tipos.
+     */
+    private static final List<CuentaBancaria> CUENTAS = List.of(
+            new CuentaAhorro(TITULAR, 1234.5, "ES00000000000000000001", 1.25),
+            new CuentaCorrientePersonal(TITULAR, -3, "ES00000000000000000002", "Iberdrola, Endesa", 20),
+            new CuentaCorrienteEmpresa(TITULAR, 0.1 + 0.2, "ES00000000000000000003", "", 500, 4.5, 5));
+
+    /**
+     * Escribir la información en un buffer añade lo mismo que devuelve
+     * devolverInfoString, sin tocar lo que ya tenía el buffer.
+     */
+    @Test
+    void escribirEnUnBufferEsIgualQueDevolverLaCadena() {
+        for (Imprimible imprimible : List.of(TITULAR, CUENTAS.get(0), CUENTAS.get(1), CUENTAS.get(2))) {
+            StringBuilder buffer = new StringBuilder("previo|");
+            imprimible.escribirInfo(buffer);
+            assertEquals("previo|" + imprimible.devolverInfoString(), buffer.toString());
+        }
+    }
+
+    /**
+     * La información de cada tipo de cuenta contiene sus datos propios.
+     */
+    @Test
+    void contieneLosDatosDeCadaTipoDeCuenta() {
+        String ahorro = CUENTAS.get(0).devolverInfoString();
+        assertTrue(ahorro.contains("IBAN: ES00000000000000000001"), ahorro);
+        assertTrue(ahorro.contains("Tipo de cuenta: AHORRO"), ahorro);
+        assertTrue(ahorro.contains(String.format("Saldo: %.2f€", 1234.5)), ahorro);
+        assertTrue(ahorro.contains(String.format("%.2f%%", 1.25)), ahorro);
+        String personal = CUENTAS.get(1).devolverInfoString();
+        assertTrue(personal.contains("Lista de entidades autorizadas: IBERDROLA, ENDESA"), personal);
+        assertTrue(personal.contains(String.format("Saldo: %.2f€", -3.0)), personal);
+        String empresa = CUENTAS.get(2).devolverInfoString();
+        assertTrue(empresa.contains(String.format("Saldo: %.2f€", 0.3)), empresa);
+    }
+
+    /**
+     * El listado escrito en un destino es la información de cada cuenta
+     * precedida de una línea en blanco, en el orden en que se abrieron.
+     */
+    @Test
+    void elListadoEscritoCoincideConElListadoDeCadenas() throws IOException {
+        Banco banco = new Banco();
+        for (CuentaBancaria cuenta : CUENTAS) {
+            banco.abrirCuenta(cuenta);
+        }
+        StringWriter destino = new StringWriter();
+        banco.escribirListado(destino);
+        StringBuilder esperado = new StringBuilder();
+        for (String info : banco.listadoCuentas()) {
+            esperado.append('\n').append(info).append('\n');
+        }
+        assertEquals(esperado.toString(), destino.toString());
+        assertEquals(List.of(banco.listadoCuentas()[2]), banco.paginaCuentas(1, 2));
+    }
+
+    /**
+     * Destino que descarta lo que se escribe y sólo cuenta los caracteres.
+     */
+    private static final class DestinoDescartado implements Appendable {
+
+        /**
+         * Número de caracteres escritos.
+         */
+        long caracteres;
+
+        @Override
+        public Appendable append(CharSequence texto) {
+            caracteres += texto.length();
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence texto, int desde, int hasta) {
+            caracteres += hasta - desde;
+            return this;
+        }
+
+        @Override
+        public Appendable append(char caracter) {
+            caracteres++;
+            return this;
+        }
+    }
+
+    /**
+     * Compara el listado escrito en un destino con el listado de cadenas
+     * escritas una a una en el mismo destino: se muestran el tiempo y los
+     * bytes creados por cuenta de cada uno, y el primero no puede crear más
+     * memoria que el segundo.
+     */
+    @Test
+    @Tag("rendimiento")
+    void listadoEscritoFrenteAListadoDeCadenas() throws IOException {
+        int cuantas = 100_000;
+        Banco banco = new Banco();
+        for (int i = 0; i < cuantas; i++) {
+            banco.abrirCuenta(new CuentaCorrientePersonal(TITULAR, i / 7.0, String.format("ES%020d", i),
+                    "Iberdrola, Endesa", 20));
+        }
+        com.sun.management.ThreadMXBean hilos = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tiempoEscrito = Long.MAX_VALUE, tiempoCadenas = Long.MAX_VALUE;
+        long bytesEscrito = Long.MAX_VALUE, bytesCadenas = Long.MAX_VALUE;
+        long caracteresEscrito = 0, caracteresCadenas = 0;
+        // La primera vuelta sirve de calentamiento
+        for (int vuelta = 0; vuelta < 4; vuelta++) {
+            DestinoDescartado destino = new DestinoDescartado();
+            long bytes = hilos.getCurrentThreadAllocatedBytes();
+            long inicio = System.nanoTime();
+            banco.escribirListado(destino);
+            long tiempo = System.nanoTime() - inicio;
+            bytes = hilos.getCurrentThreadAllocatedBytes() - bytes;
+            caracteresEscrito = destino.caracteres;
+            if (vuelta > 0) {
+                tiempoEscrito = Math.min(tiempoEscrito, tiempo);
+                bytesEscrito = Math.min(bytesEscrito, bytes);
+            }
+            destino = new DestinoDescartado();
+            bytes = hilos.getCurrentThreadAllocatedBytes();
+            inicio = System.nanoTime();
+            for (String info : banco.listadoCuentas()) {
+                destino.append('\n').append(info).append('\n');
+            }
+            tiempo = System.nanoTime() - inicio;
+            bytes = hilos.getCurrentThreadAllocatedBytes() - bytes;
+            caracteresCadenas = destino.caracteres;
+            if (vuelta > 0) {
+                tiempoCadenas = Math.min(tiempoCadenas, tiempo);
+                bytesCadenas = Math.min(bytesCadenas, bytes);
+            }
+        }
+        System.out.printf("Listado de %d cuentas: escrito %.1f ms y %d bytes por cuenta, "
+                + "cadenas %.1f ms y %d bytes por cuenta%n",
+                cuantas, tiempoEscrito / 1e6, bytesEscrito / cuantas, tiempoCadenas / 1e6, bytesCadenas / cuantas);
+        assertEquals(caracteresCadenas, caracteresEscrito);
+        assertTrue(bytesEscrito <= bytesCadenas, bytesEscrito + " > " + bytesCadenas);
+    }
+}
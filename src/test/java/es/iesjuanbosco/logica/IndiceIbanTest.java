@@ -0,0 +1,128 @@
+package es.iesjuanbosco.logica;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del índice de cuentas por IBAN.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+class IndiceIbanTest {
+
+    /**
+     * Forma un IBAN con 20 dígitos aleatorios.
+     *
+     * @param aleatorio el generador de números aleatorios
+     *
+     * @return el IBAN
+     */
+    private static String ibanAleatorio(SplittableRandom aleatorio) {
+        return String.format("ES%02d%018d", aleatorio.nextInt(100), aleatorio.nextLong(1_000_000_000_000_000_000L));
+    }
+
+    /**
+     * Las búsquedas dan la misma posición que un mapa, también después de que
+     * la tabla haya crecido varias veces.
+     */
+    @Test
+    void coincideConUnMapa() {
+        IndiceIban indice = new IndiceIban(4);
+        Map<String, Integer> esperado = new HashMap<>();
+        SplittableRandom aleatorio = new SplittableRandom(42);
+        for (int i = 0; i < 50_000; i++) {
+            String iban = ibanAleatorio(aleatorio);
+            boolean nuevo = !esperado.containsKey(iban);
+            assertEquals(nuevo, indice.insertar(iban, i));
+            esperado.putIfAbsent(iban, i);
+        }
+        for (Map.Entry<String, Integer> entrada : esperado.entrySet()) {
+            assertEquals(entrada.getValue(), indice.buscar(entrada.getKey()));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            String iban = ibanAleatorio(aleatorio);
+            assertEquals(esperado.getOrDefault(iban, -1), indice.buscar(iban));
+        }
+    }
+
+    /**
+     * Los IBAN que sólo se diferencian en los dígitos de control son claves
+     * distintas, y un IBAN repetido no cambia la posición guardada.
+     */
+    @Test
+    void distingueLosDigitosDeControl() {
+        IndiceIban indice = new IndiceIban(16);
+        assertTrue(IndiceIban.esFormatoNumerico("ES12000000000000000001"));
+        assertTrue(indice.insertar("ES12000000000000000001", 0));
+        assertTrue(indice.insertar("ES34000000000000000001", 1));
+        assertFalse(indice.insertar("ES12000000000000000001", 2));
+        assertEquals(0, indice.buscar("ES12000000000000000001"));
+        assertEquals(1, indice.buscar(new StringBuilder("ES34000000000000000001")));
+        assertEquals(-1, indice.buscar("ES56000000000000000001"));
+        // Los mismos 18 últimos dígitos con otros de control, y al revés
+        assertEquals(-1, indice.buscar("ES00000000000000000001"));
+        assertEquals(-1, indice.buscar("ES12000000000000000002"));
+    }
+
+    /**
+     * Mide el tiempo medio de una búsqueda con índices de distinto tamaño: no
+     * depende del número de cuentas salvo por los fallos de caché, que
+     * aumentan cuando la tabla deja de caber en ella. Se busca siempre el
+     * mismo número de IBAN, elegidos al azar entre los del índice.
+     */
+    @Test
+    @Tag("rendimiento")
+    void laBusquedaNoDependeDelNumeroDeCuentas() {
+        int[] tamanos = {1_000, 100_000, 1_000_000};
+        int busquedas = 500_000;
+        double[] nanos = new double[tamanos.length];
+        SplittableRandom aleatorio = new SplittableRandom(1);
+        for (int t = 0; t < tamanos.length; t++) {
+            IndiceIban indice = new IndiceIban(16);
+            String[] ibanes = new String[tamanos[t]];
+            for (int i = 0; i < ibanes.length; i++) {
+                ibanes[i] = ibanAleatorio(aleatorio);
+                indice.insertar(ibanes[i], i);
+            }
+            String[] consultas = new String[busquedas];
+            for (int i = 0; i < busquedas; i++) {
+                consultas[i] = ibanes[aleatorio.nextInt(ibanes.length)];
+            }
+            long suma = 0;
+            // Se queda la vuelta más rápida, para no medir la compilación
+            nanos[t] = Double.MAX_VALUE;
+            for (int vuelta = 0; vuelta < 5; vuelta++) {
+                long inicio = System.nanoTime();
+                for (String consulta : consultas) {
+                    suma += indice.buscar(consulta);
+                }
+                nanos[t] = Math.min(nanos[t], (System.nanoTime() - inicio) / (double) busquedas);
+            }
+            assertTrue(suma >= 0);
+            System.out.printf("Índice de IBAN con %d cuentas: %.1f ns por búsqueda%n", tamanos[t], nanos[t]);
+        }
+        // Mil veces más cuentas no pueden hacer la búsqueda proporcionalmente más lenta
+        assertTrue(nanos[2] < 20 * nanos[0], "De " + nanos[0] + " ns a " + nanos[2] + " ns");
+    }
+
+    /**
+     * Los IBAN que no tienen el formato "ES" + 20 dígitos también se
+     * encuentran, y buscar null no lanza excepciones.
+     */
+    @Test
+    void admiteIbanConOtroFormato() {
+        IndiceIban indice = new IndiceIban(16);
+        assertTrue(indice.insertar("DE89370400440532013000", 0));
+        assertTrue(indice.insertar("ES12ABCD", 1));
+        assertFalse(indice.insertar("ES12ABCD", 2));
+        assertEquals(0, indice.buscar("DE89370400440532013000"));
+        assertEquals(1, indice.buscar("ES12ABCD"));
+        assertEquals(-1, indice.buscar("ES12ABCE"));
+        assertEquals(-1, indice.buscar(null));
+    }
+}
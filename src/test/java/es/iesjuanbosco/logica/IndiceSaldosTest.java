@@ -0,0 +1,302 @@
+package es.iesjuanbosco.logica;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del índice de cuentas por tipo y por saldo: cada consulta se compara
+ * con el resultado de recorrer todas las cuentas del banco, antes y después de
+ * hacer operaciones, también desde varios hilos a la vez, y se mide lo que
+ * cuesta mantenerlo.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+class IndiceSaldosTest {
+
+    /**
+     * Titular de las cuentas de las pruebas.
+     */
+    private static final Persona TITULAR = new Persona("Nombre", "Apellidos", "12345678Z");
+
+    /**
+     * Tipos de cuenta de las pruebas.
+     */
+    private static final List<Class<? extends CuentaBancaria>> TIPOS = List.of(
+            CuentaAhorro.class, CuentaCorrientePersonal.class, CuentaCorrienteEmpresa.class);
+
+    /**
+     * Forma un IBAN a partir de un número de cuenta.
+     *
+     * @param numero el número de la cuenta
+     *
+     * @return el IBAN
+     */
+    private static String iban(int numero) {
+        return String.format("ES%020d", numero);
+    }
+
+    /**
+     * Crea una cuenta de uno de los tipos de las pruebas, según su número.
+     *
+     * @param numero el número de la cuenta
+     * @param saldo  el saldo inicial
+     *
+     * @return la cuenta
+     */
+    private static CuentaBancaria cuenta(int numero, double saldo) {
+        return switch (numero % 3) {
+            case 0 ->
+                new CuentaAhorro(TITULAR, saldo, iban(numero), 1.5);
+            case 1 ->
+                new CuentaCorrientePersonal(TITULAR, saldo, iban(numero), "IBERDROLA", 20);
+            default ->
+                new CuentaCorrienteEmpresa(TITULAR, saldo, iban(numero), "IBERDROLA", 1000, 10, 5);
+        };
+    }
+
+    /**
+     * Abre en un banco cuentas de todos los tipos con saldos aleatorios.
+     *
+     * @param banco     el banco
+     * @param cuantas   el número de cuentas
+     * @param aleatorio el generador de números aleatorios
+     */
+    private static void abrirCuentas(Banco banco, int cuantas, Random aleatorio) {
+        for (int i = 0; i < cuantas; i++) {
+            // Saldos repetidos para comprobar el orden de los empates
+            assertTrue(banco.abrirCuenta(cuenta(i, aleatorio.nextInt(50) * 10)));
+        }
+    }
+
+    /**
+     * Recorre todas las cuentas del banco y devuelve las de un tipo con un
+     * saldo dentro de un intervalo, ordenadas por saldo y, si empatan, por
+     * posición.
+     *
+     * @param banco  el banco
+     * @param tipo   la clase de las cuentas
+     * @param minimo el saldo mínimo en céntimos (incluido)
+     * @param maximo el saldo máximo en céntimos (incluido)
+     *
+     * @return las cuentas encontradas
+     */
+    private static List<CuentaBancaria> recorrer(Banco banco, Class<?> tipo, long minimo, long maximo) {
+        List<Integer> posiciones = new ArrayList<>();
+        for (int i = 0; i < banco.getContadorCuentas(); i++) {
+            CuentaBancaria cuenta = banco.cuentaEnPosicion(i);
+            long saldo = cuenta.getSaldoCentimos();
+            if (cuenta.getClass() == tipo && saldo >= minimo && saldo <= maximo) {
+                posiciones.add(i);
+            }
+        }
+        posiciones.sort(Comparator.<Integer>comparingLong(i -> banco.cuentaEnPosicion(i).getSaldoCentimos())
+                .thenComparing(Comparator.naturalOrder()));
+        List<CuentaBancaria> cuentas = new ArrayList<>();
+        for (int posicion : posiciones) {
+            cuentas.add(banco.cuentaEnPosicion(posicion));
+        }
+        return cuentas;
+    }
+
+    /**
+     * Comprueba todas las consultas del índice contra el recorrido de las
+     * cuentas del banco.
+     *
+     * @param banco  el banco
+     * @param indice el índice de sus cuentas
+     */
+    private static void comprobar(Banco banco, IndiceSaldos indice) {
+        for (Class<? extends CuentaBancaria> tipo : TIPOS) {
+            List<CuentaBancaria> todas = recorrer(banco, tipo, Long.MIN_VALUE, Long.MAX_VALUE);
+            assertEquals(todas.size(), indice.numCuentasTipo(tipo));
+            List<CuentaBancaria> porApertura = new ArrayList<>(todas);
+            porApertura.sort(Comparator.comparingInt(cuenta -> banco.posicionCuenta(cuenta.getIban())));
+            assertEquals(porApertura, indice.cuentasTipo(tipo));
+            assertEquals(todas, indice.cuentasConSaldoEntre(tipo, Long.MIN_VALUE, Long.MAX_VALUE));
+            assertEquals(recorrer(banco, tipo, 10000, 30000), indice.cuentasConSaldoEntre(tipo, 10000, 30000));
+            assertEquals(recorrer(banco, tipo, 25000, 25000), indice.cuentasConSaldoEntre(tipo, 25000, 25000));
+            assertEquals(recorrer(banco, tipo, Long.MIN_VALUE, -1), indice.cuentasAlDescubierto(tipo));
+            assertEquals(todas.subList(0, Math.min(10, todas.size())), indice.menoresSaldos(tipo, 10));
+            List<CuentaBancaria> mayores = new ArrayList<>(todas);
+            Collections.reverse(mayores);
+            assertEquals(mayores.subList(0, Math.min(10, mayores.size())), indice.mayoresSaldos(tipo, 10));
+        }
+    }
+
+    /**
+     * Las consultas de un índice recién creado coinciden con el recorrido de
+     * las cuentas, y las de tipos sin cuentas están vacías.
+     */
+    @Test
+    void consultasDeLasCuentasAbiertas() {
+        Banco banco = new Banco();
+        abrirCuentas(banco, 300, new Random(21));
+        try (IndiceSaldos indice = new IndiceSaldos(banco)) {
+            comprobar(banco, indice);
+            // Los tipos no incluyen las cuentas de sus subclases
+            assertEquals(0, indice.numCuentasTipo(CuentaCorriente.class));
+            assertTrue(indice.cuentasTipo(CuentaCorriente.class).isEmpty());
+            assertTrue(indice.mayoresSaldos(CuentaCorriente.class, 5).isEmpty());
+            assertTrue(indice.cuentasConSaldoEntre(CuentaAhorro.class, 10, 0).isEmpty());
+        }
+    }
+
+    /**
+     * Las cuentas abiertas y las operaciones hechas después de crear el índice
+     * se reflejan en sus consultas, incluidas las cuentas que pasan a estar al
+     * descubierto.
+     */
+    @Test
+    void reflejaLasAltasYLasOperaciones() {
+        Banco banco = new Banco();
+        Random aleatorio = new Random(42);
+        abrirCuentas(banco, 150, aleatorio);
+        try (IndiceSaldos indice = new IndiceSaldos(banco)) {
+            for (int i = 150; i < 300; i++) {
+                assertTrue(banco.abrirCuenta(cuenta(i, aleatorio.nextInt(500))));
+            }
+            for (int i = 0; i < 5000; i++) {
+                String origen = iban(aleatorio.nextInt(300));
+                long centimos = 1 + aleatorio.nextInt(40000);
+                switch (aleatorio.nextInt(3)) {
+                    case 0 ->
+                        banco.ingresoCentimos(origen, centimos);
+                    case 1 ->
+                        banco.retiradaCentimos(origen, centimos);
+                    default ->
+                        banco.transferenciaCentimos(origen, iban(aleatorio.nextInt(300)), centimos);
+                }
+            }
+            assertFalse(indice.cuentasAlDescubierto(CuentaCorrienteEmpresa.class).isEmpty());
+            comprobar(banco, indice);
+        }
+    }
+
+    /**
+     * Con operaciones desde varios hilos a la vez, cuando terminan todas cada
+     * cuenta está colocada según su saldo final.
+     */
+    @Test
+    void operacionesSimultaneas() {
+        Banco banco = new Banco();
+        abrirCuentas(banco, 200, new Random(7));
+        try (IndiceSaldos indice = new IndiceSaldos(banco)) {
+            assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+                List<Thread> hilos = new ArrayList<>();
+                for (int h = 0; h < 8; h++) {
+                    hilos.add(new Thread(() -> {
+                        ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+                        for (int i = 0; i < 5000; i++) {
+                            int posicion = aleatorio.nextInt(200);
+                            long centimos = 1 + aleatorio.nextInt(30000);
+                            if (aleatorio.nextBoolean()) {
+                                banco.transferenciaCentimos(iban(posicion), iban(aleatorio.nextInt(200)), centimos);
+                            } else if (aleatorio.nextBoolean()) {
+                                banco.ingresoPosicion(posicion, centimos);
+                            } else {
+                                banco.retiradaPosicion(posicion, centimos);
+                            }
+                        }
+                    }));
+                }
+                hilos.forEach(Thread::start);
+                for (Thread hilo : hilos) {
+                    hilo.join();
+                }
+            });
+            comprobar(banco, indice);
+        }
+    }
+
+    /**
+     * Al cerrar el índice deja de actualizarse.
+     */
+    @Test
+    void dejaDeActualizarseAlCerrarlo() {
+        Banco banco = new Banco();
+        banco.abrirCuenta(cuenta(0, 100));
+        banco.abrirCuenta(cuenta(3, 200));
+        IndiceSaldos indice = new IndiceSaldos(banco);
+        assertEquals(List.of(banco.cuentaEnPosicion(1)), indice.mayoresSaldos(CuentaAhorro.class, 1));
+        indice.close();
+        assertTrue(banco.ingresoCentimos(iban(0), 50000).esRealizada());
+        banco.abrirCuenta(cuenta(6, 0));
+        assertEquals(List.of(banco.cuentaEnPosicion(1)), indice.mayoresSaldos(CuentaAhorro.class, 1));
+        assertEquals(2, indice.numCuentasTipo(CuentaAhorro.class));
+    }
+
+    /**
+     * Hace ingresos y retiradas alternos en cuentas al azar y devuelve el
+     * tiempo medio por operación.
+     *
+     * @param banco       el banco
+     * @param operaciones el número de operaciones
+     * @param semilla     la semilla de las cuentas y cantidades
+     *
+     * @return los nanosegundos por operación
+     */
+    private static double nanosPorOperacion(Banco banco, int operaciones, long semilla) {
+        Random aleatorio = new Random(semilla);
+        long inicio = System.nanoTime();
+        for (int i = 0; i < operaciones; i++) {
+            int posicion = aleatorio.nextInt(banco.getContadorCuentas());
+            long centimos = 1 + aleatorio.nextInt(1000);
+            if ((i & 1) == 0) {
+                banco.ingresoPosicion(posicion, centimos);
+            } else {
+                banco.retiradaPosicion(posicion, centimos);
+            }
+        }
+        return (System.nanoTime() - inicio) / (double) operaciones;
+    }
+
+    /**
+     * Mide lo que cuesta cada ingreso o retirada sin el índice y con él, y
+     * lo que tarda una consulta de las 10 cuentas con mayor saldo. Después
+     * de medir, el índice ha de seguir coincidiendo con el recorrido de las
+     * cuentas.
+     */
+    @Test
+    @Tag("rendimiento")
+    void costeDeMantenerElIndice() {
+        Banco banco = new Banco();
+        abrirCuentas(banco, 100_000, new Random(31));
+        int operaciones = 200_000;
+        double sinIndice = Double.MAX_VALUE, conIndice = Double.MAX_VALUE, consulta = Double.MAX_VALUE;
+        // La primera vuelta sirve de calentamiento
+        for (int vuelta = 0; vuelta < 4; vuelta++) {
+            double tiempo = nanosPorOperacion(banco, operaciones, vuelta);
+            if (vuelta > 0) {
+                sinIndice = Math.min(sinIndice, tiempo);
+            }
+        }
+        try (IndiceSaldos indice = new IndiceSaldos(banco)) {
+            for (int vuelta = 0; vuelta < 4; vuelta++) {
+                double tiempo = nanosPorOperacion(banco, operaciones, vuelta);
+                if (vuelta > 0) {
+                    conIndice = Math.min(conIndice, tiempo);
+                }
+                long inicio = System.nanoTime();
+                for (int i = 0; i < 1000; i++) {
+                    assertEquals(10, indice.mayoresSaldos(TIPOS.get(i % TIPOS.size()), 10).size());
+                }
+                if (vuelta > 0) {
+                    consulta = Math.min(consulta, (System.nanoTime() - inicio) / 1000.0);
+                }
+            }
+            System.out.printf("Índice de saldos con %d cuentas: %.0f ns por operación sin el índice, %.0f ns con él, "
+                    + "%.0f ns por consulta de los 10 mayores saldos%n",
+                    banco.getContadorCuentas(), sinIndice, conIndice, consulta);
+            comprobar(banco, indice);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package es.iesjuanbosco.logica;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de los modos de almacenamiento del banco: las operaciones dan el
+ * mismo resultado en todos ellos, y una comparación de la memoria, del tiempo
+ * del recolector de basura y de la velocidad de los recorridos.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+class LibroContableTest {
+
+    /**
+     * Modos de almacenamiento que se comparan.
+     */
+    private static final ModoAlmacenamiento[] MODOS = {ModoAlmacenamiento.OBJETOS, ModoAlmacenamiento.COLUMNAR,
+        ModoAlmacenamiento.FUERA_HEAP};
+
+    /**
+     * Titular de las cuentas de las pruebas.
+     */
+    private static final Persona TITULAR = new Persona("Nombre", "Apellidos", "12345678Z");
+
+    /**
+     * Crea una cuenta de un tipo que depende de su número.
+     *
+     * @param numero el número de la cuenta
+     *
+     * @return la cuenta
+     */
+    private static CuentaBancaria cuenta(int numero) {
+        String iban = String.format("ES%020d", numero);
+        return switch (numero % 3) {
+            case 0 ->
+                new CuentaAhorro(TITULAR, numero % 1000, iban, 1.5);
+            case 1 ->
+                new CuentaCorrientePersonal(TITULAR, numero % 1000, iban, "IBERDROLA", 20);
+            default ->
+                new CuentaCorrienteEmpresa(TITULAR, numero % 1000, iban, "ENDESA", 500, 10, 5);
+        };
+    }
+
+    /**
+     * Crea un banco con cuentas de los tres tipos.
+     *
+     * @param modo    el modo de almacenamiento
+     * @param cuentas el número de cuentas
+     *
+     * @return el banco
+     */
+    private static Banco banco(ModoAlmacenamiento modo, int cuentas) {
+        Banco banco = new Banco(cuentas, modo);
+        for (int i = 0; i < cuentas; i++) {
+            banco.abrirCuenta(cuenta(i));
+        }
+        return banco;
+    }
+
+    /**
+     * Las operaciones y los cambios de los datos de las cuentas dan el mismo
+     * resultado con cualquier modo de almacenamiento.
+     */
+    @Test
+    void todosLosModosDanElMismoResultado() {
+        for (ModoAlmacenamiento modo : MODOS) {
+            Banco banco = banco(modo, 30);
+            assertTrue(banco.retiradaPosicion(2, 40_000).esRealizada(), modo.name());
+            assertTrue(banco.ingresoPosicion(3, 250).esRealizada(), modo.name());
+            assertTrue(banco.transferenciaCentimos(banco.cuentaEnPosicion(4).getIban(),
+                    banco.cuentaEnPosicion(5).getIban(), 300).esRealizada(), modo.name());
+            CuentaAhorro ahorro = (CuentaAhorro) banco.cuentaEnPosicion(0);
+            ahorro.setTipoInteresAnual(3.25);
+            CuentaCorrienteEmpresa empresa = (CuentaCorrienteEmpresa) banco.cuentaEnPosicion(8);
+            empresa.setMaxDescubierto(1234);
+            assertEquals(3.25, ahorro.getTipoInteresAnual(), modo.name());
+            assertEquals(1234, empresa.getMaxDescubierto(), modo.name());
+            // 2 euros de saldo, 400 retirados y 39,80 de comisión (10% de 398)
+            assertEquals(-43_780, banco.cuentaEnPosicion(2).getSaldoCentimos(), modo.name());
+            assertEquals(437.80, banco.totalDescubierto(), 1e-9, modo.name());
+            // 435 euros iniciales más el ingreso, menos la retirada y su comisión
+            assertEquals(-2.30, banco.totalSaldos(), 1e-9, modo.name());
+        }
+    }
+
+    /**
+     * En los modos con libro contable el banco guarda una copia de los datos
+     * de cada cuenta: las cuentas que devuelve son vistas del libro, iguales
+     * entre sí para la misma posición, con todos los datos de la cuenta
+     * abierta, y los cambios en el objeto original no llegan al banco.
+     */
+    @Test
+    void lasCuentasSonVistasDelLibro() {
+        for (ModoAlmacenamiento modo : new ModoAlmacenamiento[]{ModoAlmacenamiento.COLUMNAR,
+            ModoAlmacenamiento.FUERA_HEAP}) {
+            Banco banco = new Banco(10, modo);
+            Persona titular = new Persona("Otro", "Titular", "00000000T");
+            CuentaCorrienteEmpresa original = new CuentaCorrienteEmpresa(titular, 100,
+                    "ES91210004184502000513", "iberdrola; endesa", 500, 10, 5);
+            assertTrue(banco.abrirCuenta(original));
+            assertTrue(banco.abrirCuenta(new CuentaAhorro(TITULAR, 50, "ES-OTRO-FORMATO", 2.5)));
+            CuentaBancaria vista = banco.cuentaEnPosicion(0);
+            assertNotSame(original, vista, modo.name());
+            assertEquals(vista, banco.cuentaEnPosicion(0), modo.name());
+            assertEquals(vista.hashCode(), banco.cuentaEnPosicion(0).hashCode(), modo.name());
+            assertNotEquals(vista, banco.cuentaEnPosicion(1), modo.name());
+            assertEquals(original.devolverInfoString(), vista.devolverInfoString(), modo.name());
+            assertEquals("ES-OTRO-FORMATO", banco.cuentaEnPosicion(1).getIban(), modo.name());
+            assertSame(titular, vista.getTitular(), modo.name());
+            assertEquals(0, banco.posicionCuenta("ES91210004184502000513"), modo.name());
+            // El original ya no es la cuenta del banco
+            original.setMaxDescubierto(1);
+            original.setSaldo(0);
+            assertEquals(500, ((CuentaCorrienteEmpresa) vista).getMaxDescubierto(), modo.name());
+            assertEquals(10_000, vista.getSaldoCentimos(), modo.name());
+            // Los cambios en una vista los ven las demás
+            ((CuentaCorriente) vista).setListaEntidades("NATURGY");
+            assertEquals("NATURGY", ((CuentaCorriente) banco.cuentaEnPosicion(0)).getListaEntidades(),
+                    modo.name());
+            assertTrue(banco.retiradaPosicion(0, 30_000).esRealizada(), modo.name());
+            assertEquals(-22_000, vista.getSaldoCentimos(), modo.name());
+            // Las subclases de los tipos conocidos no pueden copiarse en el libro
+            CuentaAhorro subclase = new CuentaAhorro(TITULAR, 0, "ES0000000000000000000099", 1) {
+            };
+            assertThrows(IllegalArgumentException.class, () -> banco.abrirCuenta(subclase), modo.name());
+            assertEquals(2, banco.getContadorCuentas(), modo.name());
+        }
+    }
+
+    /**
+     * Devuelve la memoria ocupada del heap tras una recolección completa.
+     *
+     * @return los bytes ocupados del heap
+     */
+    private static long heapOcupado() {
+        System.gc();
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Devuelve la memoria reservada fuera del heap por los buffers directos.
+     *
+     * @return los bytes de los buffers directos
+     */
+    private static long memoriaDirecta() {
+        long total = 0;
+        for (BufferPoolMXBean buffers : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (buffers.getName().equals("direct")) {
+                total += buffers.getMemoryUsed();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Comprueba si un recolector de basura es el de la generación joven.
+     *
+     * @param recolector el recolector
+     *
+     * @return true si sólo recoge la generación joven
+     */
+    private static boolean esJoven(GarbageCollectorMXBean recolector) {
+        String nombre = recolector.getName();
+        return nombre.contains("Young") || nombre.contains("Scavenge") || nombre.equals("Copy")
+                || nombre.equals("ParNew");
+    }
+
+    /**
+     * Devuelve el número de recolecciones y el tiempo dedicado hasta ahora a
+     * la recolección de basura.
+     *
+     * @param jovenes true para contar sólo las recolecciones de la generación
+     *                joven, false para contar sólo las demás
+     *
+     * @return el número de recolecciones y el tiempo en milisegundos
+     */
+    private static long[] recolecciones(boolean jovenes) {
+        long[] total = new long[2];
+        for (GarbageCollectorMXBean recolector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (esJoven(recolector) == jovenes) {
+                total[0] += Math.max(recolector.getCollectionCount(), 0);
+                total[1] += Math.max(recolector.getCollectionTime(), 0);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Mide un banco de un modo de almacenamiento: memoria del heap y fuera de
+     * él por cuenta, pausas del recolector de basura con el banco en memoria
+     * (las de la generación joven mientras se crean muchos objetos de vida
+     * corta y las de recolecciones completas) y tiempo de sumar todos los
+     * saldos. El banco deja de usarse al volver, para que no cuente en la
+     * medida del siguiente modo.
+     *
+     * @param modo    el modo de almacenamiento
+     * @param cuentas el número de cuentas
+     *
+     * @return la suma de los saldos del banco
+     */
+    private static double medir(ModoAlmacenamiento modo, int cuentas) {
+        long heapAntes = heapOcupado();
+        long directaAntes = memoriaDirecta();
+        Banco banco = banco(modo, cuentas);
+        long heap = heapOcupado() - heapAntes;
+        long directa = memoriaDirecta() - directaAntes;
+        // Objetos de vida corta, que se guardan un momento para que no se eliminen al compilar
+        long[] jovenes = recolecciones(true);
+        long[][] temporales = new long[4096][];
+        for (int i = 0; i < 4_000_000; i++) {
+            temporales[i & 4095] = new long[16];
+        }
+        jovenes = new long[]{recolecciones(true)[0] - jovenes[0], recolecciones(true)[1] - jovenes[1]};
+        long[] completas = recolecciones(false);
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        completas = new long[]{recolecciones(false)[0] - completas[0], recolecciones(false)[1] - completas[1]};
+        double total = 0;
+        for (int i = 0; i < 20; i++) {
+            total = banco.totalSaldos();
+        }
+        long inicio = System.nanoTime();
+        for (int i = 0; i < 50; i++) {
+            total = banco.totalSaldos();
+        }
+        long recorrido = (System.nanoTime() - inicio) / 50;
+        System.out.printf("%-10s %d cuentas: heap %d bytes/cuenta, fuera del heap %d bytes/cuenta, "
+                + "%d pausas jóvenes de %.2f ms de media, recolección completa %.1f ms, suma de saldos %.2f ms%n",
+                modo, cuentas, heap / cuentas, directa / cuentas, jovenes[0],
+                jovenes[0] == 0 ? 0.0 : (double) jovenes[1] / jovenes[0],
+                completas[0] == 0 ? 0.0 : (double) completas[1] / completas[0], recorrido / 1e6);
+        assertEquals(cuentas, banco.getContadorCuentas());
+        assertEquals(4096, temporales.length);
+        return total;
+    }
+
+    /**
+     * Compara los modos de almacenamiento con el mismo banco: memoria del heap
+     * y fuera de él por cuenta, pausas del recolector de basura con el banco
+     * en memoria y tiempo de sumar todos los saldos.
+     */
+    @Test
+    @Tag("rendimiento")
+    void comparacionDeLosModos() {
+        int cuentas = 200_000;
+        double totalEsperado = Double.NaN;
+        for (ModoAlmacenamiento modo : MODOS) {
+            double total = medir(modo, cuentas);
+            if (Double.isNaN(totalEsperado)) {
+                totalEsperado = total;
+            }
+            assertEquals(totalEsperado, total, 1e-6, modo.name());
+        }
+    }
+
+    /**
+     * En el modo fuera del heap los registros hacen referencia a los objetos
+     * compartidos del heap con un número, y la tabla de esos objetos crece con
+     * los titulares y las combinaciones de entidades distintos, no con las
+     * cuentas.
+     */
+    @Test
+    void fueraDelHeapSoloGuardaLosObjetosCompartidos() {
+        LibroFueraHeap libro = new LibroFueraHeap();
+        Persona otro = new Persona("Otro", "Titular", "00000000T");
+        DiccionarioEntidades diccionario = new DiccionarioEntidades();
+        ConjuntoEntidades entidades = diccionario.conjunto("IBERDROLA, ENDESA");
+        for (int i = 0; i < 3 * AlmacenCuentas.TAMANO_BLOQUE; i++) {
+            libro.reservar(i);
+            libro.setTitular(i, i % 2 == 0 ? TITULAR : otro);
+            libro.setEntidades(i, i % 3 == 0 ? null : entidades);
+            libro.setIban(i, "ES99" + String.format("%018d", i));
+        }
+        assertEquals(3, libro.numReferencias());
+        assertSame(otro, libro.getTitular(1));
+        assertNull(libro.getEntidades(3));
+        assertSame(entidades, libro.getEntidades(4));
+        // Los 20 dígitos del IBAN se conservan enteros
+        assertEquals("ES99000000000000000005", libro.getIban(5));
+        libro.setIban(5, "ES-OTRO");
+        assertEquals("ES-OTRO", libro.getIban(5));
+        libro.setIban(5, null);
+        assertNull(libro.getIban(5));
+    }
+}
@@ -0,0 +1,224 @@
+package es.iesjuanbosco.logica;
+
+import es.iesjuanbosco.logica.LiquidadorIntereses.Capitalizacion;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de la liquidación de intereses: los intereses de cada cuenta se
+ * comparan con los calculados con BigDecimal, y la liquidación en paralelo con
+ * la hecha en un solo hilo.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+class LiquidadorInteresesTest {
+
+    /**
+     * Titular de las cuentas de las pruebas.
+     */
+    private static final Persona TITULAR = new Persona("Nombre", "Apellidos", "12345678Z");
+
+    /**
+     * Tipos de interés anual de las cuentas de ahorro de las pruebas.
+     */
+    private static final double[] TIPOS = {0.01, 0.5, 1.5, 2.25, 3, 4.75, 12};
+
+    /**
+     * Forma un IBAN a partir de un número de cuenta.
+     *
+     * @param numero el número de la cuenta
+     *
+     * @return el IBAN
+     */
+    private static String iban(int numero) {
+        return String.format("ES%020d", numero);
+    }
+
+    /**
+     * Calcula con BigDecimal los intereses compuestos de un saldo:
+     * saldo * ((p + t)^n - p^n) / p^n, siendo p el número de periodos al año
+     * por 100, t el tipo de interés y n el número de periodos.
+     *
+     * @param capitalizacion   la forma de capitalizar
+     * @param saldo            el saldo en céntimos
+     * @param tipoInteresAnual el tipo de interés anual
+     * @param periodos         el número de periodos
+     * @param modo             el modo de redondeo
+     *
+     * @return los intereses en céntimos
+     */
+    private static long interesesBigDecimal(Capitalizacion capitalizacion, long saldo, double tipoInteresAnual,
+            int periodos, RoundingMode modo) {
+        BigDecimal periodosAno = BigDecimal.valueOf(capitalizacion == Capitalizacion.DIARIA ? 36500 : 1200);
+        BigDecimal denominador = periodosAno.pow(periodos);
+        BigDecimal numerador = periodosAno.add(BigDecimal.valueOf(tipoInteresAnual)).pow(periodos)
+                .subtract(denominador).multiply(BigDecimal.valueOf(saldo));
+        return numerador.divide(denominador, 0, modo).longValueExact();
+    }
+
+    /**
+     * Crea un banco con cuentas de ahorro de varios tipos de interés y saldos
+     * (incluidos saldos nulos y negativos) y cuentas corrientes.
+     *
+     * @param cuantas el número de cuentas
+     * @param semilla la semilla de los saldos
+     *
+     * @return el banco
+     */
+    private static Banco banco(int cuantas, long semilla) {
+        Banco banco = new Banco();
+        Random aleatorio = new Random(semilla);
+        for (int i = 0; i < cuantas; i++) {
+            double saldo = aleatorio.nextInt(1_000_000) / 100.0;
+            CuentaBancaria cuenta = switch (i % 5) {
+                case 0 ->
+                    new CuentaCorrienteEmpresa(TITULAR, saldo, iban(i), "IBERDROLA", 1000, 10, 5);
+                case 1 ->
+                    new CuentaCorrientePersonal(TITULAR, saldo, iban(i), "IBERDROLA", 20);
+                default ->
+                    new CuentaAhorro(TITULAR, i % 7 == 0 ? 0 : saldo, iban(i), TIPOS[aleatorio.nextInt(TIPOS.length)]);
+            };
+            assertTrue(banco.abrirCuenta(cuenta));
+            if (i % 11 == 0) {
+                banco.ajustarSaldoCentimos(i, -cuenta.getSaldoCentimos() - 500);
+            }
+        }
+        return banco;
+    }
+
+    /**
+     * Con saldos y tipos aleatorios, los intereses calculados con el factor en
+     * double coinciden con los calculados con BigDecimal en todos los modos de
+     * redondeo.
+     */
+    @Test
+    void losInteresesCoincidenConBigDecimal() {
+        Random aleatorio = new Random(22);
+        RoundingMode[] modos = {RoundingMode.HALF_EVEN, RoundingMode.HALF_UP, RoundingMode.DOWN, RoundingMode.UP};
+        for (int i = 0; i < 20_000; i++) {
+            Capitalizacion capitalizacion = aleatorio.nextBoolean() ? Capitalizacion.DIARIA : Capitalizacion.MENSUAL;
+            int periodos = 1 + aleatorio.nextInt(capitalizacion == Capitalizacion.DIARIA ? 365 : 24);
+            double tipo = TIPOS[aleatorio.nextInt(TIPOS.length)];
+            // Saldos pequeños y grandes, y múltiplos de 50 céntimos, que dan más puntos medios
+            long saldo = switch (aleatorio.nextInt(3)) {
+                case 0 ->
+                    1 + aleatorio.nextInt(10_000);
+                case 1 ->
+                    50L * (1 + aleatorio.nextInt(1_000_000));
+                default ->
+                    1 + (aleatorio.nextLong() >>> 24);
+            };
+            RoundingMode modo = modos[aleatorio.nextInt(modos.length)];
+            double factor = capitalizacion.factor(tipo, periodos);
+            assertEquals(interesesBigDecimal(capitalizacion, saldo, tipo, periodos, modo),
+                    capitalizacion.intereses(saldo, tipo, periodos, factor, modo),
+                    saldo + " céntimos al " + tipo + "% durante " + periodos + " " + capitalizacion + ", " + modo);
+        }
+    }
+
+    /**
+     * Los intereses que caen justo en medio céntimo se redondean según el
+     * modo, aunque el factor en double no sea exacto.
+     */
+    @Test
+    void redondeaLosPuntosMedios() {
+        // Un mes al 12% anual es un 1%: 50 céntimos dan medio céntimo de intereses
+        double factor = Capitalizacion.MENSUAL.factor(12, 1);
+        assertEquals(0, Capitalizacion.MENSUAL.intereses(50, 12, 1, factor, RoundingMode.HALF_EVEN));
+        assertEquals(1, Capitalizacion.MENSUAL.intereses(50, 12, 1, factor, RoundingMode.HALF_UP));
+        assertEquals(2, Capitalizacion.MENSUAL.intereses(150, 12, 1, factor, RoundingMode.HALF_EVEN));
+        assertEquals(2, Capitalizacion.MENSUAL.intereses(250, 12, 1, factor, RoundingMode.HALF_EVEN));
+        assertEquals(3, Capitalizacion.MENSUAL.intereses(250, 12, 1, factor, RoundingMode.HALF_UP));
+        // Dos meses: 1,01^2 - 1 = 0,0201
+        factor = Capitalizacion.MENSUAL.factor(12, 2);
+        assertEquals(201, Capitalizacion.MENSUAL.intereses(10_000, 12, 2, factor, RoundingMode.DOWN));
+        assertEquals(2, Capitalizacion.MENSUAL.intereses(100, 12, 2, factor, RoundingMode.HALF_EVEN));
+    }
+
+    /**
+     * Sólo se abonan intereses a las cuentas de ahorro con saldo positivo, y
+     * cada una recibe los calculados con BigDecimal.
+     */
+    @Test
+    void abonaSoloALasCuentasDeAhorroConSaldoPositivo() {
+        Banco banco = banco(5000, 1);
+        long[] antes = new long[banco.getContadorCuentas()];
+        for (int i = 0; i < antes.length; i++) {
+            antes[i] = banco.cuentaEnPosicion(i).getSaldoCentimos();
+        }
+        ResumenIntereses resumen;
+        try (LiquidadorIntereses liquidador = new LiquidadorIntereses(banco, 2)) {
+            resumen = liquidador.liquidar(Capitalizacion.DIARIA, 30);
+        }
+        long ahorro = 0, abonadas = 0, abonado = 0;
+        for (int i = 0; i < antes.length; i++) {
+            CuentaBancaria cuenta = banco.cuentaEnPosicion(i);
+            long esperado = 0;
+            if (cuenta instanceof CuentaAhorro) {
+                ahorro++;
+                if (antes[i] > 0) {
+                    esperado = interesesBigDecimal(Capitalizacion.DIARIA, antes[i],
+                            ((CuentaAhorro) cuenta).getTipoInteresAnual(), 30, banco.getModoRedondeo());
+                }
+            }
+            assertEquals(antes[i] + esperado, cuenta.getSaldoCentimos(), "Cuenta " + i);
+            if (esperado > 0) {
+                abonadas++;
+                abonado += esperado;
+            }
+        }
+        assertEquals(antes.length, resumen.cuentas());
+        assertEquals(ahorro, resumen.cuentasAhorro());
+        assertEquals(abonadas, resumen.cuentasAbonadas());
+        assertEquals(abonado, resumen.centimosAbonados());
+        assertTrue(abonadas > 0 && abonadas < ahorro);
+    }
+
+    /**
+     * La liquidación en varios hilos, con tramos suficientes para repartirse,
+     * deja los mismos saldos que la hecha en un solo hilo.
+     */
+    @Test
+    void enParaleloDaLoMismoQueEnUnHilo() {
+        int cuantas = 4 * LiquidadorIntereses.UMBRAL + 123;
+        Banco secuencial = banco(cuantas, 2);
+        Banco paralelo = banco(cuantas, 2);
+        ResumenIntereses unHilo, variosHilos;
+        try (LiquidadorIntereses liquidador = new LiquidadorIntereses(secuencial, 1)) {
+            unHilo = liquidador.liquidar(Capitalizacion.MENSUAL, 6);
+        }
+        try (LiquidadorIntereses liquidador = new LiquidadorIntereses(paralelo, 8)) {
+            variosHilos = liquidador.liquidar(Capitalizacion.MENSUAL, 6);
+        }
+        for (int i = 0; i < cuantas; i++) {
+            assertEquals(secuencial.cuentaEnPosicion(i).getSaldoCentimos(),
+                    paralelo.cuentaEnPosicion(i).getSaldoCentimos(), "Cuenta " + i);
+        }
+        assertEquals(unHilo.cuentasAhorro(), variosHilos.cuentasAhorro());
+        assertEquals(unHilo.cuentasAbonadas(), variosHilos.cuentasAbonadas());
+        assertEquals(unHilo.centimosAbonados(), variosHilos.centimosAbonados());
+        assertEquals(8, variosHilos.hilos());
+    }
+
+    /**
+     * Un periodo de cero días no abona nada, un número de periodos negativo se
+     * rechaza y un saldo que dejaría de caber en un long lanza una excepción.
+     */
+    @Test
+    void periodosNoValidosYDesbordamiento() {
+        Banco banco = new Banco();
+        banco.abrirCuenta(new CuentaAhorro(TITULAR, 100, iban(1), 1.5));
+        try (LiquidadorIntereses liquidador = new LiquidadorIntereses(banco, 1)) {
+            assertEquals(0, liquidador.liquidar(Capitalizacion.DIARIA, 0).centimosAbonados());
+            assertEquals(10_000, banco.cuentaEnPosicion(0).getSaldoCentimos());
+            assertThrows(IllegalArgumentException.class, () -> liquidador.liquidar(Capitalizacion.DIARIA, -1));
+            assertTrue(banco.ingresoCentimos(iban(1), Long.MAX_VALUE - 10_000).esRealizada());
+            assertThrows(ArithmeticException.class, () -> liquidador.liquidar(Capitalizacion.MENSUAL, 12));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new LiquidadorIntereses(banco, 0));
+    }
+}
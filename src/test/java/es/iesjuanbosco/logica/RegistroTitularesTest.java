@@ -0,0 +1,110 @@
+package es.iesjuanbosco.logica;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del registro de titulares: normalización de los DNI, una sola
+ * instancia de Persona por cliente y posiciones de sus cuentas, tanto en el
+ * registro como a través del banco con cada modo de almacenamiento.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+class RegistroTitularesTest {
+
+    /**
+     * Forma un IBAN a partir de un número de cuenta.
+     *
+     * @param numero el número de la cuenta
+     *
+     * @return el IBAN
+     */
+    private static String iban(int numero) {
+        return String.format("ES%020d", numero);
+    }
+
+    /**
+     * Los DNI se normalizan sin espacios alrededor, en mayúsculas y con los
+     * DNI de 7 dígitos completados con un 0; los NIE no se completan.
+     */
+    @Test
+    void normalizaLosDNI() {
+        assertEquals("12345678Z", RegistroTitulares.normalizar(" 12345678z "));
+        assertEquals("01234567L", RegistroTitulares.normalizar("1234567L"));
+        assertEquals("01234567L", RegistroTitulares.normalizar("01234567l"));
+        assertEquals("X1234567L", RegistroTitulares.normalizar("x1234567l"));
+    }
+
+    /**
+     * El primer registro de un DNI conserva sus datos y los siguientes con el
+     * mismo DNI, escrito de cualquier forma, reciben esa misma persona y
+     * añaden sus posiciones en orden.
+     */
+    @Test
+    void compartePersonaYGuardaLasPosiciones() {
+        RegistroTitulares registro = new RegistroTitulares();
+        Persona primera = new Persona("Juan", "Pérez", "1234567L");
+        Persona segunda = new Persona("Otro", "Nombre", "01234567l");
+        Persona otra = new Persona("Ana", "García", "12345678Z");
+        assertSame(primera, registro.registrar(primera, 0));
+        assertSame(otra, registro.registrar(otra, 1));
+        assertSame(primera, registro.registrar(segunda, 2));
+        assertSame(primera, registro.registrar(primera, 5));
+        assertEquals(2, registro.tamano());
+        assertSame(primera, registro.buscar(" 1234567l"));
+        assertEquals("Juan", registro.buscar("01234567L").getNombre());
+        assertArrayEquals(new int[]{0, 2, 5}, registro.posiciones("1234567L"));
+        assertArrayEquals(new int[]{1}, registro.posiciones("12345678z"));
+        // Las posiciones devueltas son una copia
+        registro.posiciones("1234567L")[0] = 99;
+        assertArrayEquals(new int[]{0, 2, 5}, registro.posiciones("1234567L"));
+    }
+
+    /**
+     * Los titulares sin DNI no se registran, y buscar un DNI desconocido no
+     * devuelve nada.
+     */
+    @Test
+    void ignoraLosTitularesSinDNI() {
+        RegistroTitulares registro = new RegistroTitulares();
+        Persona sinDni = new Persona("Sin", "DNI", null);
+        assertSame(sinDni, registro.registrar(sinDni, 0));
+        assertNull(registro.registrar(null, 1));
+        assertEquals(0, registro.tamano());
+        assertNull(registro.buscar("12345678Z"));
+        assertArrayEquals(new int[0], registro.posiciones("12345678Z"));
+    }
+
+    /**
+     * En cada modo de almacenamiento, las cuentas de un mismo cliente abiertas
+     * en el banco comparten su persona, conservan los datos de la primera y
+     * se obtienen en el orden en que se abrieron. Un alta rechazada no
+     * registra la cuenta.
+     */
+    @Test
+    void elBancoCompartePersonaEntreLasCuentasDeUnCliente() {
+        for (ModoAlmacenamiento modo : ModoAlmacenamiento.values()) {
+            Banco banco = new Banco(Banco.SIN_LIMITE, modo);
+            assertTrue(banco.abrirCuenta(new CuentaAhorro(new Persona("Juan", "Pérez", "1234567L"), 10, iban(1), 1)));
+            assertTrue(banco.abrirCuenta(new CuentaAhorro(new Persona("Ana", "García", "12345678Z"), 20, iban(2), 1)));
+            assertTrue(banco.abrirCuenta(new CuentaCorrientePersonal(new Persona("Juan", "Otro", "01234567l"), 30,
+                    iban(3), "IBERDROLA", 20)));
+            // Mismo IBAN que otra cuenta: no se abre ni se registra
+            assertFalse(banco.abrirCuenta(new CuentaAhorro(new Persona("Juan", "Pérez", "1234567L"), 40, iban(2), 1)));
+            assertEquals(2, banco.getContadorTitulares(), modo.name());
+            Persona juan = banco.buscarTitular("1234567l");
+            assertNotNull(juan, modo.name());
+            assertEquals("Pérez", juan.getApellidos(), modo.name());
+            List<CuentaBancaria> cuentas = banco.cuentasTitular("01234567L");
+            assertEquals(2, cuentas.size(), modo.name());
+            assertEquals(iban(1), cuentas.get(0).getIban(), modo.name());
+            assertEquals(iban(3), cuentas.get(1).getIban(), modo.name());
+            assertSame(juan, cuentas.get(0).getTitular(), modo.name());
+            assertSame(juan, cuentas.get(1).getTitular(), modo.name());
+            assertTrue(banco.cuentasTitular("00000000T").isEmpty(), modo.name());
+            assertNull(banco.buscarTitular("00000000T"), modo.name());
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package es.iesjuanbosco.logica;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de la tubería de operaciones: resultados de las órdenes, órdenes que
+ * fallan, etapas llamadas desde un único hilo y un histograma de la latencia
+ * desde que se publica una orden hasta que la recibe una etapa.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+class TuberiaOperacionesTest {
+
+    /**
+     * Crea un banco con cuentas de ahorro sin saldo.
+     *
+     * @param cuentas el número de cuentas
+     *
+     * @return el banco
+     */
+    private static Banco banco(int cuentas) {
+        Banco banco = new Banco(cuentas);
+        for (int i = 0; i < cuentas; i++) {
+            banco.abrirCuenta(new CuentaAhorro(new Persona("Nombre", "Apellidos", "12345678Z"), 0,
+                    String.format("ES%020d", i), 1.5));
+        }
+        return banco;
+    }
+
+    /**
+     * Si una orden lanza una excepción el aplicador sigue con las demás, y la
+     * orden fallida no llega a las etapas.
+     */
+    @Test
+    void unaOrdenFallidaNoDetieneLaTuberia() {
+        Banco banco = banco(1);
+        String iban = banco.cuentaEnPosicion(0).getIban();
+        // Oyente del banco que falla con los ingresos de 13 céntimos
+        banco.anadirOyente(resultado -> {
+            if (resultado.cantidadCentimos() == 13) {
+                throw new IllegalStateException("Fallo provocado");
+            }
+        });
+        List<ResultadoOperacion> recibidos = new ArrayList<>();
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            try (TuberiaOperaciones tuberia = new TuberiaOperaciones(banco, 16, recibidos::add)) {
+                long ultima = 0;
+                for (int i = 0; i < 99; i++) {
+                    ultima = tuberia.ingreso(iban, i % 20 == 0 ? 13 : 1);
+                }
+                tuberia.esperar(ultima);
+                assertEquals(99, tuberia.getAplicadas());
+                assertEquals(5, tuberia.getFallidas());
+                ResultadoOperacion fallida = tuberia.ingresoConResultado(iban, 13).join();
+                assertEquals(ResultadoOperacion.Motivo.ERROR_INTERNO, fallida.motivo());
+                assertEquals(6, tuberia.getFallidas());
+            }
+        });
+        assertEquals(94, recibidos.size());
+        // Los ingresos fallidos se han aplicado, ya que lo que ha fallado es la notificación
+        assertEquals(94 + 6 * 13, banco.cuentaEnPosicion(0).getSaldoCentimos());
+    }
+
+    /**
+     * Las órdenes publicadas con resultado lo reciben cuando han pasado por
+     * todas las etapas, también las rechazadas, aunque se hayan publicado
+     * muchas más órdenes que huecos tiene el anillo.
+     */
+    @Test
+    void devuelveElResultadoDeCadaOrden() {
+        Banco banco = banco(2);
+        String origen = banco.cuentaEnPosicion(0).getIban();
+        String destino = banco.cuentaEnPosicion(1).getIban();
+        AtomicLong leidas = new AtomicLong();
+        List<CompletableFuture<ResultadoOperacion>> resultados = new ArrayList<>();
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            try (TuberiaOperaciones tuberia = new TuberiaOperaciones(banco, 8, resultado -> leidas.incrementAndGet())) {
+                for (int i = 0; i < 100; i++) {
+                    resultados.add(tuberia.ingresoConResultado(origen, 10));
+                }
+                resultados.add(tuberia.retiradaConResultado(origen, 2000));
+                resultados.add(tuberia.transferenciaConResultado(origen, destino, 300));
+                resultados.add(tuberia.transferenciaConResultado(origen, origen, 1));
+                resultados.add(tuberia.ingresoConResultado("ES00000000000000009999", 1));
+                ResultadoOperacion transferencia = resultados.get(101).join();
+                // Al completarse ya la han recibido todas las etapas
+                assertTrue(leidas.get() >= 101);
+                assertTrue(transferencia.esRealizada());
+                assertEquals(700, transferencia.saldoCentimos());
+                assertEquals(300, transferencia.saldoDestinoCentimos());
+            }
+        });
+        for (int i = 0; i < 100; i++) {
+            assertEquals(10L * (i + 1), resultados.get(i).join().saldoCentimos());
+        }
+        assertEquals(ResultadoOperacion.Motivo.SALDO_INSUFICIENTE, resultados.get(100).join().motivo());
+        assertEquals(ResultadoOperacion.Motivo.MISMA_CUENTA, resultados.get(102).join().motivo());
+        assertEquals(ResultadoOperacion.Motivo.CUENTA_INEXISTENTE, resultados.get(103).join().motivo());
+        assertEquals(101, leidas.get());
+    }
+
+    /**
+     * Cada etapa se llama siempre desde su propio hilo, también con las altas
+     * y las operaciones hechas directamente sobre el banco desde otros hilos,
+     * y las recibe todas.
+     */
+    @Test
+    void cadaEtapaSeLlamaDesdeUnSoloHilo() throws Exception {
+        Banco banco = new Banco();
+        for (int i = 0; i < 4; i++) {
+            banco.abrirCuenta(new CuentaAhorro(new Persona("Nombre", "Apellidos", "12345678Z"), 0,
+                    String.format("ES%020d", i), 1.5));
+        }
+        Set<Thread> hilosEtapa = new HashSet<>();
+        List<Integer> altas = new ArrayList<>();
+        AtomicLong operaciones = new AtomicLong();
+        OyenteOperaciones etapa = new OyenteOperaciones() {
+            @Override
+            public void cuentaAbierta(CuentaBancaria cuenta, int posicion) {
+                hilosEtapa.add(Thread.currentThread());
+                altas.add(posicion);
+            }
+
+            @Override
+            public void operacionRealizada(ResultadoOperacion resultado) {
+                hilosEtapa.add(Thread.currentThread());
+                operaciones.incrementAndGet();
+            }
+        };
+        try (TuberiaOperaciones tuberia = new TuberiaOperaciones(banco, 64, etapa)) {
+            List<Thread> hilos = new ArrayList<>();
+            for (int h = 0; h < 4; h++) {
+                String iban = banco.cuentaEnPosicion(h).getIban();
+                hilos.add(new Thread(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        if (i % 2 == 0) {
+                            tuberia.ingreso(iban, 1);
+                        } else {
+                            banco.ingresoCentimos(iban, 1);
+                        }
+                    }
+                }));
+            }
+            hilos.forEach(Thread::start);
+            for (int i = 4; i < 10; i++) {
+                assertTrue(banco.abrirCuenta(new CuentaAhorro(new Persona("Nombre", "Apellidos", "12345678Z"), 0,
+                        String.format("ES%020d", i), 1.5)));
+            }
+            for (Thread hilo : hilos) {
+                hilo.join();
+            }
+        }
+        assertEquals(1, hilosEtapa.size());
+        assertTrue(hilosEtapa.iterator().next().getName().startsWith("etapa-tuberia-"));
+        assertEquals(List.of(4, 5, 6, 7, 8, 9), altas);
+        assertEquals(4000, operaciones.get());
+    }
+
+    /**
+     * Publica órdenes desde varios productores y muestra un histograma de la
+     * latencia desde que se publica cada orden hasta que la recibe una etapa.
+     * Cada ingreso lleva como cantidad su número de orden más uno, para que
+     * la etapa sepa a qué orden corresponde.
+     */
+    @Test
+    @Tag("rendimiento")
+    void histogramaDeLatencias() throws Exception {
+        int productores = 4, ordenes = 50_000, cuentas = 64;
+        Banco banco = banco(cuentas);
+        long[] publicadas = new long[productores * ordenes];
+        long[] recibidas = new long[productores * ordenes];
+        AtomicLong contador = new AtomicLong();
+        OyenteOperaciones etapa = resultado -> {
+            recibidas[(int) resultado.cantidadCentimos() - 1] = System.nanoTime();
+            contador.incrementAndGet();
+        };
+        long inicio;
+        try (TuberiaOperaciones tuberia = new TuberiaOperaciones(banco, 4096, etapa)) {
+            List<Thread> hilos = new ArrayList<>();
+            for (int p = 0; p < productores; p++) {
+                int primera = p * ordenes;
+                hilos.add(new Thread(() -> {
+                    for (int i = primera; i < primera + ordenes; i++) {
+                        publicadas[i] = System.nanoTime();
+                        tuberia.ingreso(banco.cuentaEnPosicion(i % cuentas).getIban(), i + 1);
+                    }
+                }));
+            }
+            inicio = System.nanoTime();
+            hilos.forEach(Thread::start);
+            for (Thread hilo : hilos) {
+                hilo.join();
+            }
+        }
+        long duracion = System.nanoTime() - inicio;
+        assertEquals(publicadas.length, contador.get());
+        long[] latencias = new long[publicadas.length];
+        // Cubetas de potencias de 2 en microsegundos: <1, <2, <4...
+        int[] cubetas = new int[32];
+        for (int i = 0; i < latencias.length; i++) {
+            latencias[i] = recibidas[i] - publicadas[i];
+            long micros = Math.max(latencias[i] / 1000, 0);
+            cubetas[64 - Long.numberOfLeadingZeros(micros)]++;
+        }
+        Arrays.sort(latencias);
+        System.out.printf("Tubería: %d órdenes, %.0f órdenes/s, p50 %.1f us, p99 %.1f us, p99.9 %.1f us, máximo %.1f us%n",
+                latencias.length, latencias.length / (duracion / 1e9), latencias[latencias.length / 2] / 1e3,
+                latencias[latencias.length * 99 / 100] / 1e3, latencias[latencias.length * 999 / 1000] / 1e3,
+                latencias[latencias.length - 1] / 1e3);
+        for (int i = 0; i < cubetas.length; i++) {
+            if (cubetas[i] > 0) {
+                System.out.printf("  < %8d us: %d%n", 1L << i, cubetas[i]);
+            }
+        }
+        long total = 0;
+        for (int i = 0; i < cuentas; i++) {
+            total += banco.cuentaEnPosicion(i).getSaldoCentimos();
+        }
+        assertEquals((long) publicadas.length * (publicadas.length + 1) / 2, total);
+    }
+}
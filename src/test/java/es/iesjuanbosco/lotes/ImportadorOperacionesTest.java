@@ -0,0 +1,352 @@
+package es.iesjuanbosco.lotes;
+
+import es.iesjuanbosco.logica.Banco;
+import es.iesjuanbosco.logica.CuentaAhorro;
+import es.iesjuanbosco.logica.CuentaCorrienteEmpresa;
+import es.iesjuanbosco.logica.Persona;
+import es.iesjuanbosco.util.ValidadorIBAN;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del importador de operaciones: formato de las líneas, líneas
+ * rechazadas, saltos de línea de Windows, líneas que cruzan el límite de un
+ * trozo, importación en paralelo frente a un solo hilo, comisiones de las
+ * retiradas y líneas por segundo.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+class ImportadorOperacionesTest {
+
+    /**
+     * Titular de las cuentas de las pruebas.
+     */
+    private static final Persona TITULAR = new Persona("Nombre", "Apellidos", "12345678Z");
+
+    /**
+     * Directorio temporal de los ficheros de las pruebas.
+     */
+    @TempDir
+    Path directorio;
+
+    /**
+     * Forma un IBAN español con dígitos de control correctos a partir de un
+     * número de cuenta.
+     *
+     * @param numero el número de la cuenta
+     *
+     * @return el IBAN
+     */
+    private static String iban(int numero) {
+        String cuenta = String.format("%018d", numero);
+        // ES = 14 28, seguido de los dígitos de control a 00
+        int resto = new BigInteger(cuenta + "142800").mod(BigInteger.valueOf(97)).intValue();
+        return String.format("ES%02d%s", 98 - resto, cuenta);
+    }
+
+    /**
+     * Crea un banco con cuentas de ahorro con saldo y una cuenta corriente
+     * de empresa que admite descubierto.
+     *
+     * @param cuentas el número de cuentas de ahorro
+     *
+     * @return el banco; la cuenta de empresa es la última
+     */
+    private static Banco banco(int cuentas) {
+        Banco banco = new Banco();
+        for (int i = 0; i < cuentas; i++) {
+            assertTrue(banco.abrirCuenta(new CuentaAhorro(TITULAR, 100, iban(i), 1.5)));
+        }
+        assertTrue(banco.abrirCuenta(new CuentaCorrienteEmpresa(TITULAR, 100, iban(cuentas), "IBERDROLA", 1000, 10, 5)));
+        return banco;
+    }
+
+    /**
+     * Escribe un fichero en el directorio temporal.
+     *
+     * @param nombre    el nombre del fichero
+     * @param contenido el contenido del fichero
+     *
+     * @return la ruta del fichero
+     *
+     * @throws IOException si no se puede escribir el fichero
+     */
+    private Path fichero(String nombre, String contenido) throws IOException {
+        return Files.writeString(directorio.resolve(nombre), contenido, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Comprueba que dos bancos tienen los mismos saldos.
+     *
+     * @param esperado el banco esperado
+     * @param real     el banco comprobado
+     */
+    private static void comprobarSaldos(Banco esperado, Banco real) {
+        assertEquals(esperado.getContadorCuentas(), real.getContadorCuentas());
+        for (int i = 0; i < esperado.getContadorCuentas(); i++) {
+            assertEquals(esperado.cuentaEnPosicion(i).getSaldoCentimos(), real.cuentaEnPosicion(i).getSaldoCentimos(),
+                    "Cuenta " + i);
+        }
+    }
+
+    /**
+     * Comprueba que dos resúmenes tienen los mismos recuentos, sin tener en
+     * cuenta el tiempo.
+     *
+     * @param esperado el resumen esperado
+     * @param real     el resumen comprobado
+     */
+    private static void comprobarResumen(ResumenImportacion esperado, ResumenImportacion real) {
+        assertEquals(esperado.lineas(), real.lineas());
+        assertEquals(esperado.ingresos(), real.ingresos());
+        assertEquals(esperado.retiradas(), real.retiradas());
+        assertEquals(esperado.rechazadas(), real.rechazadas());
+        assertEquals(esperado.centimosIngresados(), real.centimosIngresados());
+        assertEquals(esperado.centimosRetirados(), real.centimosRetirados());
+        assertEquals(esperado.centimosComisiones(), real.centimosComisiones());
+    }
+
+    /**
+     * Genera un fichero de ingresos y líneas rechazadas aleatorias sobre un
+     * banco de 100 cuentas de ahorro.
+     *
+     * @param nombre  el nombre del fichero
+     * @param lineas  el número de líneas
+     * @param semilla la semilla de las líneas
+     *
+     * @return la ruta del fichero
+     *
+     * @throws IOException si no se puede escribir el fichero
+     */
+    private Path generar(String nombre, int lineas, long semilla) throws IOException {
+        Random aleatorio = new Random(semilla);
+        Path fichero = directorio.resolve(nombre);
+        try (BufferedWriter salida = Files.newBufferedWriter(fichero, StandardCharsets.ISO_8859_1)) {
+            for (int i = 0; i < lineas; i++) {
+                String cantidad = aleatorio.nextInt(10_000) + "," + String.format("%02d", aleatorio.nextInt(100));
+                switch (aleatorio.nextInt(20)) {
+                    case 0 ->
+                        salida.write(iban(aleatorio.nextInt(100)) + ";X;" + cantidad);
+                    case 1 ->
+                        salida.write(iban(1000 + aleatorio.nextInt(100)) + ";I;" + cantidad);
+                    default ->
+                        salida.write(iban(aleatorio.nextInt(100)) + ";I;" + cantidad);
+                }
+                salida.write(aleatorio.nextInt(4) == 0 ? "\r\n" : "\n");
+            }
+        }
+        return fichero;
+    }
+
+    /**
+     * Las cantidades se leen con punto o coma y 0, 1 o 2 decimales, la
+     * operación en mayúscula o minúscula, y las líneas vacías no cuentan.
+     */
+    @Test
+    void aplicaLasLineasCorrectas() throws IOException {
+        Banco banco = banco(3);
+        Path operaciones = fichero("operaciones", iban(0) + ";I;150,25\n"
+                + "\n"
+                + iban(1) + ";i;3.5\n"
+                + iban(2) + ";R;7\n"
+                + iban(0) + ";r;0,05\n");
+        Path rechazos = directorio.resolve("rechazos");
+        ResumenImportacion resumen = new ImportadorOperaciones(banco).importar(operaciones, rechazos);
+        assertEquals(10_000 + 15_025 - 5, banco.cuentaEnPosicion(0).getSaldoCentimos());
+        assertEquals(10_000 + 350, banco.cuentaEnPosicion(1).getSaldoCentimos());
+        assertEquals(10_000 - 700, banco.cuentaEnPosicion(2).getSaldoCentimos());
+        assertEquals(4, resumen.lineas());
+        assertEquals(2, resumen.ingresos());
+        assertEquals(2, resumen.retiradas());
+        assertEquals(0, resumen.rechazadas());
+        assertEquals(15_025 + 350, resumen.centimosIngresados());
+        assertEquals(700 + 5, resumen.centimosRetirados());
+        assertEquals(0, resumen.centimosComisiones());
+        assertEquals(0, Files.size(rechazos));
+    }
+
+    /**
+     * Las líneas con formato, IBAN u operación no válidos y las operaciones
+     * que el banco no realiza se escriben en los rechazos, en el orden del
+     * fichero y seguidas del motivo, sin cambiar ningún saldo.
+     */
+    @Test
+    void rechazaLasLineasNoValidas() throws IOException {
+        Banco banco = banco(3);
+        String ibanMalo = "ES00" + iban(0).substring(4);
+        String[] lineas = {
+            iban(0) + ";I",
+            iban(0) + ";I;",
+            iban(0) + ";IR;10",
+            iban(0) + ";I;1,234",
+            iban(0) + ";I;1.",
+            iban(0) + ";I;,5",
+            iban(0) + ";I;-5",
+            iban(0) + ";I;1 000",
+            iban(0) + ";I;1234567890123456",
+            ibanMalo + ";I;10",
+            "ES123;I;10",
+            iban(0) + ";X;10",
+            iban(50) + ";I;10",
+            iban(1) + ";R;100,01",
+            iban(2) + ";I;0"
+        };
+        String[] motivos = {
+            ImportadorOperaciones.FORMATO_NO_VALIDO,
+            ImportadorOperaciones.FORMATO_NO_VALIDO,
+            ImportadorOperaciones.FORMATO_NO_VALIDO,
+            ImportadorOperaciones.FORMATO_NO_VALIDO,
+            ImportadorOperaciones.FORMATO_NO_VALIDO,
+            ImportadorOperaciones.FORMATO_NO_VALIDO,
+            ImportadorOperaciones.FORMATO_NO_VALIDO,
+            ImportadorOperaciones.FORMATO_NO_VALIDO,
+            ImportadorOperaciones.FORMATO_NO_VALIDO,
+            ImportadorOperaciones.IBAN_NO_VALIDO,
+            ImportadorOperaciones.IBAN_NO_VALIDO,
+            ImportadorOperaciones.OPERACION_NO_VALIDA,
+            "CUENTA_INEXISTENTE",
+            "SALDO_INSUFICIENTE",
+            "CANTIDAD_NO_VALIDA"
+        };
+        assertFalse(ValidadorIBAN.esValido(ibanMalo));
+        Path operaciones = fichero("operaciones", String.join("\n", lineas) + "\n");
+        Path rechazos = directorio.resolve("rechazos");
+        ResumenImportacion resumen = new ImportadorOperaciones(banco).importar(operaciones, rechazos);
+        StringBuilder esperados = new StringBuilder();
+        for (int i = 0; i < lineas.length; i++) {
+            esperados.append(lineas[i]).append(';').append(motivos[i]).append('\n');
+        }
+        assertEquals(esperados.toString(), Files.readString(rechazos, StandardCharsets.ISO_8859_1));
+        assertEquals(lineas.length, resumen.lineas());
+        assertEquals(lineas.length, resumen.rechazadas());
+        assertEquals(0, resumen.ingresos() + resumen.retiradas());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(10_000, banco.cuentaEnPosicion(i).getSaldoCentimos());
+        }
+    }
+
+    /**
+     * Un fichero con saltos de línea de Windows da el mismo resultado que con
+     * saltos de Unix, y los rechazos se escriben sin el retorno de carro,
+     * también en la última línea si no termina en salto de línea.
+     */
+    @Test
+    void admiteSaltosDeLineaDeWindows() throws IOException {
+        String contenido = iban(0) + ";I;10\n" + iban(1) + ";X;5\n\n" + iban(1) + ";R;20,5\n" + iban(7) + ";I;1";
+        Banco unix = banco(3);
+        Banco windows = banco(3);
+        Path rechazosUnix = directorio.resolve("rechazos-unix");
+        Path rechazosWindows = directorio.resolve("rechazos-windows");
+        ResumenImportacion esperado = new ImportadorOperaciones(unix)
+                .importar(fichero("unix", contenido), rechazosUnix);
+        ResumenImportacion resumen = new ImportadorOperaciones(windows)
+                .importar(fichero("windows", contenido.replace("\n", "\r\n")), rechazosWindows);
+        comprobarResumen(esperado, resumen);
+        comprobarSaldos(unix, windows);
+        assertEquals(4, resumen.lineas());
+        assertEquals(2, resumen.rechazadas());
+        assertEquals(iban(1) + ";X;5;OPERACION_NO_VALIDA\n" + iban(7) + ";I;1;CUENTA_INEXISTENTE\n",
+                Files.readString(rechazosWindows, StandardCharsets.ISO_8859_1));
+        assertEquals(Files.readString(rechazosUnix), Files.readString(rechazosWindows));
+    }
+
+    /**
+     * Con trozos más pequeños que una línea, cada trozo se alarga hasta el
+     * siguiente salto de línea y ninguna línea se parte, también cuando el
+     * límite cae entre el retorno de carro y el salto de línea.
+     */
+    @Test
+    void lasLineasQueCruzanUnTrozoNoSeParten() throws IOException {
+        Path operaciones = generar("operaciones", 2000, 5);
+        Banco entero = banco(100);
+        ResumenImportacion esperado = new ImportadorOperaciones(entero)
+                .importar(operaciones, directorio.resolve("rechazos-entero"));
+        byte[] rechazosEsperados = Files.readAllBytes(directorio.resolve("rechazos-entero"));
+        // Tamaños de trozo menores que una línea, y cercanos a ella para que los límites caigan en cualquier byte
+        for (int tamano : new int[]{1, 7, 33, 34, 35, 1000}) {
+            Banco troceado = banco(100);
+            Path rechazos = directorio.resolve("rechazos-" + tamano);
+            ResumenImportacion resumen = new ImportadorOperaciones(troceado, tamano).importar(operaciones, rechazos);
+            comprobarResumen(esperado, resumen);
+            comprobarSaldos(entero, troceado);
+            assertArrayEquals(rechazosEsperados, Files.readAllBytes(rechazos), "Trozos de " + tamano);
+        }
+        assertEquals(2000, esperado.lineas());
+        assertTrue(esperado.rechazadas() > 0);
+    }
+
+    /**
+     * Un fichero de ingresos importado en varios hilos deja los mismos saldos,
+     * el mismo resumen y los mismos rechazos, en el mismo orden, que en un
+     * solo hilo, y no deja ficheros temporales.
+     */
+    @Test
+    void enParaleloDaLoMismoQueEnUnHilo() throws IOException {
+        Path operaciones = generar("operaciones", 50_000, 9);
+        Banco secuencial = banco(100);
+        Banco paralelo = banco(100);
+        Path rechazosSecuencial = directorio.resolve("rechazos-secuencial");
+        Path rechazosParalelo = directorio.resolve("rechazos-paralelo");
+        ResumenImportacion esperado = new ImportadorOperaciones(secuencial, 4096)
+                .importar(operaciones, rechazosSecuencial, 1);
+        ResumenImportacion resumen = new ImportadorOperaciones(paralelo, 4096)
+                .importar(operaciones, rechazosParalelo, 4);
+        comprobarResumen(esperado, resumen);
+        comprobarSaldos(secuencial, paralelo);
+        assertArrayEquals(Files.readAllBytes(rechazosSecuencial), Files.readAllBytes(rechazosParalelo));
+        try (Stream<Path> ficheros = Files.list(directorio)) {
+            assertTrue(ficheros.noneMatch(f -> f.getFileName().toString().endsWith(".tmp")));
+        }
+    }
+
+    /**
+     * Lo retirado incluye las comisiones por descubierto cobradas: coincide
+     * con lo que ha bajado el saldo de la cuenta.
+     */
+    @Test
+    void loRetiradoIncluyeLasComisiones() throws IOException {
+        Banco banco = banco(1);
+        Path operaciones = fichero("operaciones", iban(1) + ";R;50\n" + iban(1) + ";R;80\n" + iban(1) + ";R;100\n");
+        ResumenImportacion resumen = new ImportadorOperaciones(banco)
+                .importar(operaciones, directorio.resolve("rechazos"));
+        assertEquals(3, resumen.retiradas());
+        assertTrue(resumen.centimosComisiones() > 0);
+        assertEquals(23_000 + resumen.centimosComisiones(), resumen.centimosRetirados());
+        assertEquals(10_000 - resumen.centimosRetirados(), banco.cuentaEnPosicion(1).getSaldoCentimos());
+    }
+
+    /**
+     * Mide las líneas por segundo al importar un fichero grande en un hilo y
+     * en varios.
+     */
+    @Test
+    @Tag("rendimiento")
+    void lineasPorSegundo() throws IOException {
+        Path operaciones = generar("operaciones", 500_000, 13);
+        for (int hilos : new int[]{1, 4}) {
+            ResumenImportacion mejor = null;
+            for (int ronda = 0; ronda < 3; ronda++) {
+                ResumenImportacion resumen = new ImportadorOperaciones(banco(100), 1 << 20)
+                        .importar(operaciones, directorio.resolve("rechazos"), hilos);
+                assertEquals(500_000, resumen.lineas());
+                if (mejor == null || resumen.nanosegundos() < mejor.nanosegundos()) {
+                    mejor = resumen;
+                }
+            }
+            System.out.printf("Importación de %d líneas con %d hilos: %.0f líneas por segundo%n",
+                    mejor.lineas(), hilos, mejor.lineasPorSegundo());
+            assertTrue(mejor.lineasPorSegundo() > 0);
+        }
+    }
+}
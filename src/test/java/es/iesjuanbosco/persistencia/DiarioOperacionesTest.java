@@ -0,0 +1,199 @@
+package es.iesjuanbosco.persistencia;
+
+import es.iesjuanbosco.logica.Banco;
+import es.iesjuanbosco.logica.CuentaAhorro;
+import es.iesjuanbosco.logica.CuentaBancaria;
+import es.iesjuanbosco.logica.Persona;
+import es.iesjuanbosco.logica.ResultadoOperacion;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del diario de operaciones: recuperación del banco, altas
+ * simultáneas con operaciones, errores de escritura y operaciones por segundo
+ * con cada nivel de durabilidad y ventana de lote.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+class DiarioOperacionesTest {
+
+    /**
+     * Directorio temporal del diario.
+     */
+    @TempDir
+    Path directorio;
+
+    /**
+     * Crea una cuenta de ahorro con un IBAN formado a partir de un número.
+     *
+     * @param numero el número de la cuenta
+     * @param saldo  el saldo inicial
+     *
+     * @return la cuenta
+     */
+    private static CuentaBancaria cuenta(int numero, double saldo) {
+        return new CuentaAhorro(new Persona("Nombre", "Apellidos", "12345678Z"), saldo,
+                String.format("ES%020d", numero), 1.5);
+    }
+
+    /**
+     * Recupera el banco del diario y comprueba que tiene las mismas cuentas
+     * con los mismos saldos que el original.
+     *
+     * @param original el banco original
+     *
+     * @throws IOException si no se puede recuperar el diario
+     */
+    private void comprobarRecuperacion(Banco original) throws IOException {
+        Banco recuperado = new Banco();
+        DiarioOperaciones.recuperar(directorio, recuperado);
+        assertEquals(original.getContadorCuentas(), recuperado.getContadorCuentas());
+        for (int i = 0; i < original.getContadorCuentas(); i++) {
+            assertEquals(original.cuentaEnPosicion(i).getSaldoCentimos(),
+                    recuperado.cuentaEnPosicion(i).getSaldoCentimos(), "Saldo de la cuenta " + i);
+        }
+    }
+
+    /**
+     * Con durabilidad síncrona, abrir cuentas a la vez que se opera no debe
+     * bloquear el banco: el escritor no puede depender del cerrojo de altas
+     * mientras una alta espera a que se escriba su apunte.
+     */
+    @Test
+    void altasYOperacionesSimultaneasConDurabilidadSincrona() throws Exception {
+        Banco banco = new Banco();
+        try (DiarioOperaciones diario = new DiarioOperaciones(banco, directorio, NivelDurabilidad.SINCRONA)) {
+            for (int i = 0; i < 4; i++) {
+                banco.abrirCuenta(cuenta(i, 100));
+            }
+            assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+                List<Thread> hilos = new ArrayList<>();
+                for (int h = 0; h < 4; h++) {
+                    hilos.add(new Thread(() -> {
+                        for (int j = 0; j < 200; j++) {
+                            int posicion = ThreadLocalRandom.current().nextInt(banco.getContadorCuentas());
+                            assertTrue(banco.ingresoPosicion(posicion, 1 + j).esRealizada());
+                        }
+                    }));
+                    int primera = 1000 + h * 100;
+                    hilos.add(new Thread(() -> {
+                        for (int j = 0; j < 50; j++) {
+                            assertTrue(banco.abrirCuenta(cuenta(primera + j, j)));
+                        }
+                    }));
+                }
+                hilos.forEach(Thread::start);
+                for (Thread hilo : hilos) {
+                    hilo.join();
+                }
+            });
+            assertEquals(4 + 4 * 50, banco.getContadorCuentas());
+            assertNull(diario.getError());
+        }
+        comprobarRecuperacion(banco);
+    }
+
+    /**
+     * Los movimientos se apuntan en la posición de la cuenta con la que se ha
+     * operado, aunque su IBAN haya cambiado después de abrirla.
+     */
+    @Test
+    void apuntaLaPosicionDeLaOperacionYNoLaDelIban() throws IOException {
+        Banco banco = new Banco();
+        try (DiarioOperaciones diario = new DiarioOperaciones(banco, directorio, NivelDurabilidad.SINCRONA)) {
+            banco.abrirCuenta(cuenta(1, 10));
+            banco.abrirCuenta(cuenta(2, 20));
+            banco.cuentaEnPosicion(1).setIban("ES99999999999999999999");
+            assertTrue(banco.ingresoPosicion(1, 500).esRealizada());
+            assertTrue(banco.retiradaPosicion(0, 300).esRealizada());
+            assertNull(diario.getError());
+        }
+        comprobarRecuperacion(banco);
+    }
+
+    /**
+     * Si el escritor falla, quien espera al apunte y las llamadas siguientes
+     * reciben una excepción, y al cerrar el diario se informa del error.
+     */
+    @Test
+    void unFalloDelEscritorSeNotificaAQuienOpera() throws IOException {
+        Banco banco = new Banco();
+        banco.abrirCuenta(cuenta(1, 10));
+        DiarioOperaciones diario = new DiarioOperaciones(banco, directorio, NivelDurabilidad.SINCRONA);
+        // Un resultado sin posición no puede apuntarse
+        ResultadoOperacion sinPosicion = new ResultadoOperacion(ResultadoOperacion.Tipo.INGRESO,
+                ResultadoOperacion.Motivo.REALIZADA, "ES00000000000000000001", null, -1, -1, 100, 1100, 0, 0, false, 0);
+        assertThrows(IllegalStateException.class, () -> diario.operacionRealizada(sinPosicion));
+        assertNotNull(diario.getError());
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> banco.ingresoPosicion(0, 100));
+        assertSame(diario.getError(), e.getCause());
+        // La operación se ha realizado igualmente
+        assertEquals(1100, banco.cuentaEnPosicion(0).getSaldoCentimos());
+        assertThrows(IOException.class, diario::close);
+    }
+
+    /**
+     * Mide las operaciones por segundo que hacen varios hilos con el diario
+     * abierto, con cada nivel de durabilidad y varias ventanas de lote. Con
+     * durabilidad síncrona cada operación espera a su escritura forzada, así
+     * que la ventana y el número de hilos deciden cuántas comparten cada una.
+     */
+    @Test
+    @Tag("rendimiento")
+    void operacionesPorSegundoSegunDurabilidadYVentana() throws Exception {
+        int hilos = 8;
+        long[] ventanas = {0, 200, 1000};
+        for (NivelDurabilidad nivel : NivelDurabilidad.values()) {
+            for (long ventana : ventanas) {
+                Path tramos = directorio.resolve(nivel + "-" + ventana);
+                Banco banco = new Banco();
+                long operaciones;
+                long nanos;
+                try (DiarioOperaciones diario = new DiarioOperaciones(banco, tramos, nivel, ventana,
+                        DiarioOperaciones.CAPACIDAD_POR_DEFECTO, DiarioOperaciones.TAMANO_LOTE_POR_DEFECTO)) {
+                    for (int i = 0; i < 64; i++) {
+                        banco.abrirCuenta(cuenta(i, 0));
+                    }
+                    AtomicBoolean parar = new AtomicBoolean();
+                    LongAdder hechas = new LongAdder();
+                    List<Thread> operadores = new ArrayList<>();
+                    for (int h = 0; h < hilos; h++) {
+                        operadores.add(new Thread(() -> {
+                            ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+                            while (!parar.get()) {
+                                assertTrue(banco.ingresoPosicion(aleatorio.nextInt(64), 1).esRealizada());
+                                hechas.increment();
+                            }
+                        }));
+                    }
+                    long inicio = System.nanoTime();
+                    operadores.forEach(Thread::start);
+                    Thread.sleep(300);
+                    parar.set(true);
+                    for (Thread operador : operadores) {
+                        operador.join();
+                    }
+                    nanos = System.nanoTime() - inicio;
+                    operaciones = hechas.sum();
+                    assertNull(diario.getError());
+                }
+                System.out.printf("Diario %s con ventana de %d us y %d hilos: %.0f operaciones por segundo%n",
+                        nivel, ventana, hilos, operaciones * 1e9 / nanos);
+                assertTrue(operaciones > 0);
+                Banco recuperado = new Banco();
+                assertEquals(64 + operaciones, DiarioOperaciones.recuperar(tramos, recuperado));
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package es.iesjuanbosco.persistencia;
+
+import es.iesjuanbosco.logica.Banco;
+import es.iesjuanbosco.logica.CuentaAhorro;
+import es.iesjuanbosco.logica.CuentaBancaria;
+import es.iesjuanbosco.logica.CuentaCorrienteEmpresa;
+import es.iesjuanbosco.logica.CuentaCorrientePersonal;
+import es.iesjuanbosco.logica.Persona;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de las instantáneas del banco: escritura y carga, instantáneas
+ * hechas mientras se opera, recuperación desde una instantánea y los tramos
+ * del diario posteriores, e instantáneas cortadas o dañadas.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+class InstantaneaBancoTest {
+
+    /**
+     * Directorio temporal de las pruebas.
+     */
+    @TempDir
+    Path directorio;
+
+    /**
+     * Crea una cuenta de un tipo que depende de su número.
+     *
+     * @param numero el número de la cuenta
+     *
+     * @return la cuenta
+     */
+    private static CuentaBancaria cuenta(int numero) {
+        Persona titular = new Persona("Nombre " + numero, "Apellidos", "12345678Z");
+        String iban = String.format("ES%020d", numero);
+        return switch (numero % 3) {
+            case 0 ->
+                new CuentaAhorro(titular, numero % 1000, iban, 1.5);
+            case 1 ->
+                new CuentaCorrientePersonal(titular, numero % 1000, iban, "IBERDROLA, ENDESA", 20);
+            default ->
+                new CuentaCorrienteEmpresa(titular, numero % 1000, iban, "NATURGY", 500, 10, 5);
+        };
+    }
+
+    /**
+     * Crea un banco con cuentas de los tres tipos.
+     *
+     * @param cuentas el número de cuentas
+     *
+     * @return el banco
+     */
+    private static Banco banco(int cuentas) {
+        Banco banco = new Banco();
+        for (int i = 0; i < cuentas; i++) {
+            assertTrue(banco.abrirCuenta(cuenta(i)));
+        }
+        return banco;
+    }
+
+    /**
+     * Devuelve los saldos de todas las cuentas de un banco.
+     *
+     * @param banco el banco
+     *
+     * @return los saldos en céntimos, por posición
+     */
+    private static long[] saldos(Banco banco) {
+        long[] saldos = new long[banco.getContadorCuentas()];
+        for (int i = 0; i < saldos.length; i++) {
+            saldos[i] = banco.cuentaEnPosicion(i).getSaldoCentimos();
+        }
+        return saldos;
+    }
+
+    /**
+     * Comprueba que dos bancos tienen las mismas cuentas, en las mismas
+     * posiciones y con los mismos datos.
+     *
+     * @param esperado el banco esperado
+     * @param real     el banco comprobado
+     */
+    private static void comprobarIguales(Banco esperado, Banco real) {
+        assertEquals(esperado.getContadorCuentas(), real.getContadorCuentas());
+        for (int i = 0; i < esperado.getContadorCuentas(); i++) {
+            assertEquals(esperado.cuentaEnPosicion(i).devolverInfoString(), real.cuentaEnPosicion(i).devolverInfoString(),
+                    "Cuenta " + i);
+        }
+    }
+
+    /**
+     * Devuelve los nombres de los ficheros de un directorio que empiezan por
+     * un prefijo, ordenados.
+     *
+     * @param prefijo el prefijo
+     *
+     * @return los nombres de los ficheros
+     *
+     * @throws IOException si no se puede leer el directorio
+     */
+    private List<String> ficheros(String prefijo) throws IOException {
+        try (Stream<Path> ficheros = Files.list(directorio)) {
+            return ficheros.map(f -> f.getFileName().toString()).filter(n -> n.startsWith(prefijo)).sorted().toList();
+        }
+    }
+
+    /**
+     * Una instantánea escrita se carga con las mismas cuentas, los saldos del
+     * array recibido al escribirla y en las mismas posiciones, también
+     * proyectando el fichero por ventanas más pequeñas que el fichero.
+     */
+    @Test
+    void escribeYCargaUnaInstantanea() throws IOException {
+        Banco original = banco(5000);
+        long[] saldos = saldos(original);
+        saldos[7] = -12_345;
+        original.cuentaEnPosicion(7).setSaldoCentimos(-12_345);
+        Path fichero = directorio.resolve("instantanea");
+        InstantaneaBanco.escribir(fichero, original, saldos);
+        assertFalse(Files.exists(directorio.resolve("instantanea.tmp")));
+        assertTrue(Files.size(fichero) > 2L * CodificadorCuentas.TAMANO_MAXIMO);
+
+        Banco cargado = new Banco();
+        assertEquals(5000, InstantaneaBanco.cargar(fichero, cargado));
+        comprobarIguales(original, cargado);
+        assertArrayEquals(saldos, saldos(cargado));
+
+        // Ventanas de poco más que una cuenta de tamaño máximo: se proyectan varias
+        Banco porVentanas = new Banco();
+        assertEquals(5000, InstantaneaBanco.cargar(fichero, porVentanas, CodificadorCuentas.TAMANO_MAXIMO + 1000));
+        comprobarIguales(original, porVentanas);
+
+        // Sólo se carga en un banco vacío
+        assertThrows(IOException.class, () -> InstantaneaBanco.cargar(fichero, cargado));
+    }
+
+    /**
+     * Una instantánea pedida mientras varios hilos operan se escribe sin
+     * detenerlos, borra los tramos anteriores al suyo y, junto con los tramos
+     * posteriores, recupera el estado final del banco.
+     */
+    @Test
+    void instantaneaMientrasSeOpera() throws Exception {
+        Banco banco = banco(200);
+        AtomicBoolean parar = new AtomicBoolean();
+        try (DiarioOperaciones diario = new DiarioOperaciones(banco, directorio, NivelDurabilidad.NINGUNA)) {
+            List<Thread> hilos = new ArrayList<>();
+            for (int h = 0; h < 4; h++) {
+                hilos.add(new Thread(() -> {
+                    ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+                    while (!parar.get()) {
+                        int posicion = aleatorio.nextInt(200);
+                        if (aleatorio.nextBoolean()) {
+                            banco.ingresoPosicion(posicion, 1 + aleatorio.nextInt(1000));
+                        } else {
+                            banco.transferenciaCentimos(banco.cuentaEnPosicion(posicion).getIban(),
+                                    banco.cuentaEnPosicion(aleatorio.nextInt(200)).getIban(), 1 + aleatorio.nextInt(500));
+                        }
+                    }
+                }));
+            }
+            hilos.forEach(Thread::start);
+            assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+                Thread.sleep(50);
+                Path primera = diario.instantanea().get(30, TimeUnit.SECONDS);
+                Thread.sleep(50);
+                Path segunda = diario.instantanea().get(30, TimeUnit.SECONDS);
+                assertNotEquals(primera, segunda);
+                Thread.sleep(50);
+            });
+            parar.set(true);
+            for (Thread hilo : hilos) {
+                hilo.join();
+            }
+            assertNull(diario.getError());
+        }
+        // Sólo quedan la última instantánea y los tramos desde el suyo
+        List<String> instantaneas = ficheros("instantanea-");
+        assertEquals(1, instantaneas.size());
+        long numero = Long.parseLong(instantaneas.get(0).substring("instantanea-".length()));
+        for (String tramo : ficheros("diario-")) {
+            assertTrue(Long.parseLong(tramo.substring("diario-".length())) >= numero, tramo);
+        }
+        Banco recuperado = new Banco();
+        DiarioOperaciones.recuperar(directorio, recuperado);
+        comprobarIguales(banco, recuperado);
+    }
+
+    /**
+     * Al recuperar se carga la instantánea y se repiten sólo los apuntes de
+     * los tramos posteriores a ella, incluidas las altas.
+     */
+    @Test
+    void recuperaDeLaInstantaneaYLosTramosPosteriores() throws Exception {
+        Banco banco = banco(10);
+        try (DiarioOperaciones diario = new DiarioOperaciones(banco, directorio, NivelDurabilidad.SINCRONA)) {
+            for (int i = 0; i < 10; i++) {
+                assertTrue(banco.ingresoPosicion(i, 100).esRealizada());
+            }
+            diario.instantanea().get(30, TimeUnit.SECONDS);
+            // Detrás de la instantánea: 3 altas y 5 ingresos
+            for (int i = 10; i < 13; i++) {
+                assertTrue(banco.abrirCuenta(cuenta(i)));
+            }
+            for (int i = 0; i < 5; i++) {
+                assertTrue(banco.ingresoPosicion(8 + i, 7).esRealizada());
+            }
+        }
+        Banco recuperado = new Banco();
+        assertEquals(8, DiarioOperaciones.recuperar(directorio, recuperado));
+        comprobarIguales(banco, recuperado);
+        assertArrayEquals(saldos(banco), saldos(recuperado));
+    }
+
+    /**
+     * Una instantánea cortada, con un byte cambiado o con otra marca se
+     * rechaza sin abrir ninguna cuenta, y al recuperar no se tienen en cuenta
+     * las instantáneas temporales que quedaron a medias.
+     */
+    @Test
+    void rechazaInstantaneasCortadasODanadas() throws Exception {
+        Banco original = banco(100);
+        Path fichero = directorio.resolve("instantanea");
+        InstantaneaBanco.escribir(fichero, original, saldos(original));
+        byte[] bytes = Files.readAllBytes(fichero);
+
+        Path cortada = directorio.resolve("cortada");
+        Files.write(cortada, Arrays.copyOf(bytes, bytes.length - 10));
+        Banco banco = new Banco();
+        assertThrows(IOException.class, () -> InstantaneaBanco.cargar(cortada, banco));
+        Files.write(cortada, Arrays.copyOf(bytes, 10));
+        assertThrows(IOException.class, () -> InstantaneaBanco.cargar(cortada, banco));
+
+        Path danada = directorio.resolve("danada");
+        byte[] cambiados = bytes.clone();
+        cambiados[bytes.length / 2] ^= 1;
+        Files.write(danada, cambiados);
+        IOException e = assertThrows(IOException.class, () -> InstantaneaBanco.cargar(danada, banco));
+        assertTrue(e.getMessage().contains("dañada"), e.getMessage());
+
+        // Otra marca con un CRC correcto
+        cambiados = bytes.clone();
+        cambiados[0] = 'X';
+        CRC32C crc = new CRC32C();
+        crc.update(cambiados, 0, cambiados.length - 4);
+        ByteBuffer.wrap(cambiados).putInt(cambiados.length - 4, (int) crc.getValue());
+        Files.write(danada, cambiados);
+        e = assertThrows(IOException.class, () -> InstantaneaBanco.cargar(danada, banco));
+        assertTrue(e.getMessage().contains("no es una instantánea"), e.getMessage());
+        assertEquals(0, banco.getContadorCuentas());
+
+        // Una instantánea temporal a medias junto a un diario vacío no se carga
+        Path diario = Files.createDirectory(directorio.resolve("diario"));
+        Files.write(diario.resolve("instantanea-0000000001.tmp"), Arrays.copyOf(bytes, 50));
+        assertEquals(0, DiarioOperaciones.recuperar(diario, banco));
+        assertEquals(0, banco.getContadorCuentas());
+    }
+}
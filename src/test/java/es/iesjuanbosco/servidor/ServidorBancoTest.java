@@ -0,0 +1,247 @@
+package es.iesjuanbosco.servidor;
+
+import es.iesjuanbosco.logica.Banco;
+import es.iesjuanbosco.logica.TuberiaOperaciones;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del servidor HTTP: altas simultáneas con el mismo IBAN, cantidades
+ * fuera de rango, operaciones a través de una tubería y una prueba de carga
+ * que mide la latencia y el número de peticiones por segundo.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+class ServidorBancoTest {
+
+    /**
+     * Banco del servidor.
+     */
+    private Banco banco;
+
+    /**
+     * Servidor que se prueba, en un puerto libre.
+     */
+    private ServidorBanco servidor;
+
+    /**
+     * Cliente HTTP de las pruebas.
+     */
+    private HttpClient cliente;
+
+    /**
+     * Desactiva el algoritmo de Nagle en los servidores, como hace el
+     * programa al arrancar, para que la latencia medida no incluya la espera
+     * al ACK retardado del cliente.
+     */
+    @BeforeAll
+    static void configurar() {
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    /**
+     * Arranca el servidor con un banco vacío.
+     *
+     * @throws IOException si no se puede arrancar el servidor
+     */
+    @BeforeEach
+    void arrancar() throws IOException {
+        banco = new Banco();
+        servidor = new ServidorBanco(banco, 0);
+        cliente = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    /**
+     * Detiene el servidor.
+     */
+    @AfterEach
+    void detener() {
+        servidor.close();
+    }
+
+    /**
+     * Forma un IBAN español válido a partir de un número de cuenta.
+     *
+     * @param numero el número de cuenta
+     *
+     * @return el IBAN con sus dígitos de control
+     */
+    static String iban(long numero) {
+        String cuenta = String.format("%018d", numero);
+        // "ES" se convierte en 1428 y se añaden dos ceros para calcular los dígitos de control
+        int control = 98 - new BigInteger(cuenta + "142800").mod(BigInteger.valueOf(97)).intValue();
+        return String.format("ES%02d%s", control, cuenta);
+    }
+
+    /**
+     * Envía una petición POST con un formulario.
+     *
+     * @param ruta       la ruta de la petición
+     * @param formulario el cuerpo de la petición
+     *
+     * @return la respuesta
+     *
+     * @throws IOException          si no se puede enviar la petición
+     * @throws InterruptedException si se interrumpe la espera de la respuesta
+     */
+    private HttpResponse<String> post(String ruta, String formulario) throws IOException, InterruptedException {
+        HttpRequest peticion = HttpRequest.newBuilder(URI.create("http://localhost:" + servidor.getPuerto() + ruta))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(formulario))
+                .build();
+        return cliente.send(peticion, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Envía la petición de alta de una cuenta de ahorro.
+     *
+     * @param iban el IBAN de la cuenta
+     *
+     * @return la respuesta
+     *
+     * @throws IOException          si no se puede enviar la petición
+     * @throws InterruptedException si se interrumpe la espera de la respuesta
+     */
+    private HttpResponse<String> alta(String iban) throws IOException, InterruptedException {
+        return post("/cuentas", "tipo=ahorro&nombre=ana&apellidos=garcia&dni=12345678Z&saldo=0&interes=1&iban=" + iban);
+    }
+
+    /**
+     * De varias altas simultáneas con el mismo IBAN sólo se abre una; las
+     * demás reciben 409.
+     */
+    @Test
+    void altasSimultaneasConElMismoIban() throws Exception {
+        String iban = iban(1);
+        ExecutorService hilos = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<HttpResponse<String>>> respuestas = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                respuestas.add(hilos.submit(() -> alta(iban)));
+            }
+            int abiertas = 0, rechazadas = 0;
+            for (Future<HttpResponse<String>> respuesta : respuestas) {
+                int estado = respuesta.get().statusCode();
+                if (estado == 201) {
+                    abiertas++;
+                } else if (estado == 409) {
+                    rechazadas++;
+                }
+            }
+            assertEquals(1, abiertas);
+            assertEquals(63, rechazadas);
+            assertEquals(1, banco.getContadorCuentas());
+        } finally {
+            hilos.shutdown();
+        }
+    }
+
+    /**
+     * Un ingreso que haría que el saldo no cupiese en un long recibe una
+     * respuesta de error en lugar de cerrar la conexión.
+     */
+    @Test
+    void ingresoFueraDeRangoRecibeRespuesta() throws Exception {
+        String iban = iban(2);
+        assertEquals(201, alta(iban).statusCode());
+        String maximo = "92233720368547758.07";
+        assertEquals(200, post("/cuentas/" + iban + "/ingreso", "cantidad=" + maximo).statusCode());
+        HttpResponse<String> respuesta = post("/cuentas/" + iban + "/ingreso", "cantidad=1");
+        assertEquals(400, respuesta.statusCode());
+        assertEquals(Long.MAX_VALUE, banco.cuentaEnPosicion(0).getSaldoCentimos());
+    }
+
+    /**
+     * Con una tubería, los ingresos y retiradas pasan por ella y reciben el
+     * estado de su resultado, y una orden cuya aplicación falla recibe 500.
+     */
+    @Test
+    void conTuberiaLasOrdenesFallidasRecibenErrorInterno() throws Exception {
+        String iban = iban(3);
+        assertEquals(201, alta(iban).statusCode());
+        // Oyente del banco que falla con los ingresos de 13 céntimos
+        banco.anadirOyente(resultado -> {
+            if (resultado.cantidadCentimos() == 13) {
+                throw new IllegalStateException("Fallo provocado");
+            }
+        });
+        try (TuberiaOperaciones tuberia = new TuberiaOperaciones(banco, 16)) {
+            servidor.close();
+            servidor = new ServidorBanco(banco, 0, tuberia);
+            assertEquals(200, post("/cuentas/" + iban + "/ingreso", "cantidad=5").statusCode());
+            assertEquals(409, post("/cuentas/" + iban + "/retirada", "cantidad=6").statusCode());
+            assertEquals(500, post("/cuentas/" + iban + "/ingreso", "cantidad=0.13").statusCode());
+            assertEquals(404, post("/cuentas/" + iban(4) + "/ingreso", "cantidad=1").statusCode());
+            assertEquals(4, tuberia.getAplicadas());
+            assertEquals(1, tuberia.getFallidas());
+        }
+        assertEquals(513, banco.cuentaEnPosicion(0).getSaldoCentimos());
+    }
+
+    /**
+     * Prueba de carga: varios clientes hacen ingresos a la vez y se mide la
+     * mediana y el percentil 99 de la latencia y las peticiones por segundo.
+     * Comprueba además que no se pierde ningún ingreso.
+     */
+    @Test
+    @Tag("rendimiento")
+    void cargaDeIngresosSimultaneos() throws Exception {
+        int cuentas = 100, clientes = 16, peticiones = 250;
+        for (int i = 0; i < cuentas; i++) {
+            assertEquals(201, alta(iban(1000 + i)).statusCode());
+        }
+        ExecutorService hilos = Executors.newFixedThreadPool(clientes);
+        List<Callable<long[]>> tareas = new ArrayList<>();
+        for (int c = 0; c < clientes; c++) {
+            int cliente = c;
+            tareas.add(() -> {
+                long[] latencias = new long[peticiones];
+                for (int i = 0; i < peticiones; i++) {
+                    String ruta = "/cuentas/" + iban(1000 + (cliente * peticiones + i) % cuentas) + "/ingreso";
+                    long inicio = System.nanoTime();
+                    int estado = post(ruta, "cantidad=1,25").statusCode();
+                    latencias[i] = System.nanoTime() - inicio;
+                    assertEquals(200, estado);
+                }
+                return latencias;
+            });
+        }
+        long inicio = System.nanoTime();
+        long[] latencias;
+        try {
+            latencias = new long[clientes * peticiones];
+            int n = 0;
+            for (Future<long[]> resultado : hilos.invokeAll(tareas)) {
+                for (long latencia : resultado.get()) {
+                    latencias[n++] = latencia;
+                }
+            }
+        } finally {
+            hilos.shutdown();
+        }
+        long total = System.nanoTime() - inicio;
+        Arrays.sort(latencias);
+        System.out.printf("Servidor: %d peticiones, %.0f peticiones/s, p50 %.2f ms, p99 %.2f ms%n",
+                latencias.length, latencias.length / (total / 1e9),
+                latencias[latencias.length / 2] / 1e6, latencias[latencias.length * 99 / 100] / 1e6);
+        assertEquals(Math.round(clientes * peticiones * 1.25 * 100), Math.round(banco.totalSaldos() * 100));
+    }
+}
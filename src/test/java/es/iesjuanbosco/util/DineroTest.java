@@ -0,0 +1,200 @@
+package es.iesjuanbosco.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de las operaciones con céntimos: conversiones, límites del rango y
+ * una comparación de rendimiento de sumas, porcentajes y comisiones con
+ * double y BigDecimal.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+class DineroTest {
+
+    /**
+     * Las conversiones desde euros redondean el valor decimal que representa
+     * el double.
+     */
+    @Test
+    void convierteEurosACentimos() {
+        assertEquals(101, Dinero.deEuros(1.005));
+        assertEquals(30, Dinero.deEuros(0.1 + 0.2));
+        assertEquals(-101, Dinero.deEuros(-1.005));
+        assertEquals(100, Dinero.deEuros(1.005, RoundingMode.DOWN));
+        assertEquals(123456, Dinero.deTexto("1234,56"));
+        assertThrows(NumberFormatException.class, () -> Dinero.deTexto("1,234"));
+    }
+
+    /**
+     * Los valores junto a un número entero de céntimos se redondean igual que
+     * con BigDecimal en todos los modos: sólo se devuelve el entero sin
+     * redondear si el valor es exactamente esa cantidad.
+     */
+    @Test
+    void redondeaJuntoAUnEnteroComoBigDecimal() {
+        assertEquals(31, Dinero.deEuros(0.1 + 0.2, RoundingMode.UP));
+        assertEquals(30, Dinero.deEuros(0.1 + 0.2, RoundingMode.DOWN));
+        assertEquals(29, Dinero.deEuros(0.29, RoundingMode.DOWN));
+        assertEquals(29, Dinero.deEuros(0.29, RoundingMode.UNNECESSARY));
+        assertEquals(101, Dinero.deEuros(1.000000001, RoundingMode.UP));
+        assertEquals(100, Dinero.deEuros(1.000000001, RoundingMode.HALF_UP));
+        assertEquals(-101, Dinero.deEuros(-1.000000001, RoundingMode.FLOOR));
+        assertEquals(99, Dinero.deEuros(0.999999999, RoundingMode.DOWN));
+        assertThrows(ArithmeticException.class, () -> Dinero.deEuros(0.1 + 0.2, RoundingMode.UNNECESSARY));
+        ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+        for (int i = 0; i < 100_000; i++) {
+            double valor = aleatorio.nextLong(-10_000_000, 10_000_000) / 100.0;
+            switch (i % 4) {
+                case 1 ->
+                    valor = Math.nextUp(valor);
+                case 2 ->
+                    valor = Math.nextDown(valor);
+                case 3 ->
+                    valor += aleatorio.nextDouble(-1e-8, 1e-8);
+                default -> {
+                }
+            }
+            for (RoundingMode modo : RoundingMode.values()) {
+                if (modo == RoundingMode.UNNECESSARY) {
+                    continue;
+                }
+                long esperado = BigDecimal.valueOf(valor).movePointRight(2).setScale(0, modo).longValueExact();
+                assertEquals(esperado, Dinero.deEuros(valor, modo), valor + " " + modo);
+            }
+        }
+    }
+
+    /**
+     * Las cantidades que no caben en un long se detectan antes de operar con
+     * ellas, y las operaciones que se desbordan lanzan una excepción en lugar
+     * de dar la vuelta.
+     */
+    @Test
+    void detectaLasCantidadesFueraDeRango() {
+        assertTrue(Dinero.cabeEnCentimos(92_233_720_368_547_758.0 / 2));
+        assertFalse(Dinero.cabeEnCentimos(1e17));
+        assertFalse(Dinero.cabeEnCentimos(-1e17));
+        assertFalse(Dinero.cabeEnCentimos(Double.NaN));
+        assertFalse(Dinero.cabeEnCentimos(Double.POSITIVE_INFINITY));
+        assertThrows(ArithmeticException.class, () -> Dinero.deEuros(1e17));
+        assertThrows(ArithmeticException.class, () -> Dinero.sumar(Long.MAX_VALUE, 1));
+        assertThrows(ArithmeticException.class, () -> Dinero.restar(Long.MIN_VALUE, 1));
+        assertThrows(NumberFormatException.class, () -> Dinero.deTexto("92233720368547758.08"));
+        assertEquals(Long.MAX_VALUE, Dinero.deTexto("92233720368547758.07"));
+    }
+
+    /**
+     * El porcentaje de una cantidad enorme se calcula sin desbordarse.
+     */
+    @Test
+    void porcentajeDeCantidadesEnormes() {
+        assertEquals(Long.MAX_VALUE / 10, Dinero.porcentaje(Long.MAX_VALUE, 10, RoundingMode.DOWN));
+        assertEquals(45, Dinero.porcentaje(1000, 4.5, RoundingMode.HALF_UP));
+    }
+
+    /**
+     * Compara la suma de cantidades en céntimos con la misma suma en double
+     * y en BigDecimal. La suma en céntimos ha de coincidir con la de
+     * BigDecimal, y se muestra el tiempo de cada una.
+     */
+    @Test
+    @Tag("rendimiento")
+    void comparacionConDoubleYBigDecimal() {
+        int n = 2_000_000;
+        long[] centimos = new long[n];
+        for (int i = 0; i < n; i++) {
+            centimos[i] = ThreadLocalRandom.current().nextLong(1, 1_000_000);
+        }
+        long sumaCentimos = 0;
+        double sumaDouble = 0;
+        BigDecimal sumaDecimal = BigDecimal.ZERO;
+        long tiempoCentimos = 0, tiempoDouble = 0, tiempoDecimal = 0;
+        // La primera vuelta sirve de calentamiento
+        for (int vuelta = 0; vuelta < 3; vuelta++) {
+            long inicio = System.nanoTime();
+            sumaCentimos = 0;
+            for (long c : centimos) {
+                sumaCentimos = Dinero.sumar(sumaCentimos, c);
+            }
+            tiempoCentimos = System.nanoTime() - inicio;
+            inicio = System.nanoTime();
+            sumaDouble = 0;
+            for (long c : centimos) {
+                sumaDouble += c / 100.0;
+            }
+            tiempoDouble = System.nanoTime() - inicio;
+            inicio = System.nanoTime();
+            sumaDecimal = BigDecimal.ZERO;
+            for (long c : centimos) {
+                sumaDecimal = sumaDecimal.add(BigDecimal.valueOf(c, 2));
+            }
+            tiempoDecimal = System.nanoTime() - inicio;
+        }
+        System.out.printf("Suma de %d cantidades: céntimos %.2f ms, double %.2f ms, BigDecimal %.2f ms "
+                + "(diferencia del double con la suma exacta: %s)%n",
+                n, tiempoCentimos / 1e6, tiempoDouble / 1e6, tiempoDecimal / 1e6,
+                new BigDecimal(sumaDouble).subtract(sumaDecimal).abs().toPlainString());
+        assertEquals(sumaDecimal, BigDecimal.valueOf(sumaCentimos, 2));
+    }
+
+    /**
+     * Compara el cálculo de comisiones (un porcentaje de la cantidad con una
+     * comisión mínima) en céntimos con el mismo cálculo en double y en
+     * BigDecimal. Las comisiones en céntimos han de coincidir con las de
+     * BigDecimal, y se muestra el tiempo de cada uno.
+     */
+    @Test
+    @Tag("rendimiento")
+    void comisionesConDoubleYBigDecimal() {
+        int n = 1_000_000;
+        long[] centimos = new long[n];
+        double[] porcentajes = new double[n];
+        for (int i = 0; i < n; i++) {
+            centimos[i] = ThreadLocalRandom.current().nextLong(1, 10_000_000);
+            porcentajes[i] = ThreadLocalRandom.current().nextInt(1, 1000) / 100.0;
+        }
+        long minima = 150;
+        BigDecimal minimaDecimal = BigDecimal.valueOf(minima, 2);
+        BigDecimal cien = BigDecimal.valueOf(100);
+        long totalCentimos = 0;
+        double totalDouble = 0;
+        BigDecimal totalDecimal = BigDecimal.ZERO;
+        long tiempoCentimos = 0, tiempoDouble = 0, tiempoDecimal = 0;
+        // La primera vuelta sirve de calentamiento
+        for (int vuelta = 0; vuelta < 3; vuelta++) {
+            long inicio = System.nanoTime();
+            totalCentimos = 0;
+            for (int i = 0; i < n; i++) {
+                long comision = Dinero.porcentaje(centimos[i], porcentajes[i], Dinero.REDONDEO_POR_DEFECTO);
+                totalCentimos = Dinero.sumar(totalCentimos, Dinero.comisionMinima(comision, minima));
+            }
+            tiempoCentimos = System.nanoTime() - inicio;
+            inicio = System.nanoTime();
+            totalDouble = 0;
+            for (int i = 0; i < n; i++) {
+                double comision = Math.round(centimos[i] * porcentajes[i]) / 10_000.0;
+                totalDouble += Math.max(comision, minima / 100.0);
+            }
+            tiempoDouble = System.nanoTime() - inicio;
+            inicio = System.nanoTime();
+            totalDecimal = BigDecimal.ZERO;
+            for (int i = 0; i < n; i++) {
+                BigDecimal comision = BigDecimal.valueOf(centimos[i], 2).multiply(BigDecimal.valueOf(porcentajes[i]))
+                        .divide(cien, 2, Dinero.REDONDEO_POR_DEFECTO);
+                totalDecimal = totalDecimal.add(comision.max(minimaDecimal));
+            }
+            tiempoDecimal = System.nanoTime() - inicio;
+        }
+        System.out.printf("Comisiones de %d cantidades: céntimos %.2f ms, double %.2f ms, BigDecimal %.2f ms "
+                + "(diferencia del double con el total exacto: %s)%n",
+                n, tiempoCentimos / 1e6, tiempoDouble / 1e6, tiempoDecimal / 1e6,
+                new BigDecimal(totalDouble).subtract(totalDecimal).abs().toPlainString());
+        assertEquals(totalDecimal, BigDecimal.valueOf(totalCentimos, 2));
+    }
+}
@@ -0,0 +1,125 @@
+package es.iesjuanbosco.util;
+
+import java.util.Locale;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del formato de cantidades de dinero y porcentajes: el resultado ha
+ * de ser el mismo que el de String.format, y una comparación del tiempo de
+ * ambos.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+class FormatoMonedaTest {
+
+    /**
+     * Configuración regional por defecto al empezar las pruebas.
+     */
+    private final Locale original = Locale.getDefault(Locale.Category.FORMAT);
+
+    /**
+     * Restaura la configuración regional por defecto.
+     */
+    @AfterEach
+    void restaurar() {
+        Locale.setDefault(Locale.Category.FORMAT, original);
+    }
+
+    /**
+     * Comprueba que un valor en euros y como porcentaje se formatea igual que
+     * con String.format.
+     *
+     * @param valor el valor
+     */
+    private static void comprobar(double valor) {
+        assertEquals(String.format("%.2f€", valor), FormatoMoneda.euros(valor), () -> "Valor " + valor);
+        assertEquals(String.format("%.2f%%", valor), FormatoMoneda.porcentaje(valor), () -> "Valor " + valor);
+    }
+
+    /**
+     * Los puntos medios, el cero negativo y las cantidades enormes se
+     * formatean igual que con String.format.
+     */
+    @Test
+    void casosLimite() {
+        Locale.setDefault(Locale.Category.FORMAT, Locale.forLanguageTag("es-ES"));
+        for (double valor : new double[]{0, -0.0, 0.005, -0.005, 0.125, 1.005, 2.675, 0.1 + 0.2, -0.001,
+            1e15, 123456789012.345, 9.995, -9.995, 1e300, Double.MAX_VALUE}) {
+            comprobar(valor);
+        }
+        assertEquals("1234,56€", FormatoMoneda.euros(123456L));
+        assertEquals("-0,01€", FormatoMoneda.euros(-1L));
+        assertEquals(String.format("%.2f€", Long.MAX_VALUE / 100.0), FormatoMoneda.euros(Long.MAX_VALUE));
+    }
+
+    /**
+     * Cantidades aleatorias en céntimos y en euros, con varias
+     * configuraciones regionales, se formatean igual que con String.format.
+     */
+    @Test
+    void coincideConStringFormat() {
+        SplittableRandom aleatorio = new SplittableRandom(7);
+        for (String etiqueta : new String[]{"es-ES", "en-US", "de-CH", "ar-EG", "hi-IN-u-nu-deva"}) {
+            Locale.setDefault(Locale.Category.FORMAT, Locale.forLanguageTag(etiqueta));
+            for (int i = 0; i < 20_000; i++) {
+                long centimos = aleatorio.nextLong(-10_000_000_000L, 10_000_000_000L);
+                assertEquals(String.format("%.2f€", centimos / 100.0), FormatoMoneda.euros(centimos), etiqueta);
+                comprobar(aleatorio.nextDouble(-1e6, 1e6));
+                // Valores con 3 decimales, que obligan a redondear
+                comprobar(aleatorio.nextLong(-10_000_000, 10_000_000) / 1000.0);
+            }
+        }
+    }
+
+    /**
+     * Compara el tiempo de formatear cantidades en céntimos y porcentajes con
+     * el formateador y con String.format, escribiendo en un mismo buffer. Los
+     * dos han de escribir lo mismo, y se muestra el tiempo por llamada de
+     * cada uno.
+     */
+    @Test
+    @Tag("rendimiento")
+    void comparacionConStringFormat() {
+        int n = 200_000;
+        SplittableRandom aleatorio = new SplittableRandom(11);
+        long[] centimos = new long[n];
+        double[] porcentajes = new double[n];
+        for (int i = 0; i < n; i++) {
+            centimos[i] = aleatorio.nextLong(-100_000_000, 100_000_000);
+            porcentajes[i] = aleatorio.nextInt(0, 10_000) / 100.0;
+        }
+        StringBuilder formateador = new StringBuilder(), format = new StringBuilder();
+        long tiempoFormateador = Long.MAX_VALUE, tiempoFormat = Long.MAX_VALUE;
+        // La primera vuelta sirve de calentamiento
+        for (int vuelta = 0; vuelta < 4; vuelta++) {
+            formateador.setLength(0);
+            long inicio = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                FormatoMoneda.escribirEuros(formateador, centimos[i]);
+                FormatoMoneda.escribirPorcentaje(formateador, porcentajes[i]);
+            }
+            long tiempo = System.nanoTime() - inicio;
+            if (vuelta > 0) {
+                tiempoFormateador = Math.min(tiempoFormateador, tiempo);
+            }
+            format.setLength(0);
+            inicio = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                format.append(String.format("%.2f€", centimos[i] / 100.0));
+                format.append(String.format("%.2f%%", porcentajes[i]));
+            }
+            tiempo = System.nanoTime() - inicio;
+            if (vuelta > 0) {
+                tiempoFormat = Math.min(tiempoFormat, tiempo);
+            }
+        }
+        System.out.printf("Formato de %d cantidades y porcentajes: formateador %.0f ns, String.format %.0f ns "
+                + "por llamada%n", n, tiempoFormateador / (2.0 * n), tiempoFormat / (2.0 * n));
+        assertEquals(format.toString(), formateador.toString());
+    }
+}
@@ -0,0 +1,267 @@
+package es.iesjuanbosco.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del validador de DNIs y NIEs: DNIs y NIEs correctos e incorrectos,
+ * letras en minúscula y comprobación sobre buffers de bytes, comparando el
+ * resultado con el de un cálculo directo de la letra de control, y una
+ * comparación del tiempo de ambos.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+class ValidadorDNITest {
+
+    /**
+     * Comprueba un DNI o NIE con el cálculo directo: se sustituye la letra
+     * inicial del NIE por su valor, se convierte el número y se busca la
+     * letra de control.
+     *
+     * @param dni el DNI o NIE
+     *
+     * @return true si es correcto
+     */
+    private static boolean esValidoReferencia(String dni) {
+        String mayusculas = dni.toUpperCase();
+        if (!mayusculas.matches("[0-9]{7,8}[A-Z]|[XYZ][0-9]{7}[A-Z]")) {
+            return false;
+        }
+        String cifras = mayusculas.substring(0, mayusculas.length() - 1);
+        int prefijo = ValidadorDNI.PREFIJOS_NIE.indexOf(cifras.charAt(0));
+        if (prefijo >= 0) {
+            cifras = prefijo + cifras.substring(1);
+        }
+        int numero = Integer.parseInt(cifras);
+        return mayusculas.charAt(mayusculas.length() - 1) == ValidadorDNI.LETRAS.charAt(numero % 23);
+    }
+
+    /**
+     * Genera un DNI o NIE aleatorio, correcto o no, con alguna variación de
+     * formato.
+     *
+     * @param aleatorio el generador de números aleatorios
+     *
+     * @return el DNI o NIE
+     */
+    private static String aleatorio(Random aleatorio) {
+        StringBuilder dni = new StringBuilder();
+        int tipo = aleatorio.nextInt(4);
+        if (tipo == 0) {
+            dni.append("XYZ".charAt(aleatorio.nextInt(3)));
+            dni.append(String.format("%07d", aleatorio.nextInt(10_000_000)));
+        } else if (tipo == 1) {
+            dni.append(String.format("%07d", aleatorio.nextInt(10_000_000)));
+        } else {
+            dni.append(String.format("%08d", aleatorio.nextInt(100_000_000)));
+        }
+        // La mitad de las veces, la letra correcta
+        if (aleatorio.nextBoolean()) {
+            String cifras = dni.toString();
+            int prefijo = ValidadorDNI.PREFIJOS_NIE.indexOf(cifras.charAt(0));
+            if (prefijo >= 0) {
+                cifras = prefijo + cifras.substring(1);
+            }
+            dni.append(ValidadorDNI.letraControl(Integer.parseInt(cifras)));
+        } else {
+            dni.append((char) ('A' + aleatorio.nextInt(26)));
+        }
+        if (aleatorio.nextInt(10) == 0) {
+            return dni.toString().toLowerCase();
+        }
+        if (aleatorio.nextInt(10) == 0) {
+            // Un carácter cambiado por otro cualquiera
+            dni.setCharAt(aleatorio.nextInt(dni.length()), (char) (' ' + aleatorio.nextInt(95)));
+        }
+        return dni.toString();
+    }
+
+    /**
+     * Acepta DNIs de 8 y de 7 cifras y NIEs con cada una de sus letras
+     * iniciales.
+     */
+    @Test
+    void aceptaDNIsYNIEsCorrectos() {
+        assertTrue(ValidadorDNI.esValido("12345678Z"));
+        assertTrue(ValidadorDNI.esValido("00000000T"));
+        assertTrue(ValidadorDNI.esValido("1234567L"));
+        assertTrue(ValidadorDNI.esValido("X0000000T"));
+        assertTrue(ValidadorDNI.esValido("Y0000000Z"));
+        assertTrue(ValidadorDNI.esValido("Z0000000M"));
+    }
+
+    /**
+     * Admite la letra de control y la letra inicial del NIE en minúscula.
+     */
+    @Test
+    void admiteMinusculas() {
+        assertTrue(ValidadorDNI.esValido("12345678z"));
+        assertTrue(ValidadorDNI.esValido("x0000000t"));
+        assertTrue(ValidadorDNI.esValido("y0000000Z"));
+    }
+
+    /**
+     * Rechaza letras de control incorrectas, longitudes incorrectas,
+     * caracteres que no son cifras y el valor null.
+     */
+    @Test
+    void rechazaDNIsIncorrectos() {
+        assertFalse(ValidadorDNI.esValido("12345678A"));
+        assertFalse(ValidadorDNI.esValido("X0000000Z"));
+        assertFalse(ValidadorDNI.esValido("1234567Z"));
+        assertFalse(ValidadorDNI.esValido("123456789Z"));
+        assertFalse(ValidadorDNI.esValido("123456Z"));
+        assertFalse(ValidadorDNI.esValido(""));
+        assertFalse(ValidadorDNI.esValido("1234 678Z"));
+        assertFalse(ValidadorDNI.esValido("A0000000T"));
+        // Los NIEs tienen siempre 7 cifras
+        assertFalse(ValidadorDNI.esValido("X000000T"));
+        assertFalse(ValidadorDNI.esValido("12345678-"));
+        assertFalse(ValidadorDNI.esValido(null));
+    }
+
+    /**
+     * La letra de control de cada número es la de la tabla en la posición del
+     * resto de dividirlo entre 23.
+     */
+    @Test
+    void letraDeControl() {
+        for (int numero = 0; numero < 1000; numero++) {
+            assertEquals(ValidadorDNI.LETRAS.charAt(numero % 23), ValidadorDNI.letraControl(numero));
+        }
+        assertEquals('Z', ValidadorDNI.letraControl(12345678));
+        assertEquals('E', ValidadorDNI.letraControl(99999999 - 99999999 % 23 + 22));
+    }
+
+    /**
+     * Con DNIs y NIEs aleatorios, el validador da el mismo resultado que el
+     * cálculo directo, tanto con cadenas como con buffers de bytes.
+     */
+    @Test
+    void coincideConElCalculoDirecto() {
+        Random aleatorio = new Random(19);
+        for (int i = 0; i < 100_000; i++) {
+            String dni = aleatorio(aleatorio);
+            boolean esperado = esValidoReferencia(dni);
+            assertEquals(esperado, ValidadorDNI.esValido(dni), dni);
+            ByteBuffer datos = ByteBuffer.wrap(("##" + dni).getBytes(StandardCharsets.ISO_8859_1));
+            assertEquals(esperado, ValidadorDNI.esValido(datos, 2, dni.length()), dni);
+            assertEquals(0, datos.position());
+        }
+    }
+
+    /**
+     * Comprueba una columna de DNIs escritos uno tras otro en un buffer
+     * directo, con el mismo resultado que uno a uno.
+     */
+    @Test
+    void validaUnaColumnaDeDNIs() {
+        Random aleatorio = new Random(21);
+        int cuantos = 1000;
+        String[] dnis = new String[cuantos];
+        int[] inicios = new int[cuantos];
+        int[] longitudes = new int[cuantos];
+        StringBuilder columna = new StringBuilder();
+        int esperados = 0;
+        for (int i = 0; i < cuantos; i++) {
+            dnis[i] = aleatorio(aleatorio);
+            inicios[i] = columna.length();
+            longitudes[i] = dnis[i].length();
+            columna.append(dnis[i]).append(';');
+            if (ValidadorDNI.esValido(dnis[i])) {
+                esperados++;
+            }
+        }
+        byte[] bytes = columna.toString().getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer datos = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+        boolean[] validos = new boolean[cuantos];
+        assertEquals(esperados, ValidadorDNI.validar(datos, inicios, longitudes, validos, cuantos));
+        for (int i = 0; i < cuantos; i++) {
+            assertEquals(ValidadorDNI.esValido(dnis[i]), validos[i], dnis[i]);
+        }
+        assertEquals(0, datos.position());
+        assertTrue(esperados > 0 && esperados < cuantos);
+    }
+
+    /**
+     * Si se piden más DNIs de los que caben en los arrays, se lanza una
+     * excepción sin comprobar ninguno.
+     */
+    @Test
+    void rechazaArraysDemasiadoCortos() {
+        ByteBuffer datos = ByteBuffer.wrap("12345678Z".getBytes(StandardCharsets.ISO_8859_1));
+        boolean[] validos = new boolean[1];
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> ValidadorDNI.validar(datos, new int[2], new int[]{9, 9}, validos, 2));
+        assertFalse(validos[0]);
+    }
+
+    /**
+     * Compara el tiempo de comprobar DNIs y NIEs con el validador, con su
+     * variante para columnas y con el cálculo directo. Los tres han de
+     * encontrar los mismos correctos, y se muestra el tiempo por DNI de
+     * cada uno.
+     */
+    @Test
+    @Tag("rendimiento")
+    void comparacionConElCalculoDirecto() {
+        Random aleatorio = new Random(27);
+        int cuantos = 200_000;
+        String[] dnis = new String[cuantos];
+        int[] inicios = new int[cuantos];
+        int[] longitudes = new int[cuantos];
+        StringBuilder columna = new StringBuilder();
+        for (int i = 0; i < cuantos; i++) {
+            dnis[i] = aleatorio(aleatorio);
+            inicios[i] = columna.length();
+            longitudes[i] = dnis[i].length();
+            columna.append(dnis[i]).append(';');
+        }
+        byte[] bytes = columna.toString().getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer datos = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+        boolean[] validos = new boolean[cuantos];
+        int correctosValidador = 0, correctosColumna = 0, correctosReferencia = 0;
+        long tiempoValidador = Long.MAX_VALUE, tiempoColumna = Long.MAX_VALUE, tiempoReferencia = Long.MAX_VALUE;
+        // La primera vuelta sirve de calentamiento
+        for (int vuelta = 0; vuelta < 4; vuelta++) {
+            long inicio = System.nanoTime();
+            correctosValidador = 0;
+            for (String dni : dnis) {
+                if (ValidadorDNI.esValido(dni)) {
+                    correctosValidador++;
+                }
+            }
+            long tiempo = System.nanoTime() - inicio;
+            if (vuelta > 0) {
+                tiempoValidador = Math.min(tiempoValidador, tiempo);
+            }
+            inicio = System.nanoTime();
+            correctosColumna = ValidadorDNI.validar(datos, inicios, longitudes, validos, cuantos);
+            tiempo = System.nanoTime() - inicio;
+            if (vuelta > 0) {
+                tiempoColumna = Math.min(tiempoColumna, tiempo);
+            }
+            inicio = System.nanoTime();
+            correctosReferencia = 0;
+            for (String dni : dnis) {
+                if (esValidoReferencia(dni)) {
+                    correctosReferencia++;
+                }
+            }
+            tiempo = System.nanoTime() - inicio;
+            if (vuelta > 0) {
+                tiempoReferencia = Math.min(tiempoReferencia, tiempo);
+            }
+        }
+        System.out.printf("Validación de %d DNIs: validador %.0f ns, columna %.0f ns, cálculo directo %.0f ns "
+                + "por DNI%n", cuantos, (double) tiempoValidador / cuantos, (double) tiempoColumna / cuantos,
+                (double) tiempoReferencia / cuantos);
+        assertEquals(correctosReferencia, correctosValidador);
+        assertEquals(correctosReferencia, correctosColumna);
+    }
+}
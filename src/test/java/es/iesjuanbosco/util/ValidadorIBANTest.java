@@ -0,0 +1,214 @@
+package es.iesjuanbosco.util;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del validador de IBAN: IBAN correctos e incorrectos y comprobación
+ * sobre buffers de bytes, comparando el resultado con el de un cálculo
+ * directo del resto con BigInteger.
+ *
+ * @author Cristian Palomo Prieto
+ * @version 0.1
+ */
+class ValidadorIBANTest {
+
+    /**
+     * Comprueba un IBAN con el cálculo directo: se comprueba el formato con
+     * una expresión regular, se mueven los 4 primeros caracteres al final
+     * sustituyendo las letras por su valor (E = 14, S = 28) y se calcula el
+     * resto con BigInteger.
+     *
+     * @param iban el IBAN
+     *
+     * @return true si es correcto
+     */
+    private static boolean esValidoReferencia(String iban) {
+        if (!iban.matches("ES[0-9]{20}")) {
+            return false;
+        }
+        BigInteger numero = new BigInteger(iban.substring(4) + "1428" + iban.substring(2, 4));
+        return numero.mod(BigInteger.valueOf(97)).intValue() == 1;
+    }
+
+    /**
+     * Forma un IBAN correcto a partir de un número de cuenta, calculando sus
+     * dígitos de control.
+     *
+     * @param cuenta los 18 dígitos de la cuenta
+     *
+     * @return el IBAN
+     */
+    private static String iban(String cuenta) {
+        int resto = new BigInteger(cuenta + "142800").mod(BigInteger.valueOf(97)).intValue();
+        return String.format("ES%02d%s", 98 - resto, cuenta);
+    }
+
+    /**
+     * Genera un IBAN aleatorio, correcto o no, con alguna variación de
+     * formato.
+     *
+     * @param aleatorio el generador de números aleatorios
+     *
+     * @return el IBAN
+     */
+    private static String aleatorio(Random aleatorio) {
+        StringBuilder cuenta = new StringBuilder();
+        for (int i = 0; i < 18; i++) {
+            cuenta.append((char) ('0' + aleatorio.nextInt(10)));
+        }
+        StringBuilder iban = new StringBuilder(iban(cuenta.toString()));
+        switch (aleatorio.nextInt(8)) {
+            case 0 ->
+                // Otros dígitos de control
+                iban.replace(2, 4, String.format("%02d", aleatorio.nextInt(100)));
+            case 1 ->
+                // Un carácter cambiado por otro cualquiera
+                iban.setCharAt(aleatorio.nextInt(iban.length()), (char) (' ' + aleatorio.nextInt(95)));
+            case 2 ->
+                // Dos dígitos de la cuenta intercambiados
+                iban.insert(4, iban.charAt(5)).deleteCharAt(6);
+            case 3 ->
+                iban.setLength(iban.length() - 1 - aleatorio.nextInt(3));
+            case 4 ->
+                iban.append(aleatorio.nextInt(10));
+            case 5 ->
+                iban.replace(0, 2, "es");
+            default -> {
+            }
+        }
+        return iban.toString();
+    }
+
+    /**
+     * Acepta IBAN con los dígitos de control correctos, también los que
+     * tienen los dígitos de control más pequeños y más grandes.
+     */
+    @Test
+    void aceptaIbanCorrectos() {
+        assertTrue(ValidadorIBAN.esValido(iban("345678901234567890")));
+        assertTrue(ValidadorIBAN.esValido(iban("000000000000000000")));
+        assertTrue(ValidadorIBAN.esValido(iban("999999999999999999")));
+        for (int i = 0; i < 1000; i++) {
+            String iban = iban(String.format("%018d", i * 7_919L));
+            assertTrue(ValidadorIBAN.esValido(iban), iban);
+            assertTrue(Utilidades.esCorrectoIBAN(iban), iban);
+        }
+    }
+
+    /**
+     * Rechaza dígitos de control incorrectos, otros países, letras en
+     * minúscula, longitudes incorrectas, caracteres que no son cifras y el
+     * valor null.
+     */
+    @Test
+    void rechazaIbanIncorrectos() {
+        String correcto = iban("345678901234567890");
+        int control = Integer.parseInt(correcto.substring(2, 4));
+        String otroControl = String.format("ES%02d", (control + 1) % 100) + correcto.substring(4);
+        assertFalse(ValidadorIBAN.esValido(otroControl));
+        assertFalse(ValidadorIBAN.esValido("FR" + correcto.substring(2)));
+        assertFalse(ValidadorIBAN.esValido("es" + correcto.substring(2)));
+        assertFalse(ValidadorIBAN.esValido(correcto.substring(0, 21)));
+        assertFalse(ValidadorIBAN.esValido(correcto + "0"));
+        // Un IBAN español real tiene 24 caracteres, pero aquí sólo se admiten 22
+        assertFalse(ValidadorIBAN.esValido("ES9121000418450200051332"));
+        assertFalse(ValidadorIBAN.esValido(correcto.substring(0, 10) + " " + correcto.substring(11)));
+        assertFalse(ValidadorIBAN.esValido(correcto.substring(0, 10) + "A" + correcto.substring(11)));
+        assertFalse(ValidadorIBAN.esValido(""));
+        assertFalse(ValidadorIBAN.esValido(null));
+        assertFalse(Utilidades.esCorrectoIBAN(otroControl));
+    }
+
+    /**
+     * Cambiar una cifra o intercambiar dos cifras seguidas distintas siempre
+     * da un IBAN incorrecto.
+     */
+    @Test
+    void detectaErroresDeUnaCifra() {
+        String correcto = iban("345678901234567890");
+        for (int posicion = 2; posicion < ValidadorIBAN.LONGITUD; posicion++) {
+            for (char cifra = '0'; cifra <= '9'; cifra++) {
+                if (cifra != correcto.charAt(posicion)) {
+                    StringBuilder cambiado = new StringBuilder(correcto);
+                    cambiado.setCharAt(posicion, cifra);
+                    assertFalse(ValidadorIBAN.esValido(cambiado), cambiado.toString());
+                }
+            }
+            if (posicion + 1 < ValidadorIBAN.LONGITUD && correcto.charAt(posicion) != correcto.charAt(posicion + 1)) {
+                StringBuilder intercambiado = new StringBuilder(correcto);
+                intercambiado.setCharAt(posicion, correcto.charAt(posicion + 1));
+                intercambiado.setCharAt(posicion + 1, correcto.charAt(posicion));
+                assertFalse(ValidadorIBAN.esValido(intercambiado), intercambiado.toString());
+            }
+        }
+    }
+
+    /**
+     * Con IBAN aleatorios, el validador da el mismo resultado que el cálculo
+     * directo, tanto con cadenas como con buffers de bytes.
+     */
+    @Test
+    void coincideConElCalculoDirecto() {
+        Random aleatorio = new Random(23);
+        for (int i = 0; i < 100_000; i++) {
+            String iban = aleatorio(aleatorio);
+            boolean esperado = esValidoReferencia(iban);
+            assertEquals(esperado, ValidadorIBAN.esValido(iban), iban);
+            ByteBuffer datos = ByteBuffer.wrap(("##" + iban).getBytes(StandardCharsets.ISO_8859_1));
+            assertEquals(esperado, ValidadorIBAN.esValido(datos, 2, iban.length()), iban);
+            assertEquals(0, datos.position());
+        }
+    }
+
+    /**
+     * Comprueba una columna de IBAN escritos uno tras otro en un buffer
+     * directo, con el mismo resultado que uno a uno.
+     */
+    @Test
+    void validaUnaColumnaDeIban() {
+        Random aleatorio = new Random(29);
+        int cuantos = 1000;
+        String[] ibans = new String[cuantos];
+        int[] inicios = new int[cuantos];
+        int[] longitudes = new int[cuantos];
+        StringBuilder columna = new StringBuilder();
+        int esperados = 0;
+        for (int i = 0; i < cuantos; i++) {
+            ibans[i] = aleatorio(aleatorio);
+            inicios[i] = columna.length();
+            longitudes[i] = ibans[i].length();
+            columna.append(ibans[i]).append(';');
+            if (ValidadorIBAN.esValido(ibans[i])) {
+                esperados++;
+            }
+        }
+        byte[] bytes = columna.toString().getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer datos = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+        boolean[] validos = new boolean[cuantos];
+        assertEquals(esperados, ValidadorIBAN.validar(datos, inicios, longitudes, validos, cuantos));
+        for (int i = 0; i < cuantos; i++) {
+            assertEquals(ValidadorIBAN.esValido(ibans[i]), validos[i], ibans[i]);
+        }
+        assertEquals(0, datos.position());
+        assertTrue(esperados > 0 && esperados < cuantos);
+    }
+
+    /**
+     * Si se piden más IBAN de los que caben en los arrays, se lanza una
+     * excepción sin comprobar ninguno.
+     */
+    @Test
+    void rechazaArraysDemasiadoCortos() {
+        String iban = iban("345678901234567890");
+        ByteBuffer datos = ByteBuffer.wrap(iban.getBytes(StandardCharsets.ISO_8859_1));
+        boolean[] validos = new boolean[1];
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> ValidadorIBAN.validar(datos, new int[2], new int[]{22, 22}, validos, 2));
+        assertFalse(validos[0]);
+    }
+}